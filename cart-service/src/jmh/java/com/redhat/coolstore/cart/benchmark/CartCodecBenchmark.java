@@ -0,0 +1,144 @@
+package com.redhat.coolstore.cart.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+import com.redhat.coolstore.cart.service.PriceCalculationServiceImpl;
+import com.redhat.coolstore.cart.service.ShoppingCartCodec;
+
+/**
+ * Cost of encoding a cart and decoding it back with {@link ShoppingCartCodec},
+ * Java serialization and Jackson, for carts of 1 to 500 lines. The codec's
+ * dictionary holds the item ids of the catalog. The encoded sizes are printed
+ * at setup.
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="CartCodecBenchmark"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartCodecBenchmark {
+
+    private static final int CATALOG_SIZE = 1000;
+
+    @Param({ "1", "10", "100", "500" })
+    private int lines;
+
+    private ShoppingCartCodec codec;
+
+    private ObjectMapper objectMapper;
+
+    private ShoppingCart cart;
+
+    private ByteBuffer buffer;
+
+    private ByteArrayOutputStream out;
+
+    private byte[] serialized;
+
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        List<String> itemIds = new ArrayList<>();
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            itemIds.add(StubCatalogService.itemId(i));
+        }
+        codec = new ShoppingCartCodec(itemIds);
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        cart = new ShoppingCart();
+        cart.setId("cart");
+        for (int i = 0; i < lines; i++) {
+            Product product = new Product();
+            product.setItemId(StubCatalogService.itemId(i));
+            product.setName("Product " + i);
+            product.setDesc("Description of product " + i);
+            product.setPrice(1.0 + (i % 100) + 0.99);
+            ShoppingCartItem sci = new ShoppingCartItem();
+            sci.setProduct(product);
+            sci.setPrice(product.getPrice());
+            sci.setQuantity(1 + i % 3);
+            cart.addShoppingCartItem(sci);
+        }
+        new PriceCalculationServiceImpl().priceShoppingCart(cart);
+        buffer = ByteBuffer.allocate(256 * (lines + 1));
+        out = new ByteArrayOutputStream(1024 * (lines + 1));
+        int encoded = encodeCodec();
+        serialized = serialize();
+        json = objectMapper.writeValueAsBytes(cart);
+        System.out.printf("%n%d lines: codec %d bytes, serialization %d bytes, JSON %d bytes%n", lines, encoded, serialized.length, json.length);
+    }
+
+    @Benchmark
+    public int encodeCodec() {
+        buffer.clear();
+        codec.encode(cart, buffer);
+        return buffer.position();
+    }
+
+    @Benchmark
+    public ShoppingCart decodeCodec() {
+        buffer.rewind();
+        return codec.decode(buffer);
+    }
+
+    @Benchmark
+    public byte[] encodeSerialization() throws IOException {
+        return serialize();
+    }
+
+    @Benchmark
+    public Object decodeSerialization() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeJackson() throws IOException {
+        return objectMapper.writeValueAsBytes(cart);
+    }
+
+    @Benchmark
+    public ShoppingCart decodeJackson() throws IOException {
+        return objectMapper.readValue(json, ShoppingCart.class);
+    }
+
+    private byte[] serialize() throws IOException {
+        out.reset();
+        try (ObjectOutputStream objects = new ObjectOutputStream(out)) {
+            objects.writeObject(cart);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.redhat.coolstore.cart.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.service.CartRepository;
+import com.redhat.coolstore.cart.service.CatalogService;
+import com.redhat.coolstore.cart.service.InMemoryCartRepository;
+import com.redhat.coolstore.cart.service.PriceCalculationService;
+import com.redhat.coolstore.cart.service.PriceCalculationServiceImpl;
+import com.redhat.coolstore.cart.service.ShoppingCartServiceImpl;
+
+/**
+ * Single-threaded cost of the cart mutations and of a full repricing, for
+ * carts of 1 to 500 lines. Adding to or removing from an existing line, and
+ * adding then removing a whole line, should cost the same whatever the size of
+ * the cart; only {@code priceCart} is expected to grow with it.
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="CartMutationBenchmark"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartMutationBenchmark {
+
+    private static final String CART_ID = "cart";
+
+    // large enough for the add and remove benchmarks never to overflow or empty a line within an iteration
+    private static final int INITIAL_QUANTITY = 1 << 29;
+
+    @Param({ "1", "10", "100", "500" })
+    private int lines;
+
+    private ShoppingCartServiceImpl shoppingCartService;
+
+    private PriceCalculationServiceImpl priceCalculationService;
+
+    private ShoppingCart cart;
+
+    private String[] itemIds;
+
+    private String absentItemId;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        shoppingCartService = new ShoppingCartServiceImpl();
+        priceCalculationService = new PriceCalculationServiceImpl();
+        ReflectionTestUtils.setField(shoppingCartService, null, new StubCatalogService(lines + 1), CatalogService.class);
+        ReflectionTestUtils.setField(shoppingCartService, null, priceCalculationService, PriceCalculationService.class);
+        ReflectionTestUtils.setField(shoppingCartService, null, new InMemoryCartRepository(), CartRepository.class);
+        itemIds = new String[lines];
+        for (int i = 0; i < lines; i++) {
+            itemIds[i] = StubCatalogService.itemId(i);
+            cart = shoppingCartService.addToCart(CART_ID, itemIds[i], INITIAL_QUANTITY);
+        }
+        absentItemId = StubCatalogService.itemId(lines);
+    }
+
+    @Benchmark
+    public ShoppingCart addToCart() {
+        return shoppingCartService.addToCart(CART_ID, randomItemId(), 1);
+    }
+
+    @Benchmark
+    public ShoppingCart removeFromCart() {
+        return shoppingCartService.removeFromCart(CART_ID, randomItemId(), 1);
+    }
+
+    @Benchmark
+    public ShoppingCart addAndRemoveLine() {
+        shoppingCartService.addToCart(CART_ID, absentItemId, 1);
+        return shoppingCartService.removeFromCart(CART_ID, absentItemId, 1);
+    }
+
+    @Benchmark
+    public ShoppingCart priceCart() {
+        priceCalculationService.priceShoppingCart(cart);
+        return cart;
+    }
+
+    private String randomItemId() {
+        return itemIds[ThreadLocalRandom.current().nextInt(lines)];
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.redhat.coolstore.cart.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.redhat.coolstore.cart.CartServiceConfiguration;
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+import com.redhat.coolstore.cart.rest.CartJsonCache;
+import com.redhat.coolstore.cart.service.PriceCalculationServiceImpl;
+
+/**
+ * Cost of writing a cart as the JSON response body, and of reading it back,
+ * through the JAX-RS provider the endpoints use, for carts of 1 to 500 lines.
+ * The provider is built by {@link CartServiceConfiguration} on an object
+ * mapper configured like the one Spring Boot creates.
+ * <p>
+ * {@code writeCachedCart} is the path of a read of an unchanged cart, which
+ * copies the JSON {@link CartJsonCache} kept for the version of the cart,
+ * against {@code writeCart} for the serialization it replaces.
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="CartSerializationBenchmark"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartSerializationBenchmark {
+
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    @Param({ "1", "10", "100", "500" })
+    private int lines;
+
+    private JacksonJsonProvider jsonProvider;
+
+    private CartJsonCache cartJsonCache;
+
+    private MultivaluedMap<String, Object> headers;
+
+    private ShoppingCart cart;
+
+    private ByteArrayOutputStream out;
+
+    private byte[] json;
+
+    @Setup
+    public void setup() throws IOException {
+        jsonProvider = new CartServiceConfiguration().jsonProvider(Jackson2ObjectMapperBuilder.json().build());
+        Lock cartLock = new ReentrantLock();
+        cartJsonCache = new CartJsonCache(jsonProvider, cartId -> cartLock, 1 << 24);
+        headers = new MultivaluedHashMap<>();
+        cart = new ShoppingCart();
+        cart.setId("cart");
+        cart.setVersion(1);
+        for (int i = 0; i < lines; i++) {
+            Product product = new Product();
+            product.setItemId(StubCatalogService.itemId(i));
+            product.setName("Product " + i);
+            product.setDesc("Description of product " + i);
+            product.setPrice(1.0 + (i % 100) + 0.99);
+            ShoppingCartItem sci = new ShoppingCartItem();
+            sci.setProduct(product);
+            sci.setPrice(product.getPrice());
+            sci.setQuantity(1 + i % 3);
+            cart.addShoppingCartItem(sci);
+        }
+        new PriceCalculationServiceImpl().priceShoppingCart(cart);
+        out = new ByteArrayOutputStream(256 * (lines + 1));
+        write();
+        json = out.toByteArray();
+    }
+
+    @Benchmark
+    public int writeCart() throws IOException {
+        return write();
+    }
+
+    @Benchmark
+    public int writeCachedCart() throws IOException {
+        out.reset();
+        out.write(cartJsonCache.toJson(cart));
+        return out.size();
+    }
+
+    @Benchmark
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public Object readCart() throws IOException {
+        return jsonProvider.readFrom((Class) ShoppingCart.class, ShoppingCart.class, NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE,
+                new MultivaluedHashMap<>(), new ByteArrayInputStream(json));
+    }
+
+    // the buffer is reused, so the allocations reported are those of the provider
+    private int write() throws IOException {
+        out.reset();
+        jsonProvider.writeTo(cart, ShoppingCart.class, ShoppingCart.class, NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE, headers, out);
+        return out.size();
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.redhat.coolstore.cart.benchmark;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.service.CartRepository;
+import com.redhat.coolstore.cart.service.CatalogService;
+import com.redhat.coolstore.cart.service.InMemoryCartRepository;
+import com.redhat.coolstore.cart.service.PriceCalculationService;
+import com.redhat.coolstore.cart.service.PriceCalculationServiceImpl;
+import com.redhat.coolstore.cart.service.ShoppingCartServiceImpl;
+
+/**
+ * Throughput of concurrent add/remove/get on the cart store, from 1 to 32
+ * threads. With {@code carts=1} every thread hits the same cart and the
+ * per-cart lock is the bottleneck; with many carts the lock stripes let
+ * throughput scale with the number of threads.
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="CartStoreContentionBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CartStoreContentionBenchmark {
+
+    private static final int PRODUCTS = 64;
+
+    @Param({ "1", "4096" })
+    private int carts;
+
+    private ShoppingCartServiceImpl shoppingCartService;
+
+    private String[] cartIds;
+
+    @Setup
+    public void setup() {
+        shoppingCartService = new ShoppingCartServiceImpl();
+        ReflectionTestUtils.setField(shoppingCartService, null, new StubCatalogService(PRODUCTS), CatalogService.class);
+        ReflectionTestUtils.setField(shoppingCartService, null, new PriceCalculationServiceImpl(), PriceCalculationService.class);
+        ReflectionTestUtils.setField(shoppingCartService, null, new InMemoryCartRepository(), CartRepository.class);
+        cartIds = new String[carts];
+        for (int i = 0; i < carts; i++) {
+            cartIds[i] = "cart-" + i;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public ShoppingCart threads01() {
+        return mutate();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public ShoppingCart threads02() {
+        return mutate();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ShoppingCart threads04() {
+        return mutate();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public ShoppingCart threads08() {
+        return mutate();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public ShoppingCart threads16() {
+        return mutate();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public ShoppingCart threads32() {
+        return mutate();
+    }
+
+    private ShoppingCart mutate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String cartId = cartIds[random.nextInt(carts)];
+        String itemId = StubCatalogService.itemId(random.nextInt(PRODUCTS));
+        switch (random.nextInt(4)) {
+            case 0:
+                return shoppingCartService.removeFromCart(cartId, itemId, 1);
+            case 1:
+                return shoppingCartService.getShoppingCart(cartId);
+            default:
+                return shoppingCartService.addToCart(cartId, itemId, 1);
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.redhat.coolstore.cart.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.coolstore.cart.model.Order;
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+import com.redhat.coolstore.cart.service.CheckoutJournal;
+
+/**
+ * Durable checkouts per millisecond with 64 concurrent clients, each waiting
+ * for its order to be synced. {@code maxBatchSize=1} is one fsync per order;
+ * with group commit the throughput is bounded by the size of the batches
+ * rather than by the latency of the disk. A batch delay only pays off when
+ * syncs are much faster than the time between orders: once every client
+ * waits in the current batch, the writer waits for nothing.
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="CheckoutJournalBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(64)
+public class CheckoutJournalBenchmark {
+
+    @Param({ "1", "256" })
+    private int maxBatchSize;
+
+    @Param({ "0", "1" })
+    private long maxBatchDelayMillis;
+
+    private Path directory;
+
+    private CheckoutJournal journal;
+
+    private ShoppingCart cart;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("checkout-journal");
+        journal = new CheckoutJournal(directory.resolve("checkout.journal"), maxBatchSize, maxBatchDelayMillis, new ObjectMapper());
+        Product product = new Product();
+        product.setItemId(StubCatalogService.itemId(1));
+        product.setName("Product 1");
+        product.setPrice(19.99);
+        ShoppingCartItem sci = new ShoppingCartItem();
+        sci.setProduct(product);
+        sci.setPrice(product.getPrice());
+        sci.setQuantity(2);
+        cart = new ShoppingCart();
+        cart.setId("cart");
+        cart.addShoppingCartItem(sci);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        Files.deleteIfExists(directory.resolve("checkout.journal"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public Order checkout() {
+        return journal.append(cart).join();
+    }
+
+}
@@ -0,0 +1,109 @@
+package com.redhat.coolstore.cart.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+import com.redhat.coolstore.cart.service.PriceCalculationServiceImpl;
+import com.redhat.coolstore.cart.service.PromotionEngine;
+import com.redhat.coolstore.cart.service.PromotionRules;
+import com.redhat.coolstore.cart.service.PromotionRules.ItemPromotion;
+import com.redhat.coolstore.cart.service.PromotionRules.ShippingPromotion;
+import com.redhat.coolstore.cart.service.PromotionRules.ShippingTier;
+
+/**
+ * Cost of pricing a cart as the number of promotion rules grows. Rules are
+ * compiled into hash and sorted-array lookups, so the time per cart should
+ * stay flat from 10 to 1000 rules, and the gc profiler should show that
+ * pricing does not allocate. The same cart items match the same promotions
+ * whatever the number of rules, so only the cost of the lookups varies.
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="PromotionRulesBenchmark"
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PromotionRulesBenchmark {
+
+    private static final int CART_ITEMS = 50;
+
+    @Param({ "10", "100", "500", "1000" })
+    private int rules;
+
+    private PriceCalculationServiceImpl priceCalculationService;
+
+    private ShoppingCart cart;
+
+    private ShoppingCartItem changed;
+
+    @Setup
+    public void setup() {
+        // a few products of the cart have promotions of their own, the others get the catch-all one
+        PromotionRules definition = new PromotionRules();
+        definition.getItemPromotions().add(new ItemPromotion(ItemPromotion.ANY_ITEM, 5, 0, 0));
+        for (int i = 0; i < 4; i++) {
+            definition.getItemPromotions().add((i % 2 == 0) ? new ItemPromotion("p" + i, 10, 0, 0) : new ItemPromotion("p" + i, 0, 2, 1));
+        }
+        int tiers = rules / 10;
+        for (int i = definition.getItemPromotions().size(); i < rules - 2 * tiers; i++) {
+            definition.getItemPromotions().add(new ItemPromotion("other-" + i, 10, 0, 0));
+        }
+        definition.getShippingTiers().clear();
+        for (int i = 0; i < tiers; i++) {
+            definition.getShippingTiers().add(new ShippingTier(i * 10.0, (i + 1) * 10.0, 1 + i % 5));
+            definition.getShippingPromotions().add(new ShippingPromotion(i * 10.0, i % 50));
+        }
+        PromotionEngine promotionEngine = PromotionEngine.defaults();
+        promotionEngine.update(definition);
+        priceCalculationService = new PriceCalculationServiceImpl(promotionEngine);
+
+        cart = new ShoppingCart();
+        for (int i = 0; i < CART_ITEMS; i++) {
+            Product product = new Product();
+            product.setItemId("p" + i);
+            product.setPrice(1.0 + i);
+            ShoppingCartItem sci = new ShoppingCartItem();
+            sci.setProduct(product);
+            sci.setPrice(product.getPrice());
+            sci.setQuantity(1 + i % 4);
+            cart.addShoppingCartItem(sci);
+        }
+        changed = cart.findShoppingCartItem("p" + (CART_ITEMS / 2));
+        priceCalculationService.priceShoppingCart(cart);
+    }
+
+    @Benchmark
+    public ShoppingCart priceCart() {
+        priceCalculationService.priceShoppingCart(cart);
+        return cart;
+    }
+
+    @Benchmark
+    public ShoppingCart updateCartPrice() {
+        // add then remove one item, so the cart does not grow across invocations
+        changed.setQuantity(changed.getQuantity() + 1);
+        priceCalculationService.updateShoppingCartPrice(cart, changed, 1);
+        changed.setQuantity(changed.getQuantity() - 1);
+        priceCalculationService.updateShoppingCartPrice(cart, changed, -1);
+        return cart;
+    }
+
+}
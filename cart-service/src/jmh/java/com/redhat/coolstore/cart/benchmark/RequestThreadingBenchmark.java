@@ -0,0 +1,93 @@
+package com.redhat.coolstore.cart.benchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.redhat.coolstore.cart.VirtualThreads;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.service.CartRepository;
+import com.redhat.coolstore.cart.service.CatalogService;
+import com.redhat.coolstore.cart.service.InMemoryCartRepository;
+import com.redhat.coolstore.cart.service.PriceCalculationService;
+import com.redhat.coolstore.cart.service.PriceCalculationServiceImpl;
+import com.redhat.coolstore.cart.service.ShoppingCartServiceImpl;
+
+/**
+ * Add-to-cart requests against a catalog that takes 50 ms to answer, run on a
+ * fixed pool of platform threads the size of Tomcat's default pool, or on one
+ * virtual thread per request. Each benchmark thread is a client waiting for
+ * its request, so with more clients than pool threads the platform pool
+ * queues requests while virtual threads do not. Reports throughput and, in
+ * sample mode, the latency percentiles.
+ * <p>
+ * The {@code virtual} runs need a Java 21 JVM:
+ *
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Djmh.args="RequestThreadingBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(400)
+public class RequestThreadingBenchmark {
+
+    private static final int PRODUCTS = 64;
+
+    private static final int CARTS = 4096;
+
+    private static final long CATALOG_LATENCY_MILLIS = 50;
+
+    @Param({ "platform", "virtual" })
+    private String threads;
+
+    @Param({ "200" })
+    private int poolSize;
+
+    private ExecutorService requestExecutor;
+
+    private ShoppingCartServiceImpl shoppingCartService;
+
+    @Setup
+    public void setup() {
+        requestExecutor = "virtual".equals(threads) ? VirtualThreads.newVirtualThreadPerTaskExecutor() : Executors.newFixedThreadPool(poolSize);
+        shoppingCartService = new ShoppingCartServiceImpl();
+        ReflectionTestUtils.setField(shoppingCartService, null, new StubCatalogService(PRODUCTS, CATALOG_LATENCY_MILLIS), CatalogService.class);
+        ReflectionTestUtils.setField(shoppingCartService, null, new PriceCalculationServiceImpl(), PriceCalculationService.class);
+        ReflectionTestUtils.setField(shoppingCartService, null, new InMemoryCartRepository(), CartRepository.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        requestExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public ShoppingCart addToCart() throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String cartId = "cart-" + random.nextInt(CARTS);
+        String itemId = StubCatalogService.itemId(random.nextInt(PRODUCTS));
+        return requestExecutor.submit(() -> shoppingCartService.addToCart(cartId, itemId, 1)).get();
+    }
+
+}
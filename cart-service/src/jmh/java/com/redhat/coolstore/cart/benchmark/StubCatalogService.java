@@ -0,0 +1,52 @@
+package com.redhat.coolstore.cart.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.service.CatalogService;
+
+/**
+ * In-process catalog answering from a fixed product table, so benchmarks
+ * measure the cart code and not the network. A latency can be set to stand
+ * in for the round trip to a remote catalog.
+ */
+public class StubCatalogService implements CatalogService {
+
+    private final Map<String, Product> products = new HashMap<>();
+
+    private final long latencyMillis;
+
+    public StubCatalogService(int productCount) {
+        this(productCount, 0);
+    }
+
+    public StubCatalogService(int productCount, long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        for (int i = 0; i < productCount; i++) {
+            Product product = new Product();
+            product.setItemId(itemId(i));
+            product.setName("Product " + i);
+            product.setDesc("Description of product " + i);
+            product.setPrice(1.0 + (i % 100) + 0.99);
+            products.put(product.getItemId(), product);
+        }
+    }
+
+    public static String itemId(int i) {
+        return String.format("%06d", i);
+    }
+
+    @Override
+    public Product getProduct(String itemId) {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return products.get(itemId);
+    }
+
+}
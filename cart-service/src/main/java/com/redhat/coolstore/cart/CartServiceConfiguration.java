@@ -1,11 +1,56 @@
 package com.redhat.coolstore.cart;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.jaxrs.json.JacksonJaxbJsonProvider;
 import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ProductTable;
+import com.redhat.coolstore.cart.rest.CartJsonCache;
+import com.redhat.coolstore.cart.service.CartRepository;
+import com.redhat.coolstore.cart.service.CartRepricer;
+import com.redhat.coolstore.cart.service.CatalogConnectionPool;
+import com.redhat.coolstore.cart.service.CatalogSnapshot;
+import com.redhat.coolstore.cart.service.CheckoutJournal;
+import com.redhat.coolstore.cart.service.CircuitBreaker;
+import com.redhat.coolstore.cart.service.ClusterMembership;
+import com.redhat.coolstore.cart.service.EventSourcedCartRepository;
+import com.redhat.coolstore.cart.service.HttpCartTransport;
+import com.redhat.coolstore.cart.service.InMemoryCartRepository;
+import com.redhat.coolstore.cart.service.MappedFileCartRepository;
+import com.redhat.coolstore.cart.service.NearCache;
+import com.redhat.coolstore.cart.service.PartitionedShoppingCartService;
+import com.redhat.coolstore.cart.service.ProductCache;
+import com.redhat.coolstore.cart.service.PromotionEngine;
+import com.redhat.coolstore.cart.service.ShoppingCartServiceImpl;
+import com.redhat.coolstore.cart.service.TrendingItems;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.web.client.AsyncRestTemplate;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
 
 @Configuration
 public class CartServiceConfiguration {
@@ -18,4 +63,217 @@ public class CartServiceConfiguration {
         return provider;
     }
 
+    @Bean
+    public CartJsonCache cartJsonCache(JacksonJsonProvider jsonProvider, ShoppingCartServiceImpl shoppingCartServiceImpl,
+            @Value("${cart.json-cache.max-bytes:16777216}") long maxBytes) {
+        return new CartJsonCache(jsonProvider, shoppingCartServiceImpl::lockFor, maxBytes);
+    }
+
+    /**
+     * Threads updating the carts of asynchronous requests once their catalog
+     * lookups complete. When the queue is full, the thread completing the
+     * lookup updates the cart itself, which slows down the catalog client
+     * instead of dropping the update.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService cartUpdateExecutor(@Value("${cart.update.threads:8}") int threads,
+            @Value("${cart.update.queue-size:10000}") int queueSize) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), r -> {
+            Thread t = new Thread(r, "cart-update-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Bean
+    public ProductTable productTable(@Value("${cart.product-table.max-entries:100000}") int maxEntries) {
+        return new ProductTable(maxEntries);
+    }
+
+    @Value("${cart.repository.eviction.idle-ttl-ms:86400000}")
+    private long idleTtlMillis;
+
+    @Value("${cart.repository.eviction.max-entries:0}")
+    private int maxEntries;
+
+    @Value("${cart.repository.eviction.max-bytes:0}")
+    private long maxBytes;
+
+    @Value("${cart.repository.eviction.sweep-interval-ms:60000}")
+    private long sweepIntervalMillis;
+
+    @Bean
+    @ConditionalOnProperty(name = "cart.repository.type", havingValue = "memory", matchIfMissing = true)
+    public CartRepository inMemoryCartRepository(ProductTable productTable) {
+        return residentCarts(productTable);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cart.repository.type", havingValue = "mapped")
+    public CartRepository mappedFileCartRepository(@Value("${cart.repository.mapped.dir}") String dir,
+            @Value("${cart.repository.mapped.partitions:8}") int partitions,
+            @Value("${cart.repository.mapped.segment-size:67108864}") int segmentSize,
+            @Value("${cart.repository.mapped.sync-on-write:false}") boolean syncOnWrite, ProductTable productTable) throws IOException {
+        return new MappedFileCartRepository(Paths.get(dir), partitions, segmentSize, syncOnWrite, residentCarts(productTable));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cart.repository.type", havingValue = "events")
+    public CartRepository eventSourcedCartRepository(@Value("${cart.repository.events.dir}") String dir,
+            @Value("${cart.repository.events.partitions:8}") int partitions,
+            @Value("${cart.repository.events.segment-size:16777216}") int segmentSize,
+            @Value("${cart.repository.events.sync-on-write:false}") boolean syncOnWrite,
+            @Value("${cart.repository.events.replay-threads:0}") int replayThreads, ProductTable productTable) throws IOException {
+        return new EventSourcedCartRepository(Paths.get(dir), partitions, segmentSize, syncOnWrite, replayThreads,
+                residentCarts(productTable));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cart.checkout.journal.enabled", havingValue = "true")
+    public CheckoutJournal checkoutJournal(ObjectMapper objectMapper, @Value("${cart.checkout.journal.file}") String file,
+            @Value("${cart.checkout.journal.max-batch-size:256}") int maxBatchSize,
+            @Value("${cart.checkout.journal.max-batch-delay-ms:0}") long maxBatchDelayMillis) throws IOException {
+        return new CheckoutJournal(Paths.get(file), maxBatchSize, maxBatchDelayMillis, objectMapper);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cart.cluster.enabled", havingValue = "true")
+    public ClusterMembership clusterMembership(@Value("${cart.cluster.self:}") String self,
+            @Value("${cart.cluster.members:}") String members,
+            @Value("${cart.cluster.dns-name:}") String dnsName,
+            @Value("${server.port:8080}") int port,
+            @Value("${cart.cluster.refresh-interval-ms:5000}") long refreshIntervalMillis) throws UnknownHostException {
+        if (self.isEmpty()) {
+            self = "http://" + InetAddress.getLocalHost().getHostAddress() + ":" + port;
+        }
+        ClusterMembership membership = new ClusterMembership(self,
+                dnsName.isEmpty() ? ClusterMembership.fixedMembers(members) : ClusterMembership.dnsMembers(dnsName, port), refreshIntervalMillis);
+        membership.start();
+        return membership;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "cart.cluster.enabled", havingValue = "true")
+    public HttpCartTransport cartTransport(@Value("${cart.cluster.http.max-connections-per-member:50}") int maxPerMember,
+            @Value("${cart.cluster.http.connect-timeout-ms:1000}") int connectTimeoutMillis,
+            @Value("${cart.cluster.http.read-timeout-ms:5000}") int readTimeoutMillis) {
+        return new HttpCartTransport(maxPerMember, connectTimeoutMillis, readTimeoutMillis);
+    }
+
+    @Bean
+    @Primary
+    @ConditionalOnProperty(name = "cart.cluster.enabled", havingValue = "true")
+    public PartitionedShoppingCartService partitionedShoppingCartService(ShoppingCartServiceImpl shoppingCartServiceImpl,
+            CartRepository cartRepository, ClusterMembership clusterMembership, HttpCartTransport cartTransport,
+            @Value("${cart.cluster.virtual-nodes:128}") int virtualNodes,
+            @Value("${cart.cluster.rebalance-interval-ms:30000}") long rebalanceIntervalMillis,
+            @Value("${cart.cluster.near-cache.ttl-ms:1000}") long nearCacheTtlMillis,
+            @Value("${cart.cluster.near-cache.max-entries:10000}") int nearCacheMaxEntries) {
+        return new PartitionedShoppingCartService(shoppingCartServiceImpl, cartRepository, clusterMembership, cartTransport,
+                new NearCache(nearCacheTtlMillis, nearCacheMaxEntries), virtualNodes, rebalanceIntervalMillis);
+    }
+
+    @Bean
+    public ProductCache productCache(@Value("${catalog.product-cache.ttl-ms:300000}") long ttlMillis,
+            @Value("${catalog.product-cache.not-found-ttl-ms:10000}") long notFoundTtlMillis,
+            @Value("${catalog.product-cache.max-stale-ms:86400000}") long maxStaleMillis,
+            @Value("${catalog.product-cache.max-entries:10000}") int maxEntries) {
+        return new ProductCache(ttlMillis, notFoundTtlMillis, maxStaleMillis, maxEntries);
+    }
+
+    @Bean
+    public CatalogConnectionPool catalogConnectionPool(@Value("${catalog.http.max-connections:200}") int maxTotal,
+            @Value("${catalog.http.max-connections-per-route:50}") int maxPerRoute,
+            @Value("${catalog.http.connect-timeout-ms:1000}") int connectTimeoutMillis,
+            @Value("${catalog.http.read-timeout-ms:5000}") int readTimeoutMillis,
+            @Value("${catalog.http.lease-timeout-ms:1000}") int leaseTimeoutMillis,
+            @Value("${catalog.http.keep-alive-ms:30000}") long keepAliveMillis,
+            @Value("${catalog.http.max-idle-ms:30000}") long maxIdleMillis) {
+        return new CatalogConnectionPool(maxTotal, maxPerRoute, connectTimeoutMillis, readTimeoutMillis, leaseTimeoutMillis, keepAliveMillis,
+                maxIdleMillis);
+    }
+
+    @Bean
+    public RestTemplate catalogRestTemplate(CatalogConnectionPool catalogConnectionPool) {
+        return new RestTemplate(catalogConnectionPool.getRequestFactory());
+    }
+
+    @Bean
+    public AsyncRestTemplate catalogAsyncRestTemplate(CatalogConnectionPool catalogConnectionPool) {
+        return new AsyncRestTemplate(catalogConnectionPool.getAsyncRequestFactory());
+    }
+
+    /**
+     * Client errors are the caller's fault, not the catalog's, so they do not
+     * count towards opening the circuit.
+     */
+    @Bean
+    public CircuitBreaker catalogCircuitBreaker(@Value("${catalog.circuit-breaker.failure-threshold:5}") int failureThreshold,
+            @Value("${catalog.circuit-breaker.open-ms:10000}") long openMillis,
+            @Value("${catalog.circuit-breaker.half-open-probes:1}") int halfOpenProbes,
+            @Value("${catalog.circuit-breaker.max-concurrent-calls:50}") int maxConcurrentCalls) {
+        return new CircuitBreaker("catalog", failureThreshold, openMillis, halfOpenProbes, maxConcurrentCalls,
+                e -> !(e instanceof HttpClientErrorException));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "catalog.snapshot.enabled", havingValue = "true")
+    public CatalogSnapshot catalogSnapshot(RestTemplate catalogRestTemplate, @Value("${catalog.service.url}") String catalogServiceUrl,
+            @Value("${catalog.snapshot.refresh-interval-ms:60000}") long refreshIntervalMillis) {
+        CatalogSnapshot snapshot = new CatalogSnapshot(
+                () -> Arrays.asList(catalogRestTemplate.getForObject(catalogServiceUrl + "/products", Product[].class)), refreshIntervalMillis);
+        snapshot.start();
+        return snapshot;
+    }
+
+    /**
+     * Carts are repriced when the catalog snapshot, if enabled, sees prices
+     * change, and when price changes are pushed to the prices endpoint.
+     */
+    @Bean
+    public CartRepricer cartRepricer(ShoppingCartServiceImpl shoppingCartServiceImpl, CartRepository cartRepository,
+            Optional<CatalogSnapshot> catalogSnapshot, @Value("${cart.repricing.threads:2}") int threads,
+            @Value("${cart.repricing.batch-size:100}") int batchSize) {
+        CartRepricer repricer = new CartRepricer(shoppingCartServiceImpl, cartRepository, threads, batchSize);
+        catalogSnapshot.ifPresent(snapshot -> snapshot.addPriceChangeListener(repricer::pricesChanged));
+        return repricer;
+    }
+
+    @Bean
+    public TrendingItems trendingItems(@Value("${cart.stats.top.size:20}") int topSize,
+            @Value("${cart.stats.window-ms:3600000}") long windowMillis,
+            @Value("${cart.stats.window-buckets:12}") int bucketCount,
+            @Value("${cart.stats.sketch.width:2048}") int width,
+            @Value("${cart.stats.sketch.depth:4}") int depth) {
+        return new TrendingItems(topSize, windowMillis, bucketCount, width, depth);
+    }
+
+    @Bean
+    public PromotionEngine promotionEngine(ObjectMapper objectMapper, @Value("${cart.promotions.file:}") String rulesFile,
+            @Value("${cart.promotions.reload-interval-ms:10000}") long reloadIntervalMillis) {
+        PromotionEngine engine = new PromotionEngine(rulesFile.isEmpty() ? null : Paths.get(rulesFile), reloadIntervalMillis, objectMapper);
+        engine.start();
+        return engine;
+    }
+
+    /**
+     * The timers on the request path are registered in the global registry
+     * when their component is created, so they are published here once the
+     * registry is added to it.
+     */
+    @Bean
+    public PrometheusMeterRegistry prometheusMeterRegistry(List<MeterBinder> meterBinders) {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        for (MeterBinder meterBinder : meterBinders) {
+            meterBinder.bindTo(registry);
+        }
+        Metrics.addRegistry(registry);
+        return registry;
+    }
+
+    private InMemoryCartRepository residentCarts(ProductTable productTable) {
+        return new InMemoryCartRepository(idleTtlMillis, maxEntries, maxBytes, sweepIntervalMillis, productTable);
+    }
+
 }
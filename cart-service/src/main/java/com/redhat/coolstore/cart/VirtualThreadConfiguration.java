@@ -0,0 +1,78 @@
+package com.redhat.coolstore.cart;
+
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.PostConstruct;
+
+import org.apache.coyote.AbstractProtocol;
+import org.apache.coyote.ProtocolHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerCustomizer;
+import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Condition;
+import org.springframework.context.annotation.ConditionContext;
+import org.springframework.context.annotation.Conditional;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.type.AnnotatedTypeMetadata;
+
+/**
+ * Opt-in mode ({@code cart.threads.virtual=true}) in which every HTTP request
+ * and every catalog call runs on its own virtual thread instead of a thread
+ * from a fixed pool, so requests blocked on the catalog do not hold on to
+ * scarce platform threads. On JVMs without virtual threads a warning is
+ * logged and the default thread pools are kept.
+ */
+@Configuration
+@ConditionalOnProperty(name = "cart.threads.virtual", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadConfiguration.class);
+
+    @PostConstruct
+    public void checkSupport() {
+        if (!VirtualThreads.isSupported()) {
+            LOG.warn("cart.threads.virtual is set but virtual threads need Java 21, running on {}; using platform threads",
+                    System.getProperty("java.version"));
+        }
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Conditional(VirtualThreadsSupported.class)
+    public ExecutorService requestExecutor() {
+        return VirtualThreads.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Conditional(VirtualThreadsSupported.class)
+    public ExecutorService catalogCallExecutor() {
+        return VirtualThreads.newVirtualThreadPerTaskExecutor();
+    }
+
+    @Bean
+    @Conditional(VirtualThreadsSupported.class)
+    public EmbeddedServletContainerCustomizer virtualThreadContainerCustomizer() {
+        ExecutorService requestExecutor = requestExecutor();
+        return container -> {
+            if (container instanceof TomcatEmbeddedServletContainerFactory) {
+                ((TomcatEmbeddedServletContainerFactory) container).addConnectorCustomizers(connector -> {
+                    ProtocolHandler handler = connector.getProtocolHandler();
+                    if (handler instanceof AbstractProtocol) {
+                        ((AbstractProtocol<?>) handler).setExecutor(requestExecutor);
+                    }
+                });
+            }
+        };
+    }
+
+    static class VirtualThreadsSupported implements Condition {
+
+        @Override
+        public boolean matches(ConditionContext context, AnnotatedTypeMetadata metadata) {
+            return VirtualThreads.isSupported();
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.redhat.coolstore.cart.model;
+
+import java.io.Serializable;
+
+/**
+ * A change of a cart, as recorded in the cart event log. Item changes carry
+ * the item id and the signed change of its quantity; the other events only
+ * carry the cart id.
+ */
+public class CartEvent implements Serializable {
+
+    private static final long serialVersionUID = -2811596083140957427L;
+
+    public enum Type {
+        ITEM_CHANGED, CART_STORED, CHECKED_OUT, DELETED
+    }
+
+    private Type type;
+
+    private String cartId;
+
+    private String itemId;
+
+    private int quantity;
+
+    private long timestamp;
+
+    public CartEvent() {
+    }
+
+    public CartEvent(Type type, String cartId, String itemId, int quantity, long timestamp) {
+        this.type = type;
+        this.cartId = cartId;
+        this.itemId = itemId;
+        this.quantity = quantity;
+        this.timestamp = timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
+    public String getCartId() {
+        return cartId;
+    }
+
+    public void setCartId(String cartId) {
+        this.cartId = cartId;
+    }
+
+    public String getItemId() {
+        return itemId;
+    }
+
+    public void setItemId(String itemId) {
+        this.itemId = itemId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "CartEvent [type=" + type + ", cartId=" + cartId + ", itemId=" + itemId + ", quantity=" + quantity + ", timestamp="
+                + timestamp + "]";
+    }
+}
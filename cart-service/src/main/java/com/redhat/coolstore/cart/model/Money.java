@@ -0,0 +1,20 @@
+package com.redhat.coolstore.cart.model;
+
+/**
+ * Conversions between amounts as exchanged with the catalog and the gateways
+ * (doubles) and the fixed-point minor units (cents) carts are priced in.
+ */
+public final class Money {
+
+    private Money() {
+    }
+
+    public static long toMinorUnits(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    public static double fromMinorUnits(long minorUnits) {
+        return minorUnits / 100.0;
+    }
+
+}
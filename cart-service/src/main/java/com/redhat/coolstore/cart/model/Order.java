@@ -0,0 +1,56 @@
+package com.redhat.coolstore.cart.model;
+
+import java.io.Serializable;
+
+/**
+ * A checked-out cart, as recorded in the checkout journal. Sequence numbers
+ * start at 1 and increase by one with every order.
+ */
+public class Order implements Serializable {
+
+    private static final long serialVersionUID = 6071846405373432874L;
+
+    private long sequence;
+
+    private long checkedOutAt;
+
+    private ShoppingCart cart;
+
+    public Order() {
+    }
+
+    public Order(long sequence, long checkedOutAt, ShoppingCart cart) {
+        this.sequence = sequence;
+        this.checkedOutAt = checkedOutAt;
+        this.cart = cart;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getCheckedOutAt() {
+        return checkedOutAt;
+    }
+
+    public void setCheckedOutAt(long checkedOutAt) {
+        this.checkedOutAt = checkedOutAt;
+    }
+
+    public ShoppingCart getCart() {
+        return cart;
+    }
+
+    public void setCart(ShoppingCart cart) {
+        this.cart = cart;
+    }
+
+    @Override
+    public String toString() {
+        return "Order [sequence=" + sequence + ", checkedOutAt=" + checkedOutAt + ", cart=" + cart + "]";
+    }
+}
@@ -14,6 +14,9 @@ public class Product implements Serializable {
 
     private double price;
 
+    // set on the copies shared between cart lines by the ProductTable
+    private transient boolean frozen;
+
     public Product() {
     }
 
@@ -22,6 +25,7 @@ public class Product implements Serializable {
     }
 
     public void setItemId(String itemId) {
+        checkNotFrozen();
         this.itemId = itemId;
     }
 
@@ -30,6 +34,7 @@ public class Product implements Serializable {
     }
 
     public void setName(String name) {
+        checkNotFrozen();
         this.name = name;
     }
 
@@ -38,6 +43,7 @@ public class Product implements Serializable {
     }
 
     public void setDesc(String desc) {
+        checkNotFrozen();
         this.desc = desc;
     }
 
@@ -46,9 +52,30 @@ public class Product implements Serializable {
     }
 
     public void setPrice(double price) {
+        checkNotFrozen();
         this.price = price;
     }
 
+    boolean isFrozen() {
+        return frozen;
+    }
+
+    Product frozenCopy() {
+        Product copy = new Product();
+        copy.itemId = itemId;
+        copy.name = name;
+        copy.desc = desc;
+        copy.price = price;
+        copy.frozen = true;
+        return copy;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("product " + itemId + " is shared between carts and cannot be changed");
+        }
+    }
+
     @Override
     public String toString() {
         return "Product [itemId=" + itemId + ", name=" + name + ", desc=" + desc + ", price=" + price + "]";
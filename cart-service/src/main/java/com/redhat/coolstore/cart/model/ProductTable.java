@@ -0,0 +1,106 @@
+package com.redhat.coolstore.cart.model;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Table of the products referenced by cart lines, so that lines for the same
+ * product share one instance, and one copy of its name and description,
+ * instead of each holding the copy it was decoded or deserialized with.
+ * <p>
+ * The table holds the latest product seen for each item id. A product that
+ * differs from it, for instance because its price changed in the catalog,
+ * replaces it; lines added earlier keep the product they were added with.
+ * Once the table holds {@code maxEntries} item ids, other item ids replace
+ * existing ones, so the table keeps sharing the products of recent lines.
+ * <p>
+ * Shared products are copies made by the table, which cannot be changed:
+ * their setters throw an {@link IllegalStateException}.
+ */
+public class ProductTable {
+
+    private final ConcurrentMap<String, Product> products = new ConcurrentHashMap<>();
+
+    private final int maxEntries;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // guarded by evictionLock
+    private Iterator<String> clockHand;
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxEntries maximum number of item ids shared, 0 for no limit
+     */
+    public ProductTable(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return the shared product with the same content as {@code product}, or {@code product} itself if it has
+     * no item id
+     */
+    public Product intern(Product product) {
+        if (product == null || product.getItemId() == null || product.isFrozen()) {
+            return product;
+        }
+        Product shared = products.get(product.getItemId());
+        if (shared != null && sameContent(shared, product)) {
+            return shared;
+        }
+        // a concurrent intern of the same content may have won; its copy is shared instead
+        Product copy = product.frozenCopy();
+        shared = products.merge(product.getItemId(), copy, (current, latest) -> sameContent(current, latest) ? current : latest);
+        if (maxEntries > 0 && products.size() > maxEntries) {
+            evict();
+        }
+        return shared;
+    }
+
+    /**
+     * @return whether {@code product} is the one shared for its item id
+     */
+    public boolean isShared(Product product) {
+        return product.getItemId() != null && products.get(product.getItemId()) == product;
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (products.size() > maxEntries) {
+                if (clockHand == null || !clockHand.hasNext()) {
+                    clockHand = products.keySet().iterator();
+                    if (!clockHand.hasNext()) {
+                        return;
+                    }
+                }
+                clockHand.next();
+                clockHand.remove();
+                evictions.increment();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static boolean sameContent(Product a, Product b) {
+        return Double.compare(a.getPrice(), b.getPrice()) == 0 && Objects.equals(a.getName(), b.getName())
+                && Objects.equals(a.getDesc(), b.getDesc());
+    }
+
+}
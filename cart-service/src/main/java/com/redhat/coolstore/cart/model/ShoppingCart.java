@@ -2,22 +2,62 @@ package com.redhat.coolstore.cart.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * A cart is not thread-safe: a cart that may be shared, such as one held by
+ * the cart store, is only changed and only read through its lines under its
+ * cart lock, so adding or removing a line does not copy the item list.
+ * <p>
+ * Items are also indexed by item id, in insertion order, so finding the line
+ * for a product does not scan the list. The index is rebuilt when the list
+ * was modified directly rather than through this class.
+ * <p>
+ * Totals are kept in cents; the {@code double} accessors convert on the fly.
+ * The cart total is the item total, less the item promotion savings, plus the
+ * shipping total, which is already net of shipping promotion savings.
+ * <p>
+ * The number of units in the cart is kept with the totals by the price
+ * calculation, so a summary of the cart does not walk its lines. Carts that
+ * were not priced since they were loaded count their lines when asked.
+ * <p>
+ * The version identifies the content of the cart: it is increased by the
+ * cart service on every change, and is never reused for the same cart id,
+ * even after a restart. It is not part of the JSON representation, but is
+ * sent as the entity tag of the cart.
+ */
 public class ShoppingCart implements Serializable {
 
     private static final long serialVersionUID = -1108043957592113528L;
 
     private String id;
 
-    private double cartItemTotal;
+    private long cartItemTotal;
+
+    private long cartItemPromoSavings;
+
+    private long shippingTotal;
+
+    private long shippingPromoSavings;
+
+    private long cartTotal;
 
-    private double shippingTotal;
+    // sum of the quantities of the lines, -1 when not known
+    private long unitCount = -1;
 
-    private double cartTotal;
+    // version of the promotion rules the cart was last fully priced with
+    private transient int pricingVersion;
+
+    private long version;
 
     private List<ShoppingCartItem> shoppingCartItemList = new ArrayList<ShoppingCartItem>();
 
+    private transient Map<String, ShoppingCartItem> shoppingCartItemIndex;
+
     public ShoppingCart() {
     }
 
@@ -34,57 +74,204 @@ public class ShoppingCart implements Serializable {
     }
 
     public void setShoppingCartItemList(List<ShoppingCartItem> shoppingCartItemList) {
-        this.shoppingCartItemList = shoppingCartItemList;
+        this.shoppingCartItemList = new ArrayList<ShoppingCartItem>(shoppingCartItemList);
+        this.shoppingCartItemIndex = null;
+        this.unitCount = -1;
     }
 
     public void resetShoppingCartItemList() {
         shoppingCartItemList = new ArrayList<ShoppingCartItem>();
+        shoppingCartItemIndex = null;
+        unitCount = -1;
+    }
+
+    /**
+     * @return the line for the product, or {@code null} if the product is not in the cart
+     */
+    public ShoppingCartItem findShoppingCartItem(String itemId) {
+        return itemIndex().get(itemId);
     }
 
     public void addShoppingCartItem(ShoppingCartItem sci) {
         if (sci != null) {
+            Map<String, ShoppingCartItem> index = itemIndex();
             shoppingCartItemList.add(sci);
+            String itemId = itemId(sci);
+            if (itemId != null) {
+                index.putIfAbsent(itemId, sci);
+            }
         }
     }
 
     public boolean removeShoppingCartItem(ShoppingCartItem sci) {
         boolean removed = false;
         if (sci != null) {
+            Map<String, ShoppingCartItem> index = itemIndex();
             removed = shoppingCartItemList.remove(sci);
+            String itemId = itemId(sci);
+            if (removed && itemId != null) {
+                index.remove(itemId, sci);
+            }
         }
         return removed;
     }
 
+    private Map<String, ShoppingCartItem> itemIndex() {
+        Map<String, ShoppingCartItem> index = shoppingCartItemIndex;
+        if (index == null || index.size() != shoppingCartItemList.size()) {
+            index = new LinkedHashMap<String, ShoppingCartItem>();
+            for (ShoppingCartItem sci : shoppingCartItemList) {
+                String itemId = itemId(sci);
+                if (itemId != null) {
+                    index.putIfAbsent(itemId, sci);
+                }
+            }
+            shoppingCartItemIndex = index;
+        }
+        return index;
+    }
+
+    private static String itemId(ShoppingCartItem sci) {
+        return (sci.getProduct() != null) ? sci.getProduct().getItemId() : null;
+    }
+
     public double getCartItemTotal() {
-        return cartItemTotal;
+        return Money.fromMinorUnits(cartItemTotal);
     }
 
     public void setCartItemTotal(double cartItemTotal) {
+        this.cartItemTotal = Money.toMinorUnits(cartItemTotal);
+    }
+
+    @JsonIgnore
+    public long getCartItemTotalCents() {
+        return cartItemTotal;
+    }
+
+    public void setCartItemTotalCents(long cartItemTotal) {
         this.cartItemTotal = cartItemTotal;
     }
 
+    public double getCartItemPromoSavings() {
+        return Money.fromMinorUnits(cartItemPromoSavings);
+    }
+
+    public void setCartItemPromoSavings(double cartItemPromoSavings) {
+        this.cartItemPromoSavings = Money.toMinorUnits(cartItemPromoSavings);
+    }
+
+    @JsonIgnore
+    public long getCartItemPromoSavingsCents() {
+        return cartItemPromoSavings;
+    }
+
+    public void setCartItemPromoSavingsCents(long cartItemPromoSavings) {
+        this.cartItemPromoSavings = cartItemPromoSavings;
+    }
+
     public double getShippingTotal() {
-        return shippingTotal;
+        return Money.fromMinorUnits(shippingTotal);
     }
 
     public void setShippingTotal(double shippingTotal) {
+        this.shippingTotal = Money.toMinorUnits(shippingTotal);
+    }
+
+    @JsonIgnore
+    public long getShippingTotalCents() {
+        return shippingTotal;
+    }
+
+    public void setShippingTotalCents(long shippingTotal) {
         this.shippingTotal = shippingTotal;
     }
 
+    public double getShippingPromoSavings() {
+        return Money.fromMinorUnits(shippingPromoSavings);
+    }
+
+    public void setShippingPromoSavings(double shippingPromoSavings) {
+        this.shippingPromoSavings = Money.toMinorUnits(shippingPromoSavings);
+    }
+
+    @JsonIgnore
+    public long getShippingPromoSavingsCents() {
+        return shippingPromoSavings;
+    }
+
+    public void setShippingPromoSavingsCents(long shippingPromoSavings) {
+        this.shippingPromoSavings = shippingPromoSavings;
+    }
+
     public double getCartTotal() {
-        return cartTotal;
+        return Money.fromMinorUnits(cartTotal);
     }
 
     public void setCartTotal(double cartTotal) {
+        this.cartTotal = Money.toMinorUnits(cartTotal);
+    }
+
+    @JsonIgnore
+    public long getCartTotalCents() {
+        return cartTotal;
+    }
+
+    public void setCartTotalCents(long cartTotal) {
         this.cartTotal = cartTotal;
     }
 
+    /**
+     * @return the sum of the quantities of the lines
+     */
+    @JsonIgnore
+    public long getUnitCount() {
+        long count = unitCount;
+        return (count >= 0) ? count : countUnits();
+    }
+
+    public void setUnitCount(long unitCount) {
+        this.unitCount = unitCount;
+    }
+
+    /**
+     * Adjusts the unit count after the quantity of a line changed by
+     * {@code quantityDelta}; the lines already reflect the change.
+     */
+    public void unitsChanged(int quantityDelta) {
+        unitCount = (unitCount >= 0) ? unitCount + quantityDelta : countUnits();
+    }
+
+    private long countUnits() {
+        long count = 0;
+        for (ShoppingCartItem sci : shoppingCartItemList) {
+            count += sci.getQuantity();
+        }
+        return count;
+    }
+
+    @JsonIgnore
+    public int getPricingVersion() {
+        return pricingVersion;
+    }
+
+    public void setPricingVersion(int pricingVersion) {
+        this.pricingVersion = pricingVersion;
+    }
+
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
-        return "ShoppingCart [" + "id=" + id + "cartItemTotal=" + cartItemTotal + ", shippingTotal="
-                + shippingTotal + " cartTotal=" + cartTotal + ", shoppingCartItemList="
+        return "ShoppingCart [" + "id=" + id + "cartItemTotal=" + getCartItemTotal() + ", cartItemPromoSavings=" + getCartItemPromoSavings()
+                + ", shippingTotal=" + getShippingTotal() + ", shippingPromoSavings=" + getShippingPromoSavings() + " cartTotal=" + getCartTotal() + ", shoppingCartItemList="
                 + shoppingCartItemList + "]";
     }
 
 }
-
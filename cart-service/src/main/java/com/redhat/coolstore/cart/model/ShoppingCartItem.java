@@ -2,24 +2,39 @@ package com.redhat.coolstore.cart.model;
 
 import java.io.Serializable;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class ShoppingCartItem implements Serializable {
 
     private static final long serialVersionUID = 6964558044240061049L;
 
-    private double price;
+    // in cents
+    private long price;
 
     private int quantity;
 
+    // savings on the whole line, in cents
+    private long promoSavings;
+
     private Product product;
 
     public ShoppingCartItem() {
     }
 
     public double getPrice() {
-        return price;
+        return Money.fromMinorUnits(price);
     }
 
     public void setPrice(double price) {
+        this.price = Money.toMinorUnits(price);
+    }
+
+    @JsonIgnore
+    public long getPriceCents() {
+        return price;
+    }
+
+    public void setPriceCents(long price) {
         this.price = price;
     }
 
@@ -31,6 +46,23 @@ public class ShoppingCartItem implements Serializable {
         this.quantity = quantity;
     }
 
+    public double getPromoSavings() {
+        return Money.fromMinorUnits(promoSavings);
+    }
+
+    public void setPromoSavings(double promoSavings) {
+        this.promoSavings = Money.toMinorUnits(promoSavings);
+    }
+
+    @JsonIgnore
+    public long getPromoSavingsCents() {
+        return promoSavings;
+    }
+
+    public void setPromoSavingsCents(long promoSavings) {
+        this.promoSavings = promoSavings;
+    }
+
     public Product getProduct() {
         return product;
     }
@@ -41,6 +73,6 @@ public class ShoppingCartItem implements Serializable {
 
     @Override
     public String toString() {
-        return "ShoppingCartItem [price=" + price + ", quantity=" + quantity + ", product=" + product + "]";
+        return "ShoppingCartItem [price=" + getPrice() + ", quantity=" + quantity + ", promoSavings=" + getPromoSavings() + ", product=" + product + "]";
     }
 }
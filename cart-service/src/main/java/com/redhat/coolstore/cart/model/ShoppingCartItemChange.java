@@ -0,0 +1,45 @@
+package com.redhat.coolstore.cart.model;
+
+import java.io.Serializable;
+
+/**
+ * Change of the quantity of one product in a cart: a positive quantity adds
+ * items, a negative quantity removes them.
+ */
+public class ShoppingCartItemChange implements Serializable {
+
+    private static final long serialVersionUID = 3546851287093417163L;
+
+    private String itemId;
+
+    private int quantity;
+
+    public ShoppingCartItemChange() {
+    }
+
+    public ShoppingCartItemChange(String itemId, int quantity) {
+        this.itemId = itemId;
+        this.quantity = quantity;
+    }
+
+    public String getItemId() {
+        return itemId;
+    }
+
+    public void setItemId(String itemId) {
+        this.itemId = itemId;
+    }
+
+    public int getQuantity() {
+        return quantity;
+    }
+
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+
+    @Override
+    public String toString() {
+        return "ShoppingCartItemChange [itemId=" + itemId + ", quantity=" + quantity + "]";
+    }
+}
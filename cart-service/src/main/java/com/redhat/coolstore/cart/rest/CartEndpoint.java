@@ -1,14 +1,28 @@
 package com.redhat.coolstore.cart.rest;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,8 +30,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItemChange;
 import com.redhat.coolstore.cart.service.ShoppingCartService;
+import com.redhat.coolstore.cart.service.ShoppingCartServiceImpl;
+import com.redhat.coolstore.cart.service.TrendingItems;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 
+/**
+ * Every operation is timed, from the request until the response is resumed,
+ * into a latency histogram published as {@code cart_requests_seconds}.
+ */
 @Path("/cart")
 @Component
 public class CartEndpoint {
@@ -27,40 +51,163 @@ public class CartEndpoint {
     @Autowired
     private ShoppingCartService shoppingCartService;
 
+    // for the cart locks
+    @Autowired
+    private ShoppingCartServiceImpl shoppingCartServiceImpl;
+
+    @Autowired
+    private CartJsonCache cartJsonCache;
+
+    @Autowired
+    private TrendingItems trendingItems;
+
+    private final Timer getTimer = requestTimer("get");
+
+    private final Timer summaryTimer = requestTimer("summary");
+
+    private final Timer addTimer = requestTimer("add");
+
+    private final Timer updateTimer = requestTimer("update");
+
+    private final Timer removeTimer = requestTimer("remove");
+
+    private final Timer checkoutTimer = requestTimer("checkout");
+
+    /**
+     * Answers {@code 304 Not Modified}, without serializing the cart, when
+     * the request carries the entity tag of the current version of the cart.
+     * Otherwise the JSON written for the current version is reused, if any.
+     */
     @GET
     @Path("/{cartId}")
     @Produces(MediaType.APPLICATION_JSON)
-    public ShoppingCart getCart(@PathParam("cartId") String cartId) {
-        return shoppingCartService.getShoppingCart(cartId);
+    public Response getCart(@PathParam("cartId") String cartId, @Context Request request) {
+        long start = System.nanoTime();
+        try {
+            ShoppingCart sc = shoppingCartService.getShoppingCart(cartId);
+            EntityTag tag = CartResponses.entityTag(sc);
+            ResponseBuilder notModified = request.evaluatePreconditions(tag);
+            if (notModified != null) {
+                return notModified.tag(tag).build();
+            }
+            return CartResponses.ok(sc, tag, cartJsonCache);
+        } finally {
+            getTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
+    /**
+     * The number of lines, the number of units and the total of the cart,
+     * for clients that show a badge rather than the cart. Tagged with the
+     * version of the cart and answered with {@code 304 Not Modified} like it.
+     */
+    @GET
+    @Path("/{cartId}/summary")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCartSummary(@PathParam("cartId") String cartId, @Context Request request) {
+        long start = System.nanoTime();
+        try {
+            ShoppingCart sc = shoppingCartService.getShoppingCart(cartId);
+            CartResponses.Summary summary = CartResponses.summary(sc, shoppingCartServiceImpl.lockFor(cartId));
+            ResponseBuilder notModified = request.evaluatePreconditions(summary.getTag());
+            if (notModified != null) {
+                return notModified.tag(summary.getTag()).build();
+            }
+            return summary.toResponse();
+        } finally {
+            summaryTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Completes asynchronously: the request thread is released while the
+     * product is looked up in the catalog.
+     */
     @POST
     @Path("/{cartId}/{itemId}/{quantity}")
     @Produces(MediaType.APPLICATION_JSON)
-    public ShoppingCart add(@PathParam("cartId") String cartId, @PathParam("itemId") String itemId, @PathParam("quantity") int quantity) throws Exception {
-        try {
-            return shoppingCartService.addToCart(cartId, itemId, quantity);
-        } catch (Exception e) {
-        		e.printStackTrace();
-            throw new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE);
+    public void add(@PathParam("cartId") String cartId, @PathParam("itemId") String itemId, @PathParam("quantity") int quantity,
+            @Suspended AsyncResponse asyncResponse) {
+        resume(asyncResponse, addTimer, () -> shoppingCartService.addToCartAsync(cartId, itemId, quantity));
+    }
+
+    @POST
+    @Path("/{cartId}/items")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void update(@PathParam("cartId") String cartId, List<ShoppingCartItemChange> changes, @Suspended AsyncResponse asyncResponse) {
+        if (changes == null) {
+            asyncResponse.resume(new WebApplicationException(Response.Status.BAD_REQUEST));
+            return;
         }
+        resume(asyncResponse, updateTimer, () -> shoppingCartService.updateCartAsync(cartId, changes));
     }
 
     @DELETE
     @Path("/{cartId}/{itemId}/{quantity}")
     @Produces(MediaType.APPLICATION_JSON)
-    public ShoppingCart delete(@PathParam("cartId") String cartId, @PathParam("itemId") String itemId, @PathParam("quantity") int quantity) throws Exception {
-        return shoppingCartService.removeFromCart(cartId, itemId, quantity);
+    public Response delete(@PathParam("cartId") String cartId, @PathParam("itemId") String itemId, @PathParam("quantity") int quantity) throws Exception {
+        long start = System.nanoTime();
+        try {
+            return CartResponses.ok(shoppingCartService.removeFromCart(cartId, itemId, quantity), cartJsonCache);
+        } finally {
+            removeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
+    /**
+     * Completes asynchronously, once the order is durably recorded.
+     */
     @POST
     @Path("/checkout/{cartId}")
     @Produces(MediaType.APPLICATION_JSON)
-    public ShoppingCart checkout(@PathParam("cartId") String cartId) {
+    public void checkout(@PathParam("cartId") String cartId, @Suspended AsyncResponse asyncResponse) {
         // TODO: register purchase of shoppingCart items by specific user
-        ShoppingCart cart = shoppingCartService.checkoutShoppingCart(cartId);
-        LOG.info("ShoppingCart " + cart + " checked out");
-        return cart;
+        resume(asyncResponse, checkoutTimer, () -> shoppingCartService.checkoutShoppingCartAsync(cartId).thenApply(cart -> {
+            LOG.info("ShoppingCart " + cart + " checked out");
+            return cart;
+        }));
+    }
+
+    /**
+     * The items most added to the carts of this instance over the last
+     * window, with their approximate number of units, most added first.
+     */
+    @GET
+    @Path("/stats/top")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<TrendingItems.ItemCount> getTopItems(@QueryParam("limit") Integer limit) {
+        return trendingItems.getTop((limit == null) ? trendingItems.getTopSize() : limit);
+    }
+
+    private void resume(AsyncResponse asyncResponse, Timer timer, Supplier<CompletableFuture<ShoppingCart>> call) {
+        long start = System.nanoTime();
+        CompletableFuture<ShoppingCart> cart;
+        try {
+            cart = call.get();
+        } catch (Exception e) {
+            cart = new CompletableFuture<>();
+            cart.completeExceptionally(e);
+        }
+        cart.whenComplete((sc, e) -> {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (e != null) {
+                LOG.error("Cart update failed", e);
+                asyncResponse.resume(new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE));
+            } else {
+                asyncResponse.resume(CartResponses.ok(sc, cartJsonCache));
+            }
+        });
+    }
+
+    private static Timer requestTimer(String operation) {
+        return Timer.builder("cart.requests")
+                .description("Latency of the cart operations")
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(100_000))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(Metrics.globalRegistry);
     }
 
 }
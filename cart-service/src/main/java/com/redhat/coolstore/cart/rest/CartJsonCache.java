@@ -0,0 +1,210 @@
+package com.redhat.coolstore.cart.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.annotation.Annotation;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+
+/**
+ * Writes carts as JSON once per version. The bytes are kept, per cart id, for
+ * the version they were written at and returned as they are until the cart
+ * changes, so repeated reads of an unchanged cart cost a copy to the response
+ * instead of a serialization.
+ * <p>
+ * Carts are written under their cart lock, even when caching is off, so the
+ * JSON never mixes two versions of a cart. The cache holds at most {@code maxBytes} of JSON; when
+ * it is full, entries are evicted, least recently used first, using the same
+ * sampling as the product cache. A {@code maxBytes} of 0 turns caching off.
+ * <p>
+ * Carts are written by the same provider as other responses, so cached and
+ * freshly written carts are identical. Carts that were never versioned, such
+ * as the empty carts returned for unknown cart ids, are written every time.
+ */
+public class CartJsonCache {
+
+    private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    // estimated heap size of an entry besides the JSON: map node, entry, array header and cart id
+    private static final int ENTRY_WEIGHT = 96;
+
+    private final JacksonJsonProvider jsonProvider;
+
+    private final Function<String, Lock> cartLocks;
+
+    private final long maxBytes;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // guarded by evictionLock
+    private Iterator<Map.Entry<String, Entry>> clockHand;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param cartLocks the lock held while a cart is changed, for a cart id
+     * @param maxBytes the most JSON bytes kept, 0 to keep none
+     */
+    public CartJsonCache(JacksonJsonProvider jsonProvider, Function<String, Lock> cartLocks, long maxBytes) {
+        this.jsonProvider = jsonProvider;
+        this.cartLocks = cartLocks;
+        this.maxBytes = maxBytes;
+    }
+
+    public byte[] toJson(ShoppingCart sc) {
+        long version = sc.getVersion();
+        if (version == 0) {
+            // not stored, so no other thread can change it
+            misses.increment();
+            return write(sc);
+        }
+        Entry entry = (maxBytes > 0) ? entries.get(sc.getId()) : null;
+        if (entry != null && entry.version == version) {
+            entry.lastAccess = System.currentTimeMillis();
+            hits.increment();
+            return entry.json;
+        }
+        misses.increment();
+        byte[] json;
+        Lock lock = cartLocks.apply(sc.getId());
+        lock.lock();
+        try {
+            version = sc.getVersion();
+            json = write(sc);
+        } finally {
+            lock.unlock();
+        }
+        if (maxBytes > 0) {
+            put(sc.getId(), new Entry(version, json));
+        }
+        return json;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the estimated heap size of the cached JSON
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    private void put(String cartId, Entry entry) {
+        // an entry for a later version, written by a concurrent read, is kept
+        entries.compute(cartId, (id, previous) -> {
+            if (previous != null && previous.version > entry.version) {
+                return previous;
+            }
+            if (previous != null) {
+                bytes.addAndGet(-weight(previous));
+            }
+            bytes.addAndGet(weight(entry));
+            return entry;
+        });
+        if (bytes.get() > maxBytes) {
+            evict();
+        }
+    }
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (bytes.get() > maxBytes) {
+                Map.Entry<String, Entry> victim = sampleLeastRecentlyUsed();
+                if (victim == null) {
+                    return;
+                }
+                if (entries.remove(victim.getKey(), victim.getValue())) {
+                    bytes.addAndGet(-weight(victim.getValue()));
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private Map.Entry<String, Entry> sampleLeastRecentlyUsed() {
+        int samples = Math.min(EVICTION_SAMPLE_SIZE, entries.size());
+        Map.Entry<String, Entry> oldest = null;
+        for (int i = 0; i < samples; i++) {
+            if (clockHand == null || !clockHand.hasNext()) {
+                clockHand = entries.entrySet().iterator();
+                if (!clockHand.hasNext()) {
+                    break;
+                }
+            }
+            Map.Entry<String, Entry> candidate = clockHand.next();
+            if (oldest == null || candidate.getValue().lastAccess < oldest.getValue().lastAccess) {
+                oldest = candidate;
+            }
+        }
+        return oldest;
+    }
+
+    private static long weight(Entry entry) {
+        return ENTRY_WEIGHT + entry.json.length;
+    }
+
+    private byte[] write(ShoppingCart sc) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256 + 256 * sc.getShoppingCartItemList().size());
+        try {
+            jsonProvider.writeTo(sc, ShoppingCart.class, ShoppingCart.class, NO_ANNOTATIONS, MediaType.APPLICATION_JSON_TYPE,
+                    new MultivaluedHashMap<>(), out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static final class Entry {
+
+        private final long version;
+
+        private final byte[] json;
+
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        Entry(long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+
+}
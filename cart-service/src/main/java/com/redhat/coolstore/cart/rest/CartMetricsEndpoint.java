@@ -0,0 +1,43 @@
+package com.redhat.coolstore.cart.rest;
+
+import java.util.Map;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.MetricsEndpoint;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import io.prometheus.client.exporter.common.TextFormat;
+
+@Component
+@Path("/")
+public class CartMetricsEndpoint {
+
+    @Autowired
+    private MetricsEndpoint metrics;
+
+    @Autowired
+    private PrometheusMeterRegistry prometheusMeterRegistry;
+
+    @GET
+    @Path("/metrics")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Map<String, Object> getMetrics() {
+        return metrics.invoke();
+    }
+
+    /**
+     * Latency histograms and cart store gauges, in the Prometheus text format.
+     */
+    @GET
+    @Path("/prometheus")
+    @Produces(TextFormat.CONTENT_TYPE_004)
+    public String getPrometheusMetrics() {
+        return prometheusMeterRegistry.scrape();
+    }
+}
@@ -0,0 +1,72 @@
+package com.redhat.coolstore.cart.rest;
+
+import java.util.concurrent.locks.Lock;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import com.redhat.coolstore.cart.model.ShoppingCart;
+
+/**
+ * Responses carrying a cart are tagged with the version of the cart, so
+ * clients can poll it with {@code If-None-Match}.
+ */
+final class CartResponses {
+
+    private CartResponses() {
+    }
+
+    static EntityTag entityTag(ShoppingCart sc) {
+        return new EntityTag(Long.toString(sc.getVersion()));
+    }
+
+    static Response ok(ShoppingCart sc, CartJsonCache cartJsonCache) {
+        return ok(sc, entityTag(sc), cartJsonCache);
+    }
+
+    static Response ok(ShoppingCart sc, EntityTag tag, CartJsonCache cartJsonCache) {
+        return Response.ok(cartJsonCache.toJson(sc), MediaType.APPLICATION_JSON_TYPE).tag(tag).build();
+    }
+
+    /**
+     * The summary is written by hand: it only holds numbers, which the cart
+     * keeps up to date, so it needs neither a model object nor the JSON
+     * provider. The numbers and the version are read together under the cart
+     * lock, so the entity tag always names the version they were read from.
+     */
+    static Summary summary(ShoppingCart sc, Lock cartLock) {
+        cartLock.lock();
+        try {
+            String json = new StringBuilder(64)
+                    .append("{\"lineCount\":").append(sc.getShoppingCartItemList().size())
+                    .append(",\"unitCount\":").append(sc.getUnitCount())
+                    .append(",\"cartTotal\":").append(sc.getCartTotal())
+                    .append('}').toString();
+            return new Summary(entityTag(sc), json);
+        } finally {
+            cartLock.unlock();
+        }
+    }
+
+    static final class Summary {
+
+        private final EntityTag tag;
+
+        private final String json;
+
+        private Summary(EntityTag tag, String json) {
+            this.tag = tag;
+            this.json = json;
+        }
+
+        EntityTag getTag() {
+            return tag;
+        }
+
+        Response toResponse() {
+            return Response.ok(json, MediaType.APPLICATION_JSON_TYPE).tag(tag).build();
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.redhat.coolstore.cart.rest;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItemChange;
+import com.redhat.coolstore.cart.service.ClusterMembership;
+import com.redhat.coolstore.cart.service.ShoppingCartServiceImpl;
+
+/**
+ * Calls forwarded by the other members of the cart service cluster. They are
+ * handled by the local cart service, whichever member owns the cart, so a
+ * call is never forwarded again. Carts are tagged with their version,
+ * which {@link com.redhat.coolstore.cart.service.HttpCartTransport} reads
+ * back from the entity tag.
+ */
+@Path("/cluster")
+@Component
+@ConditionalOnProperty(name = "cart.cluster.enabled", havingValue = "true")
+public class ClusterEndpoint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterEndpoint.class);
+
+    @Autowired
+    private ShoppingCartServiceImpl shoppingCartService;
+
+    @Autowired
+    private ClusterMembership clusterMembership;
+
+    @Autowired
+    private CartJsonCache cartJsonCache;
+
+    @GET
+    @Path("/members")
+    @Produces(MediaType.APPLICATION_JSON)
+    public List<String> getMembers() {
+        return clusterMembership.getMembers();
+    }
+
+    @GET
+    @Path("/cart/{cartId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response getCart(@PathParam("cartId") String cartId) {
+        return CartResponses.ok(shoppingCartService.getShoppingCart(cartId), cartJsonCache);
+    }
+
+    @POST
+    @Path("/cart/{cartId}/{itemId}/{quantity}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public void add(@PathParam("cartId") String cartId, @PathParam("itemId") String itemId, @PathParam("quantity") int quantity,
+            @Suspended AsyncResponse asyncResponse) {
+        resume(asyncResponse, () -> shoppingCartService.addToCartAsync(cartId, itemId, quantity));
+    }
+
+    @POST
+    @Path("/cart/{cartId}/items")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void update(@PathParam("cartId") String cartId, List<ShoppingCartItemChange> changes, @Suspended AsyncResponse asyncResponse) {
+        if (changes == null) {
+            asyncResponse.resume(new WebApplicationException(Response.Status.BAD_REQUEST));
+            return;
+        }
+        resume(asyncResponse, () -> shoppingCartService.updateCartAsync(cartId, changes));
+    }
+
+    @DELETE
+    @Path("/cart/{cartId}/{itemId}/{quantity}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response delete(@PathParam("cartId") String cartId, @PathParam("itemId") String itemId, @PathParam("quantity") int quantity) {
+        return CartResponses.ok(shoppingCartService.removeFromCart(cartId, itemId, quantity), cartJsonCache);
+    }
+
+    @POST
+    @Path("/cart/checkout/{cartId}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public void checkout(@PathParam("cartId") String cartId, @Suspended AsyncResponse asyncResponse) {
+        resume(asyncResponse, () -> shoppingCartService.checkoutShoppingCartAsync(cartId));
+    }
+
+    @POST
+    @Path("/cart/price")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response price(ShoppingCart sc) {
+        if (sc == null || sc.getId() == null) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+        return CartResponses.ok(shoppingCartService.calculateCartPrice(sc), cartJsonCache);
+    }
+
+    /**
+     * Takes over a cart from another member. A cart already stored here is
+     * kept, since it can only have been changed after the one handed over.
+     */
+    @PUT
+    @Path("/cart/{cartId}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public Response transfer(@PathParam("cartId") String cartId, ShoppingCart sc) {
+        if (sc == null || !cartId.equals(sc.getId())) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+        shoppingCartService.restoreShoppingCart(sc);
+        return Response.noContent().build();
+    }
+
+    private void resume(AsyncResponse asyncResponse, Supplier<CompletableFuture<ShoppingCart>> call) {
+        CompletableFuture<ShoppingCart> cart;
+        try {
+            cart = call.get();
+        } catch (Exception e) {
+            cart = new CompletableFuture<>();
+            cart.completeExceptionally(e);
+        }
+        cart.whenComplete((sc, e) -> {
+            if (e != null) {
+                LOG.error("Forwarded cart update failed", e);
+                asyncResponse.resume(new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE));
+            } else {
+                asyncResponse.resume(CartResponses.ok(sc, cartJsonCache));
+            }
+        });
+    }
+
+}
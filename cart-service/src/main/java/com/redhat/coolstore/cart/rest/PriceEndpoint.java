@@ -0,0 +1,60 @@
+package com.redhat.coolstore.cart.rest;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.service.CartRepricer;
+
+/**
+ * Price changes pushed by the catalog. The carts of this instance holding
+ * the products are repriced before the call completes; in cluster mode the
+ * changes are to be posted to every member.
+ */
+@Path("/prices")
+@Component
+public class PriceEndpoint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PriceEndpoint.class);
+
+    @Autowired
+    private CartRepricer cartRepricer;
+
+    /**
+     * Takes the changed products as the catalog lists them; only their item
+     * id and price are read. Answers with the number of carts repriced.
+     */
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public void pricesChanged(List<Product> products, @Suspended AsyncResponse asyncResponse) {
+        if (products == null) {
+            asyncResponse.resume(new WebApplicationException(Response.Status.BAD_REQUEST));
+            return;
+        }
+        cartRepricer.pricesChanged(products).whenComplete((repriced, e) -> {
+            if (e != null) {
+                LOG.error("Repricing failed", e);
+                asyncResponse.resume(new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE));
+            } else {
+                asyncResponse.resume(Collections.singletonMap("repricedCarts", repriced));
+            }
+        });
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+/**
+ * Storage for shopping carts. Implementations must be safe for concurrent use;
+ * {@link ShoppingCartServiceImpl} serializes the mutations of a single cart, so
+ * a repository never sees two concurrent writes for the same cart id.
+ */
+public interface CartRepository {
+
+    /**
+     * @return the stored cart, or {@code null} if there is no cart with this id.
+     */
+    ShoppingCart findById(String cartId);
+
+    /**
+     * Stores the cart, replacing any previous version with the same id.
+     */
+    void save(ShoppingCart sc);
+
+    /**
+     * Stores the cart after the quantity of one of its lines changed by
+     * {@code quantityDelta}; the line is no longer in the cart if it was
+     * emptied. Repositories that record changes rather than whole carts
+     * override this.
+     */
+    default void saveChange(ShoppingCart sc, ShoppingCartItem sci, int quantityDelta) {
+        save(sc);
+    }
+
+    void delete(String cartId);
+
+    /**
+     * Deletes a cart that was checked out. Repositories that keep a history
+     * of the carts override this to tell checkouts from other deletions.
+     */
+    default void checkedOut(String cartId) {
+        delete(cartId);
+    }
+
+    CartStoreStatistics getStatistics();
+
+    /**
+     * Calls {@code action} with every stored cart. Carts saved or deleted
+     * meanwhile may or may not be seen.
+     */
+    void forEach(Consumer<ShoppingCart> action);
+
+    /**
+     * @return the ids of the stored carts with a line for the item.
+     * Repositories that index the lines of their carts override this; the
+     * default scans every cart.
+     */
+    default Set<String> findCartIdsByItemId(String itemId) {
+        Set<String> cartIds = new HashSet<>();
+        forEach(sc -> {
+            if (sc.findShoppingCartItem(itemId) != null) {
+                cartIds.add(sc.getId());
+            }
+        });
+        return cartIds;
+    }
+
+}
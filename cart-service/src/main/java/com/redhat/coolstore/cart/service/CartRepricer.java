@@ -0,0 +1,127 @@
+package com.redhat.coolstore.cart.service;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.coolstore.cart.model.Product;
+
+/**
+ * Moves the carts holding products whose catalog price changed to the new
+ * prices. The affected carts are looked up in the item index of the
+ * {@link CartRepository}, never by scanning the store, and repriced in
+ * batches by a fixed number of threads, so a price change does not compete
+ * with requests for more than a few threads. Each cart is repriced under its
+ * lock, like any other change.
+ */
+public class CartRepricer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CartRepricer.class);
+
+    private final ShoppingCartServiceImpl shoppingCartService;
+
+    private final CartRepository cartRepository;
+
+    private final int batchSize;
+
+    private final ExecutorService repricers;
+
+    private final LongAdder priceChanges = new LongAdder();
+
+    private final LongAdder repricedCarts = new LongAdder();
+
+    /**
+     * @param threads number of batches repriced concurrently
+     * @param batchSize number of carts repriced by a thread in one go
+     */
+    public CartRepricer(ShoppingCartServiceImpl shoppingCartService, CartRepository cartRepository, int threads, int batchSize) {
+        this.shoppingCartService = shoppingCartService;
+        this.cartRepository = cartRepository;
+        this.batchSize = batchSize;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.repricers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "cart-repricer-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Reprices the carts holding any of the products, at the price of the
+     * product. Products are only read for their item id and price.
+     *
+     * @return a future of the number of carts repriced
+     */
+    public CompletableFuture<Integer> pricesChanged(Collection<Product> products) {
+        Map<String, Product> changed = new HashMap<>();
+        for (Product product : products) {
+            if (product != null && product.getItemId() != null) {
+                changed.put(product.getItemId(), product);
+            }
+        }
+        priceChanges.add(changed.size());
+        Set<String> cartIds = new LinkedHashSet<>();
+        for (String itemId : changed.keySet()) {
+            cartIds.addAll(cartRepository.findCartIdsByItemId(itemId));
+        }
+        List<CompletableFuture<Integer>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>(batchSize);
+        for (String cartId : cartIds) {
+            batch.add(cartId);
+            if (batch.size() == batchSize) {
+                batches.add(reprice(batch, changed));
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(reprice(batch, changed));
+        }
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> batches.stream().mapToInt(CompletableFuture::join).sum());
+    }
+
+    public long getPriceChanges() {
+        return priceChanges.sum();
+    }
+
+    public long getRepricedCarts() {
+        return repricedCarts.sum();
+    }
+
+    @Override
+    public void close() {
+        repricers.shutdownNow();
+    }
+
+    private CompletableFuture<Integer> reprice(List<String> cartIds, Map<String, Product> products) {
+        return CompletableFuture.supplyAsync(() -> {
+            int repriced = 0;
+            for (String cartId : cartIds) {
+                try {
+                    if (shoppingCartService.repriceShoppingCart(cartId, products)) {
+                        repriced++;
+                    }
+                } catch (RuntimeException e) {
+                    // the cart keeps its prices until the next change of its products
+                    LOG.warn("Unable to reprice cart " + cartId, e);
+                }
+            }
+            repricedCarts.add(repriced);
+            return repriced;
+        }, repricers);
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Cart store metrics, for the actuator and as Prometheus gauges. Gauges are
+ * only computed when scraped, from running totals the cart store keeps as
+ * carts are stored and removed, so a scrape never walks the resident carts.
+ */
+@Component
+public class CartStoreMetrics implements PublicMetrics, MeterBinder {
+
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired(required = false)
+    private CheckoutJournal checkoutJournal;
+
+    @Autowired(required = false)
+    private CartRepricer cartRepricer;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CartStoreStatistics statistics = cartRepository.getStatistics();
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Long>("cart.store.resident", statistics.getResidentCarts()));
+        metrics.add(new Metric<Long>("cart.store.resident.bytes", statistics.getResidentBytes()));
+        metrics.add(new Metric<Long>("cart.store.evictions.idle", statistics.getIdleEvictions()));
+        metrics.add(new Metric<Long>("cart.store.evictions.size", statistics.getSizeEvictions()));
+        if (cartRepricer != null) {
+            metrics.add(new Metric<Long>("cart.repricing.price-changes", cartRepricer.getPriceChanges()));
+            metrics.add(new Metric<Long>("cart.repricing.carts", cartRepricer.getRepricedCarts()));
+        }
+        if (checkoutJournal != null) {
+            metrics.add(new Metric<Long>("cart.checkout.journal.orders", checkoutJournal.getOrders()));
+            metrics.add(new Metric<Long>("cart.checkout.journal.batches", checkoutJournal.getBatches()));
+            metrics.add(new Metric<Long>("cart.checkout.journal.sync.time.ms", TimeUnit.NANOSECONDS.toMillis(checkoutJournal.getSyncNanos())));
+        }
+        return metrics;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("cart.store.resident", this, m -> m.cartRepository.getStatistics().getResidentCarts())
+                .description("Number of carts held in memory")
+                .register(registry);
+        Gauge.builder("cart.store.items.average", this, CartStoreMetrics::averageItems)
+                .description("Average number of items in the resident carts")
+                .register(registry);
+    }
+
+    private double averageItems() {
+        CartStoreStatistics statistics = cartRepository.getStatistics();
+        long carts = statistics.getResidentCarts();
+        return (carts <= 0) ? 0 : (double) statistics.getResidentUnits() / carts;
+    }
+
+}
@@ -0,0 +1,72 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters describing the resident carts of a {@link CartRepository}.
+ */
+public class CartStoreStatistics {
+
+    private final AtomicLong residentCarts = new AtomicLong();
+
+    private final AtomicLong residentBytes = new AtomicLong();
+
+    private final AtomicLong residentUnits = new AtomicLong();
+
+    private final LongAdder idleEvictions = new LongAdder();
+
+    private final LongAdder sizeEvictions = new LongAdder();
+
+    public long getResidentCarts() {
+        return residentCarts.get();
+    }
+
+    /**
+     * @return estimated heap size of the resident carts
+     */
+    public long getResidentBytes() {
+        return residentBytes.get();
+    }
+
+    /**
+     * @return the sum of the quantities of the lines of the resident carts, as last stored
+     */
+    public long getResidentUnits() {
+        return residentUnits.get();
+    }
+
+    public long getIdleEvictions() {
+        return idleEvictions.sum();
+    }
+
+    public long getSizeEvictions() {
+        return sizeEvictions.sum();
+    }
+
+    void addResident(long bytes, long units) {
+        residentCarts.incrementAndGet();
+        residentBytes.addAndGet(bytes);
+        residentUnits.addAndGet(units);
+    }
+
+    void removeResident(long bytes, long units) {
+        residentCarts.decrementAndGet();
+        residentBytes.addAndGet(-bytes);
+        residentUnits.addAndGet(-units);
+    }
+
+    void resize(long bytes, long units) {
+        residentBytes.addAndGet(bytes);
+        residentUnits.addAndGet(units);
+    }
+
+    void idleEvicted() {
+        idleEvictions.increment();
+    }
+
+    void sizeEvicted() {
+        sizeEvictions.increment();
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItemChange;
+
+/**
+ * Calls to the cart service of another cluster member, identified by the
+ * name it has in the {@link ClusterMembership}. The member handles every call
+ * itself, even if it does not own the cart, so a call is never forwarded
+ * twice while members disagree about who owns what.
+ */
+public interface CartTransport {
+
+    CompletableFuture<ShoppingCart> getShoppingCart(String member, String cartId);
+
+    CompletableFuture<ShoppingCart> addToCart(String member, String cartId, String itemId, int quantity);
+
+    CompletableFuture<ShoppingCart> removeFromCart(String member, String cartId, String itemId, int quantity);
+
+    CompletableFuture<ShoppingCart> updateCart(String member, String cartId, List<ShoppingCartItemChange> changes);
+
+    CompletableFuture<ShoppingCart> checkoutShoppingCart(String member, String cartId);
+
+    CompletableFuture<ShoppingCart> calculateCartPrice(String member, ShoppingCart sc);
+
+    /**
+     * Hands a cart over to its new owner, which keeps its own cart if it
+     * already has one with the same id.
+     */
+    CompletableFuture<Void> transfer(String member, ShoppingCart sc);
+
+}
@@ -0,0 +1,231 @@
+package com.redhat.coolstore.cart.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+/**
+ * Pool of keep-alive HTTP connections to the catalog service.
+ * <p>
+ * Connections are kept open for at most the keep-alive time, or less if the
+ * server says so, and are closed by a background thread once they have been
+ * idle for too long. The time callers spend waiting to lease a connection is
+ * recorded, so pool exhaustion shows up in the metrics before it shows up as
+ * lease timeouts.
+ * <p>
+ * Non-blocking requests go through a separate client, with its own
+ * connections but the same limits and timeouts, whose I/O threads complete
+ * the responses.
+ */
+public class CatalogConnectionPool implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CatalogConnectionPool.class);
+
+    private static final int VALIDATE_AFTER_INACTIVITY_MILLIS = 2000;
+
+    private final InstrumentedConnectionManager connectionManager;
+
+    private final CloseableHttpClient httpClient;
+
+    private final CloseableHttpAsyncClient asyncHttpClient;
+
+    private final int connectTimeoutMillis;
+
+    private final long keepAliveMillis;
+
+    /**
+     * @param maxTotal maximum number of connections
+     * @param maxPerRoute maximum number of connections to a single host
+     * @param connectTimeoutMillis timeout to establish a connection
+     * @param readTimeoutMillis maximum time between two packets of a response
+     * @param leaseTimeoutMillis maximum time to wait for a connection when the pool is exhausted
+     * @param keepAliveMillis how long an idle connection may be reused, unless the server asks for less
+     * @param maxIdleMillis idle connections are closed after this long
+     */
+    public CatalogConnectionPool(int maxTotal, int maxPerRoute, int connectTimeoutMillis, int readTimeoutMillis, int leaseTimeoutMillis,
+            long keepAliveMillis, long maxIdleMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.keepAliveMillis = keepAliveMillis;
+        connectionManager = new InstrumentedConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MILLIS);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
+                .setConnectionRequestTimeout(leaseTimeoutMillis)
+                .build();
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return (duration > 0) ? Math.min(duration, keepAliveMillis) : keepAliveMillis;
+        };
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .evictExpiredConnections()
+                .evictIdleConnections(maxIdleMillis, TimeUnit.MILLISECONDS)
+                .build();
+        asyncHttpClient = HttpAsyncClients.custom()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .build();
+        asyncHttpClient.start();
+    }
+
+    public ClientHttpRequestFactory getRequestFactory() {
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    public AsyncClientHttpRequestFactory getAsyncRequestFactory() {
+        return new HttpComponentsAsyncClientHttpRequestFactory(httpClient, asyncHttpClient);
+    }
+
+    /**
+     * Opens up to {@code connections} connections to the host of {@code url}
+     * and returns them to the pool, so the first requests do not pay for the
+     * TCP and TLS handshakes. Failures are logged and otherwise ignored.
+     *
+     * @return the number of connections that were opened
+     */
+    public int warmUp(String url, int connections) {
+        URI uri = URI.create(url);
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = (uri.getPort() > 0) ? uri.getPort() : (secure ? 443 : 80);
+        HttpRoute route = new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null, secure);
+        List<HttpClientConnection> opened = new ArrayList<>();
+        HttpClientConnection connection = null;
+        try {
+            for (int i = 0; i < connections; i++) {
+                connection = connectionManager.requestConnection(route, null).get(connectTimeoutMillis, TimeUnit.MILLISECONDS);
+                if (!connection.isOpen()) {
+                    HttpClientContext context = HttpClientContext.create();
+                    connectionManager.connect(connection, route, connectTimeoutMillis, context);
+                    connectionManager.routeComplete(connection, route, context);
+                }
+                opened.add(connection);
+                connection = null;
+            }
+        } catch (IOException | ExecutionException | RuntimeException e) {
+            LOG.warn("Could not warm up connections to " + url + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (connection != null) {
+            // a failed connect leaves the socket bound, so the connection still looks open
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            connectionManager.releaseConnection(connection, null, 0, TimeUnit.MILLISECONDS);
+        }
+        for (HttpClientConnection warmed : opened) {
+            connectionManager.releaseConnection(warmed, null, keepAliveMillis, TimeUnit.MILLISECONDS);
+        }
+        return opened.size();
+    }
+
+    public int getLeased() {
+        return connectionManager.getTotalStats().getLeased();
+    }
+
+    public int getPending() {
+        return connectionManager.getTotalStats().getPending();
+    }
+
+    public int getAvailable() {
+        return connectionManager.getTotalStats().getAvailable();
+    }
+
+    public int getMax() {
+        return connectionManager.getTotalStats().getMax();
+    }
+
+    public long getLeases() {
+        return connectionManager.leases.sum();
+    }
+
+    public long getLeaseTimeouts() {
+        return connectionManager.leaseTimeouts.sum();
+    }
+
+    public long getLeaseWaitNanos() {
+        return connectionManager.leaseWaitNanos.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            httpClient.close();
+        } finally {
+            asyncHttpClient.close();
+        }
+    }
+
+    private static class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+
+        private final LongAdder leases = new LongAdder();
+
+        private final LongAdder leaseTimeouts = new LongAdder();
+
+        private final LongAdder leaseWaitNanos = new LongAdder();
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit unit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        HttpClientConnection connection = request.get(timeout, unit);
+                        leases.increment();
+                        return connection;
+                    } catch (ConnectionPoolTimeoutException e) {
+                        leaseTimeouts.increment();
+                        throw e;
+                    } finally {
+                        leaseWaitNanos.add(System.nanoTime() - start);
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+    }
+
+}
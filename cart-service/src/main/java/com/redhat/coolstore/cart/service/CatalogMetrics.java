@@ -0,0 +1,99 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Catalog cache, connection pool and circuit breaker metrics. The state of
+ * the circuit and its transitions are also published as Prometheus meters.
+ */
+@Component
+public class CatalogMetrics implements PublicMetrics, MeterBinder {
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private CatalogConnectionPool catalogConnectionPool;
+
+    @Autowired
+    private CircuitBreaker catalogCircuitBreaker;
+
+    @Autowired(required = false)
+    private CatalogSnapshot catalogSnapshot;
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<Integer>("catalog.cache.size", productCache.size()));
+        metrics.add(new Metric<Long>("catalog.cache.hits", productCache.getHits()));
+        metrics.add(new Metric<Long>("catalog.cache.misses", productCache.getMisses()));
+        metrics.add(new Metric<Long>("catalog.cache.loads.coalesced", productCache.getCoalescedLoads()));
+        metrics.add(new Metric<Long>("catalog.cache.loads.failed", productCache.getLoadFailures()));
+        metrics.add(new Metric<Long>("catalog.cache.loads.time.ms", TimeUnit.NANOSECONDS.toMillis(productCache.getLoadTimeNanos())));
+        metrics.add(new Metric<Long>("catalog.cache.evictions", productCache.getEvictions()));
+        metrics.add(new Metric<Long>("catalog.cache.stale.hits", productCache.getStaleHits()));
+        metrics.add(new Metric<Integer>("catalog.http.pool.leased", catalogConnectionPool.getLeased()));
+        metrics.add(new Metric<Integer>("catalog.http.pool.pending", catalogConnectionPool.getPending()));
+        metrics.add(new Metric<Integer>("catalog.http.pool.available", catalogConnectionPool.getAvailable()));
+        metrics.add(new Metric<Integer>("catalog.http.pool.max", catalogConnectionPool.getMax()));
+        metrics.add(new Metric<Long>("catalog.http.pool.leases", catalogConnectionPool.getLeases()));
+        metrics.add(new Metric<Long>("catalog.http.pool.leases.timeout", catalogConnectionPool.getLeaseTimeouts()));
+        metrics.add(new Metric<Long>("catalog.http.pool.leases.wait.time.ms", TimeUnit.NANOSECONDS.toMillis(catalogConnectionPool.getLeaseWaitNanos())));
+        metrics.add(new Metric<Integer>("catalog.circuit.state", catalogCircuitBreaker.getState().ordinal()));
+        metrics.add(new Metric<Long>("catalog.circuit.opened", catalogCircuitBreaker.getTransitions(CircuitBreaker.State.OPEN)));
+        metrics.add(new Metric<Long>("catalog.circuit.half-opened", catalogCircuitBreaker.getTransitions(CircuitBreaker.State.HALF_OPEN)));
+        metrics.add(new Metric<Long>("catalog.circuit.closed", catalogCircuitBreaker.getTransitions(CircuitBreaker.State.CLOSED)));
+        metrics.add(new Metric<Long>("catalog.circuit.rejected.open", catalogCircuitBreaker.getRejectedOpen()));
+        metrics.add(new Metric<Long>("catalog.circuit.rejected.full", catalogCircuitBreaker.getRejectedFull()));
+        metrics.add(new Metric<Integer>("catalog.circuit.calls", catalogCircuitBreaker.getConcurrentCalls()));
+        if (catalogSnapshot != null) {
+            metrics.add(new Metric<Integer>("catalog.snapshot.size", catalogSnapshot.size()));
+            metrics.add(new Metric<Long>("catalog.snapshot.hits", catalogSnapshot.getHits()));
+            metrics.add(new Metric<Long>("catalog.snapshot.misses", catalogSnapshot.getMisses()));
+            metrics.add(new Metric<Long>("catalog.snapshot.refreshes", catalogSnapshot.getRefreshes()));
+            metrics.add(new Metric<Long>("catalog.snapshot.refreshes.failed", catalogSnapshot.getRefreshFailures()));
+            metrics.add(new Metric<Long>("catalog.snapshot.age.ms", System.currentTimeMillis() - catalogSnapshot.getRefreshedAt()));
+        }
+        return metrics;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("catalog.circuit.state", catalogCircuitBreaker, cb -> cb.getState().ordinal())
+                .description("State of the catalog circuit: 0 closed, 1 open, 2 half-open")
+                .register(registry);
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            FunctionCounter.builder("catalog.circuit.transitions", catalogCircuitBreaker, cb -> cb.getTransitions(state))
+                    .description("Transitions of the catalog circuit into the state")
+                    .tag("state", state.name().toLowerCase())
+                    .register(registry);
+        }
+        FunctionCounter.builder("catalog.circuit.rejected", catalogCircuitBreaker, CircuitBreaker::getRejectedOpen)
+                .description("Catalog calls rejected without calling the catalog")
+                .tag("reason", "open")
+                .register(registry);
+        FunctionCounter.builder("catalog.circuit.rejected", catalogCircuitBreaker, CircuitBreaker::getRejectedFull)
+                .description("Catalog calls rejected without calling the catalog")
+                .tag("reason", "bulkhead")
+                .register(registry);
+        Gauge.builder("catalog.circuit.calls", catalogCircuitBreaker, CircuitBreaker::getConcurrentCalls)
+                .description("Catalog calls in progress")
+                .register(registry);
+        FunctionCounter.builder("catalog.cache.stale.hits", productCache, ProductCache::getStaleHits)
+                .description("Expired products served because the catalog circuit rejected the call")
+                .register(registry);
+    }
+
+}
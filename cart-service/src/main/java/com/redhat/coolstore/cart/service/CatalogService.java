@@ -1,9 +1,18 @@
 package com.redhat.coolstore.cart.service;
 
+import java.util.concurrent.CompletableFuture;
+
 import com.redhat.coolstore.cart.model.Product;
 
 public interface CatalogService {
 
     Product getProduct(String itemId);
 
+    /**
+     * @return a future of the product, completed with {@code null} if the product does not exist
+     */
+    default CompletableFuture<Product> getProductAsync(String itemId) {
+        return CompletableFuture.completedFuture(getProduct(itemId));
+    }
+
 }
@@ -1,27 +1,161 @@
 package com.redhat.coolstore.cart.service;
 
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestTemplate;
 
 import com.redhat.coolstore.cart.model.Product;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Calls to the catalog service are timed by HTTP status code; calls that
+ * got no response at all are counted with status {@code IO_ERROR}.
+ * <p>
+ * Calls go through the catalog circuit breaker. When it rejects a call,
+ * because the circuit is open or too many calls are already waiting on the
+ * catalog, the last known data of the product is used if the product cache
+ * still has it, and the call fails immediately otherwise.
+ */
 @Component
 public class CatalogServiceImpl implements CatalogService {
 
     @Value("${catalog.service.url}")
     private String catalogServiceUrl;
 
+    @Value("${catalog.http.warm-up-connections:4}")
+    private int warmUpConnections;
+
+    @Autowired
+    private ProductCache productCache;
+
+    @Autowired
+    private RestTemplate catalogRestTemplate;
+
+    @Autowired
+    private AsyncRestTemplate catalogAsyncRestTemplate;
+
+    @Autowired
+    private CatalogConnectionPool catalogConnectionPool;
+
+    @Autowired
+    private CircuitBreaker catalogCircuitBreaker;
+
+    @Autowired(required = false)
+    private CatalogSnapshot catalogSnapshot;
+
+    // only present in virtual thread mode, where blocking calls are cheap
+    @Autowired(required = false)
+    @Qualifier("catalogCallExecutor")
+    private ExecutorService catalogCallExecutor;
+
+    private final ConcurrentMap<String, Timer> requestTimers = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUpConnectionPool() {
+        if (catalogServiceUrl != null && !catalogServiceUrl.isEmpty() && warmUpConnections > 0) {
+            catalogConnectionPool.warmUp(catalogServiceUrl, warmUpConnections);
+        }
+    }
+
     @Override
     public Product getProduct(String itemId) {
-        RestTemplate restTemplate = new RestTemplate();
+        if (catalogSnapshot != null) {
+            Product product = catalogSnapshot.get(itemId);
+            if (product != null) {
+                return product;
+            }
+        }
+        try {
+            return productCache.get(itemId, id -> catalogCircuitBreaker.call(() -> fetchProduct(id)));
+        } catch (CircuitBreaker.RejectedException e) {
+            Product stale = productCache.getStale(itemId);
+            if (stale == null) {
+                throw e;
+            }
+            return stale;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Product> getProductAsync(String itemId) {
+        if (catalogSnapshot != null) {
+            Product product = catalogSnapshot.get(itemId);
+            if (product != null) {
+                return CompletableFuture.completedFuture(product);
+            }
+        }
+        CompletableFuture<Product> product;
+        if (catalogCallExecutor != null) {
+            product = productCache.getAsync(itemId,
+                    id -> catalogCircuitBreaker.callAsync(() -> CompletableFuture.supplyAsync(() -> fetchProduct(id), catalogCallExecutor)));
+        } else {
+            product = productCache.getAsync(itemId, id -> catalogCircuitBreaker.callAsync(() -> fetchProductAsync(id)));
+        }
+        if (product.isDone() && !product.isCompletedExceptionally()) {
+            // cache hit
+            return product;
+        }
+        CompletableFuture<Product> result = new CompletableFuture<>();
+        product.whenComplete((p, e) -> {
+            Throwable cause = (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e;
+            Product stale = (cause instanceof CircuitBreaker.RejectedException) ? productCache.getStale(itemId) : null;
+            if (cause == null) {
+                result.complete(p);
+            } else if (stale != null) {
+                result.complete(stale);
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<Product> fetchProductAsync(String itemId) {
+        CompletableFuture<Product> product = new CompletableFuture<>();
+        long start = System.nanoTime();
+        catalogAsyncRestTemplate.getForEntity(catalogServiceUrl + "/product/" + itemId, Product.class).addCallback(
+                entity -> {
+                    recordRequest(start, Integer.toString(entity.getStatusCodeValue()));
+                    product.complete(entity.getBody());
+                },
+                e -> {
+                    recordRequest(start, status(e));
+                    if (e instanceof HttpClientErrorException && ((HttpClientErrorException) e).getRawStatusCode() == 404) {
+                        product.complete(null);
+                    } else {
+                        product.completeExceptionally(e);
+                    }
+                });
+        return product;
+    }
+
+    private Product fetchProduct(String itemId) {
         ResponseEntity<Product> entity;
+        long start = System.nanoTime();
         try {
-            entity = restTemplate.getForEntity(catalogServiceUrl + "/product/" + itemId, Product.class);
+            entity = catalogRestTemplate.getForEntity(catalogServiceUrl + "/product/" + itemId, Product.class);
+            recordRequest(start, Integer.toString(entity.getStatusCodeValue()));
             return entity.getBody();
         } catch (HttpClientErrorException e) {
+            recordRequest(start, status(e));
             e.printStackTrace();
             
             if (e.getRawStatusCode() == 404) {
@@ -29,7 +163,28 @@ public class CatalogServiceImpl implements CatalogService {
             } else {
                 throw e;
             }
+        } catch (RuntimeException e) {
+            recordRequest(start, status(e));
+            throw e;
         }
     }
 
+    private void recordRequest(long startNanos, String status) {
+        Timer timer = requestTimers.get(status);
+        if (timer == null) {
+            timer = requestTimers.computeIfAbsent(status, s -> Timer.builder("catalog.requests")
+                    .description("Latency of the product lookups in the catalog service")
+                    .tag("status", s)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofMillis(1))
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(Metrics.globalRegistry));
+        }
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static String status(Throwable e) {
+        return (e instanceof HttpStatusCodeException) ? Integer.toString(((HttpStatusCodeException) e).getRawStatusCode()) : "IO_ERROR";
+    }
+
 }
@@ -0,0 +1,205 @@
+package com.redhat.coolstore.cart.service;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.coolstore.cart.model.Money;
+import com.redhat.coolstore.cart.model.Product;
+
+/**
+ * Local copy of the whole catalog, indexed by item id.
+ * <p>
+ * The product list is loaded when the snapshot is started and reloaded in the
+ * background at a fixed interval. Every load builds a new immutable map that
+ * replaces the previous one in a single write, so readers never see a
+ * partially refreshed catalog and never take a lock. When a refresh fails the
+ * previous snapshot is kept, so carts keep working through short catalog
+ * outages.
+ * <p>
+ * Products whose price differs from the previous snapshot are handed to the
+ * price change listeners after every refresh.
+ */
+public class CatalogSnapshot implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CatalogSnapshot.class);
+
+    private final Supplier<Collection<Product>> loader;
+
+    private final long refreshIntervalMillis;
+
+    private volatile Map<String, Product> products = Collections.emptyMap();
+
+    private volatile long refreshedAt;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder refreshes = new LongAdder();
+
+    private final LongAdder refreshFailures = new LongAdder();
+
+    private final List<Consumer<Collection<Product>>> priceChangeListeners = new CopyOnWriteArrayList<>();
+
+    private final ReentrantLock lifecycleLock = new ReentrantLock();
+
+    // guarded by lifecycleLock
+    private ScheduledExecutorService refresher;
+
+    /**
+     * @param loader returns the complete product list
+     * @param refreshIntervalMillis how often the product list is reloaded, 0 to load it only once
+     */
+    public CatalogSnapshot(Supplier<Collection<Product>> loader, long refreshIntervalMillis) {
+        this.loader = loader;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+
+    /**
+     * Loads the product list and schedules the background refresh. A failed
+     * initial load leaves the snapshot empty until the next refresh succeeds.
+     */
+    public void start() {
+        lifecycleLock.lock();
+        try {
+            if (refresher != null) {
+                return;
+            }
+            refresh();
+            if (refreshIntervalMillis > 0) {
+                refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "catalog-snapshot");
+                    t.setDaemon(true);
+                    return t;
+                });
+                refresher.scheduleWithFixedDelay(this::refresh, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    /**
+     * @return the product, or {@code null} if it is not in the snapshot
+     */
+    public Product get(String itemId) {
+        Product product = products.get(itemId);
+        if (product != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return product;
+    }
+
+    /**
+     * @return {@code true} if the product list was loaded
+     */
+    public boolean refresh() {
+        long start = System.currentTimeMillis();
+        try {
+            Collection<Product> loaded = loader.get();
+            Map<String, Product> index = new HashMap<>(Math.max(16, loaded.size() * 4 / 3 + 1));
+            for (Product product : loaded) {
+                if (product != null && product.getItemId() != null) {
+                    index.put(product.getItemId(), product);
+                }
+            }
+            Map<String, Product> previous = products;
+            products = Collections.unmodifiableMap(index);
+            refreshedAt = System.currentTimeMillis();
+            refreshes.increment();
+            LOG.debug("Loaded {} products in {} ms", index.size(), refreshedAt - start);
+            notifyPriceChanges(previous, index);
+            return true;
+        } catch (RuntimeException e) {
+            refreshFailures.increment();
+            LOG.warn("Could not load the catalog snapshot, keeping {} products: {}", products.size(), e.getMessage());
+            return false;
+        }
+    }
+
+    public void addPriceChangeListener(Consumer<Collection<Product>> listener) {
+        priceChangeListeners.add(listener);
+    }
+
+    public int size() {
+        return products.size();
+    }
+
+    /**
+     * @return when the snapshot was last loaded, 0 if it never was
+     */
+    public long getRefreshedAt() {
+        return refreshedAt;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    public long getRefreshFailures() {
+        return refreshFailures.sum();
+    }
+
+    private void notifyPriceChanges(Map<String, Product> previous, Map<String, Product> current) {
+        if (previous.isEmpty() || priceChangeListeners.isEmpty()) {
+            return;
+        }
+        List<Product> changed = new ArrayList<>();
+        for (Product product : current.values()) {
+            Product before = previous.get(product.getItemId());
+            if (before != null && Money.toMinorUnits(before.getPrice()) != Money.toMinorUnits(product.getPrice())) {
+                changed.add(product);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        LOG.info("Prices of {} products changed", changed.size());
+        for (Consumer<Collection<Product>> listener : priceChangeListeners) {
+            try {
+                listener.accept(changed);
+            } catch (RuntimeException e) {
+                LOG.warn("Price change listener failed", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        lifecycleLock.lock();
+        try {
+            if (refresher != null) {
+                refresher.shutdownNow();
+            }
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,364 @@
+package com.redhat.coolstore.cart.service;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.coolstore.cart.model.Order;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+
+/**
+ * Append-only file of checked-out carts.
+ * <p>
+ * Callers hand their cart to a single writer thread and get a future that
+ * completes once the order is on disk. The writer takes every order queued
+ * while it was busy, waits at most the batch delay for more, then writes the
+ * whole batch and syncs the file once: under load many orders share each
+ * fsync, and an idle journal adds at most the batch delay to a checkout.
+ * <p>
+ * Record layout: {@code [int length][int crc32][long sequence][long checkedOutAt][cart JSON]},
+ * where {@code length} covers everything after the checksum. A record torn by
+ * a crash fails its checksum and is cut off when the journal is reopened.
+ */
+public class CheckoutJournal implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CheckoutJournal.class);
+
+    private static final int HEADER_SIZE = 24;
+
+    private static final int PREFIX_SIZE = 8;
+
+    private static final long POLL_INTERVAL_MILLIS = 100;
+
+    private final Path file;
+
+    private final FileChannel channel;
+
+    private final ObjectMapper objectMapper;
+
+    private final int maxBatchSize;
+
+    private final long maxBatchDelayNanos;
+
+    private final BlockingQueue<PendingOrder> queue;
+
+    private final Thread writer;
+
+    private final LongAdder orders = new LongAdder();
+
+    private final LongAdder batches = new LongAdder();
+
+    private final LongAdder syncNanos = new LongAdder();
+
+    private volatile boolean closed;
+
+    // length of the journal known to be on disk; records beyond it may not have been synced yet
+    private volatile long durableSize;
+
+    private volatile long lastSequence;
+
+    // only used by the writer thread
+    private final CRC32 crc = new CRC32();
+
+    private ByteBuffer batchBuffer = ByteBuffer.allocate(64 * 1024);
+
+    /**
+     * @param maxBatchSize maximum number of orders synced together
+     * @param maxBatchDelayMillis how long the writer waits for more orders before syncing a batch, 0 not to wait
+     */
+    public CheckoutJournal(Path file, int maxBatchSize, long maxBatchDelayMillis, ObjectMapper objectMapper) throws IOException {
+        this.file = file;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+        this.objectMapper = objectMapper;
+        this.queue = new LinkedBlockingQueue<>(maxBatchSize * 16);
+        if (file.getParent() != null) {
+            file.getParent().toFile().mkdirs();
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        durableSize = recover();
+        channel.position(durableSize);
+        LOG.info("Opened checkout journal {} at order {}", file, lastSequence);
+        writer = new Thread(this::writeBatches, "checkout-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return the order, completed once it is on disk
+     */
+    public CompletableFuture<Order> append(ShoppingCart sc) {
+        CompletableFuture<Order> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(new IllegalStateException("Checkout journal is closed"));
+            return future;
+        }
+        try {
+            // carts are encoded by the callers, so the writer thread only copies bytes
+            PendingOrder pending = new PendingOrder(sc, objectMapper.writeValueAsBytes(sc), System.currentTimeMillis(), future);
+            queue.put(pending);
+            if (closed && queue.remove(pending)) {
+                future.completeExceptionally(new IllegalStateException("Checkout journal is closed"));
+            }
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Streams the orders on disk after {@code afterSequence}, in order. The
+     * stream holds the file open and must be closed.
+     */
+    public Stream<Order> read(long afterSequence) throws IOException {
+        FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+        long end = durableSize;
+        Spliterator<Order> records = new Spliterators.AbstractSpliterator<Order>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE) {
+
+            private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+            private long position;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Order> action) {
+                try {
+                    while (position < end) {
+                        header.clear();
+                        readFully(in, header, position);
+                        int length = header.getInt(0);
+                        long sequence = header.getLong(8);
+                        long recordStart = position;
+                        position += PREFIX_SIZE + length;
+                        if (sequence > afterSequence) {
+                            ByteBuffer payload = ByteBuffer.allocate(length - (HEADER_SIZE - PREFIX_SIZE));
+                            readFully(in, payload, recordStart + HEADER_SIZE);
+                            action.accept(new Order(sequence, header.getLong(16), objectMapper.readValue(payload.array(), ShoppingCart.class)));
+                            return true;
+                        }
+                    }
+                    return false;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(records, false).onClose(() -> {
+            try {
+                in.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * @return the sequence of the last order on disk, 0 if there is none
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getOrders() {
+        return orders.sum();
+    }
+
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    public long getSyncNanos() {
+        return syncNanos.sum();
+    }
+
+    /**
+     * Writes the orders already queued and stops the writer; orders appended
+     * afterwards fail.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (PendingOrder pending; (pending = queue.poll()) != null;) {
+            pending.future.completeExceptionally(new IllegalStateException("Checkout journal is closed"));
+        }
+        channel.close();
+    }
+
+    private void writeBatches() {
+        List<PendingOrder> batch = new ArrayList<>(maxBatchSize);
+        try {
+            while (!closed || !queue.isEmpty()) {
+                PendingOrder first = queue.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                long deadline = System.nanoTime() + maxBatchDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    PendingOrder next = (remaining > 0) ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+                writeBatch(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            for (PendingOrder pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingOrder> batch) {
+        long sequence = lastSequence;
+        int size = 0;
+        for (PendingOrder pending : batch) {
+            size += HEADER_SIZE + pending.payload.length;
+        }
+        if (batchBuffer.capacity() < size) {
+            batchBuffer = ByteBuffer.allocate(Math.max(size, batchBuffer.capacity() * 2));
+        }
+        batchBuffer.clear();
+        for (PendingOrder pending : batch) {
+            int start = batchBuffer.position();
+            batchBuffer.putInt(HEADER_SIZE - PREFIX_SIZE + pending.payload.length);
+            batchBuffer.putInt(0);
+            batchBuffer.putLong(++sequence);
+            batchBuffer.putLong(pending.checkedOutAt);
+            batchBuffer.put(pending.payload);
+            crc.reset();
+            crc.update(batchBuffer.array(), start + PREFIX_SIZE, batchBuffer.position() - start - PREFIX_SIZE);
+            batchBuffer.putInt(start + 4, (int) crc.getValue());
+        }
+        batchBuffer.flip();
+        long start = System.nanoTime();
+        try {
+            while (batchBuffer.hasRemaining()) {
+                channel.write(batchBuffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            LOG.error("Could not write " + batch.size() + " orders to the checkout journal", e);
+            discardUnsynced();
+            for (PendingOrder pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+            return;
+        } finally {
+            syncNanos.add(System.nanoTime() - start);
+        }
+        durableSize += size;
+        orders.add(batch.size());
+        batches.increment();
+        sequence = lastSequence;
+        lastSequence += batch.size();
+        for (PendingOrder pending : batch) {
+            pending.future.complete(new Order(++sequence, pending.checkedOutAt, pending.cart));
+        }
+    }
+
+    // so a failed batch does not leave records that a later batch would make durable
+    private void discardUnsynced() {
+        try {
+            channel.truncate(durableSize);
+            channel.position(durableSize);
+        } catch (IOException e) {
+            LOG.error("Could not discard the unsynced end of the checkout journal", e);
+        }
+    }
+
+    /**
+     * Checks every record and cuts off the ones after the first damaged one.
+     *
+     * @return the length of the valid part of the journal
+     */
+    private long recover() throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(PREFIX_SIZE);
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            int length = header.getInt(0);
+            if (length < HEADER_SIZE - PREFIX_SIZE || position + PREFIX_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(channel, record, position + PREFIX_SIZE);
+            crc.reset();
+            crc.update(record.array(), 0, length);
+            if ((int) crc.getValue() != header.getInt(4)) {
+                break;
+            }
+            lastSequence = record.getLong(0);
+            position += PREFIX_SIZE + length;
+        }
+        if (position < size) {
+            LOG.warn("Damaged record at offset {} of {}, discarding the last {} bytes", position, file, size - position);
+            channel.truncate(position);
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static class PendingOrder {
+
+        private final ShoppingCart cart;
+
+        private final byte[] payload;
+
+        private final long checkedOutAt;
+
+        private final CompletableFuture<Order> future;
+
+        PendingOrder(ShoppingCart cart, byte[] payload, long checkedOutAt, CompletableFuture<Order> future) {
+            this.cart = cart;
+            this.payload = payload;
+            this.checkedOutAt = checkedOutAt;
+            this.future = future;
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker and bulkhead around the calls to a remote service.
+ * <p>
+ * The circuit opens after {@code failureThreshold} consecutive failures, and
+ * while it is open calls are rejected without reaching the service. Once
+ * {@code openMillis} have passed the circuit is half-open: up to
+ * {@code halfOpenProbes} calls are let through, and the first of them to
+ * complete closes the circuit again on success or reopens it on failure.
+ * <p>
+ * Independently of the state of the circuit, at most
+ * {@code maxConcurrentCalls} calls run at the same time; calls beyond that
+ * are rejected rather than queued, so a slow service cannot tie up every
+ * caller thread. Asynchronous calls hold their permit until their future
+ * completes.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+
+    private final int failureThreshold;
+
+    private final long openMillis;
+
+    private final int halfOpenProbes;
+
+    private final Predicate<Throwable> isFailure;
+
+    private final LongSupplier clock;
+
+    private final int maxConcurrentCalls;
+
+    private final Semaphore bulkhead;
+
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final AtomicInteger probes = new AtomicInteger();
+
+    private volatile long openedAt;
+
+    private final LongAdder[] transitions = new LongAdder[State.values().length];
+
+    private final LongAdder rejectedOpen = new LongAdder();
+
+    private final LongAdder rejectedFull = new LongAdder();
+
+    /**
+     * @param isFailure whether an exception thrown by a call counts as a failure of the service; other
+     * exceptions are passed on without affecting the circuit
+     */
+    public CircuitBreaker(String name, int failureThreshold, long openMillis, int halfOpenProbes, int maxConcurrentCalls,
+            Predicate<Throwable> isFailure) {
+        this(name, failureThreshold, openMillis, halfOpenProbes, maxConcurrentCalls, isFailure, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String name, int failureThreshold, long openMillis, int halfOpenProbes, int maxConcurrentCalls,
+            Predicate<Throwable> isFailure, LongSupplier clock) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+        this.halfOpenProbes = halfOpenProbes;
+        this.isFailure = isFailure;
+        this.clock = clock;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.bulkhead = new Semaphore(maxConcurrentCalls);
+        for (int i = 0; i < transitions.length; i++) {
+            transitions[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @throws RejectedException if the circuit is open or the maximum number of concurrent calls is reached
+     */
+    public <T> T call(Supplier<T> call) {
+        boolean probe = acquire();
+        try {
+            T result = call.get();
+            onSuccess(probe);
+            return result;
+        } catch (RuntimeException e) {
+            onFailure(probe, e);
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * Like {@link #call(Supplier)}, but a rejected call returns a future
+     * completed with {@link RejectedException}.
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> call) {
+        boolean probe;
+        try {
+            probe = acquire();
+        } catch (RejectedException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        return result.whenComplete((value, e) -> {
+            bulkhead.release();
+            if (e == null) {
+                onSuccess(probe);
+            } else {
+                onFailure(probe, (e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e);
+            }
+        });
+    }
+
+    public State getState() {
+        State current = state.get();
+        if (current == State.OPEN && clock.getAsLong() - openedAt >= openMillis) {
+            return State.HALF_OPEN;
+        }
+        return current;
+    }
+
+    /**
+     * @return how many times the circuit went into the given state
+     */
+    public long getTransitions(State to) {
+        return transitions[to.ordinal()].sum();
+    }
+
+    public long getRejectedOpen() {
+        return rejectedOpen.sum();
+    }
+
+    public long getRejectedFull() {
+        return rejectedFull.sum();
+    }
+
+    public int getConcurrentCalls() {
+        return maxConcurrentCalls - bulkhead.availablePermits();
+    }
+
+    /**
+     * @return whether the call is a half-open probe
+     */
+    private boolean acquire() {
+        boolean probe = false;
+        State current = state.get();
+        if (current == State.OPEN) {
+            if (clock.getAsLong() - openedAt < openMillis) {
+                rejectedOpen.increment();
+                throw new RejectedException(name + " circuit is open");
+            }
+            transition(State.OPEN, State.HALF_OPEN);
+            current = state.get();
+        }
+        if (current == State.HALF_OPEN) {
+            if (probes.incrementAndGet() > halfOpenProbes) {
+                probes.decrementAndGet();
+                rejectedOpen.increment();
+                throw new RejectedException(name + " circuit is half-open");
+            }
+            probe = true;
+        }
+        if (!bulkhead.tryAcquire()) {
+            if (probe) {
+                probes.decrementAndGet();
+            }
+            rejectedFull.increment();
+            throw new RejectedException(name + " has too many concurrent calls");
+        }
+        return probe;
+    }
+
+    private void onSuccess(boolean probe) {
+        consecutiveFailures.set(0);
+        if (probe) {
+            probes.decrementAndGet();
+            transition(State.HALF_OPEN, State.CLOSED);
+        }
+    }
+
+    private void onFailure(boolean probe, Throwable e) {
+        if (!isFailure.test(e)) {
+            onSuccess(probe);
+            return;
+        }
+        if (probe) {
+            probes.decrementAndGet();
+            openedAt = clock.getAsLong();
+            transition(State.HALF_OPEN, State.OPEN);
+        } else if (consecutiveFailures.incrementAndGet() >= failureThreshold && state.get() == State.CLOSED) {
+            openedAt = clock.getAsLong();
+            transition(State.CLOSED, State.OPEN);
+        }
+    }
+
+    private void transition(State from, State to) {
+        if (state.compareAndSet(from, to)) {
+            transitions[to.ordinal()].increment();
+            if (to == State.CLOSED) {
+                consecutiveFailures.set(0);
+                LOG.info("{} circuit closed", name);
+            } else {
+                LOG.warn("{} circuit {}", name, (to == State.OPEN) ? "opened" : "half-open");
+            }
+        }
+    }
+
+    /**
+     * Thrown, without calling the service, when the circuit is open or the
+     * bulkhead is full.
+     */
+    public static class RejectedException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        RejectedException(String message) {
+            // rejections are frequent while the circuit is open and the stack trace tells nothing
+            super(message, null, false, false);
+        }
+    }
+
+}
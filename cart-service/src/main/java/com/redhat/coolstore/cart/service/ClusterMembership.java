@@ -0,0 +1,141 @@
+package com.redhat.coolstore.cart.service;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Members of the cart service cluster, rediscovered at a fixed interval.
+ * <p>
+ * Members are named by their base URL. Discovery either returns a fixed list
+ * or resolves a DNS name, typically the headless service of the cart service,
+ * to the addresses of its ready pods. This instance is always a member, even
+ * before it is ready. Listeners are called with the sorted members whenever
+ * they change; if discovery fails the current members are kept.
+ */
+public class ClusterMembership implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterMembership.class);
+
+    private final String self;
+
+    private final Supplier<Collection<String>> discovery;
+
+    private final long refreshIntervalMillis;
+
+    private final List<Consumer<List<String>>> listeners = new CopyOnWriteArrayList<>();
+
+    private final ScheduledExecutorService refresher;
+
+    private volatile List<String> members;
+
+    public ClusterMembership(String self, Supplier<Collection<String>> discovery, long refreshIntervalMillis) {
+        this.self = self;
+        this.discovery = discovery;
+        this.refreshIntervalMillis = refreshIntervalMillis;
+        this.members = Collections.singletonList(self);
+        this.refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-membership");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Discovers the members, then keeps refreshing them in the background.
+     */
+    public void start() {
+        refresh();
+        if (refreshIntervalMillis > 0) {
+            refresher.scheduleWithFixedDelay(this::refresh, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void refresh() {
+        List<String> discovered;
+        try {
+            Set<String> names = new TreeSet<>(discovery.get());
+            names.add(self);
+            discovered = Collections.unmodifiableList(new ArrayList<>(names));
+        } catch (RuntimeException e) {
+            LOG.warn("Could not discover the cluster members, keeping " + members, e);
+            return;
+        }
+        if (discovered.equals(members)) {
+            return;
+        }
+        LOG.info("Cluster members changed from {} to {}", members, discovered);
+        members = discovered;
+        for (Consumer<List<String>> listener : listeners) {
+            try {
+                listener.accept(discovered);
+            } catch (RuntimeException e) {
+                LOG.warn("Cluster membership listener failed", e);
+            }
+        }
+    }
+
+    public void addListener(Consumer<List<String>> listener) {
+        listeners.add(listener);
+    }
+
+    public String getSelf() {
+        return self;
+    }
+
+    /**
+     * @return the members, sorted
+     */
+    public List<String> getMembers() {
+        return members;
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * @param members comma-separated base URLs
+     */
+    public static Supplier<Collection<String>> fixedMembers(String members) {
+        List<String> names = Arrays.stream(members.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toList());
+        return () -> names;
+    }
+
+    /**
+     * @return discovery of the members at every address {@code name} resolves to, on {@code port}
+     */
+    public static Supplier<Collection<String>> dnsMembers(String name, int port) {
+        return () -> {
+            try {
+                return Arrays.stream(InetAddress.getAllByName(name))
+                        .map(address -> "http://" + address.getHostAddress() + ":" + port)
+                        .collect(Collectors.toList());
+            } catch (UnknownHostException e) {
+                throw new IllegalStateException("Could not resolve " + name, e);
+            }
+        };
+    }
+
+}
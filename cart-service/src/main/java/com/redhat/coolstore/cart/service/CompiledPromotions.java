@@ -0,0 +1,231 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.redhat.coolstore.cart.model.Money;
+import com.redhat.coolstore.cart.service.PromotionRules.ItemPromotion;
+import com.redhat.coolstore.cart.service.PromotionRules.ShippingPromotion;
+import com.redhat.coolstore.cart.service.PromotionRules.ShippingTier;
+
+/**
+ * Immutable, flattened form of a {@link PromotionRules} definition.
+ * <p>
+ * Item promotions are stored in an open-addressing table of parallel arrays
+ * keyed by item id, so finding the promotion of a line is a hash and usually
+ * a single comparison, whatever the number of rules. Shipping tiers and
+ * shipping promotions are sorted arrays of cents searched by bisection.
+ * Evaluation only reads primitive arrays and never allocates.
+ * <p>
+ * Every compilation gets a new version, so carts priced with older rules can
+ * be recognized and repriced in full.
+ */
+public final class CompiledPromotions {
+
+    private static final AtomicInteger VERSIONS = new AtomicInteger();
+
+    private static final int BASIS_POINTS = 10_000;
+
+    private final int version;
+
+    private final int ruleCount;
+
+    // item promotions, indexed by the slot of the item id; a null key is an empty slot
+    private final String[] itemIds;
+
+    private final int[] percentOff;
+
+    private final int[] buy;
+
+    private final int[] get;
+
+    private final int mask;
+
+    private final int shift;
+
+    // promotion of the items without one of their own, -1 if there is none
+    private final int anyItemSlot;
+
+    private final long[] tierFrom;
+
+    private final long[] tierBelow;
+
+    private final long[] tierCost;
+
+    private final long[] shippingPromotionMinimum;
+
+    // best percentage off among the shipping promotions up to each index
+    private final int[] shippingPromotionPercentOff;
+
+    private CompiledPromotions(PromotionRules rules) {
+        version = VERSIONS.incrementAndGet();
+
+        List<ItemPromotion> itemPromotions = rules.getItemPromotions();
+        int bits = 1;
+        while ((1 << bits) < itemPromotions.size() * 2 + 1) {
+            bits++;
+        }
+        int capacity = 1 << bits;
+        itemIds = new String[capacity];
+        percentOff = new int[capacity];
+        buy = new int[capacity];
+        get = new int[capacity];
+        mask = capacity - 1;
+        shift = 32 - bits;
+        int anySlot = -1;
+        for (ItemPromotion promotion : itemPromotions) {
+            validate(promotion);
+            int slot = slot(promotion.getItemId());
+            if (itemIds[slot] != null) {
+                throw new IllegalArgumentException("More than one promotion for item " + promotion.getItemId());
+            }
+            itemIds[slot] = promotion.getItemId();
+            percentOff[slot] = toBasisPoints(promotion.getPercentOff());
+            buy[slot] = promotion.getBuy();
+            get[slot] = promotion.getGet();
+            if (ItemPromotion.ANY_ITEM.equals(promotion.getItemId())) {
+                anySlot = slot;
+            }
+        }
+        anyItemSlot = anySlot;
+
+        List<ShippingTier> tiers = new ArrayList<>(rules.getShippingTiers());
+        tiers.sort(Comparator.comparingDouble(ShippingTier::getFrom));
+        tierFrom = new long[tiers.size()];
+        tierBelow = new long[tiers.size()];
+        tierCost = new long[tiers.size()];
+        for (int i = 0; i < tiers.size(); i++) {
+            ShippingTier tier = tiers.get(i);
+            tierFrom[i] = Money.toMinorUnits(tier.getFrom());
+            tierBelow[i] = Money.toMinorUnits(tier.getBelow());
+            tierCost[i] = Money.toMinorUnits(tier.getCost());
+            if (tierFrom[i] >= tierBelow[i] || tierCost[i] < 0) {
+                throw new IllegalArgumentException("Invalid shipping tier from " + tier.getFrom() + " below " + tier.getBelow());
+            }
+            if (i > 0 && tierFrom[i] < tierBelow[i - 1]) {
+                throw new IllegalArgumentException("Shipping tiers overlap at " + tier.getFrom());
+            }
+        }
+
+        List<ShippingPromotion> shippingPromotions = new ArrayList<>(rules.getShippingPromotions());
+        shippingPromotions.sort(Comparator.comparingDouble(ShippingPromotion::getMinimumTotal));
+        shippingPromotionMinimum = new long[shippingPromotions.size()];
+        shippingPromotionPercentOff = new int[shippingPromotions.size()];
+        int best = 0;
+        for (int i = 0; i < shippingPromotions.size(); i++) {
+            ShippingPromotion promotion = shippingPromotions.get(i);
+            best = Math.max(best, toBasisPoints(promotion.getPercentOff()));
+            shippingPromotionMinimum[i] = Money.toMinorUnits(promotion.getMinimumTotal());
+            shippingPromotionPercentOff[i] = best;
+        }
+
+        ruleCount = itemPromotions.size() + tiers.size() + shippingPromotions.size();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the rules are inconsistent
+     */
+    public static CompiledPromotions compile(PromotionRules rules) {
+        return new CompiledPromotions(rules);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * @return the savings, in cents, on {@code quantity} items at {@code priceCents} each
+     */
+    public long itemSavings(String itemId, long priceCents, int quantity) {
+        if (quantity <= 0) {
+            return 0;
+        }
+        int slot = find(itemId);
+        if (slot < 0) {
+            return 0;
+        }
+        long savings = priceCents * quantity * percentOff[slot] / BASIS_POINTS;
+        int bundle = buy[slot] + get[slot];
+        if (bundle > 0) {
+            savings = Math.max(savings, priceCents * (quantity / bundle) * get[slot]);
+        }
+        return savings;
+    }
+
+    /**
+     * @return the shipping cost, in cents, of a cart worth {@code itemTotal} cents after item savings
+     */
+    public long shipping(long itemTotal) {
+        int i = floor(tierFrom, itemTotal);
+        return (i >= 0 && itemTotal < tierBelow[i]) ? tierCost[i] : 0;
+    }
+
+    /**
+     * @return the savings, in cents, on {@code shipping} for a cart worth {@code itemTotal} cents after item savings
+     */
+    public long shippingSavings(long itemTotal, long shipping) {
+        int i = floor(shippingPromotionMinimum, itemTotal);
+        return (i >= 0) ? shipping * shippingPromotionPercentOff[i] / BASIS_POINTS : 0;
+    }
+
+    private int find(String itemId) {
+        if (itemId != null) {
+            int slot = slot(itemId);
+            if (itemIds[slot] != null) {
+                return slot;
+            }
+        }
+        return anyItemSlot;
+    }
+
+    // first empty slot or slot holding itemId; item ids often differ only in their last characters, so their
+    // hash codes are scrambled (Fibonacci hashing) to keep them from filling runs of adjacent slots
+    private int slot(String itemId) {
+        int slot = (itemId.hashCode() * 0x9E3779B9) >>> shift;
+        while (itemIds[slot] != null && !itemIds[slot].equals(itemId)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // index of the greatest bound <= value, -1 if there is none
+    private static int floor(long[] bounds, long value) {
+        int low = 0;
+        int high = bounds.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (bounds[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    private static void validate(ItemPromotion promotion) {
+        if (promotion.getItemId() == null) {
+            throw new IllegalArgumentException("Item promotion without an item id");
+        }
+        if (promotion.getPercentOff() < 0 || promotion.getPercentOff() > 100) {
+            throw new IllegalArgumentException("Invalid percentage off for item " + promotion.getItemId());
+        }
+        if (promotion.getBuy() < 0 || promotion.getGet() < 0 || (promotion.getBuy() == 0) != (promotion.getGet() == 0)) {
+            throw new IllegalArgumentException("Invalid buy/get promotion for item " + promotion.getItemId());
+        }
+    }
+
+    private static int toBasisPoints(double percent) {
+        if (percent < 0 || percent > 100) {
+            throw new IllegalArgumentException("Invalid percentage " + percent);
+        }
+        return (int) Math.round(percent * 100);
+    }
+
+}
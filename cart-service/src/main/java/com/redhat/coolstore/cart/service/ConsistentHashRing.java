@@ -0,0 +1,96 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Immutable consistent-hash ring that assigns cart ids to cluster members.
+ * <p>
+ * Every member is placed on the ring at {@code virtualNodes} pseudo-random
+ * points, and a cart id belongs to the member of the first point at or after
+ * its hash. When a member joins or leaves, only the cart ids between its
+ * points and the preceding ones change owner, about one in {@code n} for
+ * {@code n} members. The points of a member only depend on its name, so every
+ * instance that sees the same members computes the same owners.
+ */
+public final class ConsistentHashRing {
+
+    private final List<String> members;
+
+    // sorted hashes of the points, and the index in members of the member owning each
+    private final long[] points;
+
+    private final int[] owners;
+
+    public ConsistentHashRing(Collection<String> members, int virtualNodes) {
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("A ring needs at least one member");
+        }
+        this.members = Collections.unmodifiableList(new ArrayList<>(new TreeSet<>(members)));
+        int count = this.members.size() * virtualNodes;
+        long[] hashes = new long[count];
+        for (int m = 0; m < this.members.size(); m++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                hashes[m * virtualNodes + v] = hash(this.members.get(m) + "#" + v);
+            }
+        }
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        // ties between points are broken by member, so they resolve the same on every instance
+        Arrays.sort(order, (a, b) -> {
+            int c = Long.compareUnsigned(hashes[a], hashes[b]);
+            return (c != 0) ? c : Integer.compare(a, b);
+        });
+        points = new long[count];
+        owners = new int[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = order[i] / virtualNodes;
+        }
+    }
+
+    public String ownerOf(String cartId) {
+        long h = hash(cartId);
+        // first point at or after h, wrapping around to the first point of the ring
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(points[mid], h) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return members.get(owners[(low == points.length) ? 0 : low]);
+    }
+
+    /**
+     * @return the members, sorted
+     */
+    public List<String> getMembers() {
+        return members;
+    }
+
+    // 64-bit FNV-1a over the characters, finished with the MurmurHash3 mix so close strings land far apart
+    static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -0,0 +1,991 @@
+package com.redhat.coolstore.cart.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.coolstore.cart.model.CartEvent;
+import com.redhat.coolstore.cart.model.Money;
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+/**
+ * Cart repository that records every change of a cart as an event, so carts
+ * survive restarts and their history can be read back.
+ * <p>
+ * Carts are spread over a fixed number of partitions by cart id. Each
+ * partition is a directory of segment files that events are appended to, and
+ * has its own lock, so writes to different partitions never contend. Adding
+ * to or removing from a line is a small record of the line and the cart
+ * totals; repricing a whole cart, as a batch update does, records the whole
+ * cart.
+ * <p>
+ * When a segment is full a new one is started, and a background thread folds
+ * the previous snapshot of the partition and the segments sealed since into a
+ * new snapshot of its live carts, then deletes those segments. Snapshots are
+ * built from the files only, so they never see a cart halfway through a
+ * change. Opening the repository reads the latest snapshot and the segments
+ * written after it, one partition per thread, so startup time and disk use
+ * depend on the number of live carts and not on the length of their history.
+ * <p>
+ * Carts evicted from memory stay on disk: each partition keeps the location
+ * of the records of every stored cart since its last full record, the one in
+ * the snapshot or a later stored cart, and the next lookup of an evicted cart
+ * reads back only those records.
+ * <p>
+ * Record layout: {@code [int length][int crc32][byte type][varint timestamp][string cartId][payload]},
+ * where {@code length} covers everything after the checksum. The payload of a
+ * stored cart, and of every cart of a snapshot, is its
+ * {@link ShoppingCartCodec} encoding, with item ids numbered by the
+ * {@link ItemIdDictionary} kept next to the partitions; in an item change, amounts are
+ * zigzag-encoded varints of cents. A record torn by a crash fails its checksum;
+ * when the repository is reopened the replay of its partition stops there, the
+ * rest of the segment is cut off and any later segment is set aside with a
+ * {@code .damaged} suffix.
+ */
+public class EventSourcedCartRepository implements CartRepository, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EventSourcedCartRepository.class);
+
+    private static final String PARTITION_PREFIX = "partition-";
+
+    private static final String SEGMENT_PREFIX = "events-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte EVENT_ITEM_CHANGED = 1;
+
+    private static final byte EVENT_CART_STORED = 2;
+
+    private static final byte EVENT_CHECKED_OUT = 3;
+
+    private static final byte EVENT_DELETED = 4;
+
+    private static final int FLAG_PRODUCT = 1;
+
+    private static final String DICTIONARY_FILE = "item-ids.dict";
+
+    private static final int DICTIONARY_ENTRIES = 1 << 20;
+
+    private static final CartEvent.Type[] EVENT_TYPES = { null, CartEvent.Type.ITEM_CHANGED, CartEvent.Type.CART_STORED,
+            CartEvent.Type.CHECKED_OUT, CartEvent.Type.DELETED };
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final boolean syncOnWrite;
+
+    private final InMemoryCartRepository carts;
+
+    private final ItemIdDictionary dictionary;
+
+    private final ShoppingCartCodec codec;
+
+    private final Partition[] partitions;
+
+    private final ExecutorService snapshotter;
+
+    private final LongAdder replayedEvents = new LongAdder();
+
+    private final LongAdder snapshots = new LongAdder();
+
+    private final LongAdder reloads = new LongAdder();
+
+    public EventSourcedCartRepository(Path directory, int partitionCount, int segmentSize, boolean syncOnWrite) throws IOException {
+        this(directory, partitionCount, segmentSize, syncOnWrite, 0, new InMemoryCartRepository());
+    }
+
+    /**
+     * @param replayThreads number of partitions replayed concurrently when opening, 0 for one per processor
+     */
+    public EventSourcedCartRepository(Path directory, int partitionCount, int segmentSize, boolean syncOnWrite, int replayThreads,
+            InMemoryCartRepository carts) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.syncOnWrite = syncOnWrite;
+        this.carts = carts;
+        Files.createDirectories(directory);
+        int existing = listFiles(directory, PARTITION_PREFIX, "").size();
+        if (existing > 0 && existing != partitionCount) {
+            throw new IllegalStateException(directory + " holds " + existing + " partitions, " + partitionCount + " configured");
+        }
+        dictionary = ItemIdDictionary.open(directory.resolve(DICTIONARY_FILE), DICTIONARY_ENTRIES);
+        codec = new ShoppingCartCodec(dictionary);
+        partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(directory.resolve(String.format("%s%03d", PARTITION_PREFIX, i)));
+        }
+        snapshotter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cart-snapshots");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime();
+        replay(replayThreads > 0 ? replayThreads : Runtime.getRuntime().availableProcessors());
+        LOG.info("Loaded {} carts from {} events in {} partitions of {} in {} ms", carts.getStatistics().getResidentCarts(),
+                replayedEvents.sum(), partitionCount, directory, (System.nanoTime() - start) / 1_000_000);
+        carts.evictToBudget();
+    }
+
+    @Override
+    public ShoppingCart findById(String cartId) {
+        ShoppingCart sc = carts.findById(cartId);
+        if (sc != null) {
+            return sc;
+        }
+        Partition partition = partitionOf(cartId);
+        // unknown carts are answered without taking the lock
+        if (!partition.records.containsKey(cartId)) {
+            return null;
+        }
+        partition.lock.lock();
+        try {
+            sc = carts.findById(cartId);
+            if (sc == null && partition.records.containsKey(cartId)) {
+                sc = rebuild(partition, cartId);
+                if (sc != null) {
+                    carts.save(sc);
+                    reloads.increment();
+                }
+            }
+            return sc;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read cart " + cartId, e);
+        } finally {
+            partition.lock.unlock();
+        }
+    }
+
+    @Override
+    public void save(ShoppingCart sc) {
+        Partition partition = partitionOf(sc.getId());
+        partition.lock.lock();
+        try {
+            partition.writer.begin(EVENT_CART_STORED, sc.getId());
+            partition.writer.putCart(sc);
+            partition.indexStored(sc.getId(), partition.append());
+            carts.save(sc);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to store cart " + sc.getId(), e);
+        } finally {
+            partition.lock.unlock();
+        }
+    }
+
+    @Override
+    public void saveChange(ShoppingCart sc, ShoppingCartItem sci, int quantityDelta) {
+        Partition partition = partitionOf(sc.getId());
+        partition.lock.lock();
+        try {
+            partition.writer.begin(EVENT_ITEM_CHANGED, sc.getId());
+            partition.writer.putItemChange(sc, sci, quantityDelta);
+            partition.indexChanged(sc.getId(), partition.append());
+            carts.saveChange(sc, sci, quantityDelta);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to store cart " + sc.getId(), e);
+        } finally {
+            partition.lock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(String cartId) {
+        remove(cartId, EVENT_DELETED);
+    }
+
+    @Override
+    public void checkedOut(String cartId) {
+        remove(cartId, EVENT_CHECKED_OUT);
+    }
+
+    @Override
+    public CartStoreStatistics getStatistics() {
+        return carts.getStatistics();
+    }
+
+    @Override
+    public void forEach(Consumer<ShoppingCart> action) {
+        carts.forEach(action);
+    }
+
+    @Override
+    public Set<String> findCartIdsByItemId(String itemId) {
+        return carts.findCartIdsByItemId(itemId);
+    }
+
+    /**
+     * Reads the events of a cart from the segments on disk, oldest first.
+     * Events in segments already folded into a snapshot, and deleted, are not
+     * returned.
+     */
+    public List<CartEvent> history(String cartId) throws IOException {
+        Partition partition = partitionOf(cartId);
+        List<CartEvent> events = new ArrayList<>();
+        for (Path segment : listFiles(partition.directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            try {
+                scan(segment, (record, offset) -> {
+                    CartEvent event = decodeEvent(record);
+                    if (cartId.equals(event.getCartId())) {
+                        events.add(event);
+                    }
+                });
+            } catch (NoSuchFileException e) {
+                // deleted by a snapshot since the segments were listed
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return the number of events replayed when the repository was opened, snapshot records included
+     */
+    public long getReplayedEvents() {
+        return replayedEvents.sum();
+    }
+
+    public long getSnapshots() {
+        return snapshots.sum();
+    }
+
+    /**
+     * @return the number of evicted carts rebuilt from disk
+     */
+    public long getReloads() {
+        return reloads.sum();
+    }
+
+    /**
+     * Waits until the snapshots already scheduled are taken.
+     */
+    void awaitSnapshots() throws InterruptedException, ExecutionException {
+        snapshotter.submit(() -> {
+        }).get();
+    }
+
+    /**
+     * Waits for the snapshots already scheduled, then closes the segments.
+     */
+    @Override
+    public void close() throws IOException {
+        carts.close();
+        snapshotter.shutdown();
+        try {
+            snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Partition partition : partitions) {
+            partition.close();
+        }
+        dictionary.close();
+    }
+
+    private void remove(String cartId, byte event) {
+        Partition partition = partitionOf(cartId);
+        partition.lock.lock();
+        try {
+            carts.delete(cartId);
+            if (partition.records.remove(cartId) != null) {
+                partition.writer.begin(event, cartId);
+                partition.append();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to delete cart " + cartId, e);
+        } finally {
+            partition.lock.unlock();
+        }
+    }
+
+    // callers hold the lock of the partition, so no snapshot replaces its files meanwhile
+    private ShoppingCart rebuild(Partition partition, String cartId) throws IOException {
+        List<RecordLocation> locations = partition.records.get(cartId);
+        if (locations == null) {
+            return null;
+        }
+        Map<String, ShoppingCart> state = new HashMap<>(2);
+        Path file = null;
+        FileChannel channel = null;
+        try {
+            for (RecordLocation location : locations) {
+                Path path = partition.directory.resolve(location.fileName());
+                if (!path.equals(file)) {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                    channel = FileChannel.open(path, StandardOpenOption.READ);
+                    file = path;
+                }
+                ByteBuffer record = ByteBuffer.allocate(location.length);
+                long position = location.offset + HEADER_SIZE;
+                while (record.hasRemaining()) {
+                    if (channel.read(record, position + record.position()) < 0) {
+                        throw new IOException("Record of cart " + cartId + " cut off in " + path);
+                    }
+                }
+                record.flip();
+                apply(record, state, cartId);
+            }
+        } finally {
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        return state.get(cartId);
+    }
+
+    private Partition partitionOf(String cartId) {
+        int h = cartId.hashCode();
+        h ^= (h >>> 16);
+        return partitions[Math.floorMod(h, partitions.length)];
+    }
+
+    private void replay(int threads) throws IOException {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService replayers = Executors.newFixedThreadPool(Math.min(threads, partitions.length), runnable -> {
+            Thread thread = new Thread(runnable, "cart-replay-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> replays = new ArrayList<>();
+            for (Partition partition : partitions) {
+                replays.add(replayers.submit(() -> {
+                    partition.open().values().forEach(carts::load);
+                    return null;
+                }));
+            }
+            for (Future<?> replay : replays) {
+                replay.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying " + directory, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException("Unable to replay " + directory, e.getCause());
+        } finally {
+            replayers.shutdown();
+        }
+    }
+
+    // runs on the snapshot thread, so snapshots of a partition are taken one at a time
+    private void snapshot(Partition partition, long upTo) {
+        long start = System.nanoTime();
+        try {
+            Map<String, ShoppingCart> state = new LinkedHashMap<>();
+            long from = readSnapshot(partition.directory, (record, offset) -> apply(record, state, null));
+            if (from >= upTo) {
+                return;
+            }
+            for (Path segment : listFiles(partition.directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                long sequence = sequenceOf(segment, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+                if (sequence >= from && sequence < upTo) {
+                    scan(segment, (record, offset) -> apply(record, state, null));
+                }
+            }
+            Path snapshot = partition.directory.resolve(fileName(SNAPSHOT_PREFIX, upTo, SNAPSHOT_SUFFIX));
+            Path temporary = partition.directory.resolve(snapshot.getFileName() + ".tmp");
+            RecordWriter writer = new RecordWriter(codec);
+            Map<String, RecordLocation> written = new HashMap<>();
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                long offset = 0;
+                for (ShoppingCart sc : state.values()) {
+                    writer.begin(EVENT_CART_STORED, sc.getId());
+                    writer.putCart(sc);
+                    int size = writer.writeTo(out);
+                    written.put(sc.getId(), new RecordLocation(true, upTo, offset, size - HEADER_SIZE));
+                    offset += size;
+                }
+                out.force(true);
+            }
+            // under the lock, so carts being rebuilt from disk see either the old files or the new ones
+            partition.lock.lock();
+            try {
+                Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+                written.forEach((cartId, location) -> partition.indexSnapshot(cartId, location, upTo));
+                deleteBefore(partition.directory, upTo);
+            } finally {
+                partition.lock.unlock();
+            }
+            snapshots.increment();
+            LOG.debug("Snapshot of {} carts in {} up to segment {} took {} ms", state.size(), partition.directory, upTo,
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to snapshot " + partition.directory + " up to segment " + upTo, e);
+        }
+    }
+
+    /**
+     * Hands every record of the latest snapshot of a partition to {@code action}.
+     *
+     * @return the sequence of the first segment not included in the snapshot, 1 if there is none
+     */
+    private static long readSnapshot(Path partitionDirectory, ObjLongConsumer<ByteBuffer> action) throws IOException {
+        List<Path> snapshotFiles = listFiles(partitionDirectory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (snapshotFiles.isEmpty()) {
+            return 1;
+        }
+        Path latest = snapshotFiles.get(snapshotFiles.size() - 1);
+        scan(latest, action);
+        return sequenceOf(latest, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+    }
+
+    /**
+     * Deletes the snapshots and segments of a partition that come before the
+     * snapshot up to {@code upTo}.
+     */
+    private static void deleteBefore(Path partitionDirectory, long upTo) throws IOException {
+        for (Path older : listFiles(partitionDirectory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (sequenceOf(older, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX) < upTo) {
+                Files.delete(older);
+            }
+        }
+        for (Path sealed : listFiles(partitionDirectory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (sequenceOf(sealed, SEGMENT_PREFIX, SEGMENT_SUFFIX) < upTo) {
+                Files.delete(sealed);
+            }
+        }
+    }
+
+    /**
+     * Hands every valid record of the file to {@code action}, positioned
+     * after the header, with the offset of the record in the file.
+     *
+     * @return the length of the valid part of the file
+     */
+    private static long scan(Path file, ObjLongConsumer<ByteBuffer> action) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        CRC32 crc = new CRC32();
+        int position = 0;
+        while (position + HEADER_SIZE < buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > buffer.limit()) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.array(), position + HEADER_SIZE, length);
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                break;
+            }
+            buffer.limit(position + HEADER_SIZE + length).position(position + HEADER_SIZE);
+            action.accept(buffer.slice(), position);
+            buffer.limit(buffer.capacity());
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    // records of carts other than only are skipped, unless it is null
+    private void apply(ByteBuffer record, Map<String, ShoppingCart> state, String only) {
+        byte type = record.get();
+        getVarLong(record);
+        String cartId = getString(record);
+        if (only != null && !only.equals(cartId)) {
+            return;
+        }
+        switch (type) {
+        case EVENT_ITEM_CHANGED:
+            applyItemChange(state.computeIfAbsent(cartId, EventSourcedCartRepository::newCart), record);
+            break;
+        case EVENT_CART_STORED:
+            state.put(cartId, codec.decode(record));
+            break;
+        case EVENT_CHECKED_OUT:
+        case EVENT_DELETED:
+            state.remove(cartId);
+            break;
+        default:
+            throw new IllegalStateException("Unknown cart event type " + type);
+        }
+    }
+
+    private static void applyItemChange(ShoppingCart sc, ByteBuffer in) {
+        String itemId = getString(in);
+        int quantityDelta = (int) getSignedVarLong(in);
+        Product product = null;
+        if ((in.get() & FLAG_PRODUCT) != 0) {
+            product = decodeProduct(itemId, in);
+        }
+        long price = getSignedVarLong(in);
+        long promoSavings = getSignedVarLong(in);
+        ShoppingCartItem sci = sc.findShoppingCartItem(itemId);
+        int quantity = ((sci != null) ? sci.getQuantity() : 0) + quantityDelta;
+        if (quantity <= 0) {
+            if (sci != null) {
+                sc.removeShoppingCartItem(sci);
+            }
+        } else if (sci == null) {
+            sci = new ShoppingCartItem();
+            if (product == null) {
+                // the line was added before the start of the history that was kept
+                product = new Product();
+                product.setItemId(itemId);
+            }
+            sci.setProduct(product);
+            sci.setQuantity(quantity);
+            sci.setPriceCents(price);
+            sci.setPromoSavingsCents(promoSavings);
+            sc.addShoppingCartItem(sci);
+        } else {
+            sci.setQuantity(quantity);
+            sci.setPriceCents(price);
+            sci.setPromoSavingsCents(promoSavings);
+        }
+        decodeTotals(sc, in);
+    }
+
+    private static Product decodeProduct(String itemId, ByteBuffer in) {
+        Product product = new Product();
+        product.setItemId(itemId);
+        product.setName(getString(in));
+        product.setDesc(getString(in));
+        product.setPrice(Money.fromMinorUnits(getSignedVarLong(in)));
+        return product;
+    }
+
+    private static void decodeTotals(ShoppingCart sc, ByteBuffer in) {
+        sc.setCartItemTotalCents(getSignedVarLong(in));
+        sc.setCartItemPromoSavingsCents(getSignedVarLong(in));
+        sc.setShippingTotalCents(getSignedVarLong(in));
+        sc.setShippingPromoSavingsCents(getSignedVarLong(in));
+        sc.setCartTotalCents(getSignedVarLong(in));
+    }
+
+    private static CartEvent decodeEvent(ByteBuffer record) {
+        byte type = record.get();
+        long timestamp = getVarLong(record);
+        String cartId = getString(record);
+        if (type != EVENT_ITEM_CHANGED) {
+            return new CartEvent(EVENT_TYPES[type], cartId, null, 0, timestamp);
+        }
+        String itemId = getString(record);
+        return new CartEvent(CartEvent.Type.ITEM_CHANGED, cartId, itemId, (int) getSignedVarLong(record), timestamp);
+    }
+
+    private static ShoppingCart newCart(String cartId) {
+        ShoppingCart sc = new ShoppingCart();
+        sc.setId(cartId);
+        return sc;
+    }
+
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long getSignedVarLong(ByteBuffer in) {
+        long n = getVarLong(in);
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = (int) getVarLong(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    private static List<Path> listFiles(Path directory, String prefix, String suffix) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static String fileName(String prefix, long sequence, String suffix) {
+        return String.format("%s%08d%s", prefix, sequence, suffix);
+    }
+
+    private static long sequenceOf(Path path, String prefix, String suffix) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+    }
+
+    /**
+     * Encodes one record at a time into a reusable buffer.
+     */
+    private static class RecordWriter {
+
+        private final ShoppingCartCodec codec;
+
+        private final CRC32 crc = new CRC32();
+
+        private ByteBuffer scratch = ByteBuffer.allocate(1024);
+
+        RecordWriter(ShoppingCartCodec codec) {
+            this.codec = codec;
+        }
+
+        void begin(byte type, String cartId) {
+            scratch.clear();
+            scratch.position(HEADER_SIZE);
+            putByte(type);
+            putVarLong(System.currentTimeMillis());
+            putString(cartId);
+        }
+
+        void putCart(ShoppingCart sc) {
+            while (true) {
+                try {
+                    codec.encode(sc, scratch);
+                    return;
+                } catch (BufferOverflowException e) {
+                    ensureCapacity(scratch.capacity());
+                }
+            }
+        }
+
+        // the product is only recorded with the change that added the line
+        void putItemChange(ShoppingCart sc, ShoppingCartItem sci, int quantityDelta) {
+            Product product = sci.getProduct();
+            boolean added = quantityDelta > 0 && sci.getQuantity() == quantityDelta;
+            putString(product.getItemId());
+            putSignedVarLong(quantityDelta);
+            putByte((byte) (added ? FLAG_PRODUCT : 0));
+            if (added) {
+                putString(product.getName());
+                putString(product.getDesc());
+                putSignedVarLong(Money.toMinorUnits(product.getPrice()));
+            }
+            putSignedVarLong(sci.getPriceCents());
+            putSignedVarLong(sci.getPromoSavingsCents());
+            putTotals(sc);
+        }
+
+        /**
+         * Frames the record and writes it at the position of the channel.
+         *
+         * @return the size of the record
+         */
+        int writeTo(FileChannel out) throws IOException {
+            int length = scratch.position() - HEADER_SIZE;
+            crc.reset();
+            crc.update(scratch.array(), HEADER_SIZE, length);
+            scratch.putInt(0, length);
+            scratch.putInt(4, (int) crc.getValue());
+            scratch.flip();
+            while (scratch.hasRemaining()) {
+                out.write(scratch);
+            }
+            return HEADER_SIZE + length;
+        }
+
+        int size() {
+            return scratch.position();
+        }
+
+        private void putTotals(ShoppingCart sc) {
+            putSignedVarLong(sc.getCartItemTotalCents());
+            putSignedVarLong(sc.getCartItemPromoSavingsCents());
+            putSignedVarLong(sc.getShippingTotalCents());
+            putSignedVarLong(sc.getShippingPromoSavingsCents());
+            putSignedVarLong(sc.getCartTotalCents());
+        }
+
+        private void putByte(byte b) {
+            ensureCapacity(1);
+            scratch.put(b);
+        }
+
+        private void putVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                scratch.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            scratch.put((byte) value);
+        }
+
+        private void putSignedVarLong(long value) {
+            putVarLong((value << 1) ^ (value >> 63));
+        }
+
+        // the length is stored plus one, so that 0 stands for null
+        private void putString(String s) {
+            if (s == null) {
+                putVarLong(0);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            putVarLong(bytes.length + 1);
+            ensureCapacity(bytes.length);
+            scratch.put(bytes);
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (scratch.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + bytes));
+                scratch.flip();
+                larger.put(scratch);
+                scratch = larger;
+            }
+        }
+    }
+
+    /**
+     * Where a record is in the files of a partition.
+     */
+    private static final class RecordLocation {
+
+        private final boolean snapshot;
+
+        private final long sequence;
+
+        private final long offset;
+
+        // of the record after its header
+        private final int length;
+
+        RecordLocation(boolean snapshot, long sequence, long offset, int length) {
+            this.snapshot = snapshot;
+            this.sequence = sequence;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        String fileName() {
+            return snapshot ? EventSourcedCartRepository.fileName(SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX)
+                    : EventSourcedCartRepository.fileName(SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX);
+        }
+
+        // whether the record is folded into the snapshot up to upTo
+        boolean before(long upTo) {
+            return sequence < upTo;
+        }
+    }
+
+    private class Partition {
+
+        private final Path directory;
+
+        // the records to read back each cart stored in the files, resident or not; changed under lock
+        private final Map<String, List<RecordLocation>> records = new ConcurrentHashMap<>();
+
+        // everything below is guarded by lock
+        private final Lock lock = new ReentrantLock();
+
+        private final RecordWriter writer = new RecordWriter(codec);
+
+        private FileChannel channel;
+
+        private long sequence;
+
+        private long size;
+
+        Partition(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Replays the latest snapshot and the segments written after it, up
+         * to the first damaged record, and opens the segment holding it for
+         * appending from there. Segments already folded into the snapshot are
+         * deleted.
+         *
+         * @return the live carts of the partition
+         */
+        Map<String, ShoppingCart> open() throws IOException {
+            Files.createDirectories(directory);
+            Map<String, ShoppingCart> state = new HashMap<>();
+            long[] snapshotSequence = { 0 };
+            List<Path> snapshotFiles = listFiles(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            if (!snapshotFiles.isEmpty()) {
+                snapshotSequence[0] = sequenceOf(snapshotFiles.get(snapshotFiles.size() - 1), SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            }
+            long from = readSnapshot(directory, (record, offset) -> {
+                index(new RecordLocation(true, snapshotSequence[0], offset, record.remaining()), record);
+                apply(record, state, null);
+            });
+            replayedEvents.add(state.size());
+            // the last run stopped between writing a snapshot and deleting what it replaced
+            deleteBefore(directory, from);
+            List<Path> tail = new ArrayList<>();
+            long valid = 0;
+            boolean damaged = false;
+            for (Path segment : listFiles(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if (damaged) {
+                    // replaying past a damaged record would apply changes to carts that missed the ones before
+                    Path aside = segment.resolveSibling(segment.getFileName() + "." + System.currentTimeMillis() + ".damaged");
+                    Files.move(segment, aside);
+                    LOG.warn("Set aside {} as {}, it follows a damaged record", segment, aside);
+                    continue;
+                }
+                tail.add(segment);
+                long segmentSequence = sequenceOf(segment, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+                valid = scan(segment, (record, offset) -> {
+                    index(new RecordLocation(false, segmentSequence, offset, record.remaining()), record);
+                    apply(record, state, null);
+                    replayedEvents.increment();
+                });
+                if (valid < Files.size(segment)) {
+                    LOG.warn("Damaged record at offset {} of {}, discarding the rest of the partition", valid, segment);
+                    damaged = true;
+                }
+            }
+            sequence = tail.isEmpty() ? from : sequenceOf(tail.get(tail.size() - 1), SEGMENT_PREFIX, SEGMENT_SUFFIX);
+            channel = openSegment(sequence);
+            channel.truncate(valid);
+            channel.position(valid);
+            size = valid;
+            if (tail.size() > 1) {
+                // the last run stopped before the snapshot of its sealed segments was taken
+                long upTo = sequence;
+                snapshotter.execute(() -> snapshot(this, upTo));
+            }
+            return state;
+        }
+
+        /**
+         * Writes the record encoded with the writer; callers hold the lock.
+         *
+         * @return where the record was written
+         */
+        RecordLocation append() throws IOException {
+            if (size > 0 && size + writer.size() > segmentSize) {
+                roll();
+            }
+            long offset = size;
+            int length = writer.writeTo(channel);
+            size += length;
+            if (syncOnWrite) {
+                channel.force(false);
+            }
+            return new RecordLocation(false, sequence, offset, length - HEADER_SIZE);
+        }
+
+        // the methods below keep the locations of the records of each cart; callers hold the lock, or are opening
+
+        void indexStored(String cartId, RecordLocation location) {
+            List<RecordLocation> locations = new ArrayList<>(4);
+            locations.add(location);
+            records.put(cartId, locations);
+        }
+
+        void indexChanged(String cartId, RecordLocation location) {
+            records.computeIfAbsent(cartId, id -> new ArrayList<>(4)).add(location);
+        }
+
+        /**
+         * Replaces the records of a cart that come before the snapshot up to
+         * {@code upTo} with its record in the snapshot. Carts removed since
+         * the snapshot was taken, or stored again in a later segment, have no
+         * such records and are left as they are.
+         */
+        void indexSnapshot(String cartId, RecordLocation location, long upTo) {
+            List<RecordLocation> locations = records.get(cartId);
+            if (locations == null || locations.isEmpty() || !locations.get(0).before(upTo)) {
+                return;
+            }
+            List<RecordLocation> replaced = new ArrayList<>(4);
+            replaced.add(location);
+            for (RecordLocation later : locations) {
+                if (!later.before(upTo)) {
+                    replaced.add(later);
+                }
+            }
+            records.put(cartId, replaced);
+        }
+
+        private void index(RecordLocation location, ByteBuffer record) {
+            ByteBuffer in = record.duplicate();
+            byte type = in.get();
+            getVarLong(in);
+            String cartId = getString(in);
+            switch (type) {
+            case EVENT_CART_STORED:
+                indexStored(cartId, location);
+                break;
+            case EVENT_ITEM_CHANGED:
+                indexChanged(cartId, location);
+                break;
+            default:
+                records.remove(cartId);
+                break;
+            }
+        }
+
+        void close() throws IOException {
+            lock.lock();
+            try {
+                if (channel != null) {
+                    channel.force(false);
+                    channel.close();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void roll() throws IOException {
+            channel.force(false);
+            channel.close();
+            channel = openSegment(++sequence);
+            size = 0;
+            long upTo = sequence;
+            snapshotter.execute(() -> snapshot(this, upTo));
+        }
+
+        private FileChannel openSegment(long segmentSequence) throws IOException {
+            return FileChannel.open(directory.resolve(fileName(SEGMENT_PREFIX, segmentSequence, SEGMENT_SUFFIX)),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+    }
+
+}
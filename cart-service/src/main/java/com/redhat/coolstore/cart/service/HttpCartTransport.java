@@ -0,0 +1,123 @@
+package com.redhat.coolstore.cart.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.web.client.AsyncRestTemplate;
+
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItemChange;
+
+/**
+ * Transport to cluster members over HTTP. Members are named by their base
+ * URL, for instance {@code http://10.128.0.12:8080}, and handle the calls at
+ * the {@code /cluster/cart} endpoints. Requests are non-blocking and share a
+ * pool of keep-alive connections. The version of a cart is read back from
+ * the entity tag of the response.
+ */
+public class HttpCartTransport implements CartTransport, Closeable {
+
+    private static final String CART_PATH = "/cluster/cart/";
+
+    private final CloseableHttpAsyncClient httpClient;
+
+    private final AsyncRestTemplate restTemplate;
+
+    /**
+     * @param maxPerMember maximum number of connections to a single member
+     */
+    public HttpCartTransport(int maxPerMember, int connectTimeoutMillis, int readTimeoutMillis) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
+                .build();
+        httpClient = HttpAsyncClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .setMaxConnPerRoute(maxPerMember)
+                .setMaxConnTotal(maxPerMember * 16)
+                .build();
+        restTemplate = new AsyncRestTemplate(new HttpComponentsAsyncClientHttpRequestFactory(httpClient));
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> getShoppingCart(String member, String cartId) {
+        return exchange(member + CART_PATH + "{cartId}", HttpMethod.GET, null, ShoppingCart.class, cartId);
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> addToCart(String member, String cartId, String itemId, int quantity) {
+        return exchange(member + CART_PATH + "{cartId}/{itemId}/{quantity}", HttpMethod.POST, null, ShoppingCart.class, cartId, itemId,
+                quantity);
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> removeFromCart(String member, String cartId, String itemId, int quantity) {
+        return exchange(member + CART_PATH + "{cartId}/{itemId}/{quantity}", HttpMethod.DELETE, null, ShoppingCart.class, cartId, itemId,
+                quantity);
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> updateCart(String member, String cartId, List<ShoppingCartItemChange> changes) {
+        return exchange(member + CART_PATH + "{cartId}/items", HttpMethod.POST, changes, ShoppingCart.class, cartId);
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> checkoutShoppingCart(String member, String cartId) {
+        return exchange(member + CART_PATH + "checkout/{cartId}", HttpMethod.POST, null, ShoppingCart.class, cartId);
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> calculateCartPrice(String member, ShoppingCart sc) {
+        return exchange(member + CART_PATH + "price", HttpMethod.POST, sc, ShoppingCart.class);
+    }
+
+    @Override
+    public CompletableFuture<Void> transfer(String member, ShoppingCart sc) {
+        return exchange(member + CART_PATH + "{cartId}", HttpMethod.PUT, sc, Void.class, sc.getId());
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    private <T> CompletableFuture<T> exchange(String url, HttpMethod method, Object body, Class<T> responseType, Object... uriVariables) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        if (body != null) {
+            headers.setContentType(MediaType.APPLICATION_JSON);
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            restTemplate.exchange(url, method, new HttpEntity<>(body, headers), responseType, uriVariables).addCallback(
+                    entity -> result.complete(withVersion(entity.getBody(), entity.getHeaders().getETag())),
+                    result::completeExceptionally);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    private static <T> T withVersion(T body, String eTag) {
+        if (body instanceof ShoppingCart && eTag != null) {
+            try {
+                ((ShoppingCart) body).setVersion(Long.parseLong(eTag.replace("\"", "")));
+            } catch (NumberFormatException e) {
+                // not a version: the cart is left unversioned
+            }
+        }
+        return body;
+    }
+
+}
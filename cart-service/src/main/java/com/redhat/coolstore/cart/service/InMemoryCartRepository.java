@@ -0,0 +1,455 @@
+package com.redhat.coolstore.cart.service;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ProductTable;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+/**
+ * Cart repository that keeps carts on the heap, optionally bounded by an idle
+ * TTL, a maximum number of carts and a maximum estimated size in bytes.
+ * <p>
+ * Every entry records when it was last accessed. Reads only update that
+ * timestamp, so they never contend on a shared structure. When the store is
+ * over budget, a clock hand walks the map, samples a few entries and evicts the
+ * least recently used of the sample; idle carts are also removed by a
+ * background sweep. Only one thread evicts at a time, and threads that find
+ * eviction already in progress do not wait for it.
+ * <p>
+ * The ids of the carts holding each item are indexed, so the carts affected
+ * by a catalog change are found without scanning the store. The index of a
+ * cart is updated, with its entry, whenever it is stored or removed; a change
+ * to a single line only updates the index of its item.
+ */
+public class InMemoryCartRepository implements CartRepository, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(InMemoryCartRepository.class);
+
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    private static final long TOUCH_RESOLUTION_MILLIS = 1000;
+
+    private static final int PRODUCT_TABLE_ENTRIES = 100_000;
+
+    public interface EvictionListener {
+
+        void cartEvicted(ShoppingCart sc);
+
+    }
+
+    private final ConcurrentMap<String, Entry> carts = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Set<String>> cartIdsByItemId = new ConcurrentHashMap<>();
+
+    private final long idleTtlMillis;
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    private final LongSupplier clock;
+
+    private final ProductTable productTable;
+
+    private final CartStoreStatistics statistics = new CartStoreStatistics();
+
+    private final List<EvictionListener> evictionListeners = new CopyOnWriteArrayList<>();
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // guarded by evictionLock
+    private Iterator<Entry> clockHand;
+
+    private final ScheduledExecutorService sweeper;
+
+    public InMemoryCartRepository() {
+        this(0, 0, 0, 0);
+    }
+
+    /**
+     * @param idleTtlMillis carts not accessed for this long are evicted, 0 to keep them forever
+     * @param maxEntries maximum number of resident carts, 0 for no limit
+     * @param maxBytes maximum estimated size of the resident carts, 0 for no limit
+     * @param sweepIntervalMillis how often idle carts are looked for
+     */
+    public InMemoryCartRepository(long idleTtlMillis, int maxEntries, long maxBytes, long sweepIntervalMillis) {
+        this(idleTtlMillis, maxEntries, maxBytes, sweepIntervalMillis, new ProductTable(PRODUCT_TABLE_ENTRIES));
+    }
+
+    /**
+     * @param productTable the table the products of stored cart lines are shared through
+     */
+    public InMemoryCartRepository(long idleTtlMillis, int maxEntries, long maxBytes, long sweepIntervalMillis, ProductTable productTable) {
+        this(idleTtlMillis, maxEntries, maxBytes, sweepIntervalMillis, productTable, System::currentTimeMillis);
+    }
+
+    InMemoryCartRepository(long idleTtlMillis, int maxEntries, long maxBytes, long sweepIntervalMillis, LongSupplier clock) {
+        this(idleTtlMillis, maxEntries, maxBytes, sweepIntervalMillis, new ProductTable(PRODUCT_TABLE_ENTRIES), clock);
+    }
+
+    InMemoryCartRepository(long idleTtlMillis, int maxEntries, long maxBytes, long sweepIntervalMillis, ProductTable productTable,
+            LongSupplier clock) {
+        this.idleTtlMillis = idleTtlMillis;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.productTable = productTable;
+        this.clock = clock;
+        if (idleTtlMillis > 0 && sweepIntervalMillis > 0) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "cart-eviction");
+                t.setDaemon(true);
+                return t;
+            });
+            sweeper.scheduleWithFixedDelay(this::evictIdle, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+    }
+
+    @Override
+    public ShoppingCart findById(String cartId) {
+        Entry entry = carts.get(cartId);
+        if (entry == null) {
+            return null;
+        }
+        entry.touch(clock.getAsLong());
+        return entry.cart;
+    }
+
+    @Override
+    public void save(ShoppingCart sc) {
+        load(sc);
+        if (isOverBudget()) {
+            evictToBudget();
+        }
+    }
+
+    /**
+     * Only adjusts the weight, unit count and index of the resident entry
+     * for the line that changed, unless the cart is not the resident instance, which is
+     * then replaced.
+     */
+    @Override
+    public void saveChange(ShoppingCart sc, ShoppingCartItem sci, int quantityDelta) {
+        share(sci);
+        boolean[] changed = new boolean[1];
+        carts.computeIfPresent(sc.getId(), (cartId, entry) -> {
+            if (entry.cart != sc) {
+                return entry;
+            }
+            long weight = entry.weight;
+            long units = entry.units;
+            String itemId = itemId(sci);
+            if (itemId != null) {
+                if (sc.findShoppingCartItem(itemId) == sci) {
+                    if (!entry.lines.containsKey(itemId)) {
+                        long lineWeight = lineWeight(sci);
+                        entry.lines.put(itemId, lineWeight);
+                        entry.weight += lineWeight;
+                        index(itemId, cartId);
+                    }
+                } else {
+                    Long lineWeight = entry.lines.remove(itemId);
+                    if (lineWeight != null) {
+                        entry.weight -= lineWeight;
+                        unindex(itemId, cartId);
+                    }
+                }
+            }
+            entry.units = sc.getUnitCount();
+            statistics.resize(entry.weight - weight, entry.units - units);
+            entry.touch(clock.getAsLong());
+            changed[0] = true;
+            return entry;
+        });
+        if (!changed[0]) {
+            load(sc);
+        }
+        if (isOverBudget()) {
+            evictToBudget();
+        }
+    }
+
+    @Override
+    public void delete(String cartId) {
+        carts.computeIfPresent(cartId, (id, entry) -> {
+            unindex(entry);
+            statistics.removeResident(entry.weight, entry.units);
+            return null;
+        });
+    }
+
+    /**
+     * @return the ids of the resident carts with a line for the item
+     */
+    @Override
+    public Set<String> findCartIdsByItemId(String itemId) {
+        Set<String> cartIds = cartIdsByItemId.get(itemId);
+        return (cartIds == null) ? Collections.emptySet() : Collections.unmodifiableSet(cartIds);
+    }
+
+    @Override
+    public CartStoreStatistics getStatistics() {
+        return statistics;
+    }
+
+    public void addEvictionListener(EvictionListener listener) {
+        evictionListeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    /**
+     * Stores the cart without enforcing the budget, for bulk loads that call
+     * {@link #evictToBudget()} once they are done.
+     */
+    void load(ShoppingCart sc) {
+        for (ShoppingCartItem sci : sc.getShoppingCartItemList()) {
+            share(sci);
+        }
+        Entry entry = new Entry(sc, clock.getAsLong());
+        // the index is updated while the entry is replaced, so it never lags behind a concurrent removal
+        carts.compute(sc.getId(), (cartId, previous) -> {
+            statistics.addResident(entry.weight, entry.units);
+            if (previous != null) {
+                statistics.removeResident(previous.weight, previous.units);
+            }
+            reindex(cartId, previous, entry);
+            return entry;
+        });
+    }
+
+    boolean contains(String cartId) {
+        return carts.containsKey(cartId);
+    }
+
+    @Override
+    public void forEach(Consumer<ShoppingCart> action) {
+        carts.values().forEach(entry -> action.accept(entry.cart));
+    }
+
+    void evictIdle() {
+        if (idleTtlMillis <= 0) {
+            return;
+        }
+        long deadline = clock.getAsLong() - idleTtlMillis;
+        try {
+            for (Entry entry : carts.values()) {
+                if (entry.lastAccess < deadline && evict(entry)) {
+                    statistics.idleEvicted();
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Idle cart sweep failed", e);
+        }
+    }
+
+    void evictToBudget() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            while (isOverBudget()) {
+                Entry victim = sampleLeastRecentlyUsed();
+                if (victim == null) {
+                    return;
+                }
+                if (evict(victim)) {
+                    statistics.sizeEvicted();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private boolean isOverBudget() {
+        return (maxEntries > 0 && carts.size() > maxEntries) || (maxBytes > 0 && statistics.getResidentBytes() > maxBytes);
+    }
+
+    private Entry sampleLeastRecentlyUsed() {
+        int samples = Math.min(EVICTION_SAMPLE_SIZE, carts.size());
+        Entry oldest = null;
+        for (int i = 0; i < samples; i++) {
+            if (clockHand == null || !clockHand.hasNext()) {
+                clockHand = carts.values().iterator();
+                if (!clockHand.hasNext()) {
+                    break;
+                }
+            }
+            Entry candidate = clockHand.next();
+            if (oldest == null || candidate.lastAccess < oldest.lastAccess) {
+                oldest = candidate;
+            }
+        }
+        return oldest;
+    }
+
+    private boolean evict(Entry entry) {
+        boolean[] evicted = new boolean[1];
+        carts.computeIfPresent(entry.cart.getId(), (cartId, current) -> {
+            if (current != entry) {
+                return current;
+            }
+            unindex(entry);
+            statistics.removeResident(entry.weight, entry.units);
+            evicted[0] = true;
+            return null;
+        });
+        if (!evicted[0]) {
+            return false;
+        }
+        for (EvictionListener listener : evictionListeners) {
+            listener.cartEvicted(entry.cart);
+        }
+        return true;
+    }
+
+    // indexes the items of the entry that were not in the previous one, and unindexes those that are gone
+    private void reindex(String cartId, Entry previous, Entry entry) {
+        for (String itemId : entry.lines.keySet()) {
+            if (previous == null || !previous.lines.containsKey(itemId)) {
+                index(itemId, cartId);
+            }
+        }
+        if (previous != null) {
+            for (String itemId : previous.lines.keySet()) {
+                if (!entry.lines.containsKey(itemId)) {
+                    unindex(itemId, cartId);
+                }
+            }
+        }
+    }
+
+    private void unindex(Entry entry) {
+        for (String itemId : entry.lines.keySet()) {
+            unindex(itemId, entry.cart.getId());
+        }
+    }
+
+    private void index(String itemId, String cartId) {
+        // not computeIfAbsent: the set must not be dropped as empty by unindex before the id is added
+        cartIdsByItemId.compute(itemId, (id, cartIds) -> {
+            Set<String> updated = (cartIds == null) ? ConcurrentHashMap.newKeySet() : cartIds;
+            updated.add(cartId);
+            return updated;
+        });
+    }
+
+    private void unindex(String itemId, String cartId) {
+        cartIdsByItemId.computeIfPresent(itemId, (id, cartIds) -> {
+            cartIds.remove(cartId);
+            return cartIds.isEmpty() ? null : cartIds;
+        });
+    }
+
+    /**
+     * Replaces the product of the line with the one shared by other lines.
+     * Callers hold the cart lock, as for any other change to the cart.
+     */
+    private void share(ShoppingCartItem sci) {
+        Product product = sci.getProduct();
+        Product shared = productTable.intern(product);
+        if (shared != product) {
+            sci.setProduct(shared);
+        }
+    }
+
+    private static String itemId(ShoppingCartItem sci) {
+        return (sci.getProduct() != null) ? sci.getProduct().getItemId() : null;
+    }
+
+    /**
+     * Rough heap footprint of a cart, assuming 16 byte object headers and two
+     * bytes per character.
+     */
+    long estimateWeight(ShoppingCart sc) {
+        long weight = cartWeight(sc);
+        for (ShoppingCartItem sci : sc.getShoppingCartItemList()) {
+            weight += lineWeight(sci);
+        }
+        return weight;
+    }
+
+    private static long cartWeight(ShoppingCart sc) {
+        return 112 + stringWeight(sc.getId());
+    }
+
+    private long lineWeight(ShoppingCartItem sci) {
+        long weight = 72;
+        Product product = sci.getProduct();
+        // products shared between lines are not counted against each cart
+        if (product != null && !productTable.isShared(product)) {
+            weight += 40 + stringWeight(product.getItemId()) + stringWeight(product.getName()) + stringWeight(product.getDesc());
+        }
+        return weight;
+    }
+
+    private static long stringWeight(String s) {
+        return (s == null) ? 0 : 40 + 2L * s.length();
+    }
+
+    private class Entry {
+
+        private final ShoppingCart cart;
+
+        // the weight, units and lines are only read and changed while the entry is computed in the map
+
+        private long weight;
+
+        private long units;
+
+        // the weight of the line of each item id in the cart, as indexed
+        private final Map<String, Long> lines = new HashMap<>();
+
+        private volatile long lastAccess;
+
+        Entry(ShoppingCart cart, long now) {
+            this.cart = cart;
+            this.weight = cartWeight(cart);
+            this.units = cart.getUnitCount();
+            for (ShoppingCartItem sci : cart.getShoppingCartItemList()) {
+                long lineWeight = lineWeight(sci);
+                String itemId = itemId(sci);
+                if (itemId != null) {
+                    lines.merge(itemId, lineWeight, Long::sum);
+                }
+                weight += lineWeight;
+            }
+            this.lastAccess = now;
+        }
+
+        void touch(long now) {
+            // skip the volatile write when the timestamp is recent enough, to keep hot carts' cache lines clean
+            if (now - lastAccess >= TOUCH_RESOLUTION_MILLIS) {
+                lastAccess = now;
+            }
+        }
+    }
+
+}
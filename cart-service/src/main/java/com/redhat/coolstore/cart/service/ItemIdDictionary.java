@@ -0,0 +1,182 @@
+package com.redhat.coolstore.cart.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Item ids numbered in the order they were added, so that encoded carts can
+ * refer to an item id by its number. Numbers are never reused or changed,
+ * so carts encoded with a dictionary can be decoded with any later state of
+ * it.
+ * <p>
+ * A dictionary opened on a file adds the item ids it has not seen yet, up to
+ * {@code maxEntries}, and appends each one to the file, forced to disk,
+ * before handing out its number: no stored cart refers to a number the file
+ * does not hold. New item ids are rare once the carts of a catalog have been
+ * stored, so this costs one sync per catalog item. A dictionary built from a
+ * list is fixed.
+ * <p>
+ * File layout: {@code [int length][UTF-8 item id]} per entry. An entry torn
+ * by a crash is cut off when the file is opened; no cart refers to it.
+ */
+public class ItemIdDictionary implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ItemIdDictionary.class);
+
+    private final ConcurrentMap<String, Integer> numbers = new ConcurrentHashMap<>();
+
+    // null for a fixed dictionary
+    private final FileChannel file;
+
+    private final int maxEntries;
+
+    // entries below size; replaced on every addition, so readers that saw a number also see its item id
+    private volatile String[] itemIds;
+
+    // guarded by this
+    private int size;
+
+    // set when the file could not be restored after a failed write, guarded by this
+    private boolean failed;
+
+    /**
+     * A fixed dictionary of the given item ids.
+     */
+    public ItemIdDictionary(List<String> itemIds) {
+        this.file = null;
+        this.maxEntries = itemIds.size();
+        this.itemIds = itemIds.toArray(new String[itemIds.size()]);
+        for (String itemId : itemIds) {
+            numbers.putIfAbsent(itemId, size++);
+        }
+    }
+
+    private ItemIdDictionary(FileChannel file, List<String> itemIds, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.itemIds = itemIds.toArray(new String[Math.max(itemIds.size(), 16)]);
+        for (String itemId : itemIds) {
+            numbers.putIfAbsent(itemId, size++);
+        }
+    }
+
+    /**
+     * Opens the dictionary stored in {@code path}, creating it if needed.
+     *
+     * @param maxEntries the most item ids numbered; other item ids are written in full
+     */
+    public static ItemIdDictionary open(Path path, int maxEntries) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.exists(path) ? Files.readAllBytes(path) : new byte[0]);
+        List<String> itemIds = new ArrayList<>();
+        int valid = 0;
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+            itemIds.add(new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8));
+            buffer.position(buffer.position() + length);
+            valid = buffer.position();
+        }
+        FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        file.truncate(valid);
+        file.position(valid);
+        return new ItemIdDictionary(file, itemIds, maxEntries);
+    }
+
+    /**
+     * @return the number of the item id, added to the dictionary if it can grow, or -1 if it has none
+     */
+    public int numberOf(String itemId) {
+        Integer number = numbers.get(itemId);
+        if (number != null) {
+            return number;
+        }
+        return (file != null) ? add(itemId) : -1;
+    }
+
+    /**
+     * @throws IllegalArgumentException if no item id has that number
+     */
+    public String itemId(int number) {
+        String[] current = itemIds;
+        String itemId = (number >= 0 && number < current.length) ? current[number] : null;
+        if (itemId == null) {
+            throw new IllegalArgumentException("Unknown item id number " + number);
+        }
+        return itemId;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            synchronized (this) {
+                file.close();
+            }
+        }
+    }
+
+    private synchronized int add(String itemId) {
+        Integer number = numbers.get(itemId);
+        if (number != null) {
+            return number;
+        }
+        if (size >= maxEntries || failed) {
+            return -1;
+        }
+        byte[] bytes = itemId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(4 + bytes.length);
+        entry.putInt(bytes.length).put(bytes).flip();
+        long end;
+        try {
+            end = file.position();
+        } catch (IOException e) {
+            LOG.warn("Unable to add item id " + itemId + " to the dictionary", e);
+            return -1;
+        }
+        try {
+            while (entry.hasRemaining()) {
+                file.write(entry);
+            }
+            file.force(false);
+        } catch (IOException e) {
+            // the item id is written in full instead, and the partial entry cut off so later entries stay readable
+            LOG.warn("Unable to add item id " + itemId + " to the dictionary", e);
+            try {
+                file.truncate(end);
+                file.position(end);
+            } catch (IOException truncateFailed) {
+                LOG.warn("Unable to restore the dictionary file, no more item ids are added", truncateFailed);
+                failed = true;
+            }
+            return -1;
+        }
+        String[] grown = itemIds;
+        if (size == grown.length) {
+            grown = Arrays.copyOf(grown, grown.length * 2);
+        }
+        grown[size] = itemId;
+        itemIds = grown;
+        numbers.put(itemId, size);
+        return size++;
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItemChange;
+
+/**
+ * Transport between cluster members running in the same JVM, for tests and
+ * local experiments. Carts are passed by reference, so unlike over HTTP the
+ * caller sees the owner's copy of a cart.
+ */
+public class LocalCartTransport implements CartTransport {
+
+    private final Map<String, ShoppingCartServiceImpl> members = new ConcurrentHashMap<>();
+
+    public void register(String member, ShoppingCartServiceImpl shoppingCartService) {
+        members.put(member, shoppingCartService);
+    }
+
+    /**
+     * Calls to the member fail from now on, as if it had crashed.
+     */
+    public void unregister(String member) {
+        members.remove(member);
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> getShoppingCart(String member, String cartId) {
+        return call(member, service -> CompletableFuture.completedFuture(service.getShoppingCart(cartId)));
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> addToCart(String member, String cartId, String itemId, int quantity) {
+        return call(member, service -> service.addToCartAsync(cartId, itemId, quantity));
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> removeFromCart(String member, String cartId, String itemId, int quantity) {
+        return call(member, service -> CompletableFuture.completedFuture(service.removeFromCart(cartId, itemId, quantity)));
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> updateCart(String member, String cartId, List<ShoppingCartItemChange> changes) {
+        return call(member, service -> service.updateCartAsync(cartId, changes));
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> checkoutShoppingCart(String member, String cartId) {
+        return call(member, service -> service.checkoutShoppingCartAsync(cartId));
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> calculateCartPrice(String member, ShoppingCart sc) {
+        return call(member, service -> CompletableFuture.completedFuture(service.calculateCartPrice(sc)));
+    }
+
+    @Override
+    public CompletableFuture<Void> transfer(String member, ShoppingCart sc) {
+        return call(member, service -> {
+            service.restoreShoppingCart(sc);
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    private <T> CompletableFuture<T> call(String member, Function<ShoppingCartServiceImpl, CompletableFuture<T>> call) {
+        ShoppingCartServiceImpl service = members.get(member);
+        if (service == null) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Unknown cluster member " + member));
+            return failed;
+        }
+        try {
+            return call.apply(service);
+        } catch (RuntimeException e) {
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+}
@@ -0,0 +1,716 @@
+package com.redhat.coolstore.cart.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+/**
+ * Cart repository that survives restarts. Every save appends a binary record
+ * to a memory-mapped segment file, so a write is a copy into the page cache
+ * and never a Java serialization round trip.
+ * <p>
+ * Carts are spread over a fixed number of partitions by cart id. Each
+ * partition is a directory of segment files and has its own lock, so saves of
+ * carts in different partitions never contend.
+ * <p>
+ * Reads are served from an {@link InMemoryCartRepository}. Eviction from it
+ * only bounds what is resident: the location of the latest record of every
+ * cart on disk is kept, and a cart that is not resident is read back from
+ * its segment on its next read. Opening the repository only rebuilds these
+ * locations; carts are decoded when they are first read, so startup time and
+ * heap use do not grow with the number of carts on disk. Only deletions and
+ * checkouts remove carts from disk.
+ * <p>
+ * Record layout: {@code [int length][int crc32][byte type][string cartId][payload]},
+ * where {@code length} covers everything after the checksum and the payload
+ * of a stored cart is its {@link ShoppingCartCodec} encoding, with item ids
+ * numbered by the {@link ItemIdDictionary} kept next to the partitions. The length is
+ * written last, so a record torn by a crash reads as the end of the segment.
+ * When a segment is full a new one is started; if more than half of the bytes
+ * of the partition then belong to overwritten or deleted carts, a background
+ * thread copies the latest record of every cart in the sealed segments into a
+ * compacted file, which replaces them. Saves carry on into the new segment
+ * meanwhile.
+ */
+public class MappedFileCartRepository implements CartRepository, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedFileCartRepository.class);
+
+    private static final String PARTITION_PREFIX = "partition-";
+
+    private static final String SEGMENT_PREFIX = "carts-";
+
+    private static final String COMPACTED_PREFIX = "compacted-";
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final byte RECORD_PUT = 1;
+
+    private static final byte RECORD_DELETE = 2;
+
+    private static final String DICTIONARY_FILE = "item-ids.dict";
+
+    private static final int DICTIONARY_ENTRIES = 1 << 20;
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private final boolean syncOnWrite;
+
+    private final InMemoryCartRepository carts;
+
+    private final ItemIdDictionary dictionary;
+
+    private final ShoppingCartCodec codec;
+
+    private final Partition[] partitions;
+
+    private final ExecutorService compactor;
+
+    private final LongAdder compactions = new LongAdder();
+
+    private final LongAdder reloads = new LongAdder();
+
+    public MappedFileCartRepository(Path directory, int partitionCount, int segmentSize, boolean syncOnWrite) throws IOException {
+        this(directory, partitionCount, segmentSize, syncOnWrite, new InMemoryCartRepository());
+    }
+
+    public MappedFileCartRepository(Path directory, int partitionCount, int segmentSize, boolean syncOnWrite, InMemoryCartRepository carts)
+            throws IOException {
+        this.directory = directory;
+        this.carts = carts;
+        this.segmentSize = segmentSize;
+        this.syncOnWrite = syncOnWrite;
+        Files.createDirectories(directory);
+        int existing = listFiles(directory, PARTITION_PREFIX, "").size();
+        if (existing > 0 && existing != partitionCount) {
+            throw new IllegalStateException(directory + " holds " + existing + " partitions, " + partitionCount + " configured");
+        }
+        dictionary = ItemIdDictionary.open(directory.resolve(DICTIONARY_FILE), DICTIONARY_ENTRIES);
+        codec = new ShoppingCartCodec(dictionary);
+        compactor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cart-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime();
+        partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(directory.resolve(String.format("%s%03d", PARTITION_PREFIX, i)));
+            partitions[i].open();
+        }
+        LOG.info("Found {} carts in {} partitions of {} in {} ms", getStoredCarts(), partitionCount, directory,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Carts that are not resident, because they were evicted from memory or
+     * have not been read since the repository was opened, are read back from
+     * disk and made resident.
+     */
+    @Override
+    public ShoppingCart findById(String cartId) {
+        ShoppingCart sc = carts.findById(cartId);
+        if (sc != null) {
+            return sc;
+        }
+        Partition partition = partitionOf(cartId);
+        // unknown carts are answered without taking the lock
+        if (!partition.locations.containsKey(cartId)) {
+            return null;
+        }
+        partition.lock.lock();
+        try {
+            sc = carts.findById(cartId);
+            Location location = partition.locations.get(cartId);
+            if (sc == null && location != null) {
+                sc = read(location);
+                carts.save(sc);
+                reloads.increment();
+            }
+            return sc;
+        } finally {
+            partition.lock.unlock();
+        }
+    }
+
+    @Override
+    public void save(ShoppingCart sc) {
+        Partition partition = partitionOf(sc.getId());
+        partition.lock.lock();
+        try {
+            partition.append(RECORD_PUT, sc.getId(), sc);
+            carts.save(sc);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to store cart " + sc.getId(), e);
+        } finally {
+            partition.lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the whole cart, as {@link #save(ShoppingCart)} does, but only
+     * updates the resident copy for the line that changed.
+     */
+    @Override
+    public void saveChange(ShoppingCart sc, ShoppingCartItem sci, int quantityDelta) {
+        Partition partition = partitionOf(sc.getId());
+        partition.lock.lock();
+        try {
+            partition.append(RECORD_PUT, sc.getId(), sc);
+            carts.saveChange(sc, sci, quantityDelta);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to store cart " + sc.getId(), e);
+        } finally {
+            partition.lock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(String cartId) {
+        Partition partition = partitionOf(cartId);
+        partition.lock.lock();
+        try {
+            carts.delete(cartId);
+            if (partition.locations.containsKey(cartId)) {
+                partition.append(RECORD_DELETE, cartId, null);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to delete cart " + cartId, e);
+        } finally {
+            partition.lock.unlock();
+        }
+    }
+
+    @Override
+    public CartStoreStatistics getStatistics() {
+        return carts.getStatistics();
+    }
+
+    /**
+     * Only the resident carts are visited.
+     */
+    @Override
+    public void forEach(Consumer<ShoppingCart> action) {
+        carts.forEach(action);
+    }
+
+    @Override
+    public Set<String> findCartIdsByItemId(String itemId) {
+        return carts.findCartIdsByItemId(itemId);
+    }
+
+    /**
+     * @return the number of carts on disk, resident or not
+     */
+    public long getStoredCarts() {
+        long stored = 0;
+        for (Partition partition : partitions) {
+            stored += partition.locations.size();
+        }
+        return stored;
+    }
+
+    public long getCompactions() {
+        return compactions.sum();
+    }
+
+    /**
+     * @return the number of carts read back from disk after they were evicted from memory
+     */
+    public long getReloads() {
+        return reloads.sum();
+    }
+
+    /**
+     * Waits for the compaction in progress, then closes the segments.
+     */
+    @Override
+    public void close() throws IOException {
+        carts.close();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Partition partition : partitions) {
+            partition.close();
+        }
+        dictionary.close();
+    }
+
+    /**
+     * Waits until no compaction is scheduled.
+     */
+    void awaitCompaction() throws InterruptedException, ExecutionException {
+        boolean compacting = true;
+        while (compacting) {
+            compactor.submit(() -> {
+            }).get();
+            compacting = false;
+            for (Partition partition : partitions) {
+                partition.lock.lock();
+                try {
+                    compacting |= partition.compacting;
+                } finally {
+                    partition.lock.unlock();
+                }
+            }
+        }
+    }
+
+    private Partition partitionOf(String cartId) {
+        int h = cartId.hashCode();
+        h ^= (h >>> 16);
+        return partitions[Math.floorMod(h, partitions.length)];
+    }
+
+    // runs on the compaction thread, so compactions are done one at a time
+    private void compact(Partition partition) {
+        long start = System.nanoTime();
+        List<Segment> sealed;
+        partition.lock.lock();
+        try {
+            sealed = new ArrayList<>(partition.segments.subList(0, partition.segments.size() - 1));
+        } finally {
+            partition.lock.unlock();
+        }
+        Segment last = sealed.get(sealed.size() - 1);
+        Path path = partition.directory.resolve(fileName(COMPACTED_PREFIX, last.sequence));
+        Path temporary = partition.directory.resolve(path.getFileName() + ".tmp");
+        boolean done = false;
+        try {
+            // the latest record of each cart in the sealed segments, which are no longer written to
+            Map<String, Location> latest = new LinkedHashMap<>();
+            for (Segment segment : sealed) {
+                scan(segment, (type, cartId, position, size) -> {
+                    if (type == RECORD_PUT) {
+                        latest.put(cartId, new Location(segment, position, size));
+                    } else {
+                        latest.remove(cartId);
+                    }
+                });
+            }
+            Map<String, Integer> positions = new HashMap<>();
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Map.Entry<String, Location> entry : latest.entrySet()) {
+                    Location location = entry.getValue();
+                    if (out.position() + location.size > Integer.MAX_VALUE) {
+                        throw new IOException("Compacted carts of " + partition.directory + " exceed 2 GB");
+                    }
+                    positions.put(entry.getKey(), (int) out.position());
+                    ByteBuffer record = location.record();
+                    while (record.hasRemaining()) {
+                        out.write(record);
+                    }
+                }
+                out.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+            Segment compacted = new Segment(path, last.sequence, (int) Files.size(path));
+            compacted.used = compacted.buffer.capacity();
+            Set<Segment> replaced = Collections.newSetFromMap(new IdentityHashMap<>());
+            replaced.addAll(sealed);
+            partition.lock.lock();
+            try {
+                // carts saved since the compaction started have moved on to the current segment
+                for (Map.Entry<String, Integer> entry : positions.entrySet()) {
+                    Location location = partition.locations.get(entry.getKey());
+                    if (location != null && replaced.contains(location.segment)) {
+                        partition.locations.put(entry.getKey(), new Location(compacted, entry.getValue(), location.size));
+                    }
+                }
+                partition.segments.removeAll(replaced);
+                partition.segments.add(0, compacted);
+                partition.writtenBytes = 0;
+                for (Segment segment : partition.segments) {
+                    partition.writtenBytes += segment.used;
+                }
+            } finally {
+                partition.lock.unlock();
+            }
+            // the compacted file covers them, so a crash from here on leaves leftovers that are deleted when reopening
+            for (Segment segment : sealed) {
+                segment.close();
+                Files.delete(segment.path);
+            }
+            compactions.increment();
+            done = true;
+            LOG.debug("Compacted {} segments of {} into {} carts in {} ms", sealed.size(), partition.directory, positions.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Unable to compact " + partition.directory + " up to segment " + last.sequence, e);
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // left for the next compaction to overwrite
+            }
+        } finally {
+            partition.lock.lock();
+            try {
+                partition.compacting = false;
+                // segments sealed meanwhile are compacted right away; after a failure, on the next roll
+                if (done) {
+                    partition.compactIfWasteful();
+                }
+            } finally {
+                partition.lock.unlock();
+            }
+        }
+    }
+
+    private ShoppingCart read(Location location) {
+        ByteBuffer record = location.record();
+        record.position(record.position() + HEADER_SIZE + 1);
+        getString(record);
+        return codec.decode(record);
+    }
+
+    /**
+     * Hands the type, cart id, position and size of every valid record of the
+     * segment to {@code consumer}.
+     *
+     * @return the length of the valid part of the segment
+     */
+    private static int scan(Segment segment, RecordConsumer consumer) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        CRC32 crc = new CRC32();
+        int position = 0;
+        while (position + HEADER_SIZE < buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > buffer.limit()) {
+                break;
+            }
+            buffer.limit(position + HEADER_SIZE + length).position(position + HEADER_SIZE);
+            ByteBuffer record = buffer.slice();
+            buffer.limit(buffer.capacity());
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                LOG.warn("Corrupt record at offset {} of {}, ignoring the rest of the segment", position, segment.path);
+                break;
+            }
+            byte type = record.get();
+            consumer.accept(type, getString(record), position, HEADER_SIZE + length);
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static List<Path> listFiles(Path directory, String prefix, String suffix) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    private static String fileName(String prefix, long sequence) {
+        return String.format("%s%08d%s", prefix, sequence, SEGMENT_SUFFIX);
+    }
+
+    private static long sequenceOf(Path path, String prefix) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(prefix.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private interface RecordConsumer {
+
+        void accept(byte type, String cartId, int position, int size);
+
+    }
+
+    private class Partition {
+
+        private final Path directory;
+
+        private final Lock lock = new ReentrantLock();
+
+        // the latest record of every cart on disk; changed under the lock, read without it
+        private final ConcurrentMap<String, Location> locations = new ConcurrentHashMap<>();
+
+        // everything below is guarded by lock
+
+        // oldest first, the compacted segment if any, then the one written to
+        private final List<Segment> segments = new ArrayList<>();
+
+        private final CRC32 crc = new CRC32();
+
+        private ByteBuffer scratch = ByteBuffer.allocate(4096);
+
+        private Segment current;
+
+        private long liveBytes;
+
+        private long writtenBytes;
+
+        private boolean compacting;
+
+        Partition(Path directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Replays the compacted segment and the segments written after it,
+         * to find the latest record of every cart; no cart is decoded. Files
+         * left over by a compaction interrupted after it was complete are
+         * deleted.
+         */
+        void open() throws IOException {
+            Files.createDirectories(directory);
+            List<Path> compactedFiles = listFiles(directory, COMPACTED_PREFIX, SEGMENT_SUFFIX);
+            long compactedUpTo = 0;
+            if (!compactedFiles.isEmpty()) {
+                Path latest = compactedFiles.get(compactedFiles.size() - 1);
+                compactedUpTo = sequenceOf(latest, COMPACTED_PREFIX);
+                replay(new Segment(latest, compactedUpTo, (int) Files.size(latest)));
+                for (Path older : compactedFiles.subList(0, compactedFiles.size() - 1)) {
+                    Files.delete(older);
+                }
+            }
+            for (Path path : listFiles(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                long sequence = sequenceOf(path, SEGMENT_PREFIX);
+                if (sequence <= compactedUpTo) {
+                    Files.delete(path);
+                } else {
+                    replay(new Segment(path, sequence, (int) Math.max(Files.size(path), segmentSize)));
+                }
+            }
+            Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (last == null || last.sequence == compactedUpTo) {
+                current = openSegment(compactedUpTo + 1);
+            } else {
+                current = last;
+                current.buffer.position(current.used);
+            }
+        }
+
+        // callers hold the lock
+        void append(byte type, String cartId, ShoppingCart sc) throws IOException {
+            scratch.clear();
+            putByte(type);
+            putString(cartId);
+            if (type == RECORD_PUT) {
+                encodeCart(sc);
+            }
+            scratch.flip();
+            int length = scratch.remaining();
+            int recordSize = HEADER_SIZE + length;
+            if (recordSize > segmentSize) {
+                throw new IllegalStateException("Cart " + cartId + " needs " + recordSize + " bytes, segment size is " + segmentSize);
+            }
+            if (current.buffer.remaining() < recordSize) {
+                roll();
+            }
+            crc.reset();
+            crc.update(scratch.duplicate());
+            MappedByteBuffer buffer = current.buffer;
+            int position = buffer.position();
+            buffer.position(position + HEADER_SIZE);
+            buffer.put(scratch);
+            buffer.putInt(position + 4, (int) crc.getValue());
+            buffer.putInt(position, length);
+            if (syncOnWrite) {
+                buffer.force();
+            }
+            current.used = buffer.position();
+            track(type, cartId, new Location(current, position, recordSize));
+        }
+
+        void close() throws IOException {
+            lock.lock();
+            try {
+                for (Segment segment : segments) {
+                    segment.close();
+                }
+                segments.clear();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // callers hold the lock
+        void compactIfWasteful() {
+            if (!compacting && segments.size() > 2 && writtenBytes - liveBytes > liveBytes) {
+                compacting = true;
+                try {
+                    compactor.execute(() -> compact(this));
+                } catch (RuntimeException e) {
+                    // the repository is being closed
+                    compacting = false;
+                }
+            }
+        }
+
+        private void replay(Segment segment) {
+            segments.add(segment);
+            segment.used = scan(segment, (type, cartId, position, size) -> track(type, cartId, new Location(segment, position, size)));
+        }
+
+        private void track(byte type, String cartId, Location location) {
+            Location previous = (type == RECORD_PUT) ? locations.put(cartId, location) : locations.remove(cartId);
+            if (previous != null) {
+                liveBytes -= previous.size;
+            }
+            if (type == RECORD_PUT) {
+                liveBytes += location.size;
+            }
+            writtenBytes += location.size;
+        }
+
+        private void roll() throws IOException {
+            current.buffer.force();
+            current = openSegment(current.sequence + 1);
+            compactIfWasteful();
+        }
+
+        private Segment openSegment(long sequence) throws IOException {
+            Segment segment = new Segment(directory.resolve(fileName(SEGMENT_PREFIX, sequence)), sequence, segmentSize);
+            segments.add(segment);
+            return segment;
+        }
+
+        private void encodeCart(ShoppingCart sc) {
+            while (true) {
+                try {
+                    codec.encode(sc, scratch);
+                    return;
+                } catch (BufferOverflowException e) {
+                    ensureCapacity(scratch.capacity());
+                }
+            }
+        }
+
+        private void putByte(byte b) {
+            ensureCapacity(1);
+            scratch.put(b);
+        }
+
+        private void putInt(int i) {
+            ensureCapacity(4);
+            scratch.putInt(i);
+        }
+
+        private void putString(String s) {
+            if (s == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensureCapacity(bytes.length);
+            scratch.put(bytes);
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (scratch.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(scratch.capacity() * 2, scratch.position() + bytes));
+                scratch.flip();
+                larger.put(scratch);
+                scratch = larger;
+            }
+        }
+    }
+
+    private static final class Location {
+
+        private final Segment segment;
+
+        private final int position;
+
+        private final int size;
+
+        Location(Segment segment, int position, int size) {
+            this.segment = segment;
+            this.position = position;
+            this.size = size;
+        }
+
+        // the record, header included, from a buffer of its own
+        ByteBuffer record() {
+            ByteBuffer record = segment.buffer.duplicate();
+            record.limit(position + size).position(position);
+            return record;
+        }
+    }
+
+    private static class Segment {
+
+        private final Path path;
+
+        private final long sequence;
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buffer;
+
+        // end of the last record, guarded by the lock of the partition
+        private int used;
+
+        Segment(Path path, long sequence, int size) throws IOException {
+            this.path = path;
+            this.sequence = sequence;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        void close() throws IOException {
+            buffer.force();
+            channel.close();
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import com.redhat.coolstore.cart.model.ShoppingCart;
+
+/**
+ * Small, short-lived cache of carts owned by other cluster members, so that
+ * the reads following a change made through this instance, or repeated reads
+ * of the same cart, do not each cost a call to the owner. A cart changed
+ * through another instance may be seen stale for up to the TTL.
+ */
+public class NearCache {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final long ttlMillis;
+
+    private final int maxEntries;
+
+    private final LongSupplier clock;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public NearCache(long ttlMillis, int maxEntries) {
+        this(ttlMillis, maxEntries, System::currentTimeMillis);
+    }
+
+    NearCache(long ttlMillis, int maxEntries, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the cached cart, or {@code null} if it is not cached or has expired
+     */
+    public ShoppingCart get(String cartId) {
+        Entry entry = entries.get(cartId);
+        if (entry != null && entry.expiresAt <= clock.getAsLong()) {
+            entries.remove(cartId, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.cart;
+    }
+
+    /**
+     * @return {@code sc}
+     */
+    public ShoppingCart put(ShoppingCart sc) {
+        if (ttlMillis > 0 && sc != null) {
+            entries.put(sc.getId(), new Entry(sc, clock.getAsLong() + ttlMillis));
+            if (entries.size() > maxEntries) {
+                evict();
+            }
+        }
+        return sc;
+    }
+
+    public void invalidate(String cartId) {
+        entries.remove(cartId);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = clock.getAsLong();
+            entries.values().removeIf(entry -> entry.expiresAt <= now);
+            Iterator<Entry> it = entries.values().iterator();
+            while (entries.size() > maxEntries && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private static class Entry {
+
+        private final ShoppingCart cart;
+
+        private final long expiresAt;
+
+        Entry(ShoppingCart cart, long expiresAt) {
+            this.cart = cart;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,257 @@
+package com.redhat.coolstore.cart.service;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItemChange;
+
+/**
+ * Cart service of a cluster of cart service instances, each owning the carts
+ * a {@link ConsistentHashRing} of the members assigns to it.
+ * <p>
+ * Calls for a cart this instance owns go to the local
+ * {@link ShoppingCartServiceImpl}; the others are forwarded to the owner, so
+ * the changes of a cart are still serialized by a single instance. Carts
+ * returned by other members are kept in a {@link NearCache} for the reads
+ * that follow.
+ * <p>
+ * When the members change, the carts this instance no longer owns are handed
+ * over to their new owners. The hand-over is repeated at a fixed interval, to
+ * pick up carts created here while members disagreed about who owns what,
+ * and when the instance shuts down, so its carts outlive it.
+ */
+public class PartitionedShoppingCartService implements ShoppingCartService, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PartitionedShoppingCartService.class);
+
+    private final ShoppingCartServiceImpl localService;
+
+    private final CartRepository cartRepository;
+
+    private final ClusterMembership membership;
+
+    private final CartTransport transport;
+
+    private final NearCache nearCache;
+
+    private final int virtualNodes;
+
+    private final ScheduledExecutorService rebalancer;
+
+    private final LongAdder forwardedCalls = new LongAdder();
+
+    private final LongAdder handedOverCarts = new LongAdder();
+
+    private volatile ConsistentHashRing ring;
+
+    /**
+     * @param localService the cart service of this instance, which stores its carts in {@code cartRepository}
+     * @param rebalanceIntervalMillis interval between two hand-overs of the carts owned by other members, 0 for none
+     */
+    public PartitionedShoppingCartService(ShoppingCartServiceImpl localService, CartRepository cartRepository, ClusterMembership membership,
+            CartTransport transport, NearCache nearCache, int virtualNodes, long rebalanceIntervalMillis) {
+        this.localService = localService;
+        this.cartRepository = cartRepository;
+        this.membership = membership;
+        this.transport = transport;
+        this.nearCache = nearCache;
+        this.virtualNodes = virtualNodes;
+        this.rebalancer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cart-rebalance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        membership.addListener(this::membershipChanged);
+        ring = new ConsistentHashRing(membership.getMembers(), virtualNodes);
+        if (rebalanceIntervalMillis > 0) {
+            rebalancer.scheduleWithFixedDelay(this::rebalance, rebalanceIntervalMillis, rebalanceIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public ShoppingCart calculateCartPrice(ShoppingCart sc) {
+        String owner = ownerOf(sc.getId());
+        if (isSelf(owner)) {
+            return localService.calculateCartPrice(sc);
+        }
+        return join(forward(transport.calculateCartPrice(owner, sc)));
+    }
+
+    @Override
+    public ShoppingCart getShoppingCart(String cartId) {
+        String owner = ownerOf(cartId);
+        if (isSelf(owner)) {
+            return localService.getShoppingCart(cartId);
+        }
+        ShoppingCart sc = nearCache.get(cartId);
+        if (sc != null) {
+            return sc;
+        }
+        return join(forward(transport.getShoppingCart(owner, cartId)));
+    }
+
+    @Override
+    public ShoppingCart addToCart(String cartId, String itemId, int quantity) {
+        String owner = ownerOf(cartId);
+        if (isSelf(owner)) {
+            return localService.addToCart(cartId, itemId, quantity);
+        }
+        return join(forward(transport.addToCart(owner, cartId, itemId, quantity)));
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> addToCartAsync(String cartId, String itemId, int quantity) {
+        String owner = ownerOf(cartId);
+        if (isSelf(owner)) {
+            return localService.addToCartAsync(cartId, itemId, quantity);
+        }
+        return forward(transport.addToCart(owner, cartId, itemId, quantity));
+    }
+
+    @Override
+    public ShoppingCart removeFromCart(String cartId, String itemId, int quantity) {
+        String owner = ownerOf(cartId);
+        if (isSelf(owner)) {
+            return localService.removeFromCart(cartId, itemId, quantity);
+        }
+        return join(forward(transport.removeFromCart(owner, cartId, itemId, quantity)));
+    }
+
+    @Override
+    public ShoppingCart updateCart(String cartId, List<ShoppingCartItemChange> changes) {
+        String owner = ownerOf(cartId);
+        if (isSelf(owner)) {
+            return localService.updateCart(cartId, changes);
+        }
+        return join(forward(transport.updateCart(owner, cartId, changes)));
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> updateCartAsync(String cartId, List<ShoppingCartItemChange> changes) {
+        String owner = ownerOf(cartId);
+        if (isSelf(owner)) {
+            return localService.updateCartAsync(cartId, changes);
+        }
+        return forward(transport.updateCart(owner, cartId, changes));
+    }
+
+    @Override
+    public ShoppingCart checkoutShoppingCart(String cartId) {
+        return join(checkoutShoppingCartAsync(cartId));
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> checkoutShoppingCartAsync(String cartId) {
+        String owner = ownerOf(cartId);
+        if (isSelf(owner)) {
+            return localService.checkoutShoppingCartAsync(cartId);
+        }
+        nearCache.invalidate(cartId);
+        forwardedCalls.increment();
+        return transport.checkoutShoppingCart(owner, cartId).whenComplete((sc, e) -> nearCache.invalidate(cartId));
+    }
+
+    /**
+     * Hands the carts stored here but owned by other members over to their
+     * owners. Carts that cannot be handed over are kept, for the next time.
+     *
+     * @return the number of carts handed over
+     */
+    public int rebalance() {
+        ConsistentHashRing current = ring;
+        List<String> strays = new ArrayList<>();
+        cartRepository.forEach(sc -> {
+            if (!isSelf(current.ownerOf(sc.getId()))) {
+                strays.add(sc.getId());
+            }
+        });
+        int handedOver = 0;
+        for (String cartId : strays) {
+            String owner = current.ownerOf(cartId);
+            try {
+                if (localService.handOverShoppingCart(cartId, sc -> join(transport.transfer(owner, sc)))) {
+                    handedOver++;
+                }
+            } catch (RuntimeException e) {
+                LOG.warn("Could not hand cart " + cartId + " over to " + owner, e);
+            }
+        }
+        if (handedOver > 0) {
+            LOG.info("Handed {} of {} carts over to their owners", handedOver, strays.size());
+        }
+        handedOverCarts.add(handedOver);
+        return handedOver;
+    }
+
+    public ConsistentHashRing getRing() {
+        return ring;
+    }
+
+    public long getForwardedCalls() {
+        return forwardedCalls.sum();
+    }
+
+    public long getHandedOverCarts() {
+        return handedOverCarts.sum();
+    }
+
+    /**
+     * Leaves the ring and hands all the carts of this instance over to the
+     * remaining members, if there are any.
+     */
+    @Override
+    public void close() {
+        rebalancer.shutdownNow();
+        List<String> others = new ArrayList<>(ring.getMembers());
+        others.remove(membership.getSelf());
+        if (!others.isEmpty()) {
+            ring = new ConsistentHashRing(others, virtualNodes);
+            rebalance();
+        }
+    }
+
+    private void membershipChanged(List<String> members) {
+        ring = new ConsistentHashRing(members, virtualNodes);
+        // cached carts may have been owned by a member that left, and changed since by their new owner
+        nearCache.clear();
+        if (!rebalancer.isShutdown()) {
+            rebalancer.execute(this::rebalance);
+        }
+    }
+
+    private String ownerOf(String cartId) {
+        return ring.ownerOf(cartId);
+    }
+
+    private boolean isSelf(String member) {
+        return member.equals(membership.getSelf());
+    }
+
+    private CompletableFuture<ShoppingCart> forward(CompletableFuture<ShoppingCart> call) {
+        forwardedCalls.increment();
+        return call.thenApply(nearCache::put);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
@@ -1,9 +1,26 @@
 package com.redhat.coolstore.cart.service;
 
 import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
 
 public interface PriceCalculationService {
 
+    /**
+     * Recomputes the totals of the cart from all of its items.
+     */
     public void priceShoppingCart(ShoppingCart sc);
 
+    /**
+     * Updates the totals of a priced cart after the quantity of one of its
+     * items changed by {@code quantityDelta}, without looking at the other
+     * items.
+     */
+    public void updateShoppingCartPrice(ShoppingCart sc, ShoppingCartItem sci, int quantityDelta);
+
+    /**
+     * @return whether the cart was last priced with other rules than the current ones, or never priced since it
+     * was loaded
+     */
+    public boolean isPricedWithOldRules(ShoppingCart sc);
+
 }
@@ -1,32 +1,121 @@
 package com.redhat.coolstore.cart.service;
 
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.redhat.coolstore.cart.model.Product;
 import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 
+/**
+ * Prices carts in cents, so totals add up exactly whatever the order of the
+ * mutations.
+ * <p>
+ * Promotions and shipping costs come from the {@link PromotionEngine}. A cart
+ * remembers the version of the rules it was priced with; when the rules
+ * changed since, the next update or read reprices the whole cart instead of
+ * only the changed line. Both kinds of pricing are timed.
+ */
 @Component
 public class PriceCalculationServiceImpl implements PriceCalculationService {
 
+    private final PromotionEngine promotionEngine;
+
+    private final Timer fullPricing = pricingTimer("full");
+
+    private final Timer incrementalPricing = pricingTimer("incremental");
+
+    /**
+     * Prices carts with no promotions and the standard shipping tiers.
+     */
+    public PriceCalculationServiceImpl() {
+        this(PromotionEngine.defaults());
+    }
+
+    @Autowired
+    public PriceCalculationServiceImpl(PromotionEngine promotionEngine) {
+        this.promotionEngine = promotionEngine;
+    }
+
     @Override
     public void priceShoppingCart(ShoppingCart sc) {
+        long start = System.nanoTime();
+        CompiledPromotions promotions = promotionEngine.getPromotions();
         // calculate the cartItemTotal
-        sc.setCartItemTotal(sc.getShoppingCartItemList().stream().mapToDouble(sci -> sci.getPrice() * sci.getQuantity()).sum());
-        sc.setShippingTotal(calculateShipping(sc));
-        sc.setCartTotal(sc.getCartItemTotal() + sc.getShippingTotal());
-    }
-
-    private double calculateShipping(ShoppingCart sc) {
-        if (sc.getCartItemTotal() <= 0.0) {
-            return 0.0;
-        } else if (sc.getCartItemTotal() > 0.0 && sc.getCartItemTotal() < 25) {
-            return 2.99;
-        } else if (sc.getCartItemTotal() >= 25.0 && sc.getCartItemTotal() < 49.99) {
-            return 4.99;
-        } else if (sc.getCartItemTotal() >= 50.0 && sc.getCartItemTotal() < 74.99) {
-            return 6.99;
-        } else {
-            return 0;
+        long cartItemTotal = 0;
+        long cartItemPromoSavings = 0;
+        long unitCount = 0;
+        for (ShoppingCartItem sci : sc.getShoppingCartItemList()) {
+            long savings = promotions.itemSavings(itemId(sci), sci.getPriceCents(), sci.getQuantity());
+            sci.setPromoSavingsCents(savings);
+            cartItemTotal += sci.getPriceCents() * sci.getQuantity();
+            cartItemPromoSavings += savings;
+            unitCount += sci.getQuantity();
+        }
+        applyTotals(sc, promotions, cartItemTotal, cartItemPromoSavings);
+        sc.setUnitCount(unitCount);
+        sc.setPricingVersion(promotions.getVersion());
+        fullPricing.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void updateShoppingCartPrice(ShoppingCart sc, ShoppingCartItem sci, int quantityDelta) {
+        CompiledPromotions promotions = promotionEngine.getPromotions();
+        if (sc.getPricingVersion() != promotions.getVersion()) {
+            priceShoppingCart(sc);
+            return;
         }
+        long start = System.nanoTime();
+        // a line removed from the cart keeps its last quantity, but no longer counts
+        int quantity = isInCart(sc, sci) ? sci.getQuantity() : 0;
+        long savings = promotions.itemSavings(itemId(sci), sci.getPriceCents(), quantity);
+        long cartItemPromoSavings = sc.getCartItemPromoSavingsCents() + savings - sci.getPromoSavingsCents();
+        sci.setPromoSavingsCents(savings);
+        applyTotals(sc, promotions, sc.getCartItemTotalCents() + sci.getPriceCents() * quantityDelta, cartItemPromoSavings);
+        sc.unitsChanged(quantityDelta);
+        incrementalPricing.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public boolean isPricedWithOldRules(ShoppingCart sc) {
+        return sc.getPricingVersion() != promotionEngine.getPromotions().getVersion();
+    }
+
+    private void applyTotals(ShoppingCart sc, CompiledPromotions promotions, long cartItemTotal, long cartItemPromoSavings) {
+        long itemsDue = cartItemTotal - cartItemPromoSavings;
+        long shipping = promotions.shipping(itemsDue);
+        long shippingPromoSavings = promotions.shippingSavings(itemsDue, shipping);
+        sc.setCartItemTotalCents(cartItemTotal);
+        sc.setCartItemPromoSavingsCents(cartItemPromoSavings);
+        sc.setShippingTotalCents(shipping - shippingPromoSavings);
+        sc.setShippingPromoSavingsCents(shippingPromoSavings);
+        sc.setCartTotalCents(itemsDue + shipping - shippingPromoSavings);
+    }
+
+    private static boolean isInCart(ShoppingCart sc, ShoppingCartItem sci) {
+        String itemId = itemId(sci);
+        return (itemId != null) ? sc.findShoppingCartItem(itemId) == sci : sc.getShoppingCartItemList().contains(sci);
+    }
+
+    private static String itemId(ShoppingCartItem sci) {
+        Product product = sci.getProduct();
+        return (product != null) ? product.getItemId() : null;
+    }
+
+    private static Timer pricingTimer(String type) {
+        return Timer.builder("cart.pricing")
+                .description("Time to price a cart, in full or for a single changed line")
+                .tag("type", type)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofNanos(1000))
+                .maximumExpectedValue(Duration.ofMillis(100))
+                .register(Metrics.globalRegistry);
     }
 
 }
@@ -0,0 +1,330 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import com.redhat.coolstore.cart.model.Product;
+
+/**
+ * Size-bounded, TTL-based cache of catalog products.
+ * <p>
+ * Concurrent misses for the same item are collapsed into a single load: the
+ * first caller runs the loader and the others wait for its result. Items the
+ * catalog does not know about are cached too, for a shorter time, so repeated
+ * requests for a bad item id do not reach the catalog. Failed loads are not
+ * cached.
+ * <p>
+ * Expired entries are kept until they are replaced, evicted, or have been
+ * expired for longer than the stale limit, so that the last known product
+ * data can still be served while the catalog cannot be reached. When the
+ * cache is full, entries are evicted down to its capacity, least recently
+ * used first as found by sampling a few entries at a time; expired entries
+ * are not dropped just for being expired.
+ * <p>
+ * Loads can be synchronous or asynchronous; both kinds share the same
+ * in-flight loads, so a synchronous caller can wait for a load started by an
+ * asynchronous one and the other way around.
+ */
+public class ProductCache {
+
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, CompletableFuture<Product>> loads = new ConcurrentHashMap<>();
+
+    private final long ttlMillis;
+
+    private final long notFoundTtlMillis;
+
+    private final long maxStaleMillis;
+
+    private final int maxEntries;
+
+    private final LongSupplier clock;
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    // guarded by evictionLock
+    private Iterator<Map.Entry<String, Entry>> clockHand;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder coalescedLoads = new LongAdder();
+
+    private final LongAdder loadFailures = new LongAdder();
+
+    private final LongAdder loadTimeNanos = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder staleHits = new LongAdder();
+
+    public ProductCache(long ttlMillis, long notFoundTtlMillis, int maxEntries) {
+        this(ttlMillis, notFoundTtlMillis, 0, maxEntries);
+    }
+
+    /**
+     * @param maxStaleMillis how long an expired product can still be served by {@link #getStale(String)}, 0 for no limit
+     */
+    public ProductCache(long ttlMillis, long notFoundTtlMillis, long maxStaleMillis, int maxEntries) {
+        this(ttlMillis, notFoundTtlMillis, maxStaleMillis, maxEntries, System::currentTimeMillis);
+    }
+
+    ProductCache(long ttlMillis, long notFoundTtlMillis, int maxEntries, LongSupplier clock) {
+        this(ttlMillis, notFoundTtlMillis, 0, maxEntries, clock);
+    }
+
+    ProductCache(long ttlMillis, long notFoundTtlMillis, long maxStaleMillis, int maxEntries, LongSupplier clock) {
+        this.ttlMillis = ttlMillis;
+        this.notFoundTtlMillis = notFoundTtlMillis;
+        this.maxStaleMillis = maxStaleMillis;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    /**
+     * @return the cached product, or the one returned by {@code loader}; {@code null} if the product does not exist
+     */
+    public Product get(String itemId, Function<String, Product> loader) {
+        Entry entry = lookup(itemId);
+        if (entry != null) {
+            hits.increment();
+            return entry.product;
+        }
+        misses.increment();
+        CompletableFuture<Product> load = new CompletableFuture<>();
+        CompletableFuture<Product> inFlight = loads.putIfAbsent(itemId, load);
+        if (inFlight != null) {
+            coalescedLoads.increment();
+            return await(inFlight);
+        }
+        long start = System.nanoTime();
+        try {
+            // another caller may have completed a load between our lookup and putIfAbsent
+            entry = lookup(itemId);
+            Product product = (entry != null) ? entry.product : loader.apply(itemId);
+            put(itemId, product);
+            load.complete(product);
+            return product;
+        } catch (RuntimeException e) {
+            loadFailures.increment();
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadTimeNanos.add(System.nanoTime() - start);
+            loads.remove(itemId, load);
+        }
+    }
+
+    /**
+     * Like {@link #get(String, Function)}, but neither the caller nor the
+     * loader block: the returned future completes when the load does.
+     */
+    public CompletableFuture<Product> getAsync(String itemId, Function<String, CompletableFuture<Product>> loader) {
+        Entry entry = lookup(itemId);
+        if (entry != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(entry.product);
+        }
+        misses.increment();
+        CompletableFuture<Product> load = new CompletableFuture<>();
+        CompletableFuture<Product> inFlight = loads.putIfAbsent(itemId, load);
+        if (inFlight != null) {
+            coalescedLoads.increment();
+            return inFlight;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<Product> loaded;
+        try {
+            // another caller may have completed a load between our lookup and putIfAbsent
+            entry = lookup(itemId);
+            loaded = (entry != null) ? CompletableFuture.completedFuture(entry.product) : loader.apply(itemId);
+        } catch (RuntimeException e) {
+            loaded = new CompletableFuture<>();
+            loaded.completeExceptionally(e);
+        }
+        loaded.whenComplete((product, e) -> {
+            loadTimeNanos.add(System.nanoTime() - start);
+            if (e != null) {
+                loadFailures.increment();
+                load.completeExceptionally((e instanceof CompletionException && e.getCause() != null) ? e.getCause() : e);
+            } else {
+                put(itemId, product);
+                load.complete(product);
+            }
+            loads.remove(itemId, load);
+        });
+        return load;
+    }
+
+    /**
+     * @return the last product loaded for the item id, even if it has expired; {@code null} if there is none, or it
+     * expired longer than the stale limit ago
+     */
+    public Product getStale(String itemId) {
+        Entry entry = entries.get(itemId);
+        if (entry == null || entry.product == null) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        if (isTooStale(entry, now)) {
+            entries.remove(itemId, entry);
+            return null;
+        }
+        entry.touch(now);
+        staleHits.increment();
+        return entry.product;
+    }
+
+    public void invalidate(String itemId) {
+        entries.remove(itemId);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getCoalescedLoads() {
+        return coalescedLoads.sum();
+    }
+
+    public long getLoadFailures() {
+        return loadFailures.sum();
+    }
+
+    public long getLoadTimeNanos() {
+        return loadTimeNanos.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    private Entry lookup(String itemId) {
+        Entry entry = entries.get(itemId);
+        if (entry == null) {
+            return null;
+        }
+        long now = clock.getAsLong();
+        if (entry.expiresAt <= now) {
+            return null;
+        }
+        entry.touch(now);
+        return entry;
+    }
+
+    private boolean isTooStale(Entry entry, long now) {
+        return maxStaleMillis > 0 && entry.expiresAt + maxStaleMillis <= now;
+    }
+
+    private void put(String itemId, Product product) {
+        long ttl = (product != null) ? ttlMillis : notFoundTtlMillis;
+        if (ttl <= 0) {
+            return;
+        }
+        long now = clock.getAsLong();
+        entries.put(itemId, new Entry(product, now + ttl, now));
+        if (entries.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = clock.getAsLong();
+            while (entries.size() > maxEntries) {
+                Map.Entry<String, Entry> victim = sampleLeastRecentlyUsed(now);
+                if (victim == null) {
+                    return;
+                }
+                if (entries.remove(victim.getKey(), victim.getValue())) {
+                    evictions.increment();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    // entries past the stale limit are taken first, as they can no longer be served
+    private Map.Entry<String, Entry> sampleLeastRecentlyUsed(long now) {
+        int samples = Math.min(EVICTION_SAMPLE_SIZE, entries.size());
+        Map.Entry<String, Entry> oldest = null;
+        for (int i = 0; i < samples; i++) {
+            if (clockHand == null || !clockHand.hasNext()) {
+                clockHand = entries.entrySet().iterator();
+                if (!clockHand.hasNext()) {
+                    break;
+                }
+            }
+            Map.Entry<String, Entry> candidate = clockHand.next();
+            if (isTooStale(candidate.getValue(), now)) {
+                return candidate;
+            }
+            if (oldest == null || candidate.getValue().lastAccess < oldest.getValue().lastAccess) {
+                oldest = candidate;
+            }
+        }
+        return oldest;
+    }
+
+    private static Product await(CompletableFuture<Product> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static class Entry {
+
+        private final Product product;
+
+        private final long expiresAt;
+
+        private volatile long lastAccess;
+
+        Entry(Product product, long expiresAt, long now) {
+            this.product = product;
+            this.expiresAt = expiresAt;
+            this.lastAccess = now;
+        }
+
+        void touch(long now) {
+            // skip the volatile write for hits within the same millisecond
+            if (lastAccess != now) {
+                lastAccess = now;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.redhat.coolstore.cart.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Holds the compiled promotion rules and swaps them when the rules file
+ * changes.
+ * <p>
+ * Rules are compiled once per change and replaced in a single write, so
+ * pricing always sees one consistent rule set and never takes a lock. The
+ * file is polled for modifications in the background; when it cannot be read
+ * or compiled, the rules in use are kept.
+ */
+public class PromotionEngine implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PromotionEngine.class);
+
+    private final Path rulesFile;
+
+    private final long reloadIntervalMillis;
+
+    private final ObjectMapper objectMapper;
+
+    private volatile CompiledPromotions promotions = CompiledPromotions.compile(new PromotionRules());
+
+    private final LongAdder reloads = new LongAdder();
+
+    private final LongAdder reloadFailures = new LongAdder();
+
+    private final ReentrantLock lifecycleLock = new ReentrantLock();
+
+    // guarded by lifecycleLock
+    private ScheduledExecutorService reloader;
+
+    // modification time of the last version of the file that was read, guarded by lifecycleLock
+    private long loadedModifiedTime = Long.MIN_VALUE;
+
+    /**
+     * @param rulesFile JSON {@link PromotionRules} definition, {@code null} for the defaults
+     * @param reloadIntervalMillis how often the file is checked for changes, 0 to load it only once
+     */
+    public PromotionEngine(Path rulesFile, long reloadIntervalMillis, ObjectMapper objectMapper) {
+        this.rulesFile = rulesFile;
+        this.reloadIntervalMillis = reloadIntervalMillis;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @return an engine with no promotions and the standard shipping tiers
+     */
+    public static PromotionEngine defaults() {
+        return new PromotionEngine(null, 0, null);
+    }
+
+    /**
+     * Loads the rules file and schedules the checks for changes.
+     */
+    public void start() {
+        lifecycleLock.lock();
+        try {
+            if (rulesFile == null || reloader != null) {
+                return;
+            }
+            reloadIfModified();
+            if (reloadIntervalMillis > 0) {
+                reloader = Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread t = new Thread(r, "promotion-rules");
+                    t.setDaemon(true);
+                    return t;
+                });
+                reloader.scheduleWithFixedDelay(this::reloadIfModified, reloadIntervalMillis, reloadIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    public CompiledPromotions getPromotions() {
+        return promotions;
+    }
+
+    /**
+     * Compiles and installs {@code rules}.
+     *
+     * @throws IllegalArgumentException if the rules are inconsistent, in which case the rules in use are kept
+     */
+    public void update(PromotionRules rules) {
+        promotions = CompiledPromotions.compile(rules);
+        reloads.increment();
+    }
+
+    /**
+     * @return {@code true} if the rules file changed and was loaded
+     */
+    public boolean reloadIfModified() {
+        lifecycleLock.lock();
+        try {
+            long modifiedTime = Files.getLastModifiedTime(rulesFile).toMillis();
+            if (modifiedTime == loadedModifiedTime) {
+                return false;
+            }
+            // a file that fails to load is not retried until it changes again
+            loadedModifiedTime = modifiedTime;
+            update(objectMapper.readValue(rulesFile.toFile(), PromotionRules.class));
+            LOG.info("Loaded {} promotion rules from {}", promotions.getRuleCount(), rulesFile);
+            return true;
+        } catch (NoSuchFileException e) {
+            LOG.debug("No promotion rules at {}", rulesFile);
+            return false;
+        } catch (IOException | RuntimeException e) {
+            reloadFailures.increment();
+            LOG.warn("Could not load the promotion rules from " + rulesFile + ", keeping the current rules: " + e.getMessage());
+            return false;
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+    public long getReloads() {
+        return reloads.sum();
+    }
+
+    public long getReloadFailures() {
+        return reloadFailures.sum();
+    }
+
+    @Override
+    public void close() {
+        lifecycleLock.lock();
+        try {
+            if (reloader != null) {
+                reloader.shutdownNow();
+            }
+        } finally {
+            lifecycleLock.unlock();
+        }
+    }
+
+}
@@ -0,0 +1,193 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Definition of the promotion and shipping rules, as read from the rules file.
+ * Amounts are in the catalog currency and percentages between 0 and 100.
+ * Rules are compiled into {@link CompiledPromotions} before they are used.
+ * <p>
+ * A new definition has no promotions and the standard shipping tiers, which a
+ * rules file only replaces if it lists shipping tiers of its own.
+ */
+public class PromotionRules {
+
+    private List<ItemPromotion> itemPromotions = new ArrayList<>();
+
+    private List<ShippingTier> shippingTiers = new ArrayList<>(Arrays.asList(
+            new ShippingTier(0.01, 25.0, 2.99),
+            new ShippingTier(25.0, 49.99, 4.99),
+            new ShippingTier(50.0, 74.99, 6.99)));
+
+    private List<ShippingPromotion> shippingPromotions = new ArrayList<>();
+
+    public List<ItemPromotion> getItemPromotions() {
+        return itemPromotions;
+    }
+
+    public void setItemPromotions(List<ItemPromotion> itemPromotions) {
+        this.itemPromotions = itemPromotions;
+    }
+
+    public List<ShippingTier> getShippingTiers() {
+        return shippingTiers;
+    }
+
+    public void setShippingTiers(List<ShippingTier> shippingTiers) {
+        this.shippingTiers = shippingTiers;
+    }
+
+    public List<ShippingPromotion> getShippingPromotions() {
+        return shippingPromotions;
+    }
+
+    public void setShippingPromotions(List<ShippingPromotion> shippingPromotions) {
+        this.shippingPromotions = shippingPromotions;
+    }
+
+    /**
+     * Savings on one product, or on every product without a promotion of its
+     * own when the item id is {@code *}: a percentage off the line, buy
+     * {@code buy} get {@code get} free, or both, in which case the larger
+     * saving applies.
+     */
+    public static class ItemPromotion {
+
+        public static final String ANY_ITEM = "*";
+
+        private String itemId;
+
+        private double percentOff;
+
+        private int buy;
+
+        private int get;
+
+        public ItemPromotion() {
+        }
+
+        public ItemPromotion(String itemId, double percentOff, int buy, int get) {
+            this.itemId = itemId;
+            this.percentOff = percentOff;
+            this.buy = buy;
+            this.get = get;
+        }
+
+        public String getItemId() {
+            return itemId;
+        }
+
+        public void setItemId(String itemId) {
+            this.itemId = itemId;
+        }
+
+        public double getPercentOff() {
+            return percentOff;
+        }
+
+        public void setPercentOff(double percentOff) {
+            this.percentOff = percentOff;
+        }
+
+        public int getBuy() {
+            return buy;
+        }
+
+        public void setBuy(int buy) {
+            this.buy = buy;
+        }
+
+        public int getGet() {
+            return get;
+        }
+
+        public void setGet(int get) {
+            this.get = get;
+        }
+    }
+
+    /**
+     * Shipping cost for carts whose total, after item savings, is at least
+     * {@code from} and below {@code below}. Carts outside every tier ship for
+     * free.
+     */
+    public static class ShippingTier {
+
+        private double from;
+
+        private double below;
+
+        private double cost;
+
+        public ShippingTier() {
+        }
+
+        public ShippingTier(double from, double below, double cost) {
+            this.from = from;
+            this.below = below;
+            this.cost = cost;
+        }
+
+        public double getFrom() {
+            return from;
+        }
+
+        public void setFrom(double from) {
+            this.from = from;
+        }
+
+        public double getBelow() {
+            return below;
+        }
+
+        public void setBelow(double below) {
+            this.below = below;
+        }
+
+        public double getCost() {
+            return cost;
+        }
+
+        public void setCost(double cost) {
+            this.cost = cost;
+        }
+    }
+
+    /**
+     * Percentage off shipping for carts whose total, after item savings, is at
+     * least {@code minimumTotal}. When several apply, the largest one wins.
+     */
+    public static class ShippingPromotion {
+
+        private double minimumTotal;
+
+        private double percentOff;
+
+        public ShippingPromotion() {
+        }
+
+        public ShippingPromotion(double minimumTotal, double percentOff) {
+            this.minimumTotal = minimumTotal;
+            this.percentOff = percentOff;
+        }
+
+        public double getMinimumTotal() {
+            return minimumTotal;
+        }
+
+        public void setMinimumTotal(double minimumTotal) {
+            this.minimumTotal = minimumTotal;
+        }
+
+        public double getPercentOff() {
+            return percentOff;
+        }
+
+        public void setPercentOff(double percentOff) {
+            this.percentOff = percentOff;
+        }
+    }
+
+}
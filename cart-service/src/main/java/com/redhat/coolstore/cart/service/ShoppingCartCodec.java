@@ -0,0 +1,378 @@
+package com.redhat.coolstore.cart.service;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.redhat.coolstore.cart.model.Money;
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+/**
+ * Compact binary encoding of carts, for storing carts or sending them to
+ * other instances.
+ * <p>
+ * A cart starts with the format version, followed by tagged fields: each
+ * field is preceded by a varint of its number and wire type, which is a
+ * varint, a length-prefixed UTF-8 string, or a group of fields closed by a
+ * zero tag. Every line of the cart is such a group. Amounts are zigzag
+ * varints of cents and quantities plain varints, so a typical line takes a
+ * few bytes besides its product texts.
+ * <p>
+ * Fields can be added to the format without changing its version: decoders
+ * skip the fields they do not know, and leave the fields missing from older
+ * carts at their default. Field numbers must never be reused. The format
+ * version only changes when old carts can no longer be read.
+ * <p>
+ * Item ids that have a number in the {@link ItemIdDictionary} given to the
+ * codec are written as that number, and decoded as the dictionary's own
+ * string instances; a dictionary stored in a file numbers the item ids it
+ * has not seen yet. Carts must be decoded with a dictionary at least as long
+ * as the one they were encoded with; other item ids are written in full.
+ * <p>
+ * Carts are written to and read from the buffer directly: encoding
+ * allocates nothing, and decoding only the cart itself, plus a copy of each
+ * string when the buffer is not backed by an array. Instances are
+ * thread-safe and can be shared.
+ */
+public class ShoppingCartCodec {
+
+    public static final byte FORMAT_VERSION = 1;
+
+    static final int WIRE_VARINT = 0;
+
+    static final int WIRE_STRING = 1;
+
+    static final int WIRE_GROUP = 2;
+
+    static final int END = 0;
+
+    static final int CART_ID = 1;
+
+    static final int CART_VERSION = 2;
+
+    static final int CART_ITEM_TOTAL = 3;
+
+    static final int CART_ITEM_PROMO_SAVINGS = 4;
+
+    static final int CART_SHIPPING_TOTAL = 5;
+
+    static final int CART_SHIPPING_PROMO_SAVINGS = 6;
+
+    static final int CART_TOTAL = 7;
+
+    static final int CART_ITEM = 8;
+
+    static final int ITEM_ID = 1;
+
+    static final int ITEM_ID_REF = 2;
+
+    static final int ITEM_NAME = 3;
+
+    static final int ITEM_DESC = 4;
+
+    static final int ITEM_PRODUCT_PRICE = 5;
+
+    static final int ITEM_PRICE = 6;
+
+    static final int ITEM_QUANTITY = 7;
+
+    static final int ITEM_PROMO_SAVINGS = 8;
+
+    private final ItemIdDictionary dictionary;
+
+    public ShoppingCartCodec() {
+        this(Collections.<String> emptyList());
+    }
+
+    /**
+     * @param itemIds the item id dictionary
+     */
+    public ShoppingCartCodec(List<String> itemIds) {
+        this(new ItemIdDictionary(itemIds));
+    }
+
+    public ShoppingCartCodec(ItemIdDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Writes the cart at the position of the buffer, and moves the position
+     * past it.
+     *
+     * @throws BufferOverflowException if the cart does not fit in the remaining space of the buffer, which is
+     * then left unchanged
+     */
+    public void encode(ShoppingCart sc, ByteBuffer out) {
+        int start = out.position();
+        try {
+            out.put(FORMAT_VERSION);
+            putString(out, CART_ID, sc.getId());
+            putVarLongField(out, CART_VERSION, sc.getVersion());
+            putSignedField(out, CART_ITEM_TOTAL, sc.getCartItemTotalCents());
+            putSignedField(out, CART_ITEM_PROMO_SAVINGS, sc.getCartItemPromoSavingsCents());
+            putSignedField(out, CART_SHIPPING_TOTAL, sc.getShippingTotalCents());
+            putSignedField(out, CART_SHIPPING_PROMO_SAVINGS, sc.getShippingPromoSavingsCents());
+            putSignedField(out, CART_TOTAL, sc.getCartTotalCents());
+            for (ShoppingCartItem sci : sc.getShoppingCartItemList()) {
+                putTag(out, CART_ITEM, WIRE_GROUP);
+                putItem(out, sci);
+                putVarLong(out, END);
+            }
+            putVarLong(out, END);
+        } catch (BufferOverflowException e) {
+            out.position(start);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the cart at the position of the buffer, and moves the position
+     * past it.
+     *
+     * @throws IllegalArgumentException if the cart was written in a format version this codec cannot read
+     */
+    public ShoppingCart decode(ByteBuffer in) {
+        byte version = in.get();
+        if (version != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported cart format version " + version);
+        }
+        ShoppingCart sc = new ShoppingCart();
+        List<ShoppingCartItem> items = new ArrayList<>();
+        for (int tag = (int) getVarLong(in); tag != END; tag = (int) getVarLong(in)) {
+            switch (tag >>> 2) {
+            case CART_ID:
+                sc.setId(getString(in));
+                break;
+            case CART_VERSION:
+                sc.setVersion(getVarLong(in));
+                break;
+            case CART_ITEM_TOTAL:
+                sc.setCartItemTotalCents(getSignedVarLong(in));
+                break;
+            case CART_ITEM_PROMO_SAVINGS:
+                sc.setCartItemPromoSavingsCents(getSignedVarLong(in));
+                break;
+            case CART_SHIPPING_TOTAL:
+                sc.setShippingTotalCents(getSignedVarLong(in));
+                break;
+            case CART_SHIPPING_PROMO_SAVINGS:
+                sc.setShippingPromoSavingsCents(getSignedVarLong(in));
+                break;
+            case CART_TOTAL:
+                sc.setCartTotalCents(getSignedVarLong(in));
+                break;
+            case CART_ITEM:
+                items.add(getItem(in));
+                break;
+            default:
+                skip(in, tag);
+            }
+        }
+        sc.setShoppingCartItemList(items);
+        return sc;
+    }
+
+    private void putItem(ByteBuffer out, ShoppingCartItem sci) {
+        Product product = sci.getProduct();
+        if (product != null) {
+            String itemId = product.getItemId();
+            int ref = (itemId != null) ? dictionary.numberOf(itemId) : -1;
+            if (ref >= 0) {
+                putTag(out, ITEM_ID_REF, WIRE_VARINT);
+                putVarLong(out, ref);
+            } else {
+                putString(out, ITEM_ID, itemId);
+            }
+            putString(out, ITEM_NAME, product.getName());
+            putString(out, ITEM_DESC, product.getDesc());
+            putSignedField(out, ITEM_PRODUCT_PRICE, Money.toMinorUnits(product.getPrice()));
+        }
+        putSignedField(out, ITEM_PRICE, sci.getPriceCents());
+        putVarLongField(out, ITEM_QUANTITY, sci.getQuantity());
+        putSignedField(out, ITEM_PROMO_SAVINGS, sci.getPromoSavingsCents());
+    }
+
+    private ShoppingCartItem getItem(ByteBuffer in) {
+        ShoppingCartItem sci = new ShoppingCartItem();
+        Product product = null;
+        for (int tag = (int) getVarLong(in); tag != END; tag = (int) getVarLong(in)) {
+            switch (tag >>> 2) {
+            case ITEM_ID:
+                product = product(product);
+                product.setItemId(getString(in));
+                break;
+            case ITEM_ID_REF:
+                product = product(product);
+                product.setItemId(dictionary.itemId((int) getVarLong(in)));
+                break;
+            case ITEM_NAME:
+                product = product(product);
+                product.setName(getString(in));
+                break;
+            case ITEM_DESC:
+                product = product(product);
+                product.setDesc(getString(in));
+                break;
+            case ITEM_PRODUCT_PRICE:
+                product = product(product);
+                product.setPrice(Money.fromMinorUnits(getSignedVarLong(in)));
+                break;
+            case ITEM_PRICE:
+                sci.setPriceCents(getSignedVarLong(in));
+                break;
+            case ITEM_QUANTITY:
+                sci.setQuantity((int) getVarLong(in));
+                break;
+            case ITEM_PROMO_SAVINGS:
+                sci.setPromoSavingsCents(getSignedVarLong(in));
+                break;
+            default:
+                skip(in, tag);
+            }
+        }
+        // set once complete, as lines share products through the product table
+        sci.setProduct(product);
+        return sci;
+    }
+
+    private static Product product(Product product) {
+        return (product == null) ? new Product() : product;
+    }
+
+    private static void skip(ByteBuffer in, int tag) {
+        switch (tag & 3) {
+        case WIRE_VARINT:
+            getVarLong(in);
+            break;
+        case WIRE_STRING:
+            int length = (int) getVarLong(in) - 1;
+            in.position(in.position() + Math.max(length, 0));
+            break;
+        case WIRE_GROUP:
+            for (int nested = (int) getVarLong(in); nested != END; nested = (int) getVarLong(in)) {
+                skip(in, nested);
+            }
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown wire type in tag " + tag);
+        }
+    }
+
+    static void putTag(ByteBuffer out, int field, int wireType) {
+        putVarLong(out, field << 2 | wireType);
+    }
+
+    // zero is the default of every field, so it is not written
+    private static void putVarLongField(ByteBuffer out, int field, long value) {
+        if (value != 0) {
+            putTag(out, field, WIRE_VARINT);
+            putVarLong(out, value);
+        }
+    }
+
+    private static void putSignedField(ByteBuffer out, int field, long value) {
+        putVarLongField(out, field, (value << 1) ^ (value >> 63));
+    }
+
+    static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0;; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static long getSignedVarLong(ByteBuffer in) {
+        long n = getVarLong(in);
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    /**
+     * Writes the UTF-8 bytes of the string one char at a time, so no byte
+     * array is allocated; the length is written first, plus one, so that
+     * {@code null} can be told from the empty string.
+     */
+    static void putString(ByteBuffer out, int field, String s) {
+        if (s == null) {
+            return;
+        }
+        putTag(out, field, WIRE_STRING);
+        int length = s.length();
+        putVarLong(out, utf8Length(s) + 1);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | c >> 6));
+                out.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xF0 | codePoint >> 18));
+                out.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                out.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                out.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogates are replaced, like String.getBytes does
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | c >> 12));
+                out.put((byte) (0x80 | c >> 6 & 0x3F));
+                out.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private static int utf8Length(String s) {
+        int length = s.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x800) {
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    bytes += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            } else if (c >= 0x80) {
+                bytes++;
+            }
+        }
+        return bytes;
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = (int) getVarLong(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        String s;
+        if (in.hasArray()) {
+            s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+}
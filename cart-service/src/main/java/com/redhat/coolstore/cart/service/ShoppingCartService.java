@@ -1,6 +1,10 @@
 package com.redhat.coolstore.cart.service;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItemChange;
 
 public interface ShoppingCartService {
 
@@ -10,8 +14,16 @@ public interface ShoppingCartService {
 
     public ShoppingCart addToCart(String cartId, String itemId, int quantity);
 
+    public CompletableFuture<ShoppingCart> addToCartAsync(String cartId, String itemId, int quantity);
+
     public ShoppingCart removeFromCart(String cartId, String itemId, int quantity);
 
+    public ShoppingCart updateCart(String cartId, List<ShoppingCartItemChange> changes);
+
+    public CompletableFuture<ShoppingCart> updateCartAsync(String cartId, List<ShoppingCartItemChange> changes);
+
     public ShoppingCart checkoutShoppingCart(String cartId);
 
+    public CompletableFuture<ShoppingCart> checkoutShoppingCartAsync(String cartId);
+
 }
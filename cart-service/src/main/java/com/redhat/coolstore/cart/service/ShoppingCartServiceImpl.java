@@ -1,98 +1,477 @@
 package com.redhat.coolstore.cart.service;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import com.redhat.coolstore.cart.model.Money;
 import com.redhat.coolstore.cart.model.Product;
 import com.redhat.coolstore.cart.model.ShoppingCart;
 import com.redhat.coolstore.cart.model.ShoppingCartItem;
+import com.redhat.coolstore.cart.model.ShoppingCartItemChange;
 
+/**
+ * Mutations of a cart are serialized by a lock striped on the cart id, so
+ * concurrent requests for different carts rarely contend. Looking up an
+ * existing cart does not take the lock, since {@link CartRepository}
+ * implementations are thread-safe, but a {@link ShoppingCart} is not: code
+ * reading the lines of a stored cart, such as writing its JSON, holds the
+ * lock returned by {@link #lockFor(String)}.
+ */
 @Component
 public class ShoppingCartServiceImpl implements ShoppingCartService {
 
+    private static final int LOCK_STRIPES = 64;
+
     @Autowired
     private CatalogService catalogService;
 
     @Autowired
     private PriceCalculationService priceCalculationService;
 
-    private Map<String, ShoppingCart> cartDB = new HashMap<>();
+    @Autowired
+    private CartRepository cartRepository;
+
+    @Autowired
+    @Qualifier("cartUpdateExecutor")
+    private Executor cartUpdateExecutor;
+
+    @Autowired(required = false)
+    private CheckoutJournal checkoutJournal;
+
+    @Autowired(required = false)
+    private TrendingItems trendingItems;
+
+    private final Lock[] cartLocks = new Lock[LOCK_STRIPES];
+
+    private final AtomicLong lastVersion = new AtomicLong();
+
+    public ShoppingCartServiceImpl() {
+        for (int i = 0; i < cartLocks.length; i++) {
+            cartLocks[i] = new ReentrantLock();
+        }
+    }
 
     @Override
     public ShoppingCart calculateCartPrice(ShoppingCart sc) {
-        priceCalculationService.priceShoppingCart(sc);
-        cartDB.put(sc.getId(), sc);
-        return sc;
+        Lock lock = lockFor(sc.getId());
+        lock.lock();
+        try {
+            priceCalculationService.priceShoppingCart(sc);
+            newVersion(sc);
+            cartRepository.save(sc);
+            return sc;
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Unknown carts are returned empty but not stored, so reads from crawlers
+     * and probes do not fill the cart store. A cart is stored on its first
+     * mutation.
+     * <p>
+     * Unknown carts have version 0. Carts loaded by a repository that does
+     * not store versions are given one on their first read.
+     * <p>
+     * Carts priced with promotion rules that were replaced since, or not
+     * priced since they were loaded, are repriced on read, so their totals
+     * never lag behind the rules. The cart only gets a new version, and is
+     * only stored again, if its prices changed.
+     */
     @Override
     public ShoppingCart getShoppingCart(String cartId) {
-        ShoppingCart sc = cartDB.get(cartId);
+        ShoppingCart sc = cartRepository.findById(cartId);
         if (sc == null) {
-            sc = new ShoppingCart();
-            sc.setId(cartId);
-            cartDB.put(cartId, sc);
+            return newShoppingCart(cartId);
+        }
+        if (sc.getVersion() == 0 || priceCalculationService.isPricedWithOldRules(sc)) {
+            Lock lock = lockFor(cartId);
+            lock.lock();
+            try {
+                if (priceCalculationService.isPricedWithOldRules(sc)) {
+                    repriceOnRead(sc);
+                }
+                if (sc.getVersion() == 0) {
+                    newVersion(sc);
+                }
+            } finally {
+                lock.unlock();
+            }
         }
         return sc;
     }
 
     @Override
     public ShoppingCart addToCart(String cartId, String itemId, int quantity) {
-        ShoppingCart sc = getShoppingCart(cartId);
         if (quantity <= 0) {
-            return sc;
+            return getShoppingCart(cartId);
         }
-        Product product;
-        product = getProduct(itemId);
-        if (product == null) {
-            return sc;
+        // the catalog call is done before taking the lock, so a slow catalog never blocks other requests for the cart
+        return addProduct(cartId, itemId, getProduct(itemId), quantity);
+    }
+
+    @Override
+    public CompletableFuture<ShoppingCart> addToCartAsync(String cartId, String itemId, int quantity) {
+        if (quantity <= 0) {
+            return CompletableFuture.completedFuture(getShoppingCart(cartId));
         }
-        Optional<ShoppingCartItem> cartItem = sc.getShoppingCartItemList().stream().filter(sci -> sci.getProduct().getItemId().equals(itemId)).findFirst();
-        if (cartItem.isPresent()) {
-            cartItem.get().setQuantity(cartItem.get().getQuantity() + quantity);
-        } else {
-            ShoppingCartItem newCartItem = new ShoppingCartItem();
-            newCartItem.setProduct(product);
-            newCartItem.setQuantity(quantity);
-            newCartItem.setPrice(product.getPrice());
-            sc.addShoppingCartItem(newCartItem);
-        }
-        calculateCartPrice(sc);
-        cartDB.put(sc.getId(), sc);
-        return sc;
+        return updateWhenDone(catalogService.getProductAsync(itemId), product -> addProduct(cartId, itemId, product, quantity));
     }
 
     @Override
     public ShoppingCart removeFromCart(String cartId, String itemId, int quantity) {
-        ShoppingCart sc = getShoppingCart(cartId);
         if (quantity <= 0) {
-            return sc;
+            return getShoppingCart(cartId);
         }
-        Optional<ShoppingCartItem> cartItem = sc.getShoppingCartItemList().stream().filter(sci -> sci.getProduct().getItemId().equals(itemId)).findFirst();
-        if (cartItem.isPresent()) {
-            if (cartItem.get().getQuantity() <= quantity) {
-                sc.removeShoppingCartItem(cartItem.get());
+        Lock lock = lockFor(cartId);
+        lock.lock();
+        try {
+            ShoppingCart sc = getShoppingCart(cartId);
+            ShoppingCartItem cartItem = sc.findShoppingCartItem(itemId);
+            if (cartItem == null) {
+                return sc;
+            }
+            int removed = Math.min(cartItem.getQuantity(), quantity);
+            if (cartItem.getQuantity() <= quantity) {
+                sc.removeShoppingCartItem(cartItem);
             } else {
-                cartItem.get().setQuantity(cartItem.get().getQuantity() - quantity);
+                cartItem.setQuantity(cartItem.getQuantity() - quantity);
             }
+            return updateCartPrice(sc, cartItem, -removed);
+        } finally {
+            lock.unlock();
         }
-        calculateCartPrice(sc);
-        cartDB.put(sc.getId(), sc);
-        return sc;
+    }
+
+    /**
+     * Applies all changes under a single lock and reprices the cart once.
+     * Products are looked up, once per item id, before the lock is taken;
+     * additions of unknown products are ignored, like in
+     * {@link #addToCart(String, String, int)}.
+     */
+    @Override
+    public ShoppingCart updateCart(String cartId, List<ShoppingCartItemChange> changes) {
+        Map<String, Product> products = new HashMap<>();
+        for (String itemId : addedItemIds(changes)) {
+            products.put(itemId, getProduct(itemId));
+        }
+        return applyChanges(cartId, changes, products);
+    }
+
+    /**
+     * Like {@link #updateCart(String, List)}, with all products looked up concurrently.
+     */
+    @Override
+    public CompletableFuture<ShoppingCart> updateCartAsync(String cartId, List<ShoppingCartItemChange> changes) {
+        Map<String, CompletableFuture<Product>> lookups = new HashMap<>();
+        for (String itemId : addedItemIds(changes)) {
+            lookups.put(itemId, catalogService.getProductAsync(itemId));
+        }
+        return updateWhenDone(CompletableFuture.allOf(lookups.values().toArray(new CompletableFuture<?>[0])), done -> {
+            Map<String, Product> products = new HashMap<>();
+            lookups.forEach((itemId, lookup) -> products.put(itemId, lookup.join()));
+            return applyChanges(cartId, changes, products);
+        });
     }
 
     @Override
     public ShoppingCart checkoutShoppingCart(String cartId) {
+        try {
+            return checkoutShoppingCartAsync(cartId).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The cart is removed from the store right away, but the checkout only
+     * completes once its order is in the {@link CheckoutJournal}. If the order
+     * cannot be written, the cart is put back, unless a new one was started in
+     * the meantime. Empty carts are not recorded.
+     */
+    @Override
+    public CompletableFuture<ShoppingCart> checkoutShoppingCartAsync(String cartId) {
+        ShoppingCart sc;
+        Lock lock = lockFor(cartId);
+        lock.lock();
+        try {
+            sc = cartRepository.findById(cartId);
+            cartRepository.checkedOut(cartId);
+        } finally {
+            lock.unlock();
+        }
+        if (checkoutJournal == null || sc == null || sc.getShoppingCartItemList().isEmpty()) {
+            return CompletableFuture.completedFuture(newShoppingCart(cartId));
+        }
+        return checkoutJournal.append(sc).handle((order, e) -> {
+            if (e != null) {
+                restoreShoppingCart(sc);
+                throw (e instanceof CompletionException) ? (CompletionException) e : new CompletionException(e);
+            }
+            return newShoppingCart(cartId);
+        });
+    }
+
+    /**
+     * Lookups that are still running complete on a thread of the HTTP client,
+     * which must not wait for cart locks or the repository, so the cart is
+     * then updated on the cart update executor. Lookups answered from the
+     * cache are already done, and the cart is updated by the request thread.
+     */
+    private <T> CompletableFuture<ShoppingCart> updateWhenDone(CompletableFuture<T> lookup, Function<T, ShoppingCart> update) {
+        return lookup.isDone() ? lookup.thenApply(update) : lookup.thenApplyAsync(update, cartUpdateExecutor);
+    }
+
+    // called under the cart lock
+    private void repriceOnRead(ShoppingCart sc) {
+        long[] before = prices(sc);
+        priceCalculationService.priceShoppingCart(sc);
+        if (!Arrays.equals(before, prices(sc))) {
+            newVersion(sc);
+            cartRepository.save(sc);
+        }
+    }
+
+    // the amounts that depend on the promotion rules
+    private static long[] prices(ShoppingCart sc) {
+        List<ShoppingCartItem> items = sc.getShoppingCartItemList();
+        long[] prices = new long[4 + items.size()];
+        prices[0] = sc.getCartItemPromoSavingsCents();
+        prices[1] = sc.getShippingTotalCents();
+        prices[2] = sc.getShippingPromoSavingsCents();
+        prices[3] = sc.getCartTotalCents();
+        for (int i = 0; i < items.size(); i++) {
+            prices[4 + i] = items.get(i).getPromoSavingsCents();
+        }
+        return prices;
+    }
+
+    private ShoppingCart addProduct(String cartId, String itemId, Product product, int quantity) {
+        if (product == null) {
+            return getShoppingCart(cartId);
+        }
+        ShoppingCart sc;
+        Lock lock = lockFor(cartId);
+        lock.lock();
+        try {
+            sc = getShoppingCart(cartId);
+            ShoppingCartItem cartItem = sc.findShoppingCartItem(itemId);
+            if (cartItem != null) {
+                cartItem.setQuantity(cartItem.getQuantity() + quantity);
+            } else {
+                cartItem = new ShoppingCartItem();
+                cartItem.setProduct(product);
+                cartItem.setQuantity(quantity);
+                cartItem.setPrice(product.getPrice());
+                sc.addShoppingCartItem(cartItem);
+            }
+            updateCartPrice(sc, cartItem, quantity);
+        } finally {
+            lock.unlock();
+        }
+        // counted outside the cart lock
+        added(itemId, quantity);
+        return sc;
+    }
+
+    private void added(String itemId, int quantity) {
+        if (trendingItems != null) {
+            trendingItems.add(itemId, quantity);
+        }
+    }
+
+    private Set<String> addedItemIds(List<ShoppingCartItemChange> changes) {
+        Set<String> itemIds = new LinkedHashSet<>();
+        for (ShoppingCartItemChange change : changes) {
+            if (change.getQuantity() > 0) {
+                itemIds.add(change.getItemId());
+            }
+        }
+        return itemIds;
+    }
+
+    private ShoppingCart applyChanges(String cartId, List<ShoppingCartItemChange> changes, Map<String, Product> products) {
+        ShoppingCart sc;
+        Lock lock = lockFor(cartId);
+        lock.lock();
+        try {
+            sc = getShoppingCart(cartId);
+            boolean changed = false;
+            for (ShoppingCartItemChange change : changes) {
+                ShoppingCartItem cartItem = sc.findShoppingCartItem(change.getItemId());
+                if (change.getQuantity() > 0) {
+                    Product product = products.get(change.getItemId());
+                    if (product == null) {
+                        continue;
+                    }
+                    if (cartItem != null) {
+                        cartItem.setQuantity(cartItem.getQuantity() + change.getQuantity());
+                    } else {
+                        cartItem = new ShoppingCartItem();
+                        cartItem.setProduct(product);
+                        cartItem.setQuantity(change.getQuantity());
+                        cartItem.setPrice(product.getPrice());
+                        sc.addShoppingCartItem(cartItem);
+                    }
+                    changed = true;
+                } else if (change.getQuantity() < 0 && cartItem != null) {
+                    if (cartItem.getQuantity() <= -change.getQuantity()) {
+                        sc.removeShoppingCartItem(cartItem);
+                    } else {
+                        cartItem.setQuantity(cartItem.getQuantity() + change.getQuantity());
+                    }
+                    changed = true;
+                }
+            }
+            if (changed) {
+                calculateCartPrice(sc);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (ShoppingCartItemChange change : changes) {
+            if (change.getQuantity() > 0 && products.get(change.getItemId()) != null) {
+                added(change.getItemId(), change.getQuantity());
+            }
+        }
+        return sc;
+    }
+
+    // callers hold the cart lock
+    private ShoppingCart updateCartPrice(ShoppingCart sc, ShoppingCartItem sci, int quantityDelta) {
+        priceCalculationService.updateShoppingCartPrice(sc, sci, quantityDelta);
+        newVersion(sc);
+        cartRepository.saveChange(sc, sci, quantityDelta);
+        return sc;
+    }
+
+    /**
+     * Stores the cart unless there already is one with the same id, which
+     * is then considered more recent. Used to put back a cart whose checkout
+     * failed, and to take over the carts of other cluster members.
+     *
+     * @return {@code true} if the cart was stored
+     */
+    public boolean restoreShoppingCart(ShoppingCart sc) {
+        Lock lock = lockFor(sc.getId());
+        lock.lock();
+        try {
+            if (cartRepository.findById(sc.getId()) != null) {
+                return false;
+            }
+            cartRepository.save(sc);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the cart once {@code handOver} has stored it elsewhere. The cart
+     * lock is held meanwhile, so the cart cannot change between being handed
+     * over and being deleted; if {@code handOver} throws, the cart is kept.
+     *
+     * @return {@code true} if the cart was handed over
+     */
+    public boolean handOverShoppingCart(String cartId, Consumer<ShoppingCart> handOver) {
+        Lock lock = lockFor(cartId);
+        lock.lock();
+        try {
+            ShoppingCart sc = cartRepository.findById(cartId);
+            if (sc == null) {
+                return false;
+            }
+            handOver.accept(sc);
+            cartRepository.delete(cartId);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the lines of the cart for the given products, keyed by item id,
+     * to the current price of the product and reprices the cart if any of
+     * them changed. Lines keep the name and description they were added with.
+     *
+     * @return {@code true} if the cart was repriced
+     */
+    public boolean repriceShoppingCart(String cartId, Map<String, Product> products) {
+        Lock lock = lockFor(cartId);
+        lock.lock();
+        try {
+            ShoppingCart sc = cartRepository.findById(cartId);
+            if (sc == null) {
+                return false;
+            }
+            boolean changed = false;
+            for (ShoppingCartItem cartItem : sc.getShoppingCartItemList()) {
+                Product current = (cartItem.getProduct() == null) ? null : products.get(cartItem.getProduct().getItemId());
+                if (current != null && Money.toMinorUnits(current.getPrice()) != cartItem.getPriceCents()) {
+                    Product product = new Product();
+                    product.setItemId(cartItem.getProduct().getItemId());
+                    product.setName(cartItem.getProduct().getName());
+                    product.setDesc(cartItem.getProduct().getDesc());
+                    product.setPrice(current.getPrice());
+                    cartItem.setProduct(product);
+                    cartItem.setPrice(current.getPrice());
+                    changed = true;
+                }
+            }
+            if (changed) {
+                calculateCartPrice(sc);
+            }
+            return changed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ShoppingCart newShoppingCart(String cartId) {
         ShoppingCart sc = new ShoppingCart();
         sc.setId(cartId);
-        cartDB.put(sc.getId(), sc);
         return sc;
     }
 
+    /**
+     * Versions are unique across carts and derived from the clock, with room
+     * for a thousand changes per millisecond, so they keep increasing across
+     * checkouts and restarts: an entity tag handed out for earlier content of
+     * a cart never matches its current content. Callers hold the cart lock.
+     */
+    private void newVersion(ShoppingCart sc) {
+        long now = System.currentTimeMillis() * 1000;
+        sc.setVersion(lastVersion.updateAndGet(last -> Math.max(last + 1, now)));
+    }
+
+    /**
+     * @return the lock held while the cart is changed; holding it keeps the cart from changing
+     */
+    public Lock lockFor(String cartId) {
+        int h = cartId.hashCode();
+        h ^= (h >>> 16);
+        return cartLocks[h & (LOCK_STRIPES - 1)];
+    }
+
     private Product getProduct(String itemId) {
         return catalogService.getProduct(itemId);
     }
@@ -0,0 +1,251 @@
+package com.redhat.coolstore.cart.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Approximate number of units of each item added to carts over a sliding
+ * time window, and the items added most.
+ * <p>
+ * Counts are kept in a count-min sketch per time bucket; the window is a ring
+ * of buckets, and a bucket is cleared when it is reused for a new period, so
+ * memory does not grow with the number of items. An estimate sums the live
+ * buckets row by row and takes the smallest row: it may exceed the true count
+ * when items collide, but never falls short of it.
+ * <p>
+ * The most added items are kept in a min-heap, which an add only locks when
+ * the estimate of its item beats the smallest count in the heap, and only if
+ * the lock is free: adds never wait, and the heap may miss the odd increment
+ * of a contended item until its next add.
+ */
+public class TrendingItems {
+
+    private static final long[] ROW_SEEDS = { 0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x27D4EB2F165667C5L, 0x94D049BB133111EBL };
+
+    private static final Comparator<ItemCount> BY_COUNT = Comparator.comparingLong(ItemCount::getCount);
+
+    private final int topSize;
+
+    private final long bucketMillis;
+
+    private final int depth;
+
+    private final int widthBits;
+
+    private final Bucket[] buckets;
+
+    private final LongSupplier clock;
+
+    private final ReentrantLock topLock = new ReentrantLock();
+
+    // guarded by topLock
+    private final PriorityQueue<ItemCount> top;
+
+    // guarded by topLock
+    private final Map<String, ItemCount> topByItemId = new HashMap<>();
+
+    // smallest count in the heap once it is full, 0 until then
+    private volatile long admissionThreshold;
+
+    /**
+     * @param topSize number of items ranked
+     * @param windowMillis length of the sliding window
+     * @param bucketCount number of periods the window is divided into; the window slides by one period at a time
+     * @param width counters per sketch row, rounded up to a power of two
+     * @param depth sketch rows, at most 8
+     */
+    public TrendingItems(int topSize, long windowMillis, int bucketCount, int width, int depth) {
+        this(topSize, windowMillis, bucketCount, width, depth, System::currentTimeMillis);
+    }
+
+    TrendingItems(int topSize, long windowMillis, int bucketCount, int width, int depth, LongSupplier clock) {
+        if (depth < 1 || depth > ROW_SEEDS.length) {
+            throw new IllegalArgumentException("Sketch depth must be between 1 and " + ROW_SEEDS.length + ": " + depth);
+        }
+        this.topSize = topSize;
+        this.bucketMillis = Math.max(1, windowMillis / bucketCount);
+        this.depth = depth;
+        this.widthBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, width - 1));
+        this.buckets = new Bucket[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new Bucket(depth << widthBits);
+        }
+        this.clock = clock;
+        this.top = new PriorityQueue<>(topSize, BY_COUNT);
+    }
+
+    public void add(String itemId, int quantity) {
+        long period = clock.getAsLong() / bucketMillis;
+        Bucket bucket = bucket(period);
+        long hash = hash(itemId);
+        for (int row = 0; row < depth; row++) {
+            bucket.counters.addAndGet(index(hash, row), quantity);
+        }
+        long estimate = estimate(hash, period);
+        if (estimate > admissionThreshold && topLock.tryLock()) {
+            try {
+                offer(itemId, estimate);
+            } finally {
+                topLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the estimated count of the item over the window
+     */
+    public long estimate(String itemId) {
+        return estimate(hash(itemId), clock.getAsLong() / bucketMillis);
+    }
+
+    /**
+     * @return the most added items over the window, most added first
+     */
+    public List<ItemCount> getTop(int limit) {
+        long period = clock.getAsLong() / bucketMillis;
+        List<ItemCount> ranked = new ArrayList<>();
+        topLock.lock();
+        try {
+            refreshTop(period);
+            ranked.addAll(top);
+        } finally {
+            topLock.unlock();
+        }
+        ranked.sort(BY_COUNT.reversed().thenComparing(ItemCount::getItemId));
+        return ranked.subList(0, Math.min(Math.max(limit, 0), ranked.size()));
+    }
+
+    public int getTopSize() {
+        return topSize;
+    }
+
+    private Bucket bucket(long period) {
+        Bucket bucket = buckets[(int) (period % buckets.length)];
+        if (bucket.period != period) {
+            boolean reused = false;
+            synchronized (bucket) {
+                if (bucket.period < period) {
+                    for (int i = 0; i < bucket.counters.length(); i++) {
+                        bucket.counters.set(i, 0);
+                    }
+                    bucket.period = period;
+                    reused = true;
+                }
+            }
+            if (reused) {
+                // counts of the period that left the window no longer hold
+                topLock.lock();
+                try {
+                    refreshTop(period);
+                } finally {
+                    topLock.unlock();
+                }
+            }
+        }
+        return bucket;
+    }
+
+    private long estimate(long hash, long period) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = index(hash, row);
+            long sum = 0;
+            for (Bucket bucket : buckets) {
+                long bucketPeriod = bucket.period;
+                if (bucketPeriod <= period && bucketPeriod > period - buckets.length) {
+                    sum += bucket.counters.get(index);
+                }
+            }
+            estimate = Math.min(estimate, sum);
+        }
+        return estimate;
+    }
+
+    // callers hold topLock
+    private void offer(String itemId, long estimate) {
+        ItemCount current = topByItemId.remove(itemId);
+        if (current != null) {
+            top.remove(current);
+        } else if (top.size() >= topSize) {
+            if (top.peek().getCount() >= estimate) {
+                return;
+            }
+            topByItemId.remove(top.poll().getItemId());
+        }
+        ItemCount updated = new ItemCount(itemId, estimate);
+        top.add(updated);
+        topByItemId.put(itemId, updated);
+        admissionThreshold = (top.size() >= topSize) ? top.peek().getCount() : 0;
+    }
+
+    // callers hold topLock
+    private void refreshTop(long period) {
+        List<ItemCount> items = new ArrayList<>(top);
+        top.clear();
+        topByItemId.clear();
+        for (ItemCount item : items) {
+            long estimate = estimate(hash(item.getItemId()), period);
+            if (estimate > 0) {
+                ItemCount refreshed = new ItemCount(item.getItemId(), estimate);
+                top.add(refreshed);
+                topByItemId.put(item.getItemId(), refreshed);
+            }
+        }
+        admissionThreshold = (top.size() >= topSize) ? top.peek().getCount() : 0;
+    }
+
+    private int index(long hash, int row) {
+        long h = (hash ^ ROW_SEEDS[row]) * 0xBF58476D1CE4E5B9L;
+        return (row << widthBits) | (int) ((h ^ (h >>> 31)) >>> (64 - widthBits));
+    }
+
+    private static long hash(String itemId) {
+        long h = itemId.hashCode() * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    public static final class ItemCount {
+
+        private final String itemId;
+
+        private final long count;
+
+        ItemCount(String itemId, long count) {
+            this.itemId = itemId;
+            this.count = count;
+        }
+
+        public String getItemId() {
+            return itemId;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        @Override
+        public String toString() {
+            return "ItemCount [itemId=" + itemId + ", count=" + count + "]";
+        }
+    }
+
+    private static final class Bucket {
+
+        private final AtomicLongArray counters;
+
+        private volatile long period = -1;
+
+        Bucket(int size) {
+            this.counters = new AtomicLongArray(size);
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.redhat.coolstore.cart;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void newVirtualThreadPerTaskExecutor() throws Exception {
+        boolean supported = System.getProperty("java.specification.version").matches("\\d{2,}")
+                && Integer.parseInt(System.getProperty("java.specification.version")) >= 21;
+        assertThat(VirtualThreads.isSupported(), equalTo(supported));
+        if (!supported) {
+            try {
+                VirtualThreads.newVirtualThreadPerTaskExecutor();
+                fail();
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+            return;
+        }
+        ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        try {
+            String threadName = executor.submit(() -> Thread.currentThread().toString()).get(5, TimeUnit.SECONDS);
+            assertThat(threadName.startsWith("VirtualThread"), equalTo(true));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
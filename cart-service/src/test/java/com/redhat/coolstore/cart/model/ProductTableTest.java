@@ -0,0 +1,101 @@
+package com.redhat.coolstore.cart.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ProductTableTest {
+
+    private static final int CATALOG_SIZE = 1000;
+
+    private final ProductTable productTable = new ProductTable(CATALOG_SIZE);
+
+    @Test
+    public void linesShareEqualProducts() {
+        ShoppingCartItem sci1 = item(product("pt-1", "Red Fedora", 34.99));
+        ShoppingCartItem sci2 = item(product("pt-1", "Red Fedora", 34.99));
+
+        assertThat(sci2.getProduct(), sameInstance(sci1.getProduct()));
+        assertThat(productTable.isShared(sci1.getProduct()), equalTo(true));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void sharedProductsCannotBeChanged() {
+        Product product = product("pt-1", "Red Fedora", 34.99);
+        Product shared = productTable.intern(product);
+
+        product.setPrice(29.99);
+        assertThat(shared.getPrice(), equalTo(34.99));
+        shared.setPrice(29.99);
+    }
+
+    @Test
+    public void fullTableReplacesItemIds() {
+        ProductTable small = new ProductTable(2);
+        small.intern(product("pt-1", "Red Fedora", 34.99));
+        small.intern(product("pt-2", "Forge Laptop Sticker", 8.5));
+        small.intern(product("pt-3", "Oculus Rift", 106.0));
+        assertThat(small.size(), equalTo(2));
+        assertThat(small.getEvictions(), equalTo(1L));
+
+        Product latest = small.intern(product("pt-4", "Red Hat Impact T-shirt", 9.99));
+        assertThat(small.size(), equalTo(2));
+        assertThat(small.getEvictions(), equalTo(2L));
+        assertThat(small.isShared(latest), equalTo(true));
+    }
+
+    @Test
+    public void changedProductsAreNotShared() {
+        ShoppingCartItem sci1 = item(product("pt-2", "Red Fedora", 34.99));
+        ShoppingCartItem sci2 = item(product("pt-2", "Red Fedora", 29.99));
+        ShoppingCartItem sci3 = item(product("pt-2", "Red Fedora", 29.99));
+
+        assertThat(sci2.getProduct(), not(sameInstance(sci1.getProduct())));
+        assertThat(sci1.getProduct().getPrice(), equalTo(34.99));
+        assertThat(sci3.getProduct(), sameInstance(sci2.getProduct()));
+        assertThat(productTable.isShared(sci1.getProduct()), equalTo(false));
+    }
+
+    @Test
+    public void productsWithoutItemIdAreNotShared() {
+        Product product = new Product();
+
+        assertThat(item(product).getProduct(), sameInstance(product));
+        assertThat(productTable.isShared(product), equalTo(false));
+    }
+
+    @Test
+    public void sharedProductsAreWrittenAsBefore() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Product product = product("pt-3", "Red Fedora", 34.99);
+        String json = objectMapper.writeValueAsString(product);
+        ShoppingCart sc = new ShoppingCart();
+        sc.addShoppingCartItem(item(product));
+        sc.addShoppingCartItem(item(objectMapper.readValue(json, Product.class)));
+
+        assertThat(objectMapper.writeValueAsString(sc.getShoppingCartItemList().get(1)),
+                equalTo(objectMapper.writeValueAsString(sc.getShoppingCartItemList().get(0))));
+        assertThat(objectMapper.writeValueAsString(sc.getShoppingCartItemList().get(1).getProduct()), equalTo(json));
+    }
+
+    private static Product product(String itemId, String name, double price) {
+        Product product = new Product();
+        product.setItemId(itemId);
+        product.setName(name);
+        product.setPrice(price);
+        return product;
+    }
+
+    private ShoppingCartItem item(Product product) {
+        ShoppingCartItem sci = new ShoppingCartItem();
+        sci.setProduct(productTable.intern(product));
+        sci.setQuantity(1);
+        return sci;
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.redhat.coolstore.cart.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ShoppingCartTest {
+
+    @Test
+    public void findShoppingCartItem() {
+        ShoppingCart sc = new ShoppingCart();
+        ShoppingCartItem sci1 = item("p1");
+        ShoppingCartItem sci2 = item("p2");
+        sc.addShoppingCartItem(sci1);
+        sc.addShoppingCartItem(sci2);
+
+        assertThat(sc.findShoppingCartItem("p1"), sameInstance(sci1));
+        assertThat(sc.findShoppingCartItem("p2"), sameInstance(sci2));
+        assertThat(sc.findShoppingCartItem("p3"), nullValue());
+
+        sc.removeShoppingCartItem(sci1);
+        assertThat(sc.findShoppingCartItem("p1"), nullValue());
+        assertThat(sc.getShoppingCartItemList(), contains(sci2));
+    }
+
+    @Test
+    public void findShoppingCartItemAfterListIsReplaced() {
+        ShoppingCart sc = new ShoppingCart();
+        sc.addShoppingCartItem(item("p1"));
+        ShoppingCartItem sci = item("p2");
+        sc.setShoppingCartItemList(Arrays.asList(sci));
+
+        assertThat(sc.findShoppingCartItem("p1"), nullValue());
+        assertThat(sc.findShoppingCartItem("p2"), sameInstance(sci));
+
+        sc.resetShoppingCartItemList();
+        assertThat(sc.findShoppingCartItem("p2"), nullValue());
+    }
+
+    @Test
+    public void findShoppingCartItemAddedToTheListDirectly() {
+        ShoppingCart sc = new ShoppingCart();
+        sc.addShoppingCartItem(item("p1"));
+        ShoppingCartItem sci = item("p2");
+        sc.getShoppingCartItemList().add(sci);
+
+        assertThat(sc.findShoppingCartItem("p2"), sameInstance(sci));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void indexIsNotSerialized() throws Exception {
+        ShoppingCart sc = new ShoppingCart();
+        sc.addShoppingCartItem(item("p1"));
+        sc.findShoppingCartItem("p1");
+
+        Map<String, Object> json = new ObjectMapper().convertValue(sc, Map.class);
+
+        assertThat(json.keySet(), containsInAnyOrder("id", "cartItemTotal", "cartItemPromoSavings", "shippingTotal", "shippingPromoSavings", "cartTotal", "shoppingCartItemList"));
+        assertThat(((List<?>) json.get("shoppingCartItemList")).size(), equalTo(1));
+    }
+
+    @Test
+    public void unitsAreCountedUntilTheCountIsKept() {
+        ShoppingCart sc = new ShoppingCart();
+        sc.addShoppingCartItem(item("p1"));
+        sc.addShoppingCartItem(item("p2"));
+        sc.findShoppingCartItem("p2").setQuantity(3);
+
+        assertThat(sc.getUnitCount(), equalTo(4L));
+
+        // the lines already reflect the change when it is counted
+        sc.findShoppingCartItem("p1").setQuantity(2);
+        sc.unitsChanged(1);
+        assertThat(sc.getUnitCount(), equalTo(5L));
+        sc.removeShoppingCartItem(sc.findShoppingCartItem("p2"));
+        sc.unitsChanged(-3);
+        assertThat(sc.getUnitCount(), equalTo(2L));
+
+        sc.setShoppingCartItemList(Arrays.asList(item("p3")));
+        assertThat(sc.getUnitCount(), equalTo(1L));
+    }
+
+    private static ShoppingCartItem item(String itemId) {
+        Product product = new Product();
+        product.setItemId(itemId);
+        ShoppingCartItem sci = new ShoppingCartItem();
+        sci.setProduct(product);
+        sci.setQuantity(1);
+        return sci;
+    }
+
+}
@@ -7,9 +7,14 @@ import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
 
 import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItems;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.isEmptyString;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 
 import java.io.InputStream;
 import java.nio.charset.Charset;
@@ -142,6 +147,24 @@ public class CartEndpointTest {
             .body("shoppingCartItemList.quantity", hasItems(new Integer(2)));
     }
 
+    @Test
+    @DirtiesContext
+    public void updateCartWithSeveralItems() throws Exception {
+
+        given().post("/{cartId}/{itemId}/{quantity}", "789012", "111111", new Integer(3));
+        given().contentType(ContentType.JSON)
+            .body("[{\"itemId\":\"111111\",\"quantity\":-1},{\"itemId\":\"111111\",\"quantity\":4},{\"itemId\":\"unknown\",\"quantity\":1}]")
+            .post("/{cartId}/items", "789012")
+            .then()
+            .assertThat()
+            .statusCode(200)
+            .contentType(ContentType.JSON)
+            .body("id", equalTo("789012"))
+            .body("cartItemTotal", equalTo(new Float(600.0)))
+            .body("shoppingCartItemList", hasSize(1))
+            .body("shoppingCartItemList.quantity", hasItems(new Integer(6)));
+    }
+
     @Test
     @DirtiesContext
     public void checkoutCart() throws Exception {
@@ -157,12 +180,90 @@ public class CartEndpointTest {
             .body("shoppingCartItemList", hasSize(0));
     }
 
+    @Test
+    @DirtiesContext
+    public void retrieveUnchangedCartIsNotModified() throws Exception {
+
+        String eTag = given().post("/{cartId}/{itemId}/{quantity}", "890123", "111111", new Integer(1))
+            .then()
+            .assertThat()
+            .statusCode(200)
+            .header("ETag", notNullValue())
+            .extract().header("ETag");
+
+        given().header("If-None-Match", eTag)
+            .get("/{cartId}", "890123")
+            .then()
+            .assertThat()
+            .statusCode(304)
+            .header("ETag", equalTo(eTag))
+            .body(isEmptyString());
+
+        given().post("/{cartId}/{itemId}/{quantity}", "890123", "111111", new Integer(1));
+        given().header("If-None-Match", eTag)
+            .get("/{cartId}", "890123")
+            .then()
+            .assertThat()
+            .statusCode(200)
+            .header("ETag", not(equalTo(eTag)))
+            .body("shoppingCartItemList.quantity", hasItems(new Integer(2)));
+    }
+
+    @Test
+    @DirtiesContext
+    public void retrieveCartSummary() throws Exception {
+
+        given().post("/{cartId}/{itemId}/{quantity}", "123450", "111111", new Integer(3));
+        String eTag = given().get("/{cartId}/summary", "123450")
+            .then()
+            .assertThat()
+            .statusCode(200)
+            .contentType(ContentType.JSON)
+            .body("lineCount", equalTo(1))
+            .body("unitCount", equalTo(3))
+            .body("cartTotal", equalTo(given().get("/{cartId}", "123450").path("cartTotal")))
+            .body("shoppingCartItemList", nullValue())
+            .extract().header("ETag");
+
+        given().header("If-None-Match", eTag)
+            .get("/{cartId}/summary", "123450")
+            .then()
+            .assertThat()
+            .statusCode(304);
+
+        given().delete("/{cartId}/{itemId}/{quantity}", "123450", "111111", new Integer(1));
+        given().get("/{cartId}/summary", "123450")
+            .then()
+            .assertThat()
+            .statusCode(200)
+            .body("unitCount", equalTo(2));
+    }
+
+    @Test
+    @DirtiesContext
+    public void retrieveTopItems() throws Exception {
+
+        given().post("/{cartId}/{itemId}/{quantity}", "901234", "111111", new Integer(3));
+        given().post("/{cartId}/{itemId}/{quantity}", "012345", "111111", new Integer(2));
+        given().post("/{cartId}/{itemId}/{quantity}", "012345", "unknown", new Integer(9));
+        given().get("/stats/top")
+            .then()
+            .assertThat()
+            .statusCode(200)
+            .contentType(ContentType.JSON)
+            .body("itemId", contains("111111"))
+            .body("count", contains(5));
+    }
+
     private void initWireMockServer() throws Exception {
         InputStream isresp = Thread.currentThread().getContextClassLoader().getResourceAsStream("catalog-response.json");
 
         stubFor(get(urlEqualTo("/product/111111")).willReturn(
                 aResponse().withStatus(200).withHeader("Content-type", "application/json").withBody(IOUtils.toString(isresp, Charset.defaultCharset()))));
 
+        stubFor(get(urlEqualTo("/product/unknown")).willReturn(
+                aResponse().withStatus(404)));
+
         stubFor(get(urlEqualTo("/product/error")).willReturn(
                 aResponse().withStatus(500)));
     }
@@ -0,0 +1,151 @@
+package com.redhat.coolstore.cart.rest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.jaxrs.json.JacksonJsonProvider;
+import com.redhat.coolstore.cart.CartServiceConfiguration;
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+public class CartJsonCacheTest {
+
+    private final ReentrantLock cartLock = new ReentrantLock();
+
+    private final CartJsonCache cartJsonCache = cache(1 << 20);
+
+    @Test
+    public void jsonIsWrittenOncePerVersion() throws Exception {
+        ShoppingCart sc = cart();
+        sc.setVersion(1);
+
+        byte[] json = cartJsonCache.toJson(sc);
+        assertThat(cartJsonCache.toJson(sc), sameInstance(json));
+        assertThat(new ObjectMapper().readValue(json, ShoppingCart.class).getCartTotal(), equalTo(20.0));
+
+        sc.getShoppingCartItemList().get(0).setQuantity(3);
+        sc.setCartTotal(30.0);
+        sc.setVersion(2);
+        byte[] changed = cartJsonCache.toJson(sc);
+        assertThat(changed, not(sameInstance(json)));
+        assertThat(new ObjectMapper().readValue(changed, ShoppingCart.class).getCartTotal(), equalTo(30.0));
+        assertThat(cartJsonCache.getHits(), equalTo(1L));
+        assertThat(cartJsonCache.getMisses(), equalTo(2L));
+    }
+
+    @Test
+    public void unversionedCartsAreNotCached() {
+        ShoppingCart sc = cart();
+
+        byte[] json = cartJsonCache.toJson(sc);
+
+        assertThat(cartJsonCache.toJson(sc), not(sameInstance(json)));
+        assertThat(new String(json, StandardCharsets.UTF_8), equalTo(new String(cartJsonCache.toJson(sc), StandardCharsets.UTF_8)));
+        assertThat(cartJsonCache.getHits(), equalTo(0L));
+        assertThat(cartJsonCache.getBytes(), equalTo(0L));
+    }
+
+    @Test
+    public void cachedJsonIsBoundedByMaxBytes() {
+        int size = cartJsonCache.toJson(versioned("c0", 1)).length;
+        long maxBytes = 10L * (size + 96);
+        CartJsonCache bounded = cache(maxBytes);
+
+        for (int i = 0; i < 50; i++) {
+            bounded.toJson(versioned("c" + i, i + 1));
+        }
+
+        assertThat(bounded.getBytes(), lessThanOrEqualTo(maxBytes));
+        assertThat(bounded.getBytes(), greaterThan(0L));
+        assertThat(bounded.getEvictions(), greaterThan(0L));
+    }
+
+    @Test
+    public void cartsAreWrittenUnderTheirLock() {
+        ShoppingCart sc = versioned("c1", 1);
+        CartJsonCache locked = new CartJsonCache(new CartServiceConfiguration().jsonProvider(new ObjectMapper()), cartId -> new ReentrantLock() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void lock() {
+                // a change made by the lock holder before the cart is written
+                sc.setCartTotal(30.0);
+                sc.setVersion(2);
+                super.lock();
+            }
+        }, 1 << 20);
+
+        locked.toJson(sc);
+
+        assertThat(new String(locked.toJson(sc), StandardCharsets.UTF_8).contains("\"cartTotal\":30.0"), equalTo(true));
+        assertThat(locked.getHits(), equalTo(1L));
+    }
+
+    @Test
+    public void cartsAreWrittenUnderTheirLockWithCachingOff() {
+        ReentrantLock lock = new ReentrantLock();
+        ShoppingCart sc = versioned("c1", 1);
+        CartJsonCache uncached = new CartJsonCache(new JacksonJsonProvider() {
+
+            @Override
+            public void writeTo(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                    MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+                assertThat(lock.isHeldByCurrentThread(), equalTo(true));
+                super.writeTo(value, type, genericType, annotations, mediaType, httpHeaders, entityStream);
+            }
+        }, cartId -> lock, 0);
+
+        uncached.toJson(sc);
+        uncached.toJson(sc);
+
+        assertThat(uncached.getMisses(), equalTo(2L));
+        assertThat(uncached.getBytes(), equalTo(0L));
+    }
+
+    private CartJsonCache cache(long maxBytes) {
+        return new CartJsonCache(new CartServiceConfiguration().jsonProvider(new ObjectMapper()), cartId -> cartLock, maxBytes);
+    }
+
+    private static ShoppingCart versioned(String cartId, long version) {
+        ShoppingCart sc = cart();
+        sc.setId(cartId);
+        sc.setVersion(version);
+        return sc;
+    }
+
+    private static ShoppingCart cart() {
+        Product product = new Product();
+        product.setItemId("p1");
+        product.setPrice(10.0);
+        ShoppingCartItem sci = new ShoppingCartItem();
+        sci.setProduct(product);
+        sci.setPrice(10.0);
+        sci.setQuantity(2);
+        ShoppingCart sc = new ShoppingCart();
+        sc.setId("c1");
+        sc.addShoppingCartItem(sci);
+        sc.setCartItemTotal(20.0);
+        sc.setCartTotal(20.0);
+        return sc;
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.redhat.coolstore.cart.rest;
+
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.notNullValue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import io.restassured.RestAssured;
+
+@ActiveProfiles("test")
+@RunWith(SpringRunner.class)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class CartMetricsEndpointTest {
+
+    @Value("${local.server.port}")
+    private int port;
+
+    @Before
+    public void beforeTest() {
+        RestAssured.baseURI = String.format("http://localhost:%d", port);
+    }
+
+    @Test
+    public void invokeMetrics() throws Exception {
+        given().get("/metrics").then().assertThat().statusCode(200)
+            .body("'cart.store.resident'", notNullValue())
+            .body("'cart.store.evictions.idle'", notNullValue());
+    }
+
+    @Test
+    public void invokePrometheusMetrics() throws Exception {
+        given().get("/cart/metrics-test").then().assertThat().statusCode(200);
+
+        given().get("/prometheus").then().assertThat().statusCode(200)
+            .body(containsString("cart_requests_seconds_bucket{operation=\"get\""))
+            .body(containsString("cart_pricing_seconds_count{type=\"full\""))
+            .body(containsString("cart_store_resident "))
+            .body(containsString("cart_store_items_average "));
+    }
+
+}
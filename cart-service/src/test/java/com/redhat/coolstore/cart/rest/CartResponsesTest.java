@@ -0,0 +1,49 @@
+package com.redhat.coolstore.cart.rest;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.ws.rs.core.Response;
+
+import org.junit.Test;
+
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+public class CartResponsesTest {
+
+    @Test
+    public void summaryIsReadWithItsVersionUnderTheCartLock() {
+        ShoppingCart sc = new ShoppingCart();
+        sc.setId("c1");
+        sc.setVersion(1);
+        CartResponses.Summary summary = CartResponses.summary(sc, new ReentrantLock() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void lock() {
+                // a change made by the lock holder before the summary is read
+                Product product = new Product();
+                product.setItemId("p1");
+                ShoppingCartItem sci = new ShoppingCartItem();
+                sci.setProduct(product);
+                sci.setQuantity(2);
+                sc.addShoppingCartItem(sci);
+                sc.setUnitCount(2);
+                sc.setCartTotal(30.0);
+                sc.setVersion(2);
+                super.lock();
+            }
+        });
+
+        Response response = summary.toResponse();
+        assertThat(summary.getTag().getValue(), equalTo("2"));
+        assertThat(response.getEntityTag().getValue(), equalTo("2"));
+        assertThat(response.getEntity(), equalTo("{\"lineCount\":1,\"unitCount\":2,\"cartTotal\":30.0}"));
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+
+public class CartRepricerTest {
+
+    private final CatalogService catalogService = mock(CatalogService.class);
+
+    private final ShoppingCartServiceImpl shoppingCartService = new ShoppingCartServiceImpl();
+
+    private CartRepricer cartRepricer;
+
+    @Before
+    public void setup() {
+        // repricing must find the carts through the item index
+        InMemoryCartRepository cartRepository = new InMemoryCartRepository() {
+
+            @Override
+            public void forEach(Consumer<ShoppingCart> action) {
+                throw new AssertionError("the cart store was scanned");
+            }
+
+        };
+        ReflectionTestUtils.setField(shoppingCartService, null, catalogService, CatalogService.class);
+        ReflectionTestUtils.setField(shoppingCartService, null, new PriceCalculationServiceImpl(), PriceCalculationService.class);
+        ReflectionTestUtils.setField(shoppingCartService, null, cartRepository, CartRepository.class);
+        cartRepricer = new CartRepricer(shoppingCartService, cartRepository, 2, 100);
+        when(catalogService.getProduct("r1")).thenReturn(product("r1", "Red Fedora", 10.0));
+        when(catalogService.getProduct("r2")).thenReturn(product("r2", "Forge Laptop Sticker", 20.0));
+        when(catalogService.getProduct("r3")).thenReturn(product("r3", "Oculus Rift", 30.0));
+    }
+
+    @After
+    public void tearDown() {
+        cartRepricer.close();
+    }
+
+    @Test
+    public void onlyCartsWithChangedPricesAreRepriced() {
+        shoppingCartService.addToCart("c1", "r1", 2);
+        shoppingCartService.addToCart("c1", "r2", 1);
+        shoppingCartService.addToCart("c2", "r2", 1);
+        shoppingCartService.addToCart("c3", "r3", 1);
+        long c2Version = shoppingCartService.getShoppingCart("c2").getVersion();
+
+        int repriced = cartRepricer.pricesChanged(Arrays.asList(product("r1", null, 12.5), product("r2", null, 20.0))).join();
+
+        assertThat(repriced, equalTo(1));
+        ShoppingCart c1 = shoppingCartService.getShoppingCart("c1");
+        assertThat(c1.findShoppingCartItem("r1").getPrice(), equalTo(12.5));
+        assertThat(c1.findShoppingCartItem("r1").getProduct().getPrice(), equalTo(12.5));
+        assertThat(c1.findShoppingCartItem("r1").getProduct().getName(), equalTo("Red Fedora"));
+        assertThat(c1.getCartItemTotal(), equalTo(2 * 12.5 + 20.0));
+        assertThat(shoppingCartService.getShoppingCart("c2").getVersion(), equalTo(c2Version));
+        assertThat(cartRepricer.getPriceChanges(), equalTo(2L));
+        assertThat(cartRepricer.getRepricedCarts(), equalTo(1L));
+    }
+
+    @Test
+    public void cartsAreRepricedInBatches() {
+        for (int i = 0; i < 250; i++) {
+            shoppingCartService.addToCart("c" + i, "r1", 1);
+        }
+
+        int repriced = cartRepricer.pricesChanged(Collections.singletonList(product("r1", null, 9.0))).join();
+
+        assertThat(repriced, equalTo(250));
+        for (int i = 0; i < 250; i++) {
+            assertThat(shoppingCartService.getShoppingCart("c" + i).getCartItemTotal(), equalTo(9.0));
+        }
+        assertThat(cartRepricer.pricesChanged(Collections.singletonList(product("r1", null, 9.0))).join(), equalTo(0));
+    }
+
+    private static Product product(String itemId, String name, double price) {
+        Product product = new Product();
+        product.setItemId(itemId);
+        product.setName(name);
+        product.setPrice(price);
+        return product;
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.redhat.coolstore.cart.service;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+public class CatalogConnectionPoolTest {
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    private CatalogConnectionPool pool;
+
+    @Before
+    public void setup() {
+        pool = new CatalogConnectionPool(10, 4, 1000, 5000, 1000, 30000, 30000);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    @Test
+    public void warmUpOpensConnections() {
+        assertThat(pool.warmUp("http://localhost:" + wireMockRule.port(), 3), equalTo(3));
+        assertThat(pool.getAvailable(), equalTo(3));
+        assertThat(pool.getLeased(), equalTo(0));
+    }
+
+    @Test
+    public void warmUpIsLimitedByTheRouteLimit() {
+        assertThat(pool.warmUp("http://localhost:" + wireMockRule.port(), 10), equalTo(4));
+        assertThat(pool.getAvailable(), equalTo(4));
+        assertThat(pool.getLeaseTimeouts(), equalTo(1L));
+    }
+
+    @Test
+    public void warmUpOfUnreachableHostIsIgnored() throws Exception {
+        int port = wireMockRule.port();
+        wireMockRule.shutdownServer();
+        Thread.sleep(1000);
+
+        assertThat(pool.warmUp("http://localhost:" + port, 3), equalTo(0));
+        assertThat(pool.getAvailable(), equalTo(0));
+    }
+
+    @Test
+    public void connectionsAreReused() {
+        stubFor(get(urlEqualTo("/product/111111")).willReturn(aResponse().withStatus(200).withBody("{}")));
+        RestTemplate restTemplate = new RestTemplate(pool.getRequestFactory());
+        pool.warmUp("http://localhost:" + wireMockRule.port(), 1);
+
+        for (int i = 0; i < 5; i++) {
+            restTemplate.getForObject("http://localhost:" + wireMockRule.port() + "/product/111111", String.class);
+        }
+
+        assertThat(pool.getAvailable(), equalTo(1));
+        assertThat(pool.getLeased(), equalTo(0));
+        assertThat(pool.getLeases(), equalTo(6L));
+    }
+
+}
@@ -1,6 +1,7 @@
 package com.redhat.coolstore.cart.service;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
 import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
@@ -11,19 +12,30 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.Assert.fail;
 
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.io.IOUtils;
 import org.hamcrest.CoreMatchers;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
 
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.redhat.coolstore.cart.model.Product;
@@ -35,10 +47,24 @@ public class CatalogServiceImplTest {
 
     private CatalogServiceImpl catalogService;
 
+    private CatalogConnectionPool catalogConnectionPool;
+
     @Before
     public void beforeTest() throws Exception {
         catalogService = new CatalogServiceImpl();
+        catalogConnectionPool = new CatalogConnectionPool(10, 10, 1000, 5000, 1000, 30000, 30000);
+        ReflectionTestUtils.setField(catalogService, "catalogRestTemplate", new RestTemplate(catalogConnectionPool.getRequestFactory()), null);
+        ReflectionTestUtils.setField(catalogService, "catalogAsyncRestTemplate", new AsyncRestTemplate(catalogConnectionPool.getAsyncRequestFactory()), null);
+        ReflectionTestUtils.setField(catalogService, "catalogConnectionPool", catalogConnectionPool, null);
         ReflectionTestUtils.setField(catalogService, "catalogServiceUrl", "http://localhost:" + wireMockRule.port(), null);
+        ReflectionTestUtils.setField(catalogService, "productCache", new ProductCache(60000, 10000, 100), null);
+        ReflectionTestUtils.setField(catalogService, "catalogCircuitBreaker",
+                new CircuitBreaker("catalog", 3, 60000, 1, 10, e -> !(e instanceof HttpClientErrorException)), null);
+    }
+
+    @After
+    public void afterTest() throws Exception {
+        catalogConnectionPool.close();
     }
 
     @Test
@@ -70,6 +96,65 @@ public class CatalogServiceImplTest {
         verify(getRequestedFor(urlEqualTo("/product/111111")));
     }
 
+    @Test
+    public void getProductIsCached() throws Exception {
+
+        InputStream isresp = Thread.currentThread().getContextClassLoader().getResourceAsStream("catalog-response.json");
+
+        stubFor(get(urlEqualTo("/product/111111")).willReturn(
+                aResponse().withStatus(200).withHeader("Content-type", "application/json").withBody(IOUtils.toString(isresp, Charset.defaultCharset()))));
+
+        Product product = catalogService.getProduct("111111");
+        Product cached = catalogService.getProduct("111111");
+
+        assertThat(cached, sameInstance(product));
+        verify(exactly(1), getRequestedFor(urlEqualTo("/product/111111")));
+    }
+
+    @Test
+    public void getProductWhenCatalogServerRespondsWithNotFoundIsCached() throws Exception {
+
+        stubFor(get(urlEqualTo("/product/111111")).willReturn(
+                aResponse().withStatus(404)));
+
+        assertThat(catalogService.getProduct("111111"), nullValue());
+        assertThat(catalogService.getProduct("111111"), nullValue());
+        verify(exactly(1), getRequestedFor(urlEqualTo("/product/111111")));
+    }
+
+    @Test
+    public void getProductFromSnapshot() throws Exception {
+
+        Product product = new Product();
+        product.setItemId("111111");
+        product.setPrice(100.0);
+        CatalogSnapshot snapshot = new CatalogSnapshot(() -> Collections.singletonList(product), 0);
+        snapshot.start();
+        ReflectionTestUtils.setField(catalogService, "catalogSnapshot", snapshot, null);
+
+        assertThat(catalogService.getProduct("111111"), sameInstance(product));
+        verify(exactly(0), getRequestedFor(urlEqualTo("/product/111111")));
+    }
+
+    @Test
+    public void getProductMissingFromSnapshot() throws Exception {
+
+        InputStream isresp = Thread.currentThread().getContextClassLoader().getResourceAsStream("catalog-response.json");
+
+        stubFor(get(urlEqualTo("/product/111111")).willReturn(
+                aResponse().withStatus(200).withHeader("Content-type", "application/json").withBody(IOUtils.toString(isresp, Charset.defaultCharset()))));
+
+        CatalogSnapshot snapshot = new CatalogSnapshot(Collections::emptyList, 0);
+        snapshot.start();
+        ReflectionTestUtils.setField(catalogService, "catalogSnapshot", snapshot, null);
+
+        Product product = catalogService.getProduct("111111");
+
+        assertThat(product, notNullValue());
+        assertThat(product.getItemId(), equalTo("111111"));
+        verify(getRequestedFor(urlEqualTo("/product/111111")));
+    }
+
     @Test
     public void getProductWhenCatalogServerRespondsWithError() throws Exception {
 
@@ -87,6 +172,69 @@ public class CatalogServiceImplTest {
         verify(getRequestedFor(urlEqualTo("/product/111111")));
     }
 
+    @Test
+    public void getProductAsync() throws Exception {
+
+        InputStream isresp = Thread.currentThread().getContextClassLoader().getResourceAsStream("catalog-response.json");
+
+        stubFor(get(urlEqualTo("/product/111111")).willReturn(
+                aResponse().withStatus(200).withHeader("Content-type", "application/json").withBody(IOUtils.toString(isresp, Charset.defaultCharset()))));
+
+        Product product = catalogService.getProductAsync("111111").get(5, TimeUnit.SECONDS);
+
+        assertThat(product, notNullValue());
+        assertThat(product.getItemId(), equalTo("111111"));
+        assertThat(product.getPrice(), equalTo(new Double(100.0)));
+        assertThat(catalogService.getProduct("111111"), sameInstance(product));
+        verify(exactly(1), getRequestedFor(urlEqualTo("/product/111111")));
+    }
+
+    @Test
+    public void getProductAsyncWhenCatalogServerRespondsWithNotFound() throws Exception {
+
+        stubFor(get(urlEqualTo("/product/111111")).willReturn(
+                aResponse().withStatus(404)));
+
+        assertThat(catalogService.getProductAsync("111111").get(5, TimeUnit.SECONDS), nullValue());
+        verify(getRequestedFor(urlEqualTo("/product/111111")));
+    }
+
+    @Test
+    public void getProductAsyncWhenCatalogServerRespondsWithError() throws Exception {
+
+        stubFor(get(urlEqualTo("/product/111111"))
+                .willReturn(
+                aResponse().withStatus(503).withHeader("Content-type", "text/plain").withBody("{}")));
+
+        try {
+            catalogService.getProductAsync("111111").get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(((HttpStatusCodeException) e.getCause()).getRawStatusCode(), equalTo(503));
+        }
+    }
+
+    @Test
+    public void getProductAsyncOnCatalogCallExecutor() throws Exception {
+
+        InputStream isresp = Thread.currentThread().getContextClassLoader().getResourceAsStream("catalog-response.json");
+
+        stubFor(get(urlEqualTo("/product/111111")).willReturn(
+                aResponse().withStatus(200).withHeader("Content-type", "application/json").withBody(IOUtils.toString(isresp, Charset.defaultCharset()))));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "catalog-call"));
+        ReflectionTestUtils.setField(catalogService, "catalogCallExecutor", executor, null);
+        try {
+            Product product = catalogService.getProductAsync("111111").get(5, TimeUnit.SECONDS);
+
+            assertThat(product, notNullValue());
+            assertThat(product.getItemId(), equalTo("111111"));
+            verify(getRequestedFor(urlEqualTo("/product/111111")));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void getProductWhenCatalogServerIsDown() throws Exception {
 
@@ -101,4 +249,62 @@ public class CatalogServiceImplTest {
         }
     }
 
+    @Test
+    public void getProductWhenCircuitIsOpenUsesLastKnownProduct() throws Exception {
+
+        InputStream isresp = Thread.currentThread().getContextClassLoader().getResourceAsStream("catalog-response.json");
+
+        stubFor(get(urlEqualTo("/product/111111")).willReturn(
+                aResponse().withStatus(200).withHeader("Content-type", "application/json").withBody(IOUtils.toString(isresp, Charset.defaultCharset()))));
+        stubFor(get(urlEqualTo("/product/222222")).willReturn(aResponse().withStatus(503)));
+
+        AtomicLong clock = new AtomicLong(1_000_000);
+        ReflectionTestUtils.setField(catalogService, "productCache", new ProductCache(60000, 10000, 100, clock::get), null);
+        Product product = catalogService.getProduct("111111");
+        clock.addAndGet(60000);
+        stubFor(get(urlEqualTo("/product/111111")).willReturn(aResponse().withStatus(503)));
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                catalogService.getProduct("222222");
+                fail();
+            } catch (HttpStatusCodeException e) {
+                assertThat(e.getRawStatusCode(), equalTo(503));
+            }
+        }
+
+        assertThat(catalogService.getProduct("111111"), sameInstance(product));
+        assertThat(catalogService.getProductAsync("111111").get(5, TimeUnit.SECONDS), sameInstance(product));
+        verify(exactly(1), getRequestedFor(urlEqualTo("/product/111111")));
+    }
+
+    @Test
+    public void getProductWhenCircuitIsOpenFailsFast() throws Exception {
+
+        stubFor(get(urlEqualTo("/product/111111")).willReturn(aResponse().withStatus(503)));
+
+        for (int i = 0; i < 3; i++) {
+            try {
+                catalogService.getProduct("111111");
+                fail();
+            } catch (HttpStatusCodeException e) {
+                assertThat(e.getRawStatusCode(), equalTo(503));
+            }
+        }
+
+        try {
+            catalogService.getProduct("111111");
+            fail();
+        } catch (CircuitBreaker.RejectedException e) {
+            // expected
+        }
+        try {
+            catalogService.getProductAsync("111111").get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), CoreMatchers.instanceOf(CircuitBreaker.RejectedException.class));
+        }
+        verify(exactly(3), getRequestedFor(urlEqualTo("/product/111111")));
+    }
+
 }
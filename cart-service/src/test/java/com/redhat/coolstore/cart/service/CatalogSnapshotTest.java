@@ -0,0 +1,101 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.redhat.coolstore.cart.model.Product;
+
+public class CatalogSnapshotTest {
+
+    private final AtomicReference<Collection<Product>> catalog = new AtomicReference<>(Arrays.asList(product("p1", 10.0), product("p2", 20.0)));
+
+    private final CatalogSnapshot snapshot = new CatalogSnapshot(this::load, 0);
+
+    @After
+    public void tearDown() {
+        snapshot.close();
+    }
+
+    @Test
+    public void productsAreLoadedOnStart() {
+        snapshot.start();
+
+        assertThat(snapshot.size(), equalTo(2));
+        assertThat(snapshot.get("p2").getPrice(), equalTo(20.0));
+        assertThat(snapshot.get("p3"), nullValue());
+        assertThat(snapshot.getHits(), equalTo(1L));
+        assertThat(snapshot.getMisses(), equalTo(1L));
+    }
+
+    @Test
+    public void refreshReplacesTheSnapshot() {
+        snapshot.start();
+        catalog.set(Arrays.asList(product("p2", 25.0), product("p3", 30.0)));
+
+        assertThat(snapshot.refresh(), equalTo(true));
+        assertThat(snapshot.get("p1"), nullValue());
+        assertThat(snapshot.get("p2").getPrice(), equalTo(25.0));
+        assertThat(snapshot.get("p3").getPrice(), equalTo(30.0));
+        assertThat(snapshot.getRefreshes(), equalTo(2L));
+    }
+
+    @Test
+    public void changedPricesAreHandedToListeners() {
+        List<String> changed = new ArrayList<>();
+        snapshot.addPriceChangeListener(products -> products.forEach(product -> changed.add(product.getItemId())));
+        snapshot.start();
+        assertThat(changed, empty());
+
+        catalog.set(Arrays.asList(product("p1", 10.0), product("p2", 19.99), product("p3", 30.0)));
+        snapshot.refresh();
+
+        assertThat(changed, contains("p2"));
+    }
+
+    @Test
+    public void failedRefreshKeepsThePreviousSnapshot() {
+        snapshot.start();
+        catalog.set(null);
+
+        assertThat(snapshot.refresh(), equalTo(false));
+        assertThat(snapshot.get("p1").getPrice(), equalTo(10.0));
+        assertThat(snapshot.getRefreshFailures(), equalTo(1L));
+    }
+
+    @Test
+    public void failedInitialLoadLeavesTheSnapshotEmpty() {
+        catalog.set(null);
+        snapshot.start();
+
+        assertThat(snapshot.size(), equalTo(0));
+        assertThat(snapshot.getRefreshedAt(), equalTo(0L));
+    }
+
+    private Collection<Product> load() {
+        Collection<Product> products = catalog.get();
+        if (products == null) {
+            throw new IllegalStateException("catalog down");
+        }
+        return new ArrayList<>(products);
+    }
+
+    private static Product product(String itemId, double price) {
+        Product product = new Product();
+        product.setItemId(itemId);
+        product.setPrice(price);
+        return product;
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.fail;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.redhat.coolstore.cart.model.Order;
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+public class CheckoutJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    private CheckoutJournal journal;
+
+    @Before
+    public void setup() throws Exception {
+        file = folder.getRoot().toPath().resolve("orders/checkout.journal");
+        journal = open();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        journal.close();
+    }
+
+    @Test
+    public void appendedOrdersAreReadBack() throws Exception {
+        Order order = journal.append(cart("c1", "p1", 2)).get(5, TimeUnit.SECONDS);
+        assertThat(order.getSequence(), equalTo(1L));
+        journal.append(cart("c2", "p2", 1)).get(5, TimeUnit.SECONDS);
+        journal.append(cart("c3", "p3", 4)).get(5, TimeUnit.SECONDS);
+
+        List<Order> orders = readAll(0);
+        assertThat(orders.stream().map(o -> o.getCart().getId()).collect(Collectors.toList()), contains("c1", "c2", "c3"));
+        Order first = orders.get(0);
+        assertThat(first.getSequence(), equalTo(1L));
+        assertThat(first.getCart().getCartItemTotal(), equalTo(20.0));
+        assertThat(first.getCart().getShoppingCartItemList().get(0).getProduct().getItemId(), equalTo("p1"));
+        assertThat(readAll(2).stream().map(Order::getSequence).collect(Collectors.toList()), contains(3L));
+        assertThat(journal.getLastSequence(), equalTo(3L));
+    }
+
+    @Test
+    public void concurrentOrdersShareSyncs() throws Exception {
+        journal.close();
+        journal = new CheckoutJournal(file, 256, 5, new ObjectMapper());
+        int threads = 8;
+        int ordersPerThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Order>>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                results.add(executor.submit(() -> {
+                    List<CompletableFuture<Order>> futures = new ArrayList<>();
+                    for (int i = 0; i < ordersPerThread; i++) {
+                        futures.add(journal.append(cart("c" + thread + "-" + i, "p1", 1)));
+                    }
+                    List<Order> orders = new ArrayList<>();
+                    for (CompletableFuture<Order> future : futures) {
+                        orders.add(future.get(5, TimeUnit.SECONDS));
+                    }
+                    return orders;
+                }));
+            }
+            long acknowledged = 0;
+            for (Future<List<Order>> result : results) {
+                acknowledged += result.get(10, TimeUnit.SECONDS).size();
+            }
+            assertThat(acknowledged, equalTo((long) threads * ordersPerThread));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(journal.getOrders(), equalTo((long) threads * ordersPerThread));
+        assertThat(journal.getBatches(), lessThan(journal.getOrders()));
+        List<Order> orders = readAll(0);
+        assertThat(orders.size(), equalTo(threads * ordersPerThread));
+        for (int i = 0; i < orders.size(); i++) {
+            assertThat(orders.get(i).getSequence(), equalTo(i + 1L));
+        }
+    }
+
+    @Test
+    public void reopenDiscardsTornRecordAndContinuesTheSequence() throws Exception {
+        journal.append(cart("c1", "p1", 1)).get(5, TimeUnit.SECONDS);
+        journal.append(cart("c2", "p2", 1)).get(5, TimeUnit.SECONDS);
+        journal.close();
+        long length;
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            length = raf.length();
+            raf.seek(length);
+            raf.writeInt(500);
+            raf.writeInt(42);
+            raf.writeLong(3);
+        }
+
+        journal = open();
+        assertThat(journal.getLastSequence(), equalTo(2L));
+        assertThat(file.toFile().length(), equalTo(length));
+        assertThat(journal.append(cart("c3", "p3", 1)).get(5, TimeUnit.SECONDS).getSequence(), equalTo(3L));
+        assertThat(readAll(0).size(), equalTo(3));
+    }
+
+    @Test
+    public void appendAfterCloseFails() throws Exception {
+        journal.close();
+        try {
+            journal.append(cart("c1", "p1", 1)).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    private CheckoutJournal open() throws Exception {
+        return new CheckoutJournal(file, 64, 0, new ObjectMapper());
+    }
+
+    private List<Order> readAll(long afterSequence) throws Exception {
+        try (Stream<Order> orders = journal.read(afterSequence)) {
+            return orders.collect(Collectors.toList());
+        }
+    }
+
+    private static ShoppingCart cart(String cartId, String itemId, int quantity) {
+        Product product = new Product();
+        product.setItemId(itemId);
+        product.setName("Product " + itemId);
+        product.setPrice(10.0);
+        ShoppingCartItem sci = new ShoppingCartItem();
+        sci.setProduct(product);
+        sci.setPrice(10.0);
+        sci.setQuantity(quantity);
+        ShoppingCart sc = new ShoppingCart();
+        sc.setId(cartId);
+        sc.addShoppingCartItem(sci);
+        sc.setCartItemTotal(10.0 * quantity);
+        sc.setCartTotal(10.0 * quantity);
+        return sc;
+    }
+
+}
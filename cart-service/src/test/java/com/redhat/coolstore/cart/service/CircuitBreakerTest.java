@@ -0,0 +1,139 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("test", 3, 10_000, 1, 2,
+            e -> !(e instanceof IllegalArgumentException), clock::get);
+
+    @Test
+    public void circuitOpensAfterConsecutiveFailures() {
+        failCalls(2);
+        assertThat(circuitBreaker.call(this::succeed), equalTo("ok"));
+        failCalls(2);
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+
+        failCalls(1);
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.OPEN));
+        assertRejected();
+        assertThat(calls.get(), equalTo(6));
+        assertThat(circuitBreaker.getRejectedOpen(), equalTo(1L));
+        assertThat(circuitBreaker.getTransitions(CircuitBreaker.State.OPEN), equalTo(1L));
+    }
+
+    @Test
+    public void ignoredExceptionsDoNotOpenTheCircuit() {
+        for (int i = 0; i < 5; i++) {
+            try {
+                circuitBreaker.call(() -> {
+                    throw new IllegalArgumentException("bad item");
+                });
+                fail();
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void successfulProbeClosesTheCircuit() throws Exception {
+        failCalls(3);
+        clock.addAndGet(10_000);
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.HALF_OPEN));
+
+        CompletableFuture<String> probe = new CompletableFuture<>();
+        CompletableFuture<String> result = circuitBreaker.callAsync(() -> probe);
+        // only one probe at a time
+        assertRejected();
+
+        probe.complete("ok");
+        assertThat(result.get(), equalTo("ok"));
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.call(this::succeed), equalTo("ok"));
+        assertThat(circuitBreaker.getTransitions(CircuitBreaker.State.HALF_OPEN), equalTo(1L));
+        assertThat(circuitBreaker.getTransitions(CircuitBreaker.State.CLOSED), equalTo(1L));
+    }
+
+    @Test
+    public void failedProbeReopensTheCircuit() {
+        failCalls(3);
+        clock.addAndGet(10_000);
+        failCalls(1);
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.OPEN));
+        assertRejected();
+
+        clock.addAndGet(10_000);
+        assertThat(circuitBreaker.call(this::succeed), equalTo("ok"));
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+        assertThat(circuitBreaker.getTransitions(CircuitBreaker.State.OPEN), equalTo(2L));
+    }
+
+    @Test
+    public void bulkheadRejectsCallsBeyondTheLimit() throws Exception {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        circuitBreaker.callAsync(() -> first);
+        circuitBreaker.callAsync(() -> second);
+        assertThat(circuitBreaker.getConcurrentCalls(), equalTo(2));
+
+        try {
+            circuitBreaker.callAsync(() -> CompletableFuture.completedFuture("ok")).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(CircuitBreaker.RejectedException.class));
+        }
+        assertThat(circuitBreaker.getRejectedFull(), equalTo(1L));
+        // a full bulkhead is not a failure of the service
+        assertThat(circuitBreaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+
+        first.complete("ok");
+        assertThat(circuitBreaker.call(this::succeed), equalTo("ok"));
+        assertThat(circuitBreaker.getConcurrentCalls(), equalTo(1));
+    }
+
+    private String succeed() {
+        calls.incrementAndGet();
+        return "ok";
+    }
+
+    private void failCalls(int times) {
+        for (int i = 0; i < times; i++) {
+            try {
+                circuitBreaker.call(() -> {
+                    calls.incrementAndGet();
+                    throw new IllegalStateException("catalog down");
+                });
+                fail();
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+    private void assertRejected() {
+        int before = calls.get();
+        try {
+            circuitBreaker.call(this::succeed);
+            fail();
+        } catch (CircuitBreaker.RejectedException e) {
+            assertThat(calls.get(), equalTo(before));
+        }
+    }
+
+}
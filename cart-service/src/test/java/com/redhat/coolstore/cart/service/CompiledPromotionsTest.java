@@ -0,0 +1,102 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import org.junit.Test;
+
+import com.redhat.coolstore.cart.service.PromotionRules.ItemPromotion;
+import com.redhat.coolstore.cart.service.PromotionRules.ShippingPromotion;
+import com.redhat.coolstore.cart.service.PromotionRules.ShippingTier;
+
+public class CompiledPromotionsTest {
+
+    @Test
+    public void defaultTiersMatchTheStandardShippingCosts() {
+        CompiledPromotions promotions = CompiledPromotions.compile(new PromotionRules());
+
+        assertThat(promotions.shipping(0), equalTo(0L));
+        assertThat(promotions.shipping(1), equalTo(299L));
+        assertThat(promotions.shipping(2499), equalTo(299L));
+        assertThat(promotions.shipping(2500), equalTo(499L));
+        assertThat(promotions.shipping(4998), equalTo(499L));
+        assertThat(promotions.shipping(4999), equalTo(0L));
+        assertThat(promotions.shipping(5000), equalTo(699L));
+        assertThat(promotions.shipping(7498), equalTo(699L));
+        assertThat(promotions.shipping(7499), equalTo(0L));
+        assertThat(promotions.itemSavings("p1", 1000, 3), equalTo(0L));
+    }
+
+    @Test
+    public void itemPromotionsApplyTheLargestSaving() {
+        PromotionRules rules = new PromotionRules();
+        rules.getItemPromotions().add(new ItemPromotion("p1", 10, 0, 0));
+        rules.getItemPromotions().add(new ItemPromotion("p2", 0, 2, 1));
+        rules.getItemPromotions().add(new ItemPromotion("p3", 20, 1, 1));
+        rules.getItemPromotions().add(new ItemPromotion(ItemPromotion.ANY_ITEM, 5, 0, 0));
+        CompiledPromotions promotions = CompiledPromotions.compile(rules);
+
+        assertThat(promotions.itemSavings("p1", 999, 3), equalTo(299L));
+        assertThat(promotions.itemSavings("p2", 1000, 2), equalTo(0L));
+        assertThat(promotions.itemSavings("p2", 1000, 7), equalTo(2000L));
+        assertThat(promotions.itemSavings("p3", 1000, 1), equalTo(200L));
+        assertThat(promotions.itemSavings("p3", 1000, 2), equalTo(1000L));
+        assertThat(promotions.itemSavings("p4", 1000, 2), equalTo(100L));
+        assertThat(promotions.itemSavings("p1", 1000, 0), equalTo(0L));
+    }
+
+    @Test
+    public void shippingPromotionsApplyTheLargestEligiblePercentage() {
+        PromotionRules rules = new PromotionRules();
+        rules.getShippingPromotions().add(new ShippingPromotion(40.0, 100));
+        rules.getShippingPromotions().add(new ShippingPromotion(20.0, 50));
+        CompiledPromotions promotions = CompiledPromotions.compile(rules);
+
+        assertThat(promotions.shippingSavings(1000, 299), equalTo(0L));
+        assertThat(promotions.shippingSavings(3000, 499), equalTo(249L));
+        assertThat(promotions.shippingSavings(4000, 499), equalTo(499L));
+    }
+
+    @Test
+    public void lookupsDoNotDependOnTheNumberOfRules() {
+        PromotionRules rules = new PromotionRules();
+        rules.getShippingTiers().clear();
+        for (int i = 0; i < 1000; i++) {
+            rules.getItemPromotions().add(new ItemPromotion("p" + i, i % 100, 0, 0));
+            rules.getShippingTiers().add(new ShippingTier(i, i + 1, i % 10));
+        }
+        CompiledPromotions promotions = CompiledPromotions.compile(rules);
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(promotions.itemSavings("p" + i, 100, 1), equalTo((long) (i % 100)));
+            assertThat(promotions.shipping(i * 100 + 50), equalTo(i % 10 * 100L));
+        }
+        assertThat(promotions.shipping(100_000), equalTo(0L));
+        assertThat(promotions.getRuleCount(), equalTo(2000));
+    }
+
+    @Test
+    public void everyCompilationHasANewVersion() {
+        CompiledPromotions first = CompiledPromotions.compile(new PromotionRules());
+        CompiledPromotions second = CompiledPromotions.compile(new PromotionRules());
+
+        assertThat(second.getVersion(), greaterThan(first.getVersion()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void overlappingTiersAreRejected() {
+        PromotionRules rules = new PromotionRules();
+        rules.getShippingTiers().add(new ShippingTier(40.0, 60.0, 1.0));
+        CompiledPromotions.compile(rules);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateItemPromotionsAreRejected() {
+        PromotionRules rules = new PromotionRules();
+        rules.getItemPromotions().add(new ItemPromotion("p1", 10, 0, 0));
+        rules.getItemPromotions().add(new ItemPromotion("p1", 0, 1, 1));
+        CompiledPromotions.compile(rules);
+    }
+
+}
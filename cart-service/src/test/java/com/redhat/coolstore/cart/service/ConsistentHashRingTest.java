@@ -0,0 +1,59 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 30_000;
+
+    @Test
+    public void cartIdsAreSpreadEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 128);
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.ownerOf("cart-" + i), 1, Integer::sum);
+        }
+        for (String member : ring.getMembers()) {
+            assertThat(counts.get(member), greaterThan(KEYS / 3 * 3 / 4));
+            assertThat(counts.get(member), lessThan(KEYS / 3 * 5 / 4));
+        }
+    }
+
+    @Test
+    public void joiningMemberOnlyTakesItsShare() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("a", "b", "c", "d"), 128);
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String cartId = "cart-" + i;
+            String owner = after.ownerOf(cartId);
+            if (!owner.equals(before.ownerOf(cartId))) {
+                // carts only ever move to the new member
+                assertThat(owner, equalTo("d"));
+                moved++;
+            }
+        }
+        assertThat(moved, greaterThan(KEYS / 4 * 3 / 4));
+        assertThat(moved, lessThan(KEYS / 4 * 5 / 4));
+    }
+
+    @Test
+    public void ownersDoNotDependOnTheOrderOfTheMembers() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 16);
+        ConsistentHashRing shuffled = new ConsistentHashRing(Arrays.asList("c", "a", "b", "a"), 16);
+        assertThat(shuffled.getMembers(), equalTo(ring.getMembers()));
+        for (int i = 0; i < 1000; i++) {
+            assertThat(shuffled.ownerOf("cart-" + i), equalTo(ring.ownerOf("cart-" + i)));
+        }
+    }
+
+}
@@ -0,0 +1,304 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.redhat.coolstore.cart.model.CartEvent;
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+public class EventSourcedCartRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path dir;
+
+    @Before
+    public void setup() throws Exception {
+        dir = folder.newFolder("events").toPath();
+    }
+
+    @Test
+    public void reopenReplaysItemChanges() throws Exception {
+        EventSourcedCartRepository repository = new EventSourcedCartRepository(dir, 4, 4096, false);
+        ShoppingCart sc = cart("c1");
+        ShoppingCartItem p1 = addItem(repository, sc, "p1", 2);
+        p1.setQuantity(5);
+        change(repository, sc, p1, 3);
+        ShoppingCartItem p2 = addItem(repository, sc, "p2", 1);
+        sc.removeShoppingCartItem(p2);
+        change(repository, sc, p2, -1);
+        repository.close();
+
+        repository = new EventSourcedCartRepository(dir, 4, 4096, false);
+        ShoppingCart c1 = repository.findById("c1");
+        assertThat(c1, notNullValue());
+        assertThat(c1.getShoppingCartItemList().size(), equalTo(1));
+        ShoppingCartItem sci = c1.getShoppingCartItemList().get(0);
+        assertThat(sci.getQuantity(), equalTo(5));
+        assertThat(sci.getPrice(), equalTo(10.0));
+        assertThat(sci.getPromoSavings(), equalTo(1.5));
+        assertThat(sci.getProduct().getItemId(), equalTo("p1"));
+        assertThat(sci.getProduct().getName(), equalTo("Product p1"));
+        assertThat(sci.getProduct().getDesc(), nullValue());
+        assertThat(sci.getProduct().getPrice(), equalTo(10.0));
+        assertThat(c1.getCartItemTotal(), equalTo(50.0));
+        assertThat(c1.getCartItemPromoSavings(), equalTo(1.5));
+        assertThat(c1.getShippingTotal(), equalTo(6.99));
+        assertThat(c1.getCartTotal(), equalTo(55.49));
+        assertThat(c1.findShoppingCartItem("p2"), nullValue());
+        repository.close();
+    }
+
+    @Test
+    public void historyRecordsEveryChange() throws Exception {
+        EventSourcedCartRepository repository = new EventSourcedCartRepository(dir, 4, 4096, false);
+        ShoppingCart sc = cart("c1");
+        ShoppingCartItem p1 = addItem(repository, sc, "p1", 2);
+        sc.removeShoppingCartItem(p1);
+        change(repository, sc, p1, -2);
+        repository.save(sc);
+        repository.checkedOut("c1");
+        repository.save(cart("c2"));
+        repository.delete("c2");
+
+        List<CartEvent> history = repository.history("c1");
+        assertThat(history.stream().map(CartEvent::getType).collect(Collectors.toList()), contains(CartEvent.Type.ITEM_CHANGED,
+                CartEvent.Type.ITEM_CHANGED, CartEvent.Type.CART_STORED, CartEvent.Type.CHECKED_OUT));
+        assertThat(history.get(0).getItemId(), equalTo("p1"));
+        assertThat(history.get(0).getQuantity(), equalTo(2));
+        assertThat(history.get(1).getQuantity(), equalTo(-2));
+        assertThat(history.get(3).getTimestamp(), greaterThan(0L));
+        assertThat(repository.history("c2").get(1).getType(), equalTo(CartEvent.Type.DELETED));
+        repository.close();
+
+        repository = new EventSourcedCartRepository(dir, 4, 4096, false);
+        assertThat(repository.findById("c1"), nullValue());
+        assertThat(repository.findById("c2"), nullValue());
+        repository.close();
+    }
+
+    @Test
+    public void snapshotsBoundTheReplay() throws Exception {
+        EventSourcedCartRepository repository = new EventSourcedCartRepository(dir, 2, 512, false);
+        ShoppingCart[] carts = new ShoppingCart[5];
+        ShoppingCartItem[] items = new ShoppingCartItem[5];
+        for (int i = 0; i < carts.length; i++) {
+            carts[i] = cart("c" + i);
+            items[i] = addItem(repository, carts[i], "p" + i, 1);
+        }
+        for (int i = 0; i < 500; i++) {
+            ShoppingCartItem sci = items[i % 5];
+            sci.setQuantity(sci.getQuantity() + 1);
+            change(repository, carts[i % 5], sci, 1);
+        }
+        repository.close();
+        assertThat(repository.getSnapshots(), greaterThan(0L));
+
+        repository = new EventSourcedCartRepository(dir, 2, 512, false);
+        assertThat(repository.getReplayedEvents(), lessThan(100L));
+        for (int i = 0; i < carts.length; i++) {
+            assertThat(repository.findById("c" + i).findShoppingCartItem("p" + i).getQuantity(), equalTo(101));
+            assertThat(repository.findById("c" + i).findShoppingCartItem("p" + i).getProduct().getName(), equalTo("Product p" + i));
+        }
+        // the segments folded into the snapshots are deleted with their history
+        assertThat(repository.history("c0").size(), lessThan(101));
+        for (File partition : dir.toFile().listFiles(File::isDirectory)) {
+            assertThat(partition.list((directory, name) -> name.startsWith("events-")).length, lessThanOrEqualTo(2));
+            assertThat(partition.list((directory, name) -> name.startsWith("snapshot-")).length, lessThanOrEqualTo(1));
+        }
+        repository.close();
+    }
+
+    @Test
+    public void evictedCartsAreRebuiltFromDisk() throws Exception {
+        InMemoryCartRepository residentCarts = new InMemoryCartRepository(0, 2, 0, 0);
+        EventSourcedCartRepository repository = new EventSourcedCartRepository(dir, 2, 512, false, 1, residentCarts);
+        for (int i = 0; i < 10; i++) {
+            ShoppingCart sc = cart("c" + i);
+            ShoppingCartItem sci = addItem(repository, sc, "p" + i, 1);
+            for (int j = 0; j < i; j++) {
+                sci.setQuantity(sci.getQuantity() + 1);
+                change(repository, sc, sci, 1);
+            }
+        }
+        assertThat(residentCarts.getStatistics().getResidentCarts(), equalTo(2L));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(repository.findById("c" + i).findShoppingCartItem("p" + i).getQuantity(), equalTo(i + 1));
+        }
+        assertThat(repository.getReloads(), greaterThanOrEqualTo(8L));
+        assertThat(repository.findById("unknown"), nullValue());
+        repository.delete("c0");
+        repository.close();
+
+        repository = new EventSourcedCartRepository(dir, 2, 512, false);
+        assertThat(repository.findById("c0"), nullValue());
+        for (int i = 1; i < 10; i++) {
+            assertThat(repository.findById("c" + i).findShoppingCartItem("p" + i).getQuantity(), equalTo(i + 1));
+        }
+        repository.close();
+    }
+
+    @Test
+    public void evictedCartsAreRebuiltFromTheirSnapshotRecords() throws Exception {
+        EventSourcedCartRepository repository = new EventSourcedCartRepository(dir, 1, 512, false);
+        for (int i = 0; i < 10; i++) {
+            addItem(repository, cart("c" + i), "p" + i, 1);
+        }
+        repository.close();
+
+        // reopened from the snapshot, with the carts changed again while most of them are evicted
+        InMemoryCartRepository residentCarts = new InMemoryCartRepository(0, 2, 0, 0);
+        repository = new EventSourcedCartRepository(dir, 1, 512, false, 1, residentCarts);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 10; i++) {
+                ShoppingCart sc = repository.findById("c" + i);
+                ShoppingCartItem sci = sc.findShoppingCartItem("p" + i);
+                sci.setQuantity(sci.getQuantity() + 1);
+                change(repository, sc, sci, 1);
+            }
+        }
+        repository.awaitSnapshots();
+        assertThat(repository.getSnapshots(), greaterThan(0L));
+        for (int i = 0; i < 10; i++) {
+            assertThat(repository.findById("c" + i).findShoppingCartItem("p" + i).getQuantity(), equalTo(11));
+        }
+        assertThat(repository.getReloads(), greaterThanOrEqualTo(100L));
+        repository.close();
+    }
+
+    @Test
+    public void replayStopsAtADamagedRecord() throws Exception {
+        EventSourcedCartRepository repository = new EventSourcedCartRepository(dir, 1, 4096, false);
+        addItem(repository, cart("c1"), "p1", 1);
+        repository.close();
+
+        // a later segment that would be replayed on top of the damaged one
+        Path partition = dir.resolve("partition-000");
+        Files.copy(partition.resolve("events-00000001.log"), partition.resolve("events-00000002.log"));
+        try (RandomAccessFile file = new RandomAccessFile(partition.resolve("events-00000001.log").toFile(), "rw")) {
+            file.seek(8 + 4);
+            file.writeInt(0xCAFEBABE);
+        }
+
+        repository = new EventSourcedCartRepository(dir, 1, 4096, false);
+        assertThat(repository.findById("c1"), nullValue());
+        assertThat(partition.toFile().list((directory, name) -> name.endsWith(".damaged")).length, equalTo(1));
+        addItem(repository, cart("c2"), "p2", 2);
+        repository.close();
+
+        repository = new EventSourcedCartRepository(dir, 1, 4096, false);
+        assertThat(repository.findById("c1"), nullValue());
+        assertThat(repository.findById("c2").findShoppingCartItem("p2").getQuantity(), equalTo(2));
+        repository.close();
+    }
+
+    @Test
+    public void partitionsAreReplayedConcurrently() throws Exception {
+        EventSourcedCartRepository repository = new EventSourcedCartRepository(dir, 8, 4096, false, 4, new InMemoryCartRepository());
+        for (int i = 0; i < 200; i++) {
+            addItem(repository, cart("c" + i), "p" + i, i + 1);
+        }
+        repository.close();
+
+        repository = new EventSourcedCartRepository(dir, 8, 4096, false, 4, new InMemoryCartRepository());
+        assertThat(repository.getStatistics().getResidentCarts(), equalTo(200L));
+        for (int i = 0; i < 200; i++) {
+            assertThat(repository.findById("c" + i).findShoppingCartItem("p" + i).getQuantity(), equalTo(i + 1));
+        }
+        assertThat(dir.toFile().listFiles(File::isDirectory).length, equalTo(8));
+        repository.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void partitionCountCannotChange() throws Exception {
+        new EventSourcedCartRepository(dir, 4, 4096, false).close();
+        new EventSourcedCartRepository(dir, 2, 4096, false);
+    }
+
+    @Test
+    public void tornRecordIsCutOff() throws Exception {
+        EventSourcedCartRepository repository = new EventSourcedCartRepository(dir, 1, 4096, false);
+        addItem(repository, cart("c1"), "p1", 1);
+        addItem(repository, cart("c2"), "p2", 2);
+        repository.close();
+
+        // corrupt the payload of the last record, as if the pod died halfway through writing it
+        File segment = dir.resolve("partition-000").toFile().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            int first = file.readInt();
+            file.seek(8 + first + 8 + 4);
+            file.writeInt(0xCAFEBABE);
+        }
+
+        repository = new EventSourcedCartRepository(dir, 1, 4096, false);
+        assertThat(repository.findById("c1"), notNullValue());
+        assertThat(repository.findById("c2"), nullValue());
+        addItem(repository, cart("c3"), "p3", 3);
+        repository.close();
+
+        repository = new EventSourcedCartRepository(dir, 1, 4096, false);
+        assertThat(repository.findById("c1"), notNullValue());
+        assertThat(repository.findById("c3").findShoppingCartItem("p3").getQuantity(), equalTo(3));
+        repository.close();
+    }
+
+    private ShoppingCart cart(String cartId) {
+        ShoppingCart sc = new ShoppingCart();
+        sc.setId(cartId);
+        return sc;
+    }
+
+    private ShoppingCartItem addItem(CartRepository repository, ShoppingCart sc, String itemId, int quantity) {
+        Product product = new Product();
+        product.setItemId(itemId);
+        product.setName("Product " + itemId);
+        product.setPrice(10.0);
+        ShoppingCartItem sci = new ShoppingCartItem();
+        sci.setProduct(product);
+        sci.setPrice(product.getPrice());
+        sci.setQuantity(quantity);
+        sc.addShoppingCartItem(sci);
+        change(repository, sc, sci, quantity);
+        return sci;
+    }
+
+    // stands in for the price calculation: 3% off every line, shipping of the 50.00 to 74.99 tier
+    private void change(CartRepository repository, ShoppingCart sc, ShoppingCartItem sci, int quantityDelta) {
+        long total = 0;
+        long savings = 0;
+        for (ShoppingCartItem line : sc.getShoppingCartItemList()) {
+            line.setPromoSavingsCents(line.getPriceCents() * line.getQuantity() * 3 / 100);
+            total += line.getPriceCents() * line.getQuantity();
+            savings += line.getPromoSavingsCents();
+        }
+        sc.setCartItemTotalCents(total);
+        sc.setCartItemPromoSavingsCents(savings);
+        sc.setShippingTotalCents(699);
+        sc.setCartTotalCents(total - savings + 699);
+        repository.saveChange(sc, sci, quantityDelta);
+    }
+
+}
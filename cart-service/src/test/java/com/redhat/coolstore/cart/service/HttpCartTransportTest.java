@@ -0,0 +1,102 @@
+package com.redhat.coolstore.cart.service;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToJson;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.matchingJsonPath;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.put;
+import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.concurrent.CompletionException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.springframework.web.client.HttpServerErrorException;
+
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItemChange;
+
+public class HttpCartTransportTest {
+
+    private static final String CART_JSON = "{\"id\":\"c1\",\"cartItemTotal\":20.0,\"cartTotal\":22.99,\"shippingTotal\":2.99,"
+            + "\"shoppingCartItemList\":[{\"price\":10.0,\"quantity\":2,\"product\":{\"itemId\":\"p1\",\"price\":10.0}}]}";
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    private HttpCartTransport transport;
+
+    private String member;
+
+    @Before
+    public void setup() {
+        transport = new HttpCartTransport(10, 1000, 5000);
+        member = "http://localhost:" + wireMockRule.port();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        transport.close();
+    }
+
+    @Test
+    public void getShoppingCart() {
+        stubFor(get(urlEqualTo("/cluster/cart/c1")).willReturn(
+                aResponse().withStatus(200).withHeader("Content-type", "application/json").withBody(CART_JSON)));
+
+        ShoppingCart sc = transport.getShoppingCart(member, "c1").join();
+
+        assertThat(sc.getId(), equalTo("c1"));
+        assertThat(sc.getCartTotal(), equalTo(22.99));
+        assertThat(sc.findShoppingCartItem("p1").getQuantity(), equalTo(2));
+    }
+
+    @Test
+    public void updateCartSendsTheChanges() {
+        stubFor(post(urlEqualTo("/cluster/cart/c1/items")).willReturn(
+                aResponse().withStatus(200).withHeader("Content-type", "application/json").withBody(CART_JSON)));
+
+        ShoppingCart sc = transport.updateCart(member, "c1", Collections.singletonList(new ShoppingCartItemChange("p1", 2))).join();
+
+        assertThat(sc.getCartItemTotal(), equalTo(20.0));
+        verify(postRequestedFor(urlEqualTo("/cluster/cart/c1/items")).withRequestBody(equalToJson("[{\"itemId\":\"p1\",\"quantity\":2}]")));
+    }
+
+    @Test
+    public void transferPutsTheCart() {
+        stubFor(put(urlEqualTo("/cluster/cart/c1")).willReturn(aResponse().withStatus(204)));
+        ShoppingCart sc = new ShoppingCart();
+        sc.setId("c1");
+
+        transport.transfer(member, sc).join();
+
+        verify(putRequestedFor(urlEqualTo("/cluster/cart/c1")).withRequestBody(matchingJsonPath("$[?(@.id == 'c1')]")));
+    }
+
+    @Test
+    public void failedCallCompletesExceptionally() {
+        stubFor(post(urlEqualTo("/cluster/cart/checkout/c1")).willReturn(aResponse().withStatus(503)));
+
+        try {
+            transport.checkoutShoppingCart(member, "c1").join();
+            fail("Expected CompletionException");
+        } catch (CompletionException e) {
+            assertThat(e.getCause(), instanceOf(HttpServerErrorException.class));
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+public class InMemoryCartRepositoryTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    @Test
+    public void idleCartsAreEvicted() {
+        InMemoryCartRepository repository = new InMemoryCartRepository(10_000, 0, 0, 0, clock::get);
+        List<String> evicted = new ArrayList<>();
+        repository.addEvictionListener(sc -> evicted.add(sc.getId()));
+        repository.save(cart("c1"));
+        repository.save(cart("c2"));
+
+        clock.addAndGet(6_000);
+        assertThat(repository.findById("c2"), notNullValue());
+        clock.addAndGet(6_000);
+        repository.evictIdle();
+
+        assertThat(repository.findById("c1"), nullValue());
+        assertThat(repository.findById("c2"), notNullValue());
+        assertThat(evicted, contains("c1"));
+        assertThat(repository.getStatistics().getIdleEvictions(), equalTo(1L));
+        assertThat(repository.getStatistics().getResidentCarts(), equalTo(1L));
+    }
+
+    @Test
+    public void leastRecentlyUsedCartIsEvictedWhenFull() {
+        InMemoryCartRepository repository = new InMemoryCartRepository(0, 3, 0, 0, clock::get);
+        repository.save(cart("c1"));
+        clock.addAndGet(2_000);
+        repository.save(cart("c2"));
+        clock.addAndGet(2_000);
+        repository.save(cart("c3"));
+        clock.addAndGet(2_000);
+        repository.findById("c1");
+        clock.addAndGet(2_000);
+        repository.save(cart("c4"));
+
+        assertThat(repository.findById("c2"), nullValue());
+        assertThat(repository.findById("c1"), notNullValue());
+        assertThat(repository.findById("c3"), notNullValue());
+        assertThat(repository.findById("c4"), notNullValue());
+        assertThat(repository.getStatistics().getSizeEvictions(), equalTo(1L));
+    }
+
+    @Test
+    public void residentBytesStayWithinBudget() {
+        long budget = 20 * new InMemoryCartRepository().estimateWeight(cart("c00"));
+        InMemoryCartRepository repository = new InMemoryCartRepository(0, 0, budget, 0, clock::get);
+        for (int i = 0; i < 100; i++) {
+            repository.save(cart(String.format("c%02d", i)));
+        }
+        assertThat(repository.getStatistics().getResidentBytes(), lessThanOrEqualTo(budget));
+        assertThat(repository.getStatistics().getResidentCarts(), equalTo(20L));
+        assertThat(repository.getStatistics().getSizeEvictions(), equalTo(80L));
+    }
+
+    @Test
+    public void replacingACartUpdatesResidentBytes() {
+        InMemoryCartRepository repository = new InMemoryCartRepository();
+        repository.save(cart("c1"));
+        long empty = repository.getStatistics().getResidentBytes();
+        ShoppingCart sc = cart("c1");
+        Product product = new Product();
+        product.setItemId("p1");
+        product.setName("Product 1");
+        ShoppingCartItem sci = new ShoppingCartItem();
+        sci.setProduct(product);
+        sc.addShoppingCartItem(sci);
+        repository.save(sc);
+
+        assertThat(repository.getStatistics().getResidentCarts(), equalTo(1L));
+        assertThat(repository.getStatistics().getResidentBytes(), greaterThan(empty));
+        repository.delete("c1");
+        assertThat(repository.getStatistics().getResidentCarts(), equalTo(0L));
+        assertThat(repository.getStatistics().getResidentBytes(), equalTo(0L));
+    }
+
+    @Test
+    public void cartsShareTheProductsOfTheirLines() {
+        InMemoryCartRepository repository = new InMemoryCartRepository();
+        // each cart holds its own copy of the product, as when carts are read back or deserialized
+        ShoppingCart c1 = cart("c1", "p1");
+        ShoppingCart c2 = cart("c2", "p1");
+        long unshared = repository.estimateWeight(c1) + repository.estimateWeight(c2);
+
+        repository.save(c1);
+        repository.save(c2);
+
+        assertThat(repository.findById("c2").getShoppingCartItemList().get(0).getProduct(),
+                sameInstance(repository.findById("c1").getShoppingCartItemList().get(0).getProduct()));
+        assertThat(repository.getStatistics().getResidentBytes(), lessThan(unshared));
+    }
+
+    @Test
+    public void cartsAreIndexedByItem() {
+        InMemoryCartRepository repository = new InMemoryCartRepository(0, 2, 0, 0, clock::get);
+        repository.save(cart("c1", "p1", "p2"));
+        clock.addAndGet(2_000);
+        repository.save(cart("c2", "p2"));
+
+        assertThat(repository.findCartIdsByItemId("p1"), contains("c1"));
+        assertThat(repository.findCartIdsByItemId("p2"), containsInAnyOrder("c1", "c2"));
+
+        // lines removed or added since the cart was last stored
+        ShoppingCart sc = repository.findById("c1");
+        sc.removeShoppingCartItem(sc.findShoppingCartItem("p1"));
+        sc.addShoppingCartItem(item("p3"));
+        repository.save(sc);
+        assertThat(repository.findCartIdsByItemId("p1"), empty());
+        assertThat(repository.findCartIdsByItemId("p3"), contains("c1"));
+
+        repository.delete("c2");
+        assertThat(repository.findCartIdsByItemId("p2"), contains("c1"));
+        clock.addAndGet(2_000);
+        repository.save(cart("c3"));
+        repository.save(cart("c4"));
+        assertThat(repository.findById("c1"), nullValue());
+        assertThat(repository.findCartIdsByItemId("p2"), empty());
+        assertThat(repository.findCartIdsByItemId("p3"), empty());
+    }
+
+    @Test
+    public void changedLinesUpdateTheIndexInPlace() {
+        InMemoryCartRepository repository = new InMemoryCartRepository();
+        ShoppingCart sc = cart("c1", "p1");
+        repository.save(sc);
+
+        ShoppingCartItem added = item("p2");
+        sc.addShoppingCartItem(added);
+        repository.saveChange(sc, added, 1);
+        assertThat(repository.findCartIdsByItemId("p2"), contains("c1"));
+
+        ShoppingCartItem removed = sc.findShoppingCartItem("p1");
+        sc.removeShoppingCartItem(removed);
+        repository.saveChange(sc, removed, -1);
+        assertThat(repository.findCartIdsByItemId("p1"), empty());
+        assertThat(repository.findCartIdsByItemId("p2"), contains("c1"));
+        assertThat(repository.getStatistics().getResidentBytes(), equalTo(repository.estimateWeight(sc)));
+
+        added.setQuantity(3);
+        repository.saveChange(sc, added, 2);
+        assertThat(repository.getStatistics().getResidentBytes(), equalTo(repository.estimateWeight(sc)));
+
+        // a change to a cart that is not resident stores it whole
+        ShoppingCart other = cart("c2", "p1");
+        repository.saveChange(other, other.findShoppingCartItem("p1"), 1);
+        assertThat(repository.findCartIdsByItemId("p1"), contains("c2"));
+        assertThat(repository.getStatistics().getResidentCarts(), equalTo(2L));
+    }
+
+    @Test
+    public void residentUnitsFollowTheStoredCarts() {
+        InMemoryCartRepository repository = new InMemoryCartRepository(0, 2, 0, 0, clock::get);
+        ShoppingCart sc = cart("c1", "p1", "p2");
+        repository.save(sc);
+        repository.save(cart("c2", "p1"));
+        assertThat(repository.getStatistics().getResidentUnits(), equalTo(3L));
+
+        ShoppingCartItem sci = sc.findShoppingCartItem("p1");
+        sci.setQuantity(4);
+        sc.unitsChanged(3);
+        repository.saveChange(sc, sci, 3);
+        assertThat(repository.getStatistics().getResidentUnits(), equalTo(6L));
+
+        repository.delete("c2");
+        assertThat(repository.getStatistics().getResidentUnits(), equalTo(5L));
+        clock.addAndGet(2_000);
+        repository.save(cart("c3", "p3"));
+        repository.save(cart("c4", "p4"));
+        assertThat(repository.findById("c1"), nullValue());
+        assertThat(repository.getStatistics().getResidentUnits(), equalTo(2L));
+    }
+
+    private ShoppingCart cart(String cartId, String... itemIds) {
+        ShoppingCart sc = cart(cartId);
+        for (String itemId : itemIds) {
+            sc.addShoppingCartItem(item(itemId));
+        }
+        return sc;
+    }
+
+    private ShoppingCartItem item(String itemId) {
+        Product product = new Product();
+        product.setItemId(itemId);
+        ShoppingCartItem sci = new ShoppingCartItem();
+        sci.setProduct(product);
+        sci.setQuantity(1);
+        return sci;
+    }
+
+    private ShoppingCart cart(String cartId) {
+        ShoppingCart sc = new ShoppingCart();
+        sc.setId(cartId);
+        return sc;
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+public class ItemIdDictionaryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void setup() throws Exception {
+        file = folder.getRoot().toPath().resolve("item-ids.dict");
+    }
+
+    @Test
+    public void itemIdsKeepTheirNumbersAcrossReopens() throws Exception {
+        ItemIdDictionary dictionary = ItemIdDictionary.open(file, 100);
+        ShoppingCartCodec codec = new ShoppingCartCodec(dictionary);
+        ByteBuffer referenced = ByteBuffer.allocate(1024);
+        codec.encode(cart("329299", "165613"), referenced);
+        ByteBuffer inFull = ByteBuffer.allocate(1024);
+        new ShoppingCartCodec().encode(cart("329299", "165613"), inFull);
+        dictionary.close();
+
+        dictionary = ItemIdDictionary.open(file, 100);
+        assertThat(dictionary.size(), equalTo(2));
+        assertThat(dictionary.numberOf("165613"), equalTo(1));
+        assertThat(dictionary.numberOf("444434"), equalTo(2));
+        referenced.flip();
+        ShoppingCart decoded = new ShoppingCartCodec(dictionary).decode(referenced);
+        assertThat(decoded.getShoppingCartItemList().get(1).getProduct().getItemId(), equalTo("165613"));
+        assertThat(referenced.limit(), lessThan(inFull.position()));
+        dictionary.close();
+    }
+
+    @Test
+    public void tornEntryIsCutOff() throws Exception {
+        ItemIdDictionary dictionary = ItemIdDictionary.open(file, 100);
+        dictionary.numberOf("329299");
+        dictionary.close();
+        // the length of an entry whose item id was never written
+        Files.write(file, new byte[] { 0, 0, 0, 6, '1' }, StandardOpenOption.APPEND);
+
+        dictionary = ItemIdDictionary.open(file, 100);
+        assertThat(dictionary.size(), equalTo(1));
+        assertThat(dictionary.numberOf("165613"), equalTo(1));
+        dictionary.close();
+
+        dictionary = ItemIdDictionary.open(file, 100);
+        assertThat(dictionary.itemId(1), equalTo("165613"));
+        dictionary.close();
+    }
+
+    @Test
+    public void fullDictionaryLeavesItemIdsUnnumbered() throws Exception {
+        ItemIdDictionary dictionary = ItemIdDictionary.open(file, 1);
+
+        assertThat(dictionary.numberOf("329299"), equalTo(0));
+        assertThat(dictionary.numberOf("165613"), equalTo(-1));
+        assertThat(new ItemIdDictionary(Arrays.asList("329299")).numberOf("165613"), equalTo(-1));
+        dictionary.close();
+    }
+
+    private static ShoppingCart cart(String... itemIds) {
+        ShoppingCart sc = new ShoppingCart();
+        sc.setId("c1");
+        for (String itemId : itemIds) {
+            Product product = new Product();
+            product.setItemId(itemId);
+            ShoppingCartItem sci = new ShoppingCartItem();
+            sci.setProduct(product);
+            sci.setQuantity(1);
+            sc.addShoppingCartItem(sci);
+        }
+        return sc;
+    }
+
+}
@@ -0,0 +1,214 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+public class MappedFileCartRepositoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path dir;
+
+    @Before
+    public void setup() throws Exception {
+        dir = folder.newFolder("carts").toPath();
+    }
+
+    @Test
+    public void reopenRestoresSavedCarts() throws Exception {
+        MappedFileCartRepository repository = new MappedFileCartRepository(dir, 1, 4096, false);
+        repository.save(cart("c1", "p1", 2));
+        repository.save(cart("c2", "p2", 1));
+        ShoppingCart saved = cart("c1", "p3", 5);
+        saved.setVersion(7);
+        saved.getShoppingCartItemList().get(0).setPromoSavings(1.5);
+        saved.setCartItemPromoSavings(1.5);
+        repository.save(saved);
+        repository.close();
+        // the item ids the carts refer to by number are stored next to the partitions
+        try (ItemIdDictionary dictionary = ItemIdDictionary.open(dir.resolve("item-ids.dict"), 16)) {
+            assertThat(dictionary.size(), equalTo(3));
+        }
+
+        repository = new MappedFileCartRepository(dir, 1, 4096, false);
+        // carts are only decoded when they are read
+        assertThat(repository.getStatistics().getResidentCarts(), equalTo(0L));
+        ShoppingCart c1 = repository.findById("c1");
+        assertThat(c1, notNullValue());
+        assertThat(repository.getStatistics().getResidentCarts(), equalTo(1L));
+        assertThat(c1.getCartItemTotal(), equalTo(50.0));
+        assertThat(c1.getShoppingCartItemList().size(), equalTo(1));
+        ShoppingCartItem sci = c1.getShoppingCartItemList().get(0);
+        assertThat(sci.getQuantity(), equalTo(5));
+        assertThat(sci.getPrice(), equalTo(10.0));
+        assertThat(sci.getProduct().getItemId(), equalTo("p3"));
+        assertThat(sci.getProduct().getName(), equalTo("Product p3"));
+        assertThat(sci.getProduct().getDesc(), nullValue());
+        assertThat(sci.getPromoSavings(), equalTo(1.5));
+        assertThat(c1.getCartItemPromoSavings(), equalTo(1.5));
+        assertThat(c1.getVersion(), equalTo(7L));
+        assertThat(repository.findById("c2").getShoppingCartItemList().get(0).getQuantity(), equalTo(1));
+        repository.close();
+    }
+
+    @Test
+    public void deletedCartsStayDeletedAfterReopen() throws Exception {
+        MappedFileCartRepository repository = new MappedFileCartRepository(dir, 1, 4096, false);
+        repository.save(cart("c1", "p1", 2));
+        repository.save(cart("c2", "p2", 1));
+        repository.delete("c1");
+        repository.close();
+
+        repository = new MappedFileCartRepository(dir, 1, 4096, false);
+        assertThat(repository.findById("c1"), nullValue());
+        assertThat(repository.findById("c2"), notNullValue());
+        repository.close();
+    }
+
+    @Test
+    public void fullSegmentsAreRolledAndCompacted() throws Exception {
+        MappedFileCartRepository repository = new MappedFileCartRepository(dir, 1, 1024, false);
+        for (int i = 0; i < 500; i++) {
+            repository.save(cart("c" + (i % 5), "p" + i, i + 1));
+        }
+        repository.awaitCompaction();
+        repository.close();
+        assertThat(repository.getCompactions(), greaterThan(0L));
+        assertThat(dir.resolve("partition-000").toFile().listFiles().length, lessThan(4));
+
+        repository = new MappedFileCartRepository(dir, 1, 1024, false);
+        for (int i = 495; i < 500; i++) {
+            ShoppingCart sc = repository.findById("c" + (i % 5));
+            assertThat(sc.getShoppingCartItemList().get(0).getProduct().getItemId(), equalTo("p" + i));
+            assertThat(sc.getShoppingCartItemList().get(0).getQuantity(), equalTo(i + 1));
+        }
+        repository.close();
+    }
+
+    @Test
+    public void tornRecordIsIgnoredAndOverwritten() throws Exception {
+        MappedFileCartRepository repository = new MappedFileCartRepository(dir, 1, 4096, false);
+        repository.save(cart("c1", "p1", 1));
+        repository.save(cart("c2", "p2", 2));
+        repository.close();
+
+        // corrupt the payload of the last record, as if the pod died halfway through writing it
+        File segment = dir.resolve("partition-000").toFile().listFiles()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            int first = file.readInt();
+            file.seek(8 + first + 8 + 4);
+            file.writeInt(0xCAFEBABE);
+        }
+
+        repository = new MappedFileCartRepository(dir, 1, 4096, false);
+        assertThat(repository.findById("c1"), notNullValue());
+        assertThat(repository.findById("c2"), nullValue());
+        repository.save(cart("c3", "p3", 3));
+        repository.close();
+
+        repository = new MappedFileCartRepository(dir, 1, 4096, false);
+        assertThat(repository.findById("c1"), notNullValue());
+        assertThat(repository.findById("c3").getShoppingCartItemList().get(0).getQuantity(), equalTo(3));
+        repository.close();
+    }
+
+    @Test
+    public void evictedCartsAreReadBackFromDisk() throws Exception {
+        InMemoryCartRepository residentCarts = new InMemoryCartRepository(0, 2, 0, 0);
+        MappedFileCartRepository repository = new MappedFileCartRepository(dir, 4, 4096, false, residentCarts);
+        for (int i = 0; i < 10; i++) {
+            repository.save(cart("c" + i, "p" + i, i + 1));
+        }
+        assertThat(residentCarts.getStatistics().getResidentCarts(), equalTo(2L));
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(repository.findById("c" + i).getShoppingCartItemList().get(0).getQuantity(), equalTo(i + 1));
+        }
+        assertThat(repository.getReloads(), greaterThanOrEqualTo(8L));
+        assertThat(repository.findById("unknown"), nullValue());
+        repository.delete("c0");
+        repository.close();
+
+        repository = new MappedFileCartRepository(dir, 4, 4096, false);
+        assertThat(repository.findById("c0"), nullValue());
+        for (int i = 1; i < 10; i++) {
+            assertThat(repository.findById("c" + i), notNullValue());
+        }
+        repository.close();
+    }
+
+    @Test
+    public void cartsAreSavedConcurrentlyWhileCompacting() throws Exception {
+        MappedFileCartRepository repository = new MappedFileCartRepository(dir, 4, 1024, false);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            int thread = t;
+            executor.execute(() -> {
+                for (int i = 0; i < 500; i++) {
+                    repository.save(cart("t" + thread + "-c" + (i % 10), "p" + i, i + 1));
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS), equalTo(true));
+        repository.close();
+        assertThat(repository.getCompactions(), greaterThan(0L));
+
+        MappedFileCartRepository reopened = new MappedFileCartRepository(dir, 4, 1024, false);
+        assertThat(reopened.getStoredCarts(), equalTo(40L));
+        assertThat(reopened.getStatistics().getResidentCarts(), equalTo(0L));
+        for (int t = 0; t < 4; t++) {
+            for (int i = 490; i < 500; i++) {
+                ShoppingCart sc = reopened.findById("t" + t + "-c" + (i % 10));
+                assertThat(sc.getShoppingCartItemList().get(0).getQuantity(), equalTo(i + 1));
+            }
+        }
+        reopened.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void partitionCountCannotChange() throws Exception {
+        new MappedFileCartRepository(dir, 2, 4096, false).close();
+        new MappedFileCartRepository(dir, 4, 4096, false);
+    }
+
+    private ShoppingCart cart(String cartId, String itemId, int quantity) {
+        Product product = new Product();
+        product.setItemId(itemId);
+        product.setName("Product " + itemId);
+        product.setPrice(10.0);
+        ShoppingCartItem sci = new ShoppingCartItem();
+        sci.setProduct(product);
+        sci.setPrice(product.getPrice());
+        sci.setQuantity(quantity);
+        ShoppingCart sc = new ShoppingCart();
+        sc.setId(cartId);
+        sc.addShoppingCartItem(sci);
+        sc.setCartItemTotal(sci.getPrice() * quantity);
+        sc.setCartTotal(sc.getCartItemTotal());
+        return sc;
+    }
+
+}
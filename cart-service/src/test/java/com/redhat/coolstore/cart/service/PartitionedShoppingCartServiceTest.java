@@ -0,0 +1,230 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+
+/**
+ * Runs a cluster of cart service instances in one JVM, connected by a
+ * {@link LocalCartTransport}.
+ */
+public class PartitionedShoppingCartServiceTest {
+
+    private static final int CARTS = 200;
+
+    private final LocalCartTransport transport = new LocalCartTransport();
+
+    private final List<String> members = new CopyOnWriteArrayList<>();
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    private CatalogService catalogService;
+
+    @Before
+    public void setup() {
+        catalogService = mock(CatalogService.class);
+        when(catalogService.getProduct(anyString())).thenAnswer(invocation -> product(invocation.getArgumentAt(0, String.class)));
+        when(catalogService.getProductAsync(anyString())).thenAnswer(
+                invocation -> CompletableFuture.completedFuture(product(invocation.getArgumentAt(0, String.class))));
+    }
+
+    @After
+    public void teardown() {
+        for (Node node : nodes) {
+            node.membership.close();
+        }
+    }
+
+    @Test
+    public void cartsAreStoredByTheirOwnerOnly() {
+        Node a = join("a");
+        Node b = join("b");
+        Node c = join("c");
+        refreshAll();
+
+        for (int i = 0; i < CARTS; i++) {
+            nodes.get(i % 3).service.addToCart("cart-" + i, "p1", 1);
+            nodes.get((i + 1) % 3).service.addToCartAsync("cart-" + i, "p2", 2).join();
+        }
+
+        for (int i = 0; i < CARTS; i++) {
+            String cartId = "cart-" + i;
+            String owner = a.service.getRing().ownerOf(cartId);
+            for (Node node : nodes) {
+                assertThat(node.repository.findById(cartId) != null, equalTo(node.name.equals(owner)));
+            }
+            ShoppingCart sc = nodes.get((i + 2) % 3).service.getShoppingCart(cartId);
+            assertThat(sc.getShoppingCartItemList().size(), equalTo(2));
+            assertThat(sc.getCartItemTotal(), equalTo(30.0));
+        }
+        assertThat(a.repository.getStatistics().getResidentCarts() + b.repository.getStatistics().getResidentCarts()
+                + c.repository.getStatistics().getResidentCarts(), equalTo((long) CARTS));
+        assertThat(a.service.getForwardedCalls(), greaterThan(0L));
+    }
+
+    @Test
+    public void nearCacheServesRepeatedReads() {
+        Node a = join("a");
+        join("b");
+        refreshAll();
+        String cartId = cartOwnedBy("b", a.service.getRing());
+        a.service.addToCart(cartId, "p1", 1);
+        long forwarded = a.service.getForwardedCalls();
+
+        assertThat(a.service.getShoppingCart(cartId).getShoppingCartItemList().size(), equalTo(1));
+        assertThat(a.service.getShoppingCart(cartId).getShoppingCartItemList().size(), equalTo(1));
+        assertThat(a.service.getForwardedCalls(), equalTo(forwarded));
+
+        a.service.checkoutShoppingCart(cartId);
+        assertThat(a.service.getShoppingCart(cartId).getShoppingCartItemList().size(), equalTo(0));
+    }
+
+    @Test
+    public void joiningMemberTakesOverItsCarts() {
+        Node a = join("a");
+        Node b = join("b");
+        refreshAll();
+        for (int i = 0; i < CARTS; i++) {
+            a.service.addToCart("cart-" + i, "p1", i + 1);
+        }
+
+        Node c = join("c");
+        refreshAll();
+        rebalanceAll();
+
+        assertThat(c.repository.getStatistics().getResidentCarts(), greaterThan(0L));
+        for (int i = 0; i < CARTS; i++) {
+            String cartId = "cart-" + i;
+            String owner = c.service.getRing().ownerOf(cartId);
+            for (Node node : nodes) {
+                assertThat(node.repository.findById(cartId) != null, equalTo(node.name.equals(owner)));
+            }
+            assertThat(b.service.getShoppingCart(cartId).findShoppingCartItem("p1").getQuantity(), equalTo(i + 1));
+        }
+    }
+
+    @Test
+    public void leavingMemberHandsItsCartsOver() {
+        Node a = join("a");
+        Node b = join("b");
+        Node c = join("c");
+        refreshAll();
+        for (int i = 0; i < CARTS; i++) {
+            a.service.addToCart("cart-" + i, "p1", i + 1);
+        }
+        long owned = c.repository.getStatistics().getResidentCarts();
+        assertThat(owned, greaterThan(0L));
+
+        c.service.close();
+        assertThat(c.repository.getStatistics().getResidentCarts(), equalTo(0L));
+        assertThat(c.service.getHandedOverCarts(), equalTo(owned));
+        transport.unregister("c");
+        members.remove("c");
+        refreshAll();
+
+        for (int i = 0; i < CARTS; i++) {
+            assertThat(a.service.getShoppingCart("cart-" + i).findShoppingCartItem("p1").getQuantity(), equalTo(i + 1));
+            assertThat(b.service.getShoppingCart("cart-" + i).findShoppingCartItem("p1").getQuantity(), equalTo(i + 1));
+        }
+    }
+
+    @Test
+    public void cartsOfAnUnreachableOwnerAreKept() {
+        Node a = join("a");
+        Node b = join("b");
+        refreshAll();
+        String cartId = cartOwnedBy("b", a.service.getRing());
+        // the cart was created on a while it did not know about b yet
+        a.local.addToCart(cartId, "p1", 1);
+        transport.unregister("b");
+
+        assertThat(a.service.rebalance(), equalTo(0));
+        assertThat(a.repository.findById(cartId), notNullValue());
+
+        transport.register("b", b.local);
+        assertThat(a.service.rebalance(), equalTo(1));
+        assertThat(a.repository.findById(cartId), nullValue());
+        assertThat(b.repository.findById(cartId).findShoppingCartItem("p1").getQuantity(), equalTo(1));
+    }
+
+    private Node join(String name) {
+        Node node = new Node(name);
+        members.add(name);
+        transport.register(name, node.local);
+        nodes.add(node);
+        return node;
+    }
+
+    private void refreshAll() {
+        for (Node node : nodes) {
+            if (members.contains(node.name)) {
+                node.membership.refresh();
+            }
+        }
+    }
+
+    private void rebalanceAll() {
+        for (Node node : nodes) {
+            node.service.rebalance();
+        }
+    }
+
+    private String cartOwnedBy(String member, ConsistentHashRing ring) {
+        for (int i = 0;; i++) {
+            if (ring.ownerOf("cart-" + i).equals(member)) {
+                return "cart-" + i;
+            }
+        }
+    }
+
+    private Product product(String itemId) {
+        Product product = new Product();
+        product.setItemId(itemId);
+        product.setName("Product " + itemId);
+        product.setPrice(10.0);
+        return product;
+    }
+
+    private class Node {
+
+        private final String name;
+
+        private final InMemoryCartRepository repository = new InMemoryCartRepository();
+
+        private final ShoppingCartServiceImpl local = new ShoppingCartServiceImpl();
+
+        private final ClusterMembership membership;
+
+        private final PartitionedShoppingCartService service;
+
+        Node(String name) {
+            this.name = name;
+            ReflectionTestUtils.setField(local, null, catalogService, CatalogService.class);
+            ReflectionTestUtils.setField(local, null, new PriceCalculationServiceImpl(), PriceCalculationService.class);
+            ReflectionTestUtils.setField(local, null, repository, CartRepository.class);
+            ReflectionTestUtils.setField(local, null, (Executor) Runnable::run, Executor.class);
+            membership = new ClusterMembership(name, () -> members, 0);
+            service = new PartitionedShoppingCartService(local, repository, membership, transport, new NearCache(60_000, 100), 64, 0);
+        }
+    }
+
+}
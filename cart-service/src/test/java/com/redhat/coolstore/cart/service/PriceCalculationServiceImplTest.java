@@ -5,8 +5,11 @@ import static org.hamcrest.MatcherAssert.assertThat;
 
 import org.junit.Test;
 
+import com.redhat.coolstore.cart.model.Product;
 import com.redhat.coolstore.cart.model.ShoppingCart;
 import com.redhat.coolstore.cart.model.ShoppingCartItem;
+import com.redhat.coolstore.cart.service.PromotionRules.ItemPromotion;
+import com.redhat.coolstore.cart.service.PromotionRules.ShippingPromotion;
 
 public class PriceCalculationServiceImplTest {
 
@@ -59,4 +62,143 @@ public class PriceCalculationServiceImplTest {
         assertThat(sc.getCartTotal(), equalTo(100.00));
     }
 
+    @Test
+    public void priceCartIsExactInCents() throws Exception {
+        ShoppingCart sc = new ShoppingCart();
+        for (int i = 0; i < 10; i++) {
+            ShoppingCartItem sci = new ShoppingCartItem();
+            sci.setPrice(0.1);
+            sci.setQuantity(3);
+            sc.addShoppingCartItem(sci);
+        }
+
+        PriceCalculationServiceImpl priceCalculationService = new PriceCalculationServiceImpl();
+        priceCalculationService.priceShoppingCart(sc);
+        assertThat(sc.getCartItemTotal(), equalTo(3.0));
+        assertThat(sc.getShippingTotal(), equalTo(2.99));
+        assertThat(sc.getCartTotal(), equalTo(5.99));
+    }
+
+    @Test
+    public void updateCartPriceMatchesFullRecompute() throws Exception {
+        PriceCalculationServiceImpl priceCalculationService = new PriceCalculationServiceImpl();
+        ShoppingCart sc = new ShoppingCart();
+        ShoppingCartItem sci1 = new ShoppingCartItem();
+        sci1.setPrice(19.99);
+        sci1.setQuantity(2);
+        sc.addShoppingCartItem(sci1);
+        priceCalculationService.updateShoppingCartPrice(sc, sci1, 2);
+        assertThat(sc.getCartItemTotal(), equalTo(39.98));
+        assertThat(sc.getShippingTotal(), equalTo(4.99));
+
+        ShoppingCartItem sci2 = new ShoppingCartItem();
+        sci2.setPrice(10.01);
+        sci2.setQuantity(1);
+        sc.addShoppingCartItem(sci2);
+        priceCalculationService.updateShoppingCartPrice(sc, sci2, 1);
+        assertThat(sc.getCartItemTotal(), equalTo(49.99));
+        assertThat(sc.getCartTotal(), equalTo(49.99));
+
+        sci1.setQuantity(1);
+        priceCalculationService.updateShoppingCartPrice(sc, sci1, -1);
+        long incremental = sc.getCartTotalCents();
+        assertThat(sc.getUnitCount(), equalTo(2L));
+        priceCalculationService.priceShoppingCart(sc);
+        assertThat(sc.getCartTotalCents(), equalTo(incremental));
+        assertThat(sc.getUnitCount(), equalTo(2L));
+        assertThat(sc.getCartItemTotal(), equalTo(30.0));
+        assertThat(sc.getCartTotal(), equalTo(34.99));
+    }
+
+    @Test
+    public void priceCartWithPromotions() throws Exception {
+        PromotionRules rules = new PromotionRules();
+        rules.getItemPromotions().add(new ItemPromotion("p1", 10, 0, 0));
+        rules.getItemPromotions().add(new ItemPromotion("p2", 0, 1, 1));
+        rules.getShippingPromotions().add(new ShippingPromotion(30.0, 50));
+        PriceCalculationServiceImpl priceCalculationService = withRules(rules);
+        ShoppingCart sc = new ShoppingCart();
+        ShoppingCartItem sci1 = item("p1", 20.0, 2);
+        sc.addShoppingCartItem(sci1);
+        ShoppingCartItem sci2 = item("p2", 5.0, 3);
+        sc.addShoppingCartItem(sci2);
+
+        priceCalculationService.priceShoppingCart(sc);
+        assertThat(sci1.getPromoSavings(), equalTo(4.0));
+        assertThat(sci2.getPromoSavings(), equalTo(5.0));
+        assertThat(sc.getCartItemTotal(), equalTo(55.0));
+        assertThat(sc.getCartItemPromoSavings(), equalTo(9.0));
+        assertThat(sc.getShippingPromoSavings(), equalTo(2.49));
+        assertThat(sc.getShippingTotal(), equalTo(2.50));
+        assertThat(sc.getCartTotal(), equalTo(48.50));
+    }
+
+    @Test
+    public void updateCartPriceWithPromotionsMatchesFullRecompute() throws Exception {
+        PromotionRules rules = new PromotionRules();
+        rules.getItemPromotions().add(new ItemPromotion("p1", 0, 2, 1));
+        PriceCalculationServiceImpl priceCalculationService = withRules(rules);
+        ShoppingCart sc = new ShoppingCart();
+        ShoppingCartItem sci1 = item("p1", 10.0, 2);
+        sc.addShoppingCartItem(sci1);
+        priceCalculationService.updateShoppingCartPrice(sc, sci1, 2);
+        assertThat(sc.getCartItemPromoSavings(), equalTo(0.0));
+
+        sci1.setQuantity(3);
+        priceCalculationService.updateShoppingCartPrice(sc, sci1, 1);
+        assertThat(sc.getCartItemPromoSavings(), equalTo(10.0));
+        assertThat(sc.getCartTotal(), equalTo(22.99));
+
+        ShoppingCartItem sci2 = item("p2", 1.0, 1);
+        sc.addShoppingCartItem(sci2);
+        priceCalculationService.updateShoppingCartPrice(sc, sci2, 1);
+        sc.removeShoppingCartItem(sci1);
+        priceCalculationService.updateShoppingCartPrice(sc, sci1, -3);
+        assertThat(sc.getCartItemTotal(), equalTo(1.0));
+        assertThat(sc.getCartItemPromoSavings(), equalTo(0.0));
+
+        long incremental = sc.getCartTotalCents();
+        priceCalculationService.priceShoppingCart(sc);
+        assertThat(sc.getCartTotalCents(), equalTo(incremental));
+    }
+
+    @Test
+    public void changedRulesRepriceTheWholeCart() throws Exception {
+        PromotionEngine promotionEngine = PromotionEngine.defaults();
+        PriceCalculationServiceImpl priceCalculationService = new PriceCalculationServiceImpl(promotionEngine);
+        ShoppingCart sc = new ShoppingCart();
+        ShoppingCartItem sci1 = item("p1", 10.0, 1);
+        sc.addShoppingCartItem(sci1);
+        ShoppingCartItem sci2 = item("p2", 10.0, 1);
+        sc.addShoppingCartItem(sci2);
+        priceCalculationService.priceShoppingCart(sc);
+        assertThat(sc.getCartItemPromoSavings(), equalTo(0.0));
+
+        PromotionRules rules = new PromotionRules();
+        rules.getItemPromotions().add(new ItemPromotion("p1", 50, 0, 0));
+        promotionEngine.update(rules);
+        sci2.setQuantity(2);
+        priceCalculationService.updateShoppingCartPrice(sc, sci2, 1);
+        assertThat(sci1.getPromoSavings(), equalTo(5.0));
+        assertThat(sc.getCartItemTotal(), equalTo(30.0));
+        assertThat(sc.getCartItemPromoSavings(), equalTo(5.0));
+    }
+
+    private static PriceCalculationServiceImpl withRules(PromotionRules rules) {
+        PromotionEngine promotionEngine = PromotionEngine.defaults();
+        promotionEngine.update(rules);
+        PriceCalculationServiceImpl priceCalculationService = new PriceCalculationServiceImpl(promotionEngine);
+        return priceCalculationService;
+    }
+
+    private static ShoppingCartItem item(String itemId, double price, int quantity) {
+        Product product = new Product();
+        product.setItemId(itemId);
+        ShoppingCartItem sci = new ShoppingCartItem();
+        sci.setProduct(product);
+        sci.setPrice(price);
+        sci.setQuantity(quantity);
+        return sci;
+    }
+
 }
@@ -0,0 +1,223 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.redhat.coolstore.cart.model.Product;
+
+public class ProductCacheTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    private final ProductCache productCache = new ProductCache(60_000, 5_000, 100, clock::get);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void productIsLoadedOnceUntilItExpires() {
+        Product product = productCache.get("p1", this::load);
+        assertThat(productCache.get("p1", this::load), sameInstance(product));
+        assertThat(loads.get(), equalTo(1));
+
+        clock.addAndGet(60_000);
+        productCache.get("p1", this::load);
+        assertThat(loads.get(), equalTo(2));
+        assertThat(productCache.getHits(), equalTo(1L));
+        assertThat(productCache.getMisses(), equalTo(2L));
+    }
+
+    @Test
+    public void notFoundIsCachedForAShorterTime() {
+        assertThat(productCache.get("unknown", this::load), nullValue());
+        assertThat(productCache.get("unknown", this::load), nullValue());
+        assertThat(loads.get(), equalTo(1));
+
+        clock.addAndGet(5_000);
+        productCache.get("unknown", this::load);
+        assertThat(loads.get(), equalTo(2));
+    }
+
+    @Test
+    public void expiredProductIsKeptAsStale() {
+        Product product = productCache.get("p1", this::load);
+        clock.addAndGet(60_000);
+
+        assertThat(productCache.getStale("p1"), sameInstance(product));
+        assertThat(productCache.getStale("p2"), nullValue());
+        productCache.get("unknown", this::load);
+        assertThat(productCache.getStale("unknown"), nullValue());
+        assertThat(productCache.getStaleHits(), equalTo(1L));
+    }
+
+    @Test
+    public void failedLoadsAreNotCached() {
+        try {
+            productCache.get("p1", id -> {
+                throw new IllegalStateException("catalog down");
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), equalTo("catalog down"));
+        }
+        productCache.get("p1", this::load);
+        assertThat(loads.get(), equalTo(1));
+        assertThat(productCache.getLoadFailures(), equalTo(1L));
+    }
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Product>> results = new ArrayList<>();
+            results.add(executor.submit(() -> productCache.get("p1", id -> {
+                loading.countDown();
+                await(release);
+                return load(id);
+            })));
+            loading.await(5, TimeUnit.SECONDS);
+            for (int i = 1; i < threads; i++) {
+                results.add(executor.submit(() -> productCache.get("p1", this::load)));
+            }
+            while (productCache.getCoalescedLoads() < threads - 1) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            Product product = results.get(0).get(5, TimeUnit.SECONDS);
+            for (Future<Product> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS), sameInstance(product));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads.get(), equalTo(1));
+    }
+
+    @Test
+    public void asyncLoadIsSharedWithSyncCallers() throws Exception {
+        CompletableFuture<Product> loading = new CompletableFuture<>();
+        CompletableFuture<Product> first = productCache.getAsync("p1", id -> loading);
+        CompletableFuture<Product> second = productCache.getAsync("p1", id -> CompletableFuture.completedFuture(load(id)));
+        assertThat(first.isDone(), equalTo(false));
+        assertThat(productCache.getCoalescedLoads(), equalTo(1L));
+
+        loading.complete(load("p1"));
+        assertThat(second.get(), sameInstance(first.get()));
+        assertThat(productCache.get("p1", this::load), sameInstance(first.get()));
+        assertThat(loads.get(), equalTo(1));
+        assertThat(productCache.getHits(), equalTo(1L));
+    }
+
+    @Test
+    public void failedAsyncLoadsAreNotCached() throws Exception {
+        CompletableFuture<Product> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException("catalog down"));
+        try {
+            productCache.getAsync("p1", id -> failed).get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+        productCache.getAsync("p1", id -> CompletableFuture.completedFuture(load(id))).get();
+        assertThat(loads.get(), equalTo(1));
+        assertThat(productCache.getLoadFailures(), equalTo(1L));
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        for (int i = 0; i < 1000; i++) {
+            productCache.get("p" + i, this::load);
+        }
+        assertThat(productCache.size(), lessThanOrEqualTo(100));
+        assertThat(productCache.getEvictions(), equalTo(900L));
+    }
+
+    @Test
+    public void staleProductsSurviveFillingTheCacheWhileTheBreakerIsOpen() {
+        ProductCache cache = new ProductCache(60_000, 5_000, 600_000, 100, clock::get);
+        for (int i = 0; i < 100; i++) {
+            cache.get("p" + i, this::load);
+        }
+        // the catalog cannot be reached, the cached products expire and new ones are cached as calls get through
+        clock.addAndGet(60_000);
+        for (int i = 0; i < 10; i++) {
+            cache.get("q" + i, this::load);
+        }
+
+        assertThat(cache.size(), lessThanOrEqualTo(100));
+        assertThat(cache.getEvictions(), equalTo(10L));
+        int stale = 0;
+        for (int i = 0; i < 100; i++) {
+            if (cache.getStale("p" + i) != null) {
+                stale++;
+            }
+        }
+        assertThat(stale, equalTo(90));
+        for (int i = 0; i < 10; i++) {
+            assertThat(cache.getStale("q" + i), notNullValue());
+        }
+
+        // past the stale limit
+        clock.addAndGet(600_000);
+        assertThat(cache.getStale("p99"), nullValue());
+        assertThat(cache.getStale("q0"), notNullValue());
+    }
+
+    @Test
+    public void leastRecentlyUsedProductsAreEvicted() {
+        ProductCache cache = new ProductCache(60_000, 5_000, 0, 2, clock::get);
+        cache.get("p1", this::load);
+        clock.addAndGet(1_000);
+        cache.get("p2", this::load);
+        clock.addAndGet(1_000);
+        cache.get("p1", this::load);
+        clock.addAndGet(1_000);
+        cache.get("p3", this::load);
+
+        assertThat(cache.getStale("p2"), nullValue());
+        assertThat(cache.getStale("p1"), notNullValue());
+        assertThat(cache.getStale("p3"), notNullValue());
+    }
+
+    private Product load(String itemId) {
+        loads.incrementAndGet();
+        if (itemId.equals("unknown")) {
+            return null;
+        }
+        Product product = new Product();
+        product.setItemId(itemId);
+        product.setPrice(10.0);
+        return product;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
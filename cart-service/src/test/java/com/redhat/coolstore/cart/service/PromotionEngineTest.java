@@ -0,0 +1,87 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class PromotionEngineTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path rulesFile;
+
+    private PromotionEngine engine;
+
+    @Before
+    public void setUp() throws Exception {
+        rulesFile = folder.getRoot().toPath().resolve("promotions.json");
+        engine = new PromotionEngine(rulesFile, 0, new ObjectMapper());
+    }
+
+    @After
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    public void defaultsAreUsedWithoutARulesFile() {
+        engine.start();
+
+        assertThat(engine.getPromotions().shipping(1000), equalTo(299L));
+        assertThat(engine.getReloads(), equalTo(0L));
+        assertThat(engine.getReloadFailures(), equalTo(0L));
+    }
+
+    @Test
+    public void rulesAreReloadedWhenTheFileChanges() throws Exception {
+        write("{\"itemPromotions\":[{\"itemId\":\"p1\",\"percentOff\":10}]}", 1000);
+        engine.start();
+        CompiledPromotions loaded = engine.getPromotions();
+        assertThat(loaded.itemSavings("p1", 1000, 1), equalTo(100L));
+        assertThat(loaded.shipping(1000), equalTo(299L));
+
+        assertThat(engine.reloadIfModified(), equalTo(false));
+        assertThat(engine.getPromotions(), sameInstance(loaded));
+
+        write("{\"itemPromotions\":[{\"itemId\":\"p1\",\"buy\":1,\"get\":1}],\"shippingTiers\":[{\"from\":0.01,\"below\":100,\"cost\":5}]}", 2000);
+        assertThat(engine.reloadIfModified(), equalTo(true));
+        assertThat(engine.getPromotions().itemSavings("p1", 1000, 2), equalTo(1000L));
+        assertThat(engine.getPromotions().shipping(1000), equalTo(500L));
+        assertThat(engine.getReloads(), equalTo(2L));
+    }
+
+    @Test
+    public void invalidRulesKeepTheCurrentOnes() throws Exception {
+        write("{\"itemPromotions\":[{\"itemId\":\"p1\",\"percentOff\":10}]}", 1000);
+        engine.start();
+        CompiledPromotions loaded = engine.getPromotions();
+
+        write("{\"itemPromotions\":[{\"itemId\":\"p1\",\"percentOff\":150}]}", 2000);
+        assertThat(engine.reloadIfModified(), equalTo(false));
+        write("{\"itemPromotions\":", 3000);
+        assertThat(engine.reloadIfModified(), equalTo(false));
+
+        assertThat(engine.getPromotions(), sameInstance(loaded));
+        assertThat(engine.getReloadFailures(), equalTo(2L));
+    }
+
+    private void write(String json, long modifiedTime) throws Exception {
+        Files.write(rulesFile, json.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(rulesFile, FileTime.fromMillis(modifiedTime));
+    }
+
+}
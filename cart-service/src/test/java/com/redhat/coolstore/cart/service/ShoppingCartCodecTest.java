@@ -0,0 +1,232 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.redhat.coolstore.cart.model.Product;
+import com.redhat.coolstore.cart.model.ShoppingCart;
+import com.redhat.coolstore.cart.model.ShoppingCartItem;
+
+public class ShoppingCartCodecTest {
+
+    private final ShoppingCartCodec codec = new ShoppingCartCodec(Arrays.asList("329299", "329199", "165613"));
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    @Test
+    public void cartIsRoundTripped() {
+        ShoppingCart sc = cart();
+
+        codec.encode(sc, buffer);
+        buffer.flip();
+        ShoppingCart decoded = codec.decode(buffer);
+
+        assertThat(buffer.remaining(), equalTo(0));
+        assertThat(decoded.getId(), equalTo("c1"));
+        assertThat(decoded.getVersion(), equalTo(1234567L));
+        assertThat(decoded.getCartItemTotalCents(), equalTo(sc.getCartItemTotalCents()));
+        assertThat(decoded.getCartItemPromoSavingsCents(), equalTo(-150L));
+        assertThat(decoded.getShippingTotalCents(), equalTo(sc.getShippingTotalCents()));
+        assertThat(decoded.getShippingPromoSavingsCents(), equalTo(sc.getShippingPromoSavingsCents()));
+        assertThat(decoded.getCartTotalCents(), equalTo(sc.getCartTotalCents()));
+        assertThat(decoded.getShoppingCartItemList().size(), equalTo(3));
+        for (int i = 0; i < 3; i++) {
+            ShoppingCartItem expected = sc.getShoppingCartItemList().get(i);
+            ShoppingCartItem actual = decoded.getShoppingCartItemList().get(i);
+            assertThat(actual.getProduct().getItemId(), equalTo(expected.getProduct().getItemId()));
+            assertThat(actual.getProduct().getName(), equalTo(expected.getProduct().getName()));
+            assertThat(actual.getProduct().getDesc(), equalTo(expected.getProduct().getDesc()));
+            assertThat(actual.getProduct().getPrice(), equalTo(expected.getProduct().getPrice()));
+            assertThat(actual.getPriceCents(), equalTo(expected.getPriceCents()));
+            assertThat(actual.getQuantity(), equalTo(expected.getQuantity()));
+            assertThat(actual.getPromoSavingsCents(), equalTo(expected.getPromoSavingsCents()));
+        }
+        assertThat(decoded.findShoppingCartItem("999999").getQuantity(), equalTo(300));
+    }
+
+    @Test
+    public void dictionaryItemIdsAreShared() {
+        codec.encode(cart(), buffer);
+        buffer.flip();
+        ShoppingCart decoded = codec.decode(buffer);
+
+        assertThat(decoded.getShoppingCartItemList().get(0).getProduct().getItemId(), sameInstance("329299"));
+        assertThat(decoded.getShoppingCartItemList().get(1).getProduct().getItemId(), sameInstance("165613"));
+    }
+
+    @Test
+    public void textsAreEncodedAsUtf8() {
+        ShoppingCart sc = new ShoppingCart();
+        sc.setId("caf\u00e9 \u20ac \ud83d\uded2 \ud800");
+        ShoppingCartItem sci = new ShoppingCartItem();
+        sci.setProduct(new Product());
+        sci.getProduct().setName("");
+        sc.addShoppingCartItem(sci);
+
+        codec.encode(sc, buffer);
+        buffer.flip();
+        ShoppingCart decoded = codec.decode(buffer);
+
+        // the unpaired surrogate is replaced, as by String.getBytes
+        assertThat(decoded.getId(), equalTo(new String(sc.getId().getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8)));
+        assertThat(decoded.getShoppingCartItemList().get(0).getProduct().getName(), equalTo(""));
+        assertThat(decoded.getShoppingCartItemList().get(0).getProduct().getDesc(), nullValue());
+    }
+
+    @Test
+    public void cartsAreDecodedFromDirectBuffers() {
+        ByteBuffer direct = ByteBuffer.allocateDirect(4096);
+        codec.encode(cart(), direct);
+        codec.encode(cart(), direct);
+        direct.flip();
+
+        assertThat(codec.decode(direct).getShoppingCartItemList().size(), equalTo(3));
+        assertThat(codec.decode(direct).getShoppingCartItemList().get(2).getProduct().getName(), equalTo("Forge Laptop Sticker"));
+    }
+
+    @Test
+    public void fullBufferIsLeftUnchanged() {
+        ByteBuffer small = ByteBuffer.allocate(20);
+        small.put((byte) 42);
+        try {
+            codec.encode(cart(), small);
+            fail();
+        } catch (BufferOverflowException e) {
+            assertThat(small.position(), equalTo(1));
+        }
+    }
+
+    @Test
+    public void cartIsSmallerThanWithJavaSerialization() throws Exception {
+        ShoppingCart sc = cart();
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(sc);
+        }
+
+        codec.encode(sc, buffer);
+
+        assertThat(buffer.position() * 4, lessThan(serialized.size()));
+    }
+
+    @Test
+    public void fieldsMissingFromOlderCartsAreLeftAtTheirDefault() {
+        // a cart written before versions and promotions were recorded
+        buffer.put(ShoppingCartCodec.FORMAT_VERSION);
+        ShoppingCartCodec.putString(buffer, ShoppingCartCodec.CART_ID, "c1");
+        ShoppingCartCodec.putTag(buffer, ShoppingCartCodec.CART_TOTAL, ShoppingCartCodec.WIRE_VARINT);
+        ShoppingCartCodec.putVarLong(buffer, 2 * 1099);
+        ShoppingCartCodec.putTag(buffer, ShoppingCartCodec.CART_ITEM, ShoppingCartCodec.WIRE_GROUP);
+        ShoppingCartCodec.putString(buffer, ShoppingCartCodec.ITEM_ID, "p1");
+        ShoppingCartCodec.putTag(buffer, ShoppingCartCodec.ITEM_QUANTITY, ShoppingCartCodec.WIRE_VARINT);
+        ShoppingCartCodec.putVarLong(buffer, 2);
+        ShoppingCartCodec.putVarLong(buffer, ShoppingCartCodec.END);
+        ShoppingCartCodec.putVarLong(buffer, ShoppingCartCodec.END);
+        buffer.flip();
+
+        ShoppingCart decoded = codec.decode(buffer);
+
+        assertThat(decoded.getId(), equalTo("c1"));
+        assertThat(decoded.getCartTotalCents(), equalTo(1099L));
+        assertThat(decoded.getVersion(), equalTo(0L));
+        assertThat(decoded.getCartItemPromoSavingsCents(), equalTo(0L));
+        assertThat(decoded.findShoppingCartItem("p1").getQuantity(), equalTo(2));
+        assertThat(decoded.findShoppingCartItem("p1").getPromoSavingsCents(), equalTo(0L));
+    }
+
+    @Test
+    public void fieldsAddedByNewerCodecsAreSkipped() {
+        // a cart written by a codec that knows about fields 20 to 22 of carts and items
+        buffer.put(ShoppingCartCodec.FORMAT_VERSION);
+        ShoppingCartCodec.putString(buffer, ShoppingCartCodec.CART_ID, "c1");
+        ShoppingCartCodec.putString(buffer, 20, "gift message");
+        ShoppingCartCodec.putTag(buffer, 21, ShoppingCartCodec.WIRE_GROUP);
+        ShoppingCartCodec.putTag(buffer, 1, ShoppingCartCodec.WIRE_VARINT);
+        ShoppingCartCodec.putVarLong(buffer, Long.MAX_VALUE);
+        ShoppingCartCodec.putString(buffer, 2, "nested");
+        ShoppingCartCodec.putVarLong(buffer, ShoppingCartCodec.END);
+        ShoppingCartCodec.putTag(buffer, ShoppingCartCodec.CART_ITEM, ShoppingCartCodec.WIRE_GROUP);
+        ShoppingCartCodec.putString(buffer, ShoppingCartCodec.ITEM_ID, "p1");
+        ShoppingCartCodec.putTag(buffer, 22, ShoppingCartCodec.WIRE_VARINT);
+        ShoppingCartCodec.putVarLong(buffer, 7);
+        ShoppingCartCodec.putTag(buffer, ShoppingCartCodec.ITEM_QUANTITY, ShoppingCartCodec.WIRE_VARINT);
+        ShoppingCartCodec.putVarLong(buffer, 3);
+        ShoppingCartCodec.putVarLong(buffer, ShoppingCartCodec.END);
+        ShoppingCartCodec.putVarLong(buffer, ShoppingCartCodec.END);
+        codec.encode(cart(), buffer);
+        buffer.flip();
+
+        ShoppingCart decoded = codec.decode(buffer);
+
+        assertThat(decoded.getId(), equalTo("c1"));
+        assertThat(decoded.findShoppingCartItem("p1").getQuantity(), equalTo(3));
+        // the next cart is read from where the newer one ends
+        assertThat(codec.decode(buffer).getId(), equalTo("c1"));
+        assertThat(buffer.remaining(), equalTo(0));
+    }
+
+    @Test
+    public void cartsEncodedWithAShorterDictionaryAreDecoded() {
+        new ShoppingCartCodec(Arrays.asList("329299")).encode(cart(), buffer);
+        buffer.flip();
+
+        ShoppingCart decoded = codec.decode(buffer);
+
+        assertThat(decoded.getShoppingCartItemList().get(0).getProduct().getItemId(), equalTo("329299"));
+        assertThat(decoded.getShoppingCartItemList().get(1).getProduct().getItemId(), equalTo("165613"));
+    }
+
+    @Test
+    public void unknownFormatVersionIsRejected() {
+        buffer.put((byte) (ShoppingCartCodec.FORMAT_VERSION + 1));
+        buffer.flip();
+        try {
+            codec.decode(buffer);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), equalTo("Unsupported cart format version 2"));
+        }
+    }
+
+    private static ShoppingCart cart() {
+        ShoppingCart sc = new ShoppingCart();
+        sc.setId("c1");
+        sc.setVersion(1234567L);
+        sc.addShoppingCartItem(item("329299", "Red Fedora", "Official Red Hat Fedora", 34.99, 2, 0));
+        sc.addShoppingCartItem(item("165613", "Solid Performance Polo", null, 17.80, 1, 178));
+        sc.addShoppingCartItem(item("999999", "Forge Laptop Sticker", "\u00c9tiquette", 8.50, 300, 0));
+        sc.setCartItemTotal(2 * 34.99 + 17.80 + 300 * 8.50);
+        sc.setCartItemPromoSavingsCents(-150);
+        sc.setShippingTotal(2.99);
+        sc.setCartTotal(sc.getCartItemTotal() + 1.5 + 2.99);
+        return sc;
+    }
+
+    private static ShoppingCartItem item(String itemId, String name, String desc, double price, int quantity, long promoSavings) {
+        Product product = new Product();
+        product.setItemId(itemId);
+        product.setName(name);
+        product.setDesc(desc);
+        product.setPrice(price);
+        ShoppingCartItem sci = new ShoppingCartItem();
+        sci.setProduct(product);
+        sci.setPrice(price);
+        sci.setQuantity(quantity);
+        sci.setPromoSavingsCents(promoSavings);
+        return sci;
+    }
+
+}
@@ -1,16 +1,36 @@
 package com.redhat.coolstore.cart.service;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -19,14 +39,18 @@ import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.redhat.coolstore.cart.model.Order;
 import com.redhat.coolstore.cart.model.Product;
 import com.redhat.coolstore.cart.model.ShoppingCart;
 import com.redhat.coolstore.cart.model.ShoppingCartItem;
+import com.redhat.coolstore.cart.model.ShoppingCartItemChange;
 
 public class ShoppingCartServiceImplTest {
 
     private ShoppingCartServiceImpl shoppingCartService;
 
+    private ExecutorService cartUpdateExecutor;
+
     @Rule
     public MockitoRule rule = MockitoJUnit.rule();
 
@@ -42,6 +66,14 @@ public class ShoppingCartServiceImplTest {
         shoppingCartService = new ShoppingCartServiceImpl();
         ReflectionTestUtils.setField(shoppingCartService, null, catalogService, CatalogService.class);
         ReflectionTestUtils.setField(shoppingCartService, null, priceCalculationService, PriceCalculationService.class);
+        ReflectionTestUtils.setField(shoppingCartService, null, new InMemoryCartRepository(), CartRepository.class);
+        cartUpdateExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "cart-update"));
+        ReflectionTestUtils.setField(shoppingCartService, null, cartUpdateExecutor, Executor.class);
+    }
+
+    @After
+    public void tearDown() {
+        cartUpdateExecutor.shutdown();
     }
 
     @Test
@@ -68,7 +100,7 @@ public class ShoppingCartServiceImplTest {
         assertThat(sci.getProduct().getPrice(), equalTo(100.0));
         assertThat(sci.getPrice(), equalTo(100.0));
         assertThat(sci.getQuantity(), equalTo(1));
-        verify(priceCalculationService).priceShoppingCart(sc);
+        verify(priceCalculationService).updateShoppingCartPrice(eq(sc), any(ShoppingCartItem.class), eq(1));
         verify(catalogService).getProduct("p1");
 
         //make sure the cart store is up to date
@@ -89,7 +121,7 @@ public class ShoppingCartServiceImplTest {
         assertThat(sci.getProduct().getPrice(), equalTo(100.0));
         assertThat(sci.getPrice(), equalTo(100.0));
         assertThat(sci.getQuantity(), equalTo(3));
-        verify(priceCalculationService, times(2)).priceShoppingCart(any(ShoppingCart.class));
+        verify(priceCalculationService, times(2)).updateShoppingCartPrice(any(ShoppingCart.class), any(ShoppingCartItem.class), anyInt());
         verify(catalogService, times(2)).getProduct("p1");
 
         //make sure the cart store is up to date
@@ -110,14 +142,14 @@ public class ShoppingCartServiceImplTest {
         assertThat(sci.getProduct().getPrice(), equalTo(100.0));
         assertThat(sci.getPrice(), equalTo(100.0));
         assertThat(sci.getQuantity(), equalTo(1));
-        verify(priceCalculationService).priceShoppingCart(any(ShoppingCart.class));
+        verify(priceCalculationService).updateShoppingCartPrice(any(ShoppingCart.class), any(ShoppingCartItem.class), anyInt());
         verify(catalogService).getProduct("p1");
 
         ShoppingCart sc1 = shoppingCartService.addToCart("123456", "p1", -1);
         assertThat(sc1.getShoppingCartItemList().size(), equalTo(1));
         ShoppingCartItem sci1 = sc1.getShoppingCartItemList().get(0);
         assertThat(sci1.getQuantity(), equalTo(1));
-        verify(priceCalculationService).priceShoppingCart(any(ShoppingCart.class));
+        verify(priceCalculationService).updateShoppingCartPrice(any(ShoppingCart.class), any(ShoppingCartItem.class), anyInt());
         verify(catalogService).getProduct("p1");
     }
 
@@ -130,7 +162,7 @@ public class ShoppingCartServiceImplTest {
         Optional<ShoppingCartItem> sci = sc.getShoppingCartItemList().stream().filter(i -> i.getProduct().getItemId().equals("p2")).findFirst();
         assertThat(sci.isPresent(), equalTo(true));
         assertThat(sci.get().getQuantity(), equalTo(2));
-        verify(priceCalculationService, times(2)).priceShoppingCart(any(ShoppingCart.class));
+        verify(priceCalculationService, times(2)).updateShoppingCartPrice(any(ShoppingCart.class), any(ShoppingCartItem.class), anyInt());
         verify(catalogService).getProduct("p1");
         verify(catalogService).getProduct("p2");
 
@@ -145,7 +177,7 @@ public class ShoppingCartServiceImplTest {
         shoppingCartService.addToCart("123456", "p1", 1);
         ShoppingCart sc = shoppingCartService.addToCart("123456", "p3", 2);
         assertThat(sc.getShoppingCartItemList().size(), equalTo(1));
-        verify(priceCalculationService, times(1)).priceShoppingCart(any(ShoppingCart.class));
+        verify(priceCalculationService, times(1)).updateShoppingCartPrice(any(ShoppingCart.class), any(ShoppingCartItem.class), anyInt());
         verify(catalogService).getProduct("p1");
         verify(catalogService).getProduct("p3");
     }
@@ -161,13 +193,13 @@ public class ShoppingCartServiceImplTest {
         assertThat(sci.getProduct().getItemId(), equalTo("p1"));
         assertThat(sci.getProduct().getPrice(), equalTo(100.0));
         assertThat(sci.getQuantity(), equalTo(3));
-        verify(priceCalculationService).priceShoppingCart(any(ShoppingCart.class));
+        verify(priceCalculationService).updateShoppingCartPrice(any(ShoppingCart.class), any(ShoppingCartItem.class), anyInt());
 
         ShoppingCart sc1 = shoppingCartService.removeFromCart("123456", "p1", -2);
         assertThat(sc.getShoppingCartItemList().size(), equalTo(1));
         ShoppingCartItem sci1 = sc1.getShoppingCartItemList().get(0);
         assertThat(sci1.getQuantity(), equalTo(3));
-        verify(priceCalculationService).priceShoppingCart(any(ShoppingCart.class));
+        verify(priceCalculationService).updateShoppingCartPrice(any(ShoppingCart.class), any(ShoppingCartItem.class), anyInt());
     }
 
     @Test
@@ -182,7 +214,7 @@ public class ShoppingCartServiceImplTest {
         assertThat(sci.getProduct().getPrice(), equalTo(100.0));
         assertThat(sci.getPrice(), equalTo(100.0));
         assertThat(sci.getQuantity(), equalTo(1));
-        verify(priceCalculationService, times(2)).priceShoppingCart(any(ShoppingCart.class));
+        verify(priceCalculationService, times(2)).updateShoppingCartPrice(any(ShoppingCart.class), any(ShoppingCartItem.class), anyInt());
         verify(catalogService).getProduct("p1");
 
         //make sure the cart store is up to date
@@ -195,7 +227,7 @@ public class ShoppingCartServiceImplTest {
         shoppingCartService.addToCart("123456", "p1", 3);
         ShoppingCart sc = shoppingCartService.removeFromCart("123456", "p1", 3);
         assertThat(sc.getShoppingCartItemList().size(), equalTo(0));
-        verify(priceCalculationService, times(2)).priceShoppingCart(any(ShoppingCart.class));
+        verify(priceCalculationService, times(2)).updateShoppingCartPrice(any(ShoppingCart.class), any(ShoppingCartItem.class), anyInt());
         verify(catalogService).getProduct("p1");
 
         //make sure the cart store is up to date
@@ -203,6 +235,95 @@ public class ShoppingCartServiceImplTest {
         assertThat(sc.getShoppingCartItemList().size(), equalTo(0));
     }
 
+    @Test
+    public void testUpdateCart() {
+        shoppingCartService.addToCart("123456", "p1", 3);
+        ShoppingCart sc = shoppingCartService.updateCart("123456", Arrays.asList(
+                new ShoppingCartItemChange("p1", -1),
+                new ShoppingCartItemChange("p2", 2),
+                new ShoppingCartItemChange("p2", 1),
+                new ShoppingCartItemChange("p3", 1)));
+        assertThat(sc.getShoppingCartItemList().size(), equalTo(2));
+        assertThat(sc.findShoppingCartItem("p1").getQuantity(), equalTo(2));
+        assertThat(sc.findShoppingCartItem("p2").getQuantity(), equalTo(3));
+        verify(priceCalculationService).priceShoppingCart(sc);
+        verify(catalogService).getProduct("p2");
+        verify(catalogService).getProduct("p3");
+
+        //make sure the cart store is up to date
+        sc = shoppingCartService.getShoppingCart("123456");
+        assertThat(sc.getShoppingCartItemList().size(), equalTo(2));
+    }
+
+    @Test
+    public void testUpdateCartRemovingAllItems() {
+        shoppingCartService.addToCart("123456", "p1", 3);
+        ShoppingCart sc = shoppingCartService.updateCart("123456", Arrays.asList(
+                new ShoppingCartItemChange("p1", -5),
+                new ShoppingCartItemChange("p2", -1)));
+        assertThat(sc.getShoppingCartItemList().size(), equalTo(0));
+        verify(priceCalculationService).priceShoppingCart(sc);
+    }
+
+    @Test
+    public void testAddToCartAsync() throws Exception {
+        CompletableFuture<Product> product = new CompletableFuture<>();
+        when(catalogService.getProductAsync("p4")).thenReturn(product);
+
+        CompletableFuture<ShoppingCart> cart = shoppingCartService.addToCartAsync("123456", "p4", 2);
+        assertThat(cart.isDone(), equalTo(false));
+        assertThat(shoppingCartService.getShoppingCart("123456").getShoppingCartItemList().size(), equalTo(0));
+
+        Product p4 = new Product();
+        p4.setItemId("p4");
+        p4.setPrice(10.0);
+        // the catalog client thread only hands the update over
+        List<String> updaters = new ArrayList<>();
+        doAnswer(invocation -> updaters.add(Thread.currentThread().getName())).when(priceCalculationService)
+                .updateShoppingCartPrice(any(ShoppingCart.class), any(ShoppingCartItem.class), anyInt());
+        product.complete(p4);
+        ShoppingCart sc = cart.get();
+        assertThat(updaters, contains("cart-update"));
+        assertThat(sc.getShoppingCartItemList().size(), equalTo(1));
+        assertThat(sc.findShoppingCartItem("p4").getQuantity(), equalTo(2));
+        verify(priceCalculationService).updateShoppingCartPrice(eq(sc), any(ShoppingCartItem.class), eq(2));
+    }
+
+    @Test
+    public void testUpdateCartAsync() throws Exception {
+        shoppingCartService.addToCart("123456", "p1", 3);
+        ShoppingCart sc = shoppingCartService.updateCartAsync("123456", Arrays.asList(
+                new ShoppingCartItemChange("p1", -1),
+                new ShoppingCartItemChange("p2", 2),
+                new ShoppingCartItemChange("p3", 1))).get();
+        assertThat(sc.getShoppingCartItemList().size(), equalTo(2));
+        assertThat(sc.findShoppingCartItem("p1").getQuantity(), equalTo(2));
+        assertThat(sc.findShoppingCartItem("p2").getQuantity(), equalTo(2));
+        verify(priceCalculationService).priceShoppingCart(sc);
+        verify(catalogService).getProductAsync("p2");
+        verify(catalogService).getProductAsync("p3");
+    }
+
+    @Test
+    public void testCartsPricedWithOldRulesAreRepricedOnRead() {
+        PromotionEngine promotionEngine = PromotionEngine.defaults();
+        ReflectionTestUtils.setField(shoppingCartService, null, new PriceCalculationServiceImpl(promotionEngine), PriceCalculationService.class);
+        long version = shoppingCartService.addToCart("123456", "p1", 1).getVersion();
+        assertThat(shoppingCartService.getShoppingCart("123456").getVersion(), equalTo(version));
+
+        // new rules without a promotion for the cart leave it as it is
+        promotionEngine.update(new PromotionRules());
+        assertThat(shoppingCartService.getShoppingCart("123456").getVersion(), equalTo(version));
+
+        PromotionRules rules = new PromotionRules();
+        rules.getItemPromotions().add(new PromotionRules.ItemPromotion("p1", 50, 0, 0));
+        promotionEngine.update(rules);
+        ShoppingCart sc = shoppingCartService.getShoppingCart("123456");
+        assertThat(sc.getCartItemPromoSavings(), equalTo(50.0));
+        assertThat(sc.getVersion(), greaterThan(version));
+        assertThat(shoppingCartService.getShoppingCart("123456").getVersion(), equalTo(sc.getVersion()));
+    }
+
     @Test
     public void testCheckoutCart() {
         shoppingCartService.addToCart("123456", "p1", 3);
@@ -224,18 +345,128 @@ public class ShoppingCartServiceImplTest {
         assertThat(sc.getShoppingCartItemList().size(), equalTo(0));
     }
 
+    @Test
+    public void testEveryChangeIncreasesTheVersion() {
+        assertThat(shoppingCartService.getShoppingCart("123456").getVersion(), equalTo(0L));
+
+        long added = shoppingCartService.addToCart("123456", "p1", 1).getVersion();
+        assertThat(added, greaterThan(0L));
+        assertThat(shoppingCartService.getShoppingCart("123456").getVersion(), equalTo(added));
+
+        long addedAgain = shoppingCartService.addToCart("123456", "p1", 1).getVersion();
+        assertThat(addedAgain, greaterThan(added));
+        long removed = shoppingCartService.removeFromCart("123456", "p1", 1).getVersion();
+        assertThat(removed, greaterThan(addedAgain));
+        long updated = shoppingCartService.updateCart("123456", Arrays.asList(new ShoppingCartItemChange("p2", 1))).getVersion();
+        assertThat(updated, greaterThan(removed));
+
+        shoppingCartService.checkoutShoppingCart("123456");
+        assertThat(shoppingCartService.getShoppingCart("123456").getVersion(), equalTo(0L));
+        assertThat(shoppingCartService.addToCart("123456", "p1", 1).getVersion(), greaterThan(updated));
+    }
+
+    @Test
+    public void testUnversionedCartIsGivenAVersionWhenRead() {
+        ShoppingCart stored = new ShoppingCart();
+        stored.setId("123456");
+        shoppingCartService.restoreShoppingCart(stored);
+
+        long version = shoppingCartService.getShoppingCart("123456").getVersion();
+        assertThat(version, greaterThan(0L));
+        assertThat(shoppingCartService.getShoppingCart("123456").getVersion(), equalTo(version));
+    }
+
+    @Test
+    public void testCheckoutCartIsJournaled() throws Exception {
+        CheckoutJournal checkoutJournal = mock(CheckoutJournal.class);
+        ReflectionTestUtils.setField(shoppingCartService, null, checkoutJournal, CheckoutJournal.class);
+        when(checkoutJournal.append(any(ShoppingCart.class)))
+                .thenAnswer(invocation -> CompletableFuture.completedFuture(new Order(1, 0, invocation.getArgumentAt(0, ShoppingCart.class))));
+        ShoppingCart cart = shoppingCartService.addToCart("123456", "p1", 3);
+
+        ShoppingCart sc = shoppingCartService.checkoutShoppingCartAsync("123456").get();
+        assertThat(sc.getShoppingCartItemList().size(), equalTo(0));
+        verify(checkoutJournal).append(cart);
+
+        shoppingCartService.checkoutShoppingCart("123456");
+        verify(checkoutJournal, times(1)).append(any(ShoppingCart.class));
+    }
+
+    @Test
+    public void testFailedCheckoutRestoresCart() throws Exception {
+        CheckoutJournal checkoutJournal = mock(CheckoutJournal.class);
+        ReflectionTestUtils.setField(shoppingCartService, null, checkoutJournal, CheckoutJournal.class);
+        CompletableFuture<Order> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IOException("disk full"));
+        when(checkoutJournal.append(any(ShoppingCart.class))).thenReturn(failed);
+        shoppingCartService.addToCart("123456", "p1", 3);
+
+        try {
+            shoppingCartService.checkoutShoppingCartAsync("123456").get();
+            fail();
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IOException.class));
+        }
+        ShoppingCart sc = shoppingCartService.getShoppingCart("123456");
+        assertThat(sc.getShoppingCartItemList().size(), equalTo(1));
+        assertThat(sc.getShoppingCartItemList().get(0).getQuantity(), equalTo(3));
+    }
+
+    @Test
+    public void testConcurrentAddAndRemoveOnSameCart() throws Exception {
+        int threads = 8;
+        int iterations = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                String itemId = (t % 2 == 0) ? "p1" : "p2";
+                tasks.add(() -> {
+                    for (int i = 0; i < iterations; i++) {
+                        shoppingCartService.addToCart("123456", itemId, 2);
+                        shoppingCartService.removeFromCart("123456", itemId, 1);
+                        // the lines of a stored cart are only read under its lock
+                        ShoppingCart sc = shoppingCartService.getShoppingCart("123456");
+                        Lock lock = shoppingCartService.lockFor("123456");
+                        lock.lock();
+                        try {
+                            sc.toString();
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<Void> f : executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ShoppingCart sc = shoppingCartService.getShoppingCart("123456");
+        assertThat(sc.getShoppingCartItemList().size(), equalTo(2));
+        for (ShoppingCartItem sci : sc.getShoppingCartItemList()) {
+            assertThat(sci.getQuantity(), equalTo(threads / 2 * iterations));
+        }
+    }
+
     private void initMocks() {
         Product p1 = new Product();
         p1.setItemId("p1");
         p1.setPrice(100.0);
         when(catalogService.getProduct("p1")).thenReturn(p1);
+        when(catalogService.getProductAsync("p1")).thenReturn(CompletableFuture.completedFuture(p1));
 
         Product p2 = new Product();
         p2.setItemId("p2");
         p2.setPrice(100.0);
         when(catalogService.getProduct("p2")).thenReturn(p2);
+        when(catalogService.getProductAsync("p2")).thenReturn(CompletableFuture.completedFuture(p2));
 
         when(catalogService.getProduct("p3")).thenReturn(null);
+        when(catalogService.getProductAsync("p3")).thenReturn(CompletableFuture.completedFuture(null));
 
         doAnswer(invocation -> {
             ShoppingCart sc = invocation.getArgumentAt(0, ShoppingCart.class);
@@ -243,7 +474,7 @@ public class ShoppingCartServiceImplTest {
             sc.setCartTotal(120.0);
             sc.setShippingTotal(20.0);
             return null;
-        }).when(priceCalculationService).priceShoppingCart(any(ShoppingCart.class));
+        }).when(priceCalculationService).updateShoppingCartPrice(any(ShoppingCart.class), any(ShoppingCartItem.class), anyInt());
     }
 
 }
@@ -0,0 +1,97 @@
+package com.redhat.coolstore.cart.service;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class TrendingItemsTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+
+    // a window of 60 s in 6 periods of 10 s
+    private final TrendingItems trendingItems = new TrendingItems(3, 60_000, 6, 1024, 4, clock::get);
+
+    @Test
+    public void mostAddedItemsAreRanked() {
+        trendingItems.add("p1", 1);
+        trendingItems.add("p2", 5);
+        trendingItems.add("p3", 2);
+        trendingItems.add("p4", 3);
+        trendingItems.add("p1", 1);
+
+        assertThat(itemIds(trendingItems.getTop(3)), contains("p2", "p4", "p3"));
+        assertThat(trendingItems.getTop(3).get(0).getCount(), equalTo(5L));
+        assertThat(itemIds(trendingItems.getTop(1)), contains("p2"));
+
+        trendingItems.add("p1", 4);
+        assertThat(itemIds(trendingItems.getTop(3)), contains("p1", "p2", "p4"));
+    }
+
+    @Test
+    public void countsLeaveTheWindowAsItSlides() {
+        trendingItems.add("p1", 10);
+        clock.addAndGet(30_000);
+        trendingItems.add("p2", 4);
+
+        assertThat(trendingItems.estimate("p1"), equalTo(10L));
+        assertThat(itemIds(trendingItems.getTop(3)), contains("p1", "p2"));
+
+        clock.addAndGet(30_000);
+        assertThat(trendingItems.estimate("p1"), equalTo(0L));
+        assertThat(itemIds(trendingItems.getTop(3)), contains("p2"));
+
+        clock.addAndGet(30_000);
+        assertThat(trendingItems.getTop(3), empty());
+    }
+
+    @Test
+    public void bucketsAreClearedWhenReused() {
+        trendingItems.add("p1", 10);
+        clock.addAndGet(60_000);
+        trendingItems.add("p1", 1);
+
+        assertThat(trendingItems.estimate("p1"), equalTo(1L));
+    }
+
+    @Test
+    public void heavyHittersAreFoundAmongConcurrentAdds() throws Exception {
+        // far more items than counters per row
+        TrendingItems small = new TrendingItems(3, 60_000, 6, 256, 4, clock::get);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    small.add("item-" + i, 1);
+                    if (i % 10 == 0) {
+                        small.add("hot-" + (i % 3), 5);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 2000; i++) {
+            assertThat(small.estimate("item-" + i), greaterThanOrEqualTo(4L));
+        }
+        assertThat(small.estimate("hot-0"), greaterThanOrEqualTo(4L * 67 * 5));
+        assertThat(itemIds(small.getTop(3)), containsInAnyOrder("hot-0", "hot-1", "hot-2"));
+    }
+
+    private static List<String> itemIds(List<TrendingItems.ItemCount> items) {
+        return items.stream().map(TrendingItems.ItemCount::getItemId).collect(Collectors.toList());
+    }
+
+}
@@ -22,6 +22,7 @@ public class ApiVerticle extends AbstractVerticle {
         Router router = Router.router(vertx);
 
         router.get("/api/cart/:cartId").handler(this::getCart);
+        router.get("/api/cart/:cartId/summary").handler(this::getCartSummary);
         router.post("/api/cart/:cartId/:itemId/:quantity").handler(this::addToCart);
         router.delete("/api/cart/:cartId/:itemId/:quantity").handler(this::removeFromCart);
         router.post("/api/cart/checkout/:cartId").handler(this::checkoutCart);
@@ -41,12 +42,33 @@ public class ApiVerticle extends AbstractVerticle {
     }
 
     private void getCart(RoutingContext rc) {
-        DeliveryOptions options = new DeliveryOptions().addHeader("action", "getCart");
+        conditionalGet(rc, "getCart");
+    }
+
+    private void getCartSummary(RoutingContext rc) {
+        conditionalGet(rc, "getCartSummary");
+    }
+
+    private void conditionalGet(RoutingContext rc, String action) {
+        DeliveryOptions options = new DeliveryOptions().addHeader("action", action);
+        String ifNoneMatch = rc.request().getHeader(HttpHeaders.IF_NONE_MATCH.toString());
+        if (ifNoneMatch != null) {
+            options.addHeader(HttpHeaders.IF_NONE_MATCH.toString(), ifNoneMatch);
+        }
         JsonObject msg = new JsonObject().put("cartId", rc.request().getParam("cartId"));
         vertx.eventBus().<JsonObject>rxSend("CartService", msg, options)
-                .map(Message::body)
-                .subscribe(json -> rc.response().putHeader(HttpHeaders.CONTENT_TYPE.toString(), "application/json")
-                        .end(json.encode()), rc::fail);
+                .subscribe(reply -> {
+                    String eTag = reply.headers().get(HttpHeaders.ETAG.toString());
+                    if (eTag != null) {
+                        rc.response().putHeader(HttpHeaders.ETAG.toString(), eTag);
+                    }
+                    if ("304".equals(reply.headers().get("statusCode"))) {
+                        rc.response().setStatusCode(304).end();
+                    } else {
+                        rc.response().putHeader(HttpHeaders.CONTENT_TYPE.toString(), "application/json")
+                                .end(reply.body().encode());
+                    }
+                }, rc::fail);
     }
 
     private void addToCart(RoutingContext rc) {
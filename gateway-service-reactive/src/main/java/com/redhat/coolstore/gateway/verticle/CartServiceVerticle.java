@@ -1,9 +1,13 @@
 package com.redhat.coolstore.gateway.verticle;
 
 import io.vertx.core.Future;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.http.HttpHeaders;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.client.WebClientOptions;
+import io.vertx.reactivex.core.buffer.Buffer;
 import io.vertx.reactivex.core.eventbus.Message;
+import io.vertx.reactivex.ext.web.client.HttpRequest;
 import io.vertx.reactivex.ext.web.client.HttpResponse;
 import io.vertx.reactivex.ext.web.codec.BodyCodec;
 import io.vertx.reactivex.core.AbstractVerticle;
@@ -35,8 +39,12 @@ public class CartServiceVerticle extends AbstractVerticle {
                 switch (action) {
                     case "getCart": {
                         String cartId = msgIn.getString("cartId");
-                        webClient.get("/cart/" + cartId).as(BodyCodec.jsonObject()).rxSend()
-                                .subscribe(resp -> handleResponse(resp, msg), err -> msg.fail(-1, err.getMessage()));
+                        conditionalGet("/cart/" + cartId, msg);
+                        break;
+                    }
+                    case "getCartSummary": {
+                        String cartId = msgIn.getString("cartId");
+                        conditionalGet("/cart/" + cartId + "/summary", msg);
                         break;
                     }
                     case "addToCart": {
@@ -80,13 +88,46 @@ public class CartServiceVerticle extends AbstractVerticle {
         startFuture.complete();
     }
 
+    private void conditionalGet(String uri, Message<JsonObject> msg) {
+        HttpRequest<Buffer> request = webClient.get(uri);
+        String ifNoneMatch = msg.headers().get(HttpHeaders.IF_NONE_MATCH.toString());
+        if (ifNoneMatch != null) {
+            request.putHeader(HttpHeaders.IF_NONE_MATCH.toString(), ifNoneMatch);
+        }
+        request.rxSend()
+                .subscribe(resp -> handleConditionalResponse(resp, msg), err -> msg.fail(-1, err.getMessage()));
+    }
+
     private void handleResponse(HttpResponse<JsonObject> resp, Message<JsonObject> msg) {
         if (resp.statusCode() >= 400) {
             msg.fail(-1, "Cart Service HTTP status code: " + resp.statusCode());
         } else {
             JsonObject body = resp.body();
-            msg.reply(body);
+            msg.reply(body, replyOptions(resp));
+        }
+    }
+
+    /**
+     * A {@code 304 Not Modified} answer is replied without a body; the status
+     * code and the entity tag of the cart are passed as headers of the reply.
+     */
+    private void handleConditionalResponse(HttpResponse<Buffer> resp, Message<JsonObject> msg) {
+        if (resp.statusCode() >= 400) {
+            msg.fail(-1, "Cart Service HTTP status code: " + resp.statusCode());
+        } else if (resp.statusCode() == 304) {
+            msg.reply(null, replyOptions(resp));
+        } else {
+            msg.reply(resp.bodyAsJsonObject(), replyOptions(resp));
+        }
+    }
+
+    private DeliveryOptions replyOptions(HttpResponse<?> resp) {
+        DeliveryOptions options = new DeliveryOptions().addHeader("statusCode", Integer.toString(resp.statusCode()));
+        String eTag = resp.getHeader(HttpHeaders.ETAG.toString());
+        if (eTag != null) {
+            options.addHeader(HttpHeaders.ETAG.toString(), eTag);
         }
+        return options;
     }
 
     @Override
@@ -14,6 +14,7 @@ import org.junit.runner.RunWith;
 
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
@@ -68,6 +69,69 @@ public class ApiVerticleTest {
         .end();
     }
 
+    @Test
+    public void testGetCartSummary(TestContext context) throws Exception {
+        vertx.eventBus().<JsonObject>consumer("CartService", msg -> {
+            assertThat(msg.headers().get("action"), equalTo("getCartSummary"));
+            assertThat(msg.body().getString("cartId"), equalTo("mycart"));
+            msg.reply(new JsonObject().put("lineCount", 1).put("unitCount", 2).put("cartTotal", 20.0),
+                    new DeliveryOptions().addHeader("statusCode", "200").addHeader("ETag", "\"42\""));
+        });
+
+        Async async = context.async();
+        vertx.createHttpClient().get(port, "localhost", "/api/cart/mycart/summary", response -> {
+            assertThat(response.statusCode(), equalTo(200));
+            assertThat(response.headers().get("ETag"), equalTo("\"42\""));
+            response.bodyHandler(body -> {
+                JsonObject result = body.toJsonObject();
+                assertThat(result.getInteger("lineCount"), equalTo(1));
+                assertThat(result.getInteger("unitCount"), equalTo(2));
+                async.complete();
+            })
+            .exceptionHandler(context.exceptionHandler());
+        })
+        .exceptionHandler(context.exceptionHandler())
+        .end();
+    }
+
+    @Test
+    public void testGetUnchangedCartSummary(TestContext context) throws Exception {
+        vertx.eventBus().<JsonObject>consumer("CartService", msg -> {
+            assertThat(msg.headers().get("action"), equalTo("getCartSummary"));
+            assertThat(msg.headers().get("If-None-Match"), equalTo("\"42\""));
+            msg.reply(null, new DeliveryOptions().addHeader("statusCode", "304").addHeader("ETag", "\"42\""));
+        });
+
+        Async async = context.async();
+        vertx.createHttpClient().get(port, "localhost", "/api/cart/mycart/summary", response -> {
+            assertThat(response.statusCode(), equalTo(304));
+            assertThat(response.headers().get("ETag"), equalTo("\"42\""));
+            async.complete();
+        })
+        .putHeader("If-None-Match", "\"42\"")
+        .exceptionHandler(context.exceptionHandler())
+        .end();
+    }
+
+    @Test
+    public void testGetUnchangedCart(TestContext context) throws Exception {
+        vertx.eventBus().<JsonObject>consumer("CartService", msg -> {
+            assertThat(msg.headers().get("action"), equalTo("getCart"));
+            assertThat(msg.headers().get("If-None-Match"), equalTo("\"42\""));
+            msg.reply(null, new DeliveryOptions().addHeader("statusCode", "304").addHeader("ETag", "\"42\""));
+        });
+
+        Async async = context.async();
+        vertx.createHttpClient().get(port, "localhost", "/api/cart/mycart", response -> {
+            assertThat(response.statusCode(), equalTo(304));
+            assertThat(response.headers().get("ETag"), equalTo("\"42\""));
+            async.complete();
+        })
+        .putHeader("If-None-Match", "\"42\"")
+        .exceptionHandler(context.exceptionHandler())
+        .end();
+    }
+
     @Test
     public void testGetCartWhenCartVerticleRespondsWithError(TestContext context) throws Exception {
         vertx.eventBus().<JsonObject>consumer("CartService", msg -> {
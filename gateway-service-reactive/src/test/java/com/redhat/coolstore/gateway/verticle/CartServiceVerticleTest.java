@@ -13,6 +13,7 @@ import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMoc
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 import java.io.IOException;
@@ -25,6 +26,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 
 import io.vertx.core.DeploymentOptions;
@@ -64,7 +66,7 @@ public class CartServiceVerticleTest {
     public void testGetCart(TestContext context) throws Exception {
         stubFor(get(urlEqualTo("/cart/mycart"))
                 .willReturn(
-                aResponse().withStatus(200).withHeader("Content-type", "application/json")
+                aResponse().withStatus(200).withHeader("Content-type", "application/json").withHeader("ETag", "\"42\"")
                     .withBody(new JsonObject().put("id", "mycart").encode())));
 
         JsonObject msgSent = new JsonObject()
@@ -77,11 +79,79 @@ public class CartServiceVerticleTest {
             assertThat(ar.result(), notNullValue());
             assertThat(ar.result().body(), notNullValue());
             assertThat(ar.result().body().getString("id"), equalTo("mycart"));
+            assertThat(ar.result().headers().get("statusCode"), equalTo("200"));
+            assertThat(ar.result().headers().get("ETag"), equalTo("\"42\""));
             wireMockRule.verify(getRequestedFor(urlEqualTo("/cart/mycart")));
             async.complete();
         });
     }
 
+    @Test
+    public void testGetUnchangedCart(TestContext context) throws Exception {
+        stubFor(get(urlEqualTo("/cart/mycart")).withHeader("If-None-Match", WireMock.equalTo("\"42\""))
+                .willReturn(aResponse().withStatus(304).withHeader("ETag", "\"42\"")));
+
+        JsonObject msgSent = new JsonObject()
+            .put("cartId", "mycart");
+        DeliveryOptions options = new DeliveryOptions();
+        options.addHeader("action", "getCart");
+        options.addHeader("If-None-Match", "\"42\"");
+        Async async = context.async();
+        vertx.eventBus().<JsonObject>send("CartService", msgSent, options, ar -> {
+            assertThat(ar.failed(), is(false));
+            assertThat(ar.result().headers().get("statusCode"), equalTo("304"));
+            assertThat(ar.result().headers().get("ETag"), equalTo("\"42\""));
+            assertThat(ar.result().body(), nullValue());
+            wireMockRule.verify(getRequestedFor(urlEqualTo("/cart/mycart")).withHeader("If-None-Match", WireMock.equalTo("\"42\"")));
+            async.complete();
+        });
+    }
+
+    @Test
+    public void testGetCartSummary(TestContext context) throws Exception {
+        stubFor(get(urlEqualTo("/cart/mycart/summary"))
+                .willReturn(
+                aResponse().withStatus(200).withHeader("Content-type", "application/json").withHeader("ETag", "\"42\"")
+                    .withBody(new JsonObject().put("lineCount", 1).put("unitCount", 2).put("cartTotal", 20.0).encode())));
+
+        JsonObject msgSent = new JsonObject()
+            .put("cartId", "mycart");
+        DeliveryOptions options = new DeliveryOptions();
+        options.addHeader("action", "getCartSummary");
+        Async async = context.async();
+        vertx.eventBus().<JsonObject>send("CartService", msgSent, options, ar -> {
+            assertThat(ar.failed(), is(false));
+            assertThat(ar.result().body(), notNullValue());
+            assertThat(ar.result().body().getInteger("lineCount"), equalTo(1));
+            assertThat(ar.result().body().getInteger("unitCount"), equalTo(2));
+            assertThat(ar.result().headers().get("statusCode"), equalTo("200"));
+            assertThat(ar.result().headers().get("ETag"), equalTo("\"42\""));
+            wireMockRule.verify(getRequestedFor(urlEqualTo("/cart/mycart/summary")));
+            async.complete();
+        });
+    }
+
+    @Test
+    public void testGetUnchangedCartSummary(TestContext context) throws Exception {
+        stubFor(get(urlEqualTo("/cart/mycart/summary")).withHeader("If-None-Match", WireMock.equalTo("\"42\""))
+                .willReturn(aResponse().withStatus(304).withHeader("ETag", "\"42\"")));
+
+        JsonObject msgSent = new JsonObject()
+            .put("cartId", "mycart");
+        DeliveryOptions options = new DeliveryOptions();
+        options.addHeader("action", "getCartSummary");
+        options.addHeader("If-None-Match", "\"42\"");
+        Async async = context.async();
+        vertx.eventBus().<JsonObject>send("CartService", msgSent, options, ar -> {
+            assertThat(ar.failed(), is(false));
+            assertThat(ar.result().headers().get("statusCode"), equalTo("304"));
+            assertThat(ar.result().headers().get("ETag"), equalTo("\"42\""));
+            assertThat(ar.result().body(), nullValue());
+            wireMockRule.verify(getRequestedFor(urlEqualTo("/cart/mycart/summary")).withHeader("If-None-Match", WireMock.equalTo("\"42\"")));
+            async.complete();
+        });
+    }
+
     @Test
     public void testGetCartWhenCartServiceThrowsError(TestContext context) throws Exception {
 
@@ -0,0 +1,141 @@
+package com.redhat.coolstore.gateway.verticle;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.net.ServerSocket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+/**
+ * Runs conditional cart requests through both the {@link ApiVerticle} and the
+ * {@link CartServiceVerticle}, against a mocked cart service.
+ */
+@RunWith(VertxUnitRunner.class)
+public class ConditionalCartGetTest {
+
+    private Vertx vertx;
+
+    private int port;
+
+    @Rule
+    public WireMockRule wireMockRule = new WireMockRule(wireMockConfig().dynamicPort());
+
+    @Before
+    public void setUp(TestContext context) throws Exception {
+        vertx = Vertx.vertx();
+        vertx.exceptionHandler(context.exceptionHandler());
+        ServerSocket socket = new ServerSocket(0);
+        port = socket.getLocalPort();
+        socket.close();
+        JsonObject config = new JsonObject()
+            .put("gateway.http.port", port)
+            .put("cart.service.host", "localhost")
+            .put("cart.service.port", wireMockRule.port());
+        DeploymentOptions options = new DeploymentOptions().setConfig(config);
+        vertx.deployVerticle(new CartServiceVerticle(), options, context.asyncAssertSuccess());
+        vertx.deployVerticle(new ApiVerticle(), options, context.asyncAssertSuccess());
+    }
+
+    @After
+    public void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void testGetCartIsTagged(TestContext context) throws Exception {
+        stubFor(get(urlEqualTo("/cart/mycart"))
+                .willReturn(
+                aResponse().withStatus(200).withHeader("Content-type", "application/json").withHeader("ETag", "\"42\"")
+                    .withBody(new JsonObject().put("id", "mycart").encode())));
+
+        Async async = context.async();
+        vertx.createHttpClient().get(port, "localhost", "/api/cart/mycart", response -> {
+            assertThat(response.statusCode(), equalTo(200));
+            assertThat(response.headers().get("ETag"), equalTo("\"42\""));
+            response.bodyHandler(body -> {
+                assertThat(body.toJsonObject().getString("id"), equalTo("mycart"));
+                async.complete();
+            })
+            .exceptionHandler(context.exceptionHandler());
+        })
+        .exceptionHandler(context.exceptionHandler())
+        .end();
+    }
+
+    @Test
+    public void testGetUnchangedCartIsNotModified(TestContext context) throws Exception {
+        stubFor(get(urlEqualTo("/cart/mycart")).withHeader("If-None-Match", WireMock.equalTo("\"42\""))
+                .willReturn(aResponse().withStatus(304).withHeader("ETag", "\"42\"")));
+
+        Async async = context.async();
+        vertx.createHttpClient().get(port, "localhost", "/api/cart/mycart", response -> {
+            assertThat(response.statusCode(), equalTo(304));
+            assertThat(response.headers().get("ETag"), equalTo("\"42\""));
+            wireMockRule.verify(getRequestedFor(urlEqualTo("/cart/mycart")).withHeader("If-None-Match", WireMock.equalTo("\"42\"")));
+            async.complete();
+        })
+        .putHeader("If-None-Match", "\"42\"")
+        .exceptionHandler(context.exceptionHandler())
+        .end();
+    }
+
+    @Test
+    public void testGetCartSummaryIsTagged(TestContext context) throws Exception {
+        stubFor(get(urlEqualTo("/cart/mycart/summary"))
+                .willReturn(
+                aResponse().withStatus(200).withHeader("Content-type", "application/json").withHeader("ETag", "\"42\"")
+                    .withBody(new JsonObject().put("lineCount", 1).put("unitCount", 2).put("cartTotal", 20.0).encode())));
+
+        Async async = context.async();
+        vertx.createHttpClient().get(port, "localhost", "/api/cart/mycart/summary", response -> {
+            assertThat(response.statusCode(), equalTo(200));
+            assertThat(response.headers().get("ETag"), equalTo("\"42\""));
+            response.bodyHandler(body -> {
+                assertThat(body.toJsonObject().getInteger("unitCount"), equalTo(2));
+                async.complete();
+            })
+            .exceptionHandler(context.exceptionHandler());
+        })
+        .exceptionHandler(context.exceptionHandler())
+        .end();
+    }
+
+    @Test
+    public void testGetUnchangedCartSummaryIsNotModified(TestContext context) throws Exception {
+        stubFor(get(urlEqualTo("/cart/mycart/summary")).withHeader("If-None-Match", WireMock.equalTo("\"42\""))
+                .willReturn(aResponse().withStatus(304).withHeader("ETag", "\"42\"")));
+
+        Async async = context.async();
+        vertx.createHttpClient().get(port, "localhost", "/api/cart/mycart/summary", response -> {
+            assertThat(response.statusCode(), equalTo(304));
+            assertThat(response.headers().get("ETag"), equalTo("\"42\""));
+            wireMockRule.verify(getRequestedFor(urlEqualTo("/cart/mycart/summary")).withHeader("If-None-Match", WireMock.equalTo("\"42\"")));
+            async.complete();
+        })
+        .putHeader("If-None-Match", "\"42\"")
+        .exceptionHandler(context.exceptionHandler())
+        .end();
+    }
+
+}
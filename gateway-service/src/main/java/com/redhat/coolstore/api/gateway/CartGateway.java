@@ -6,9 +6,12 @@ import org.apache.camel.component.http4.HttpMethods;
 import org.apache.camel.model.dataformat.JsonLibrary;
 import org.apache.camel.model.rest.RestBindingMode;
 import org.apache.camel.model.rest.RestParamType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 
+import com.redhat.coolstore.api.gateway.model.CartSummary;
 import com.redhat.coolstore.api.gateway.model.ShoppingCart;
 
 @Component
@@ -25,8 +28,12 @@ public class CartGateway extends RouteBuilder {
         rest("/cart").description("Shopping Cart Service")
             .produces(MediaType.APPLICATION_JSON_VALUE)
 
+        // the If-None-Match header of the request and the ETag header of the response are passed through,
+        // and a 304 Not Modified answer of the cart service is returned as is. The endpoint has its own name:
+        // http4 producers are shared by endpoints with the same host, whatever their options
         .get("/{cartId}").description("Get the current user's shopping cart content")
             .param().name("cartId").type(RestParamType.path).description("The ID of the cart to process").dataType("string").endParam()
+            .param().name(HttpHeaders.IF_NONE_MATCH).type(RestParamType.header).description("The entity tag of the cart content already known").dataType("string").required(false).endParam()
             .outType(ShoppingCart.class)
             .route().id("getCartRoute")
                 .removeHeaders("CamelHttp*")
@@ -35,9 +42,36 @@ public class CartGateway extends RouteBuilder {
                 .setHeader(Exchange.HTTP_METHOD, HttpMethods.GET)
                 .setHeader(Exchange.HTTP_PATH, simple("cart/${header.cartId}"))
                 .setHeader(Exchange.HTTP_URI, simple("{{cart.service.url}}"))
-                .to("http4://DUMMY")
-                .setHeader("CamelJacksonUnmarshalType", simple(ShoppingCart.class.getName()))
-                .unmarshal().json(JsonLibrary.Jackson, ShoppingCart.class)
+                .to("http4://DUMMY2?okStatusCodeRange=200-304")
+                .choice()
+                    .when(header(Exchange.HTTP_RESPONSE_CODE).isEqualTo(HttpStatus.NOT_MODIFIED.value()))
+                        .setBody(constant(null))
+                    .otherwise()
+                        .setHeader("CamelJacksonUnmarshalType", simple(ShoppingCart.class.getName()))
+                        .unmarshal().json(JsonLibrary.Jackson, ShoppingCart.class)
+                .end()
+        .endRest()
+
+        // polled for the cart badge: tagged and answered with 304 Not Modified like the cart
+        .get("/{cartId}/summary").description("Get the number of lines, the number of units and the total of the current user's shopping cart")
+            .param().name("cartId").type(RestParamType.path).description("The ID of the cart to process").dataType("string").endParam()
+            .param().name(HttpHeaders.IF_NONE_MATCH).type(RestParamType.header).description("The entity tag of the cart content already known").dataType("string").required(false).endParam()
+            .outType(CartSummary.class)
+            .route().id("getCartSummaryRoute")
+                .removeHeaders("CamelHttp*")
+                .setBody().simple("null")
+                .setHeader(Exchange.CONTENT_TYPE, simple(MediaType.APPLICATION_JSON_VALUE))
+                .setHeader(Exchange.HTTP_METHOD, HttpMethods.GET)
+                .setHeader(Exchange.HTTP_PATH, simple("cart/${header.cartId}/summary"))
+                .setHeader(Exchange.HTTP_URI, simple("{{cart.service.url}}"))
+                .to("http4://DUMMY3?okStatusCodeRange=200-304")
+                .choice()
+                    .when(header(Exchange.HTTP_RESPONSE_CODE).isEqualTo(HttpStatus.NOT_MODIFIED.value()))
+                        .setBody(constant(null))
+                    .otherwise()
+                        .setHeader("CamelJacksonUnmarshalType", simple(CartSummary.class.getName()))
+                        .unmarshal().json(JsonLibrary.Jackson, CartSummary.class)
+                .end()
         .endRest()
 
         .post("/{cartId}/{itemId}/{quantity}").description("Add items from current user's shopping cart")
@@ -0,0 +1,35 @@
+package com.redhat.coolstore.api.gateway.model;
+
+public class CartSummary {
+
+    public int lineCount;
+
+    public long unitCount;
+
+    public double cartTotal = 0.0;
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public void setLineCount(int lineCount) {
+        this.lineCount = lineCount;
+    }
+
+    public long getUnitCount() {
+        return unitCount;
+    }
+
+    public void setUnitCount(long unitCount) {
+        this.unitCount = unitCount;
+    }
+
+    public double getCartTotal() {
+        return cartTotal;
+    }
+
+    public void setCartTotal(double cartTotal) {
+        this.cartTotal = cartTotal;
+    }
+
+}
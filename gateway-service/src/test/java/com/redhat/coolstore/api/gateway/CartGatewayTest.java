@@ -12,6 +12,8 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -31,6 +33,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.annotation.DirtiesContext;
@@ -40,6 +44,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.client.WireMock;
 import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
 import com.github.tomakehurst.wiremock.junit.WireMockRule;
 import com.redhat.coolstore.api.gateway.model.Product;
@@ -65,7 +70,7 @@ public class CartGatewayTest {
     public void getCart() throws Exception {
 
         cartServiceMock.stubFor(get(urlEqualTo("/cart/FOO")).willReturn(aResponse()
-                .withStatus(200).withHeader("Content-Type", "application/json")
+                .withStatus(200).withHeader("Content-Type", "application/json").withHeader("ETag", "\"42\"")
                 .withBody(buildShoppingCartResponse())));
 
         NotifyBuilder notify = new NotifyBuilder(camelContext).fromRoute("getCartRoute").whenDone(1).create();
@@ -77,6 +82,8 @@ public class CartGatewayTest {
         assertThat(notify.matches(10, TimeUnit.SECONDS), is(true));
 
         assertThat(response.getStatusCodeValue(), equalTo(HttpStatus.SC_OK));
+        // the mock appends a suffix to the tag of compressed responses
+        assertThat(response.getHeaders().getETag(), startsWith("\"42"));
 
         JsonNode node = new ObjectMapper(new JsonFactory()).readTree(response.getBody());
 
@@ -86,6 +93,77 @@ public class CartGatewayTest {
         cartServiceMock.verify(getRequestedFor(urlEqualTo("/cart/FOO")));
     }
 
+    @Test
+    @DirtiesContext
+    public void getUnchangedCart() throws Exception {
+
+        cartServiceMock.stubFor(get(urlEqualTo("/cart/FOO")).withHeader("If-None-Match", WireMock.equalTo("\"42\""))
+                .willReturn(aResponse().withStatus(304).withHeader("ETag", "\"42\"")));
+
+        NotifyBuilder notify = new NotifyBuilder(camelContext).fromRoute("getCartRoute").whenDone(1).create();
+
+        adviceCamelContext("getCartRoute");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch("\"42\"");
+        ResponseEntity<String> response = restTemplate.exchange("/api/cart/FOO", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        assertThat(notify.matches(10, TimeUnit.SECONDS), is(true));
+
+        assertThat(response.getStatusCodeValue(), equalTo(HttpStatus.SC_NOT_MODIFIED));
+        assertThat(response.getBody(), nullValue());
+        cartServiceMock.verify(getRequestedFor(urlEqualTo("/cart/FOO")).withHeader("If-None-Match", WireMock.equalTo("\"42\"")));
+    }
+
+    @Test
+    @DirtiesContext
+    public void getCartSummary() throws Exception {
+
+        cartServiceMock.stubFor(get(urlEqualTo("/cart/FOO/summary")).willReturn(aResponse()
+                .withStatus(200).withHeader("Content-Type", "application/json").withHeader("ETag", "\"42\"")
+                .withBody("{\"lineCount\":1,\"unitCount\":2,\"cartTotal\":20.0}")));
+
+        NotifyBuilder notify = new NotifyBuilder(camelContext).fromRoute("getCartSummaryRoute").whenDone(1).create();
+
+        adviceCamelContext("getCartSummaryRoute");
+
+        ResponseEntity<String> response = restTemplate.getForEntity("/api/cart/FOO/summary", String.class);
+
+        assertThat(notify.matches(10, TimeUnit.SECONDS), is(true));
+
+        assertThat(response.getStatusCodeValue(), equalTo(HttpStatus.SC_OK));
+        assertThat(response.getHeaders().getETag(), startsWith("\"42"));
+
+        JsonNode node = new ObjectMapper(new JsonFactory()).readTree(response.getBody());
+
+        assertThat(node.get("lineCount").asInt(), equalTo(1));
+        assertThat(node.get("unitCount").asInt(), equalTo(2));
+        assertThat(node.get("cartTotal").asInt(), equalTo(20));
+        assertCorsHeaders(response);
+        cartServiceMock.verify(getRequestedFor(urlEqualTo("/cart/FOO/summary")));
+    }
+
+    @Test
+    @DirtiesContext
+    public void getUnchangedCartSummary() throws Exception {
+
+        cartServiceMock.stubFor(get(urlEqualTo("/cart/FOO/summary")).withHeader("If-None-Match", WireMock.equalTo("\"42\""))
+                .willReturn(aResponse().withStatus(304).withHeader("ETag", "\"42\"")));
+
+        NotifyBuilder notify = new NotifyBuilder(camelContext).fromRoute("getCartSummaryRoute").whenDone(1).create();
+
+        adviceCamelContext("getCartSummaryRoute");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch("\"42\"");
+        ResponseEntity<String> response = restTemplate.exchange("/api/cart/FOO/summary", HttpMethod.GET, new HttpEntity<>(headers), String.class);
+
+        assertThat(notify.matches(10, TimeUnit.SECONDS), is(true));
+
+        assertThat(response.getStatusCodeValue(), equalTo(HttpStatus.SC_NOT_MODIFIED));
+        assertThat(response.getBody(), nullValue());
+    }
+
     @Test
     @DirtiesContext
     public void addToCart() throws Exception {
@@ -211,7 +289,7 @@ public class CartGatewayTest {
 
             @Override
             public void configure() throws Exception {
-                interceptSendToEndpoint("http4://DUMMY")
+                interceptSendToEndpoint("http4://DUMMY*")
                     .process(new Processor() {
 
                         @Override